@@ -0,0 +1,97 @@
+package hr.fer.zemris.java.hw04.db;
+
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Represents a bitmap index over a single attribute of the records
+ * in a student database. For each distinct attribute value, the index
+ * keeps a bitmap with the bits of the row numbers of the records having
+ * that value. The records satisfying a comparison are found by evaluating
+ * the comparison once for each distinct value, and combining the bitmaps
+ * of the values which satisfy it.
+ *
+ * <p>Since the index needs a bit per record for each distinct value, it
+ * is meant for attributes with few distinct values, such as final grade,
+ * and can't be created for attributes with more than {@value #MAX_VALUES}.
+ *
+ * @author Vice Ivušić
+ *
+ */
+class BitmapIndex {
+
+	/** largest amount of distinct values an index can be created for **/
+	static final int MAX_VALUES = 64;
+
+	/** bitmaps of the row numbers of the records, mapped to their values **/
+	private Map<String, BitSet> bitmaps = new LinkedHashMap<>();
+
+	/**
+	 * Creates a BitmapIndex over the attribute returned by the specified
+	 * getter for each of the specified records.
+	 *
+	 * @param records records to be indexed
+	 * @param getter object for getting the indexed attribute value
+	 * @throws IllegalArgumentException if the attribute has more than
+	 * 		   {@value #MAX_VALUES} distinct values
+	 */
+	BitmapIndex(RecordStore records, IFieldValueGetter getter) {
+		for (int row = 0, size = records.size(); row < size; row++) {
+			String value = getter.get(records.get(row));
+			BitSet bitmap = bitmaps.get(value);
+
+			if (bitmap == null) {
+				if (bitmaps.size() == MAX_VALUES) {
+					throw new IllegalArgumentException(
+							"Attribute has too many distinct values for a bitmap index!"
+					);
+				}
+				bitmap = new BitSet(size);
+				bitmaps.put(value, bitmap);
+			}
+
+			bitmap.set(row);
+		}
+	}
+
+	/**
+	 * Returns a bitmap of the row numbers of the records whose attribute
+	 * value satisfies the specified expression.
+	 *
+	 * @param expression expression on the indexed attribute
+	 * @return bitmap of the row numbers of the records satisfying it
+	 */
+	BitSet rowsSatisfying(ConditionalExpression expression) {
+		IBoundComparisonOperator operator = expression.getBoundOperator();
+		BitSet rows = new BitSet();
+
+		for (Map.Entry<String, BitSet> entry : bitmaps.entrySet()) {
+			if (operator.satisfied(entry.getKey())) {
+				rows.or(entry.getValue());
+			}
+		}
+
+		return rows;
+	}
+
+	/**
+	 * Returns the amount of records whose attribute value satisfies
+	 * the specified expression.
+	 *
+	 * @param expression expression on the indexed attribute
+	 * @return amount of records satisfying it
+	 */
+	int countSatisfying(ConditionalExpression expression) {
+		IBoundComparisonOperator operator = expression.getBoundOperator();
+		int count = 0;
+
+		for (Map.Entry<String, BitSet> entry : bitmaps.entrySet()) {
+			if (operator.satisfied(entry.getKey())) {
+				count += entry.getValue().cardinality();
+			}
+		}
+
+		return count;
+	}
+}
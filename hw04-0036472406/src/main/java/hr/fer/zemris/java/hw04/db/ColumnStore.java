@@ -0,0 +1,259 @@
+package hr.fer.zemris.java.hw04.db;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Implements the RecordStore interface by keeping each attribute of
+ * the records in a separate column, and creating StudentRecord objects
+ * only for the records which are returned.
+ *
+ * <p>Last and first names are dictionary-encoded: each distinct name is
+ * stored once, in a dictionary sorted in ascending order, and each record
+ * holds only the code of its name, which is its position in the dictionary.
+ * Since codes are ordered the same way as the names, a comparison such as
+ * <code>lastName &lt; "K"</code> is answered by comparing codes against a
+ * range found by binary search in the dictionary. Any other comparison is
+ * evaluated once for each name in the dictionary rather than once for each
+ * record. Final grades are stored as bytes and compared the same way, using
+ * a table of the five possible grades.
+ *
+ * @author Vice Ivušić
+ *
+ */
+class ColumnStore implements RecordStore {
+
+	/** JMBAGs of the records **/
+	private String[] jmbags;
+	/** last names of the records **/
+	private DictionaryColumn lastNames;
+	/** first names of the records **/
+	private DictionaryColumn firstNames;
+	/** final grades of the records **/
+	private byte[] finalGrades;
+
+	/** amount of stored records **/
+	private int size;
+
+	/**
+	 * Creates an empty ColumnStore with room for the specified
+	 * amount of records.
+	 *
+	 * @param capacity amount of records the store will hold
+	 */
+	ColumnStore(int capacity) {
+		jmbags = new String[capacity];
+		finalGrades = new byte[capacity];
+		lastNames = new DictionaryColumn(capacity);
+		firstNames = new DictionaryColumn(capacity);
+	}
+
+	@Override
+	public void add(StudentRecord record) {
+		if (size == jmbags.length) {
+			int capacity = Math.max(16, size * 2);
+			jmbags = Arrays.copyOf(jmbags, capacity);
+			finalGrades = Arrays.copyOf(finalGrades, capacity);
+		}
+
+		jmbags[size] = record.getJmbag();
+		finalGrades[size] = (byte) record.getFinalGrade();
+		lastNames.add(record.getLastName());
+		firstNames.add(record.getFirstName());
+		size++;
+	}
+
+	@Override
+	public void complete() {
+		jmbags = Arrays.copyOf(jmbags, size);
+		finalGrades = Arrays.copyOf(finalGrades, size);
+		lastNames.complete();
+		firstNames.complete();
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public StudentRecord get(int row) {
+		return new StudentRecord(
+				jmbags[row], lastNames.get(row), firstNames.get(row), finalGrades[row]
+		);
+	}
+
+	@Override
+	public void retain(ConditionalExpression expression, BitSet rows) {
+		IFieldValueGetter getter = expression.getGetter();
+
+		if (getter == FieldValueGetters.LAST_NAME) {
+			lastNames.retain(expression, rows);
+		} else if (getter == FieldValueGetters.FIRST_NAME) {
+			firstNames.retain(expression, rows);
+		} else if (getter == FieldValueGetters.FINAL_GRADE) {
+			retainGrades(expression.getBoundOperator(), rows);
+		} else if (getter == FieldValueGetters.JMBAG) {
+			IBoundComparisonOperator operator = expression.getBoundOperator();
+
+			for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+				if (!operator.satisfied(jmbags[row])) {
+					rows.clear(row);
+				}
+			}
+		} else {
+			// attributes other than the stored ones need whole records
+			for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+				if (!expression.isSatisfiedBy(get(row))) {
+					rows.clear(row);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Helper method which clears the bit of every row whose final
+	 * grade doesn't satisfy the specified operator.
+	 *
+	 * @param operator comparison logic with its value bound
+	 * @param rows bitmap of row numbers
+	 */
+	private void retainGrades(IBoundComparisonOperator operator, BitSet rows) {
+		boolean[] satisfied = new boolean[6];
+		for (int grade = 1; grade <= 5; grade++) {
+			satisfied[grade] = operator.satisfied(Integer.toString(grade));
+		}
+
+		for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+			if (!satisfied[finalGrades[row]]) {
+				rows.clear(row);
+			}
+		}
+	}
+
+	/**
+	 * Represents a column of dictionary-encoded String values.
+	 *
+	 * @author Vice Ivušić
+	 *
+	 */
+	private static class DictionaryColumn {
+
+		/** distinct values of the column in ascending order **/
+		private String[] dictionary;
+		/** positions of the values of each row in the dictionary **/
+		private int[] codes;
+
+		/** amount of stored values **/
+		private int size;
+		/** codes of the distinct values while the column is being filled **/
+		private Map<String, Integer> provisionalCodes = new HashMap<>();
+
+		/**
+		 * Creates an empty DictionaryColumn with room for the specified
+		 * amount of values.
+		 *
+		 * @param capacity amount of values the column will hold
+		 */
+		DictionaryColumn(int capacity) {
+			codes = new int[capacity];
+		}
+
+		/**
+		 * Appends the specified value to the column. Until the column is
+		 * completed, codes are assigned in the order the values first appear.
+		 *
+		 * @param value value of the next row
+		 */
+		void add(String value) {
+			if (size == codes.length) {
+				codes = Arrays.copyOf(codes, Math.max(16, size * 2));
+			}
+
+			Integer code = provisionalCodes.putIfAbsent(value, provisionalCodes.size());
+			codes[size++] = code == null ? provisionalCodes.size() - 1 : code;
+		}
+
+		/**
+		 * Sorts the dictionary and replaces the provisional codes of the
+		 * rows with the positions of their values in it.
+		 */
+		void complete() {
+			dictionary = new String[provisionalCodes.size()];
+			for (Map.Entry<String, Integer> entry : provisionalCodes.entrySet()) {
+				dictionary[entry.getValue()] = entry.getKey();
+			}
+			provisionalCodes = null;
+
+			Integer[] order = new Integer[dictionary.length];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, (code1, code2) -> dictionary[code1].compareTo(dictionary[code2]));
+
+			// copied, so the values lie in memory in the order they are evaluated in
+			String[] sorted = new String[dictionary.length];
+			int[] recode = new int[dictionary.length];
+			for (int code = 0; code < order.length; code++) {
+				sorted[code] = new String(dictionary[order[code]].toCharArray());
+				recode[order[code]] = code;
+			}
+			dictionary = sorted;
+
+			codes = Arrays.copyOf(codes, size);
+			for (int row = 0; row < size; row++) {
+				codes[row] = recode[codes[row]];
+			}
+		}
+
+		/**
+		 * Returns the value of the specified row.
+		 *
+		 * @param row row number
+		 * @return value of the row
+		 */
+		String get(int row) {
+			return dictionary[codes[row]];
+		}
+
+		/**
+		 * Clears the bit of every row whose value doesn't satisfy
+		 * the specified expression.
+		 *
+		 * @param expression expression on this column
+		 * @param rows bitmap of row numbers
+		 */
+		void retain(ConditionalExpression expression, BitSet rows) {
+			int[] range = SortedIndex.rangeOf(
+					dictionary, expression.getOperator(), expression.getValue()
+			);
+
+			if (range != null) {
+				int from = range[0];
+				int to = range[1];
+
+				for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+					int code = codes[row];
+					if (code < from || code >= to) {
+						rows.clear(row);
+					}
+				}
+				return;
+			}
+
+			IBoundComparisonOperator operator = expression.getBoundOperator();
+			boolean[] satisfied = new boolean[dictionary.length];
+			for (int code = 0; code < dictionary.length; code++) {
+				satisfied[code] = operator.satisfied(dictionary[code]);
+			}
+
+			for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+				if (!satisfied[codes[row]]) {
+					rows.clear(row);
+				}
+			}
+		}
+	}
+}
@@ -1,6 +1,5 @@
 package hr.fer.zemris.java.hw04.db;
 
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
@@ -89,24 +88,98 @@ public class ComparisonOperators {
 			
 	/**
 	 * Object whose accept method returns true if the first
-	 * String is a part of the second String. Returns true
-	 * if both of the parameters are null, or false if only
-	 * one of them is.
+	 * String matches the pattern given by the second String,
+	 * in which the wildcard character (*) matches any sequence
+	 * of characters and every other character matches itself.
+	 * Returns true if both of the parameters are null, or false
+	 * if only one of them is.
+	 * 
+	 * <p>The pattern is prepared once it is bound. Patterns with a
+	 * single wildcard, or with one at each end, are matched by
+	 * comparing the beginning, end or contents of the first String,
+	 * while other patterns are compiled into a regular expression.
 	 */
 	public static final IComparisonOperator LIKE = new IComparisonOperator() {
 		
 		@Override
 		public boolean satisfied(String value1, String value2) {
-			if (value1==null && value2==null) return true;	
-			if (value1==null || value2==null) return false;
+			return bind(value2).satisfied(value1);
+		}
+		
+		@Override
+		public IBoundComparisonOperator bind(String value2) {
+			if (value2 == null) {
+				return value1 -> value1 == null;
+			}
 			
-			// the wildcard character is actually .* in regular expressions
-			String regex = value2.replaceAll("\\*", ".*");
-			Pattern pattern = Pattern.compile(regex);
-			Matcher matcher = pattern.matcher(value1);
+			int first = value2.indexOf('*');
+			int last = value2.lastIndexOf('*');
 			
-			return matcher.matches();
+			if (first == -1) {
+				return value1 -> value2.equals(value1);
+			}
+			
+			if (first == last) {
+				String prefix = value2.substring(0, first);
+				String suffix = value2.substring(first + 1);
+				int minLength = prefix.length() + suffix.length();
+				
+				if (suffix.isEmpty()) {
+					return value1 -> value1 != null && value1.startsWith(prefix);
+				}
+				if (prefix.isEmpty()) {
+					return value1 -> value1 != null && value1.endsWith(suffix);
+				}
+				return value1 -> value1 != null && value1.length() >= minLength
+						&& value1.startsWith(prefix) && value1.endsWith(suffix);
+			}
+			
+			if (first == 0 && last == value2.length()-1 && value2.indexOf('*', 1) == last) {
+				String infix = value2.substring(1, last);
+				
+				return value1 -> value1 != null && value1.contains(infix);
+			}
+			
+			Pattern pattern = compileWildcards(value2);
+			return value1 -> value1 != null && pattern.matcher(value1).matches();
 		}
 	};
 	
+	/**
+	 * Returns true if the specified operator is one of the operators
+	 * of this class. Those operators keep no state, and neither do the
+	 * operators they bind, so they may be used by multiple threads at once.
+	 * 
+	 * @param operator operator being checked
+	 * @return true iff the operator is one of the operators of this class
+	 */
+	static boolean isBuiltIn(IComparisonOperator operator) {
+		return operator == LESS || operator == LESS_OR_EQUALS
+				|| operator == GREATER || operator == GREATER_OR_EQUALS
+				|| operator == EQUALS || operator == NOT_EQUALS || operator == LIKE;
+	}
+	
+	/**
+	 * Helper method which compiles a pattern containing wildcard
+	 * characters into a regular expression, in which the wildcards
+	 * match any sequence of characters and everything else is quoted.
+	 * 
+	 * @param wildcardPattern pattern containing wildcards
+	 * @return compiled regular expression
+	 */
+	private static Pattern compileWildcards(String wildcardPattern) {
+		StringBuilder regex = new StringBuilder();
+		String[] parts = wildcardPattern.split("\\*", -1);
+		
+		for (int i = 0; i < parts.length; i++) {
+			if (i > 0) {
+				regex.append(".*");
+			}
+			if (!parts[i].isEmpty()) {
+				regex.append(Pattern.quote(parts[i]));
+			}
+		}
+		
+		return Pattern.compile(regex.toString(), Pattern.DOTALL);
+	}
 }
@@ -8,7 +8,7 @@ package hr.fer.zemris.java.hw04.db;
  * @author Vice Ivušić
  *
  */
-public class ConditionalExpression {
+public class ConditionalExpression implements IQueryExpression {
 
 	/** object containing the function for getting the attribute value **/
 	private IFieldValueGetter getter;
@@ -16,6 +16,8 @@ public class ConditionalExpression {
 	private String value;
 	/** object containing the function with the comparison logic **/
 	private IComparisonOperator operator;
+	/** comparison logic with the comparison value already bound **/
+	private IBoundComparisonOperator boundOperator;
 	
 	/**
 	 * Creates a ConditionalExpression with the specified parameters.
@@ -33,6 +35,7 @@ public class ConditionalExpression {
 		this.getter = getter;
 		this.value = value;
 		this.operator = operator;
+		this.boundOperator = operator.bind(value);
 	}
 
 	/**
@@ -62,6 +65,45 @@ public class ConditionalExpression {
 		return operator;
 	}
 	
+	/**
+	 * Returns the expression's comparison logic with its comparison
+	 * value already bound.
+	 *
+	 * @return IBoundComparisonOperator object
+	 */
+	IBoundComparisonOperator getBoundOperator() {
+		return boundOperator;
+	}
+
+	/**
+	 * Returns true if the attribute value of the specified record
+	 * satisfies this expression. The comparison value is bound to
+	 * the operator once, when the expression is created, so the
+	 * operator doesn't have to prepare it again for every record.
+	 * 
+	 * @param record record being checked
+	 * @return true iff the record satisfies this expression
+	 * @throws IllegalArgumentException if the specified record is null
+	 */
+	@Override
+	public boolean isSatisfiedBy(StudentRecord record) {
+		return boundOperator.satisfied(getter.get(record));
+	}
+	
+	/**
+	 * Returns true if the expression uses one of the getters of
+	 * {@linkplain FieldValueGetters} and one of the operators of
+	 * {@linkplain ComparisonOperators}, which keep no state. Expressions
+	 * using any other getter or operator may be running code which isn't
+	 * thread-safe, so they aren't considered thread-safe.
+	 * 
+	 * @return true iff the expression uses only built-in getters and operators
+	 */
+	@Override
+	public boolean isThreadSafe() {
+		return FieldValueGetters.isBuiltIn(getter) && ComparisonOperators.isBuiltIn(operator);
+	}
+	
 	@Override
 	public String toString() {
 		return String.format("%s %s %s", getter, value, operator);
@@ -42,4 +42,28 @@ public class FieldValueGetters {
 		}
 		return record.getJmbag();
 	};
+	
+	/**
+	 * Object whose get method returns the specified
+	 * record's final grade attribute.
+	 */
+	public static final IFieldValueGetter FINAL_GRADE = record -> {
+		if (record == null) {
+			throw new IllegalArgumentException("Cannot get final grade from null!");
+		}
+		return Integer.toString(record.getFinalGrade());
+	};
+	
+	/**
+	 * Returns true if the specified getter is one of the getters
+	 * of this class. Those getters keep no state, so they may be
+	 * used by multiple threads at once.
+	 * 
+	 * @param getter getter being checked
+	 * @return true iff the getter is one of the getters of this class
+	 */
+	static boolean isBuiltIn(IFieldValueGetter getter) {
+		return getter == FIRST_NAME || getter == LAST_NAME
+				|| getter == JMBAG || getter == FINAL_GRADE;
+	}
 }
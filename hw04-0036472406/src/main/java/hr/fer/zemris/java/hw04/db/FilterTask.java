@@ -0,0 +1,77 @@
+package hr.fer.zemris.java.hw04.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Represents a task which checks a range of the records of a
+ * student database against a filter, and returns those which
+ * satisfy it in the order of their row numbers. Ranges larger
+ * than a given size are split in halves which are checked in
+ * parallel, and whose results are then concatenated.
+ * 
+ * @author Vice Ivušić
+ *
+ */
+class FilterTask extends RecursiveTask<List<StudentRecord>> {
+
+	/** serial version UID **/
+	private static final long serialVersionUID = 1L;
+	
+	/** records being checked **/
+	private RecordStore records;
+	/** filter the records are checked against **/
+	private IFilter filter;
+	/** row number of the first record in the range **/
+	private int from;
+	/** row number after the last record in the range **/
+	private int to;
+	/** largest range which is checked without being split **/
+	private int chunkSize;
+	
+	/**
+	 * Creates a FilterTask with the specified parameters.
+	 * 
+	 * @param records records being checked
+	 * @param filter filter the records are checked against; has to be thread-safe
+	 * @param from row number of the first record in the range
+	 * @param to row number after the last record in the range
+	 * @param chunkSize largest range which is checked without being split
+	 */
+	FilterTask(RecordStore records, IFilter filter, int from, int to, int chunkSize) {
+		this.records = records;
+		this.filter = filter;
+		this.from = from;
+		this.to = to;
+		this.chunkSize = chunkSize;
+	}
+	
+	@Override
+	protected List<StudentRecord> compute() {
+		if (to - from <= chunkSize) {
+			List<StudentRecord> result = new ArrayList<>();
+			
+			for (int row = from; row < to; row++) {
+				StudentRecord record = records.get(row);
+				
+				if (filter.accepts(record)) {
+					result.add(record);
+				}
+			}
+			
+			return result;
+		}
+		
+		int middle = (from + to) >>> 1;
+		FilterTask left = new FilterTask(records, filter, from, middle, chunkSize);
+		FilterTask right = new FilterTask(records, filter, middle, to, chunkSize);
+		
+		left.fork();
+		List<StudentRecord> rightResult = right.compute();
+		List<StudentRecord> leftResult = left.join();
+		
+		leftResult.addAll(rightResult);
+		return leftResult;
+	}
+}
@@ -0,0 +1,22 @@
+package hr.fer.zemris.java.hw04.db;
+
+/**
+ * Represents a comparison operator whose second string has already
+ * been bound, i.e. a boolean valued function of a single string.
+ * Binding lets an operator prepare the value it compares against
+ * only once, rather than every time it is applied.
+ * 
+ * @author Vice Ivušić
+ *
+ */
+public interface IBoundComparisonOperator {
+
+	/**
+	 * Compares the specified string against the bound string
+	 * and returns a boolean value.
+	 * 
+	 * @param value string being compared
+	 * @return boolean value dependent on the comparison
+	 */
+	boolean satisfied(String value);
+}
@@ -16,4 +16,17 @@ public interface IComparisonOperator {
 	 * @return boolean value dependent on the comparison
 	 */
 	boolean satisfied(String value1, String value2);
+	
+	/**
+	 * Binds the specified string as the second string of this operator.
+	 * The returned operator compares its argument as the first string;
+	 * operators which need to prepare the second string, such as by
+	 * compiling a pattern, should do so here, once.
+	 * 
+	 * @param value2 second string
+	 * @return operator comparing strings against the bound string
+	 */
+	default IBoundComparisonOperator bind(String value2) {
+		return value1 -> satisfied(value1, value2);
+	}
 }
@@ -17,4 +17,18 @@ public interface IFilter {
 	 * @return true if the object satisfies the defined criteria
 	 */
 	boolean accepts(StudentRecord record);
+	
+	/**
+	 * Returns true if this filter may be used by multiple threads
+	 * at once, in which case {@linkplain StudentDatabase#filter(IFilter)}
+	 * may check the records of a large database in parallel.
+	 * 
+	 * <p>By default, a filter is assumed not to be thread-safe; filters
+	 * which keep no state between calls should override this method.
+	 * 
+	 * @return true iff this filter is thread-safe
+	 */
+	default boolean isThreadSafe() {
+		return false;
+	}
 }
@@ -0,0 +1,44 @@
+package hr.fer.zemris.java.hw04.db;
+
+/**
+ * Represents an expression of a query which a student record
+ * either satisfies or doesn't. Expressions are either single
+ * {@linkplain ConditionalExpression conditional expressions}, or
+ * {@linkplain LogicalExpression logical expressions} combining
+ * other expressions.
+ * 
+ * <p>Every query expression is a filter accepting the records which
+ * satisfy it. Expressions are never modified once created, but they
+ * are thread-safe filters only if the code they run is, so they are
+ * assumed not to be unless they override {@linkplain #isThreadSafe()}.
+ * 
+ * @author Vice Ivušić
+ *
+ */
+public interface IQueryExpression extends IFilter {
+
+	/**
+	 * Returns true if the specified record satisfies this expression.
+	 * 
+	 * @param record record being checked
+	 * @return true iff the record satisfies this expression
+	 * @throws IllegalArgumentException if the specified record is null
+	 */
+	boolean isSatisfiedBy(StudentRecord record);
+	
+	/**
+	 * Returns true if the specified record satisfies this expression.
+	 * 
+	 * @param record record being checked
+	 * @return true iff the record satisfies this expression
+	 * @throws IllegalArgumentException if the specified record is null
+	 */
+	@Override
+	default boolean accepts(StudentRecord record) {
+		if (record == null) {
+			throw new IllegalArgumentException("Student record cannot be null!");
+		}
+		
+		return isSatisfiedBy(record);
+	}
+}
@@ -0,0 +1,123 @@
+package hr.fer.zemris.java.hw04.db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents an expression which combines other expressions, its
+ * operands, using a logical operator. An expression using
+ * {@linkplain LogicalOperator#NOT} has exactly one operand, while
+ * the others may have any amount of them. An expression using
+ * {@linkplain LogicalOperator#AND} without operands is satisfied
+ * by every record, and one using {@linkplain LogicalOperator#OR}
+ * without operands by none.
+ * 
+ * <p>Operands are checked in the order they are given, and checking
+ * stops as soon as the result is known.
+ * 
+ * @author Vice Ivušić
+ *
+ */
+public class LogicalExpression implements IQueryExpression {
+
+	/** operator combining the operands **/
+	private LogicalOperator operator;
+	/** expressions being combined **/
+	private List<IQueryExpression> operands;
+	
+	/**
+	 * Creates a LogicalExpression combining the specified operands
+	 * using the specified operator.
+	 * 
+	 * @param operator operator combining the operands
+	 * @param operands expressions being combined
+	 * @throws IllegalArgumentException if any of the arguments is null,
+	 * 		   if any of the operands is null, or if the operator is
+	 * 		   NOT and there isn't exactly one operand
+	 */
+	public LogicalExpression(LogicalOperator operator, List<? extends IQueryExpression> operands) {
+		if (operator == null || operands == null || operands.contains(null)) {
+			throw new IllegalArgumentException("Operator and operands cannot be null!");
+		}
+		if (operator == LogicalOperator.NOT && operands.size() != 1) {
+			throw new IllegalArgumentException("Operator NOT takes exactly one operand!");
+		}
+		
+		this.operator = operator;
+		this.operands = new ArrayList<>(operands);
+	}
+	
+	/**
+	 * Returns the operator combining the operands.
+	 * 
+	 * @return logical operator
+	 */
+	public LogicalOperator getOperator() {
+		return operator;
+	}
+	
+	/**
+	 * Returns the expressions being combined.
+	 * 
+	 * @return unmodifiable list of operands
+	 */
+	public List<IQueryExpression> getOperands() {
+		return Collections.unmodifiableList(operands);
+	}
+
+	@Override
+	public boolean isSatisfiedBy(StudentRecord record) {
+		switch (operator) {
+		case AND:
+			for (IQueryExpression operand : operands) {
+				if (!operand.isSatisfiedBy(record)) {
+					return false;
+				}
+			}
+			return true;
+		case OR:
+			for (IQueryExpression operand : operands) {
+				if (operand.isSatisfiedBy(record)) {
+					return true;
+				}
+			}
+			return false;
+		default:
+			return !operands.get(0).isSatisfiedBy(record);
+		}
+	}
+	
+	/**
+	 * Returns true if each of the operands is thread-safe.
+	 * 
+	 * @return true iff every operand is thread-safe
+	 */
+	@Override
+	public boolean isThreadSafe() {
+		for (IQueryExpression operand : operands) {
+			if (!operand.isThreadSafe()) {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
+	@Override
+	public String toString() {
+		if (operator == LogicalOperator.NOT) {
+			return String.format("not (%s)", operands.get(0));
+		}
+		
+		StringBuilder sb = new StringBuilder();
+		for (IQueryExpression operand : operands) {
+			if (sb.length() != 0) {
+				sb.append(' ').append(operator.toString().toLowerCase()).append(' ');
+			}
+			sb.append('(').append(operand).append(')');
+		}
+		
+		return sb.toString();
+	}
+}
@@ -0,0 +1,17 @@
+package hr.fer.zemris.java.hw04.db;
+
+/**
+ * Enumeration of the operators combining the expressions
+ * of a {@linkplain LogicalExpression}.
+ * 
+ * @author Vice Ivušić
+ *
+ */
+public enum LogicalOperator {
+	/** satisfied if every operand is satisfied **/
+	AND,
+	/** satisfied if at least one operand is satisfied **/
+	OR,
+	/** satisfied if its single operand isn't satisfied **/
+	NOT
+}
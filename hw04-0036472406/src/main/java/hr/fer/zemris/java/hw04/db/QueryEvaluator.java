@@ -0,0 +1,326 @@
+package hr.fer.zemris.java.hw04.db;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import hr.fer.zemris.java.hw04.collections.SimpleHashtable;
+
+/**
+ * Evaluates query expressions against the records of a student
+ * database using bitmaps of row numbers.
+ *
+ * <p>Each expression is evaluated against a bitmap of candidate rows,
+ * and results in the bitmap of those candidates which satisfy it:
+ * <ul>
+ * <li>a conditional expression is answered by the JMBAG index, a bitmap
+ * index or a sorted index on its attribute if there is one and the
+ * candidates aren't already fewer than the records it would find, and
+ * by checking every candidate otherwise;</li>
+ * <li>the operands of an AND are evaluated from the most selective one
+ * to the least, each against the rows satisfying the previous ones;</li>
+ * <li>the operands of an OR are evaluated from the least selective one
+ * to the most, each against the candidates not yet satisfying any of
+ * the previous ones, and their results are combined;</li>
+ * <li>in both cases, conditional expressions answered by an index are
+ * evaluated before all other operands;</li>
+ * <li>a NOT removes the rows satisfying its operand from the candidates.</li>
+ * </ul>
+ *
+ * <p>The selectivity of an expression is estimated as the fraction of
+ * records satisfying it. It is exact for expressions answered by an index;
+ * for any other conditional expression it is a guess depending only on
+ * its operator.
+ *
+ * @author Vice Ivušić
+ *
+ */
+class QueryEvaluator {
+
+	/** records being queried **/
+	private RecordStore records;
+	/** row numbers of the records, mapped to their JMBAGs **/
+	private SimpleHashtable<String, Integer> rowsByJmbag;
+	/** sorted indexes, mapped to the getters of their attributes **/
+	private SimpleHashtable<IFieldValueGetter, SortedIndex> sortedIndexes;
+	/** bitmap indexes, mapped to the getters of their attributes **/
+	private SimpleHashtable<IFieldValueGetter, BitmapIndex> bitmapIndexes;
+
+	/**
+	 * Creates a QueryEvaluator over the specified records and indexes.
+	 *
+	 * @param records records being queried
+	 * @param rowsByJmbag row numbers of the records, mapped to their JMBAGs
+	 * @param sortedIndexes sorted indexes, mapped to the getters of their attributes
+	 * @param bitmapIndexes bitmap indexes, mapped to the getters of their attributes
+	 */
+	QueryEvaluator(RecordStore records, SimpleHashtable<String, Integer> rowsByJmbag,
+			SimpleHashtable<IFieldValueGetter, SortedIndex> sortedIndexes,
+			SimpleHashtable<IFieldValueGetter, BitmapIndex> bitmapIndexes) {
+		this.records = records;
+		this.rowsByJmbag = rowsByJmbag;
+		this.sortedIndexes = sortedIndexes;
+		this.bitmapIndexes = bitmapIndexes;
+	}
+
+	/**
+	 * Returns the records satisfying the specified expression, in the
+	 * order of their row numbers.
+	 *
+	 * @param expression query expression
+	 * @return records satisfying the expression
+	 */
+	List<StudentRecord> evaluate(IQueryExpression expression) {
+		BitSet candidates = new BitSet(records.size());
+		candidates.set(0, records.size());
+
+		BitSet rows = evaluate(expression, candidates);
+
+		List<StudentRecord> result = new ArrayList<>(rows.cardinality());
+		for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+			result.add(records.get(row));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Helper method which returns the bitmap of the specified candidates
+	 * which satisfy the specified expression. The candidates aren't modified.
+	 *
+	 * @param expression query expression
+	 * @param candidates bitmap of the rows being checked
+	 * @return bitmap of the candidates satisfying the expression
+	 */
+	private BitSet evaluate(IQueryExpression expression, BitSet candidates) {
+		if (!(expression instanceof LogicalExpression)) {
+			return evaluateLeaf(expression, candidates);
+		}
+
+		LogicalExpression logical = (LogicalExpression) expression;
+		List<IQueryExpression> operands = logical.getOperands();
+
+		if (logical.getOperator() == LogicalOperator.NOT) {
+			BitSet rows = (BitSet) candidates.clone();
+			rows.andNot(evaluate(operands.get(0), candidates));
+
+			return rows;
+		}
+
+		if (logical.getOperator() == LogicalOperator.AND) {
+			BitSet rows = candidates;
+			for (IQueryExpression operand : inEvaluationOrder(operands, true)) {
+				if (rows.isEmpty()) {
+					break;
+				}
+				rows = evaluate(operand, rows);
+			}
+
+			return rows == candidates ? (BitSet) candidates.clone() : rows;
+		}
+
+		BitSet rows = new BitSet();
+		BitSet remaining = (BitSet) candidates.clone();
+		for (IQueryExpression operand : inEvaluationOrder(operands, false)) {
+			if (remaining.isEmpty()) {
+				break;
+			}
+			BitSet satisfied = evaluate(operand, remaining);
+			rows.or(satisfied);
+			remaining.andNot(satisfied);
+		}
+
+		return rows;
+	}
+
+	/**
+	 * Helper method which returns the bitmap of the specified candidates
+	 * which satisfy the specified expression, which isn't a logical one.
+	 *
+	 * @param expression query expression
+	 * @param candidates bitmap of the rows being checked
+	 * @return bitmap of the candidates satisfying the expression
+	 */
+	private BitSet evaluateLeaf(IQueryExpression expression, BitSet candidates) {
+		if (!(expression instanceof ConditionalExpression)) {
+			BitSet rows = (BitSet) candidates.clone();
+			for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+				if (!expression.isSatisfiedBy(records.get(row))) {
+					rows.clear(row);
+				}
+			}
+			return rows;
+		}
+
+		ConditionalExpression expr = (ConditionalExpression) expression;
+		int indexed = indexedCount(expr);
+
+		if (indexed >= 0 && indexed <= candidates.cardinality()) {
+			BitSet rows = indexedRows(expr);
+			rows.and(candidates);
+			return rows;
+		}
+
+		BitSet rows = (BitSet) candidates.clone();
+		records.retain(expr, rows);
+
+		return rows;
+	}
+
+	/**
+	 * Helper method which returns the bitmap of every row satisfying the
+	 * specified expression, found through an index. Must be called only
+	 * if {@linkplain #indexedCount(ConditionalExpression)} isn't negative.
+	 *
+	 * @param expr conditional expression answered by an index
+	 * @return bitmap of the rows satisfying the expression
+	 */
+	private BitSet indexedRows(ConditionalExpression expr) {
+		BitSet rows = new BitSet();
+
+		if (isJmbagLookup(expr)) {
+			Integer row = rowsByJmbag.get(expr.getValue());
+			if (row != null) {
+				rows.set(row);
+			}
+			return rows;
+		}
+
+		BitmapIndex bitmapIndex = bitmapIndexes.get(expr.getGetter());
+		if (bitmapIndex != null) {
+			return bitmapIndex.rowsSatisfying(expr);
+		}
+
+		SortedIndex sortedIndex = sortedIndexes.get(expr.getGetter());
+		int[] range = sortedIndex.rangeOf(expr.getOperator(), expr.getValue());
+		for (int position = range[0]; position < range[1]; position++) {
+			rows.set(sortedIndex.rowAt(position));
+		}
+
+		return rows;
+	}
+
+	/**
+	 * Helper method which returns the amount of records satisfying the
+	 * specified expression if it can be answered by an index, or -1 if
+	 * it can't.
+	 *
+	 * @param expr conditional expression
+	 * @return amount of records satisfying the expression, or -1
+	 */
+	private int indexedCount(ConditionalExpression expr) {
+		if (isJmbagLookup(expr)) {
+			return rowsByJmbag.containsKey(expr.getValue()) ? 1 : 0;
+		}
+
+		BitmapIndex bitmapIndex = bitmapIndexes.get(expr.getGetter());
+		if (bitmapIndex != null) {
+			return bitmapIndex.countSatisfying(expr);
+		}
+
+		SortedIndex sortedIndex = sortedIndexes.get(expr.getGetter());
+		if (sortedIndex != null) {
+			int[] range = sortedIndex.rangeOf(expr.getOperator(), expr.getValue());
+			if (range != null) {
+				return range[1] - range[0];
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Helper method which returns the specified expressions in the order
+	 * they should be evaluated in. Conditional expressions answered by an
+	 * index come first, since they don't check any records. Within each
+	 * group, expressions are ordered from the most selective one to the
+	 * least, or the other way around if specified.
+	 *
+	 * @param expressions query expressions
+	 * @param mostSelectiveFirst true if the most selective expressions should come first
+	 * @return expressions in the order of their evaluation
+	 */
+	private List<IQueryExpression> inEvaluationOrder(List<IQueryExpression> expressions,
+			boolean mostSelectiveFirst) {
+		Map<IQueryExpression, Double> keys = new IdentityHashMap<>();
+		for (IQueryExpression expression : expressions) {
+			double selectivity = selectivity(expression);
+			boolean indexed = expression instanceof ConditionalExpression
+					&& indexedCount((ConditionalExpression) expression) >= 0;
+
+			// indexed expressions sort before all others, as their keys are smaller by 2
+			keys.put(expression, (indexed ? 0 : 2) + (mostSelectiveFirst ? selectivity : 1 - selectivity));
+		}
+
+		List<IQueryExpression> ordered = new ArrayList<>(expressions);
+		ordered.sort(Comparator.comparingDouble(keys::get));
+
+		return ordered;
+	}
+
+	/**
+	 * Helper method which estimates the fraction of records satisfying
+	 * the specified expression.
+	 *
+	 * @param expression query expression
+	 * @return estimated fraction of records satisfying the expression
+	 */
+	private double selectivity(IQueryExpression expression) {
+		if (expression instanceof LogicalExpression) {
+			LogicalExpression logical = (LogicalExpression) expression;
+
+			if (logical.getOperator() == LogicalOperator.NOT) {
+				return 1 - selectivity(logical.getOperands().get(0));
+			}
+
+			double none = 1;
+			double all = 1;
+			for (IQueryExpression operand : logical.getOperands()) {
+				double operandSelectivity = selectivity(operand);
+				all *= operandSelectivity;
+				none *= 1 - operandSelectivity;
+			}
+
+			return logical.getOperator() == LogicalOperator.AND ? all : 1 - none;
+		}
+
+		if (!(expression instanceof ConditionalExpression)) {
+			return 1;
+		}
+
+		ConditionalExpression expr = (ConditionalExpression) expression;
+		int indexed = indexedCount(expr);
+		if (indexed >= 0) {
+			return records.size() == 0 ? 0 : (double) indexed / records.size();
+		}
+
+		IComparisonOperator operator = expr.getOperator();
+		if (operator == ComparisonOperators.EQUALS
+				|| operator == ComparisonOperators.LIKE && expr.getValue().indexOf('*') == -1) {
+			return 0.01;
+		}
+		if (operator == ComparisonOperators.NOT_EQUALS) {
+			return 0.99;
+		}
+		if (operator == ComparisonOperators.LIKE) {
+			return 0.1;
+		}
+
+		return 0.33;
+	}
+
+	/**
+	 * Helper method which returns true if the specified expression
+	 * compares the JMBAG for equality.
+	 *
+	 * @param expr conditional expression
+	 * @return true iff the expression is a JMBAG lookup
+	 */
+	private static boolean isJmbagLookup(ConditionalExpression expr) {
+		return expr.getGetter() == FieldValueGetters.JMBAG
+				&& expr.getOperator() == ComparisonOperators.EQUALS;
+	}
+}
@@ -12,8 +12,8 @@ import java.util.List;
  */
 public class QueryFilter implements IFilter {
 
-	/** list of expressions to check a StudentRecord against **/
-	private List<ConditionalExpression> expressions;
+	/** conjunction of the expressions to check a StudentRecord against **/
+	private IQueryExpression expression;
 	
 	/**
 	 * Creates a QueryFilter with the specified list of expressions.
@@ -25,7 +25,7 @@ public class QueryFilter implements IFilter {
 			throw new IllegalArgumentException("List of expressions cannot be null!");
 		}
 		
-		this.expressions = expressions;
+		this.expression = new LogicalExpression(LogicalOperator.AND, expressions);
 	}
 	
 	/**
@@ -41,17 +41,19 @@ public class QueryFilter implements IFilter {
 			throw new IllegalArgumentException("Student record cannot be null!");
 		}
 		
-		for (ConditionalExpression expr : expressions) {
-			String var = expr.getValue();
-			IComparisonOperator oper = expr.getOperator();
-			IFieldValueGetter getter = expr.getGetter();
-			
-			if (!oper.satisfied(getter.get(record), var)) {
-				return false;
-			}
-		}
-		
-		return true;
+		return expression.isSatisfiedBy(record);
+	}
+	
+	/**
+	 * Returns true if each of the expressions is thread-safe, i.e.
+	 * if each of them uses only the built-in getters and operators.
+	 * A QueryFilter itself keeps no state between calls.
+	 * 
+	 * @return true iff every expression is thread-safe
+	 */
+	@Override
+	public boolean isThreadSafe() {
+		return expression.isThreadSafe();
 	}
 
 }
@@ -0,0 +1,174 @@
+package hr.fer.zemris.java.hw04.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Represents the way a student database answers a query made of
+ * conditional expressions which all have to be satisfied. Plans are
+ * created by {@linkplain StudentDatabase#plan(List)}.
+ *
+ * <p>A plan either scans all records, or uses an index to find the
+ * records satisfying one of the expressions, called the indexed
+ * expression. In both cases, the records found are then checked
+ * against the rest of the expressions, called the residual expressions.
+ *
+ * @author Vice Ivušić
+ *
+ */
+public class QueryPlan {
+
+	/** records of the database the plan belongs to **/
+	private RecordStore records;
+	/** expression answered by an index, or null for a full scan **/
+	private ConditionalExpression indexedExpression;
+	/** expressions checked against the records found **/
+	private List<ConditionalExpression> residualExpressions;
+	/** record found through the JMBAG index; used only for direct lookups **/
+	private StudentRecord directRecord;
+	/** sorted index used for a range scan, or null **/
+	private SortedIndex index;
+	/** first position of the range scan **/
+	private int from;
+	/** position after the last one of the range scan **/
+	private int to;
+
+	/**
+	 * Creates a QueryPlan which scans all of the specified records.
+	 *
+	 * @param records records of the database
+	 * @param residualExpressions expressions the records are checked against
+	 */
+	QueryPlan(RecordStore records, List<ConditionalExpression> residualExpressions) {
+		this.records = records;
+		this.residualExpressions = residualExpressions;
+		this.to = records.size();
+	}
+
+	/**
+	 * Creates a QueryPlan which scans the specified range of a sorted index.
+	 *
+	 * @param records records of the database
+	 * @param indexedExpression expression answered by the index
+	 * @param residualExpressions expressions the records found are checked against
+	 * @param index sorted index being scanned
+	 * @param range range of positions being scanned, as {from, to}
+	 */
+	QueryPlan(RecordStore records, ConditionalExpression indexedExpression,
+			List<ConditionalExpression> residualExpressions, SortedIndex index, int[] range) {
+		this(records, residualExpressions);
+		this.indexedExpression = indexedExpression;
+		this.index = index;
+		this.from = range[0];
+		this.to = range[1];
+	}
+
+	/**
+	 * Creates a QueryPlan which looks up a single record by its JMBAG.
+	 *
+	 * @param records records of the database
+	 * @param indexedExpression expression answered by the JMBAG index
+	 * @param residualExpressions expressions the record found is checked against
+	 * @param directRecord record found through the JMBAG index, or null
+	 */
+	QueryPlan(RecordStore records, ConditionalExpression indexedExpression,
+			List<ConditionalExpression> residualExpressions, StudentRecord directRecord) {
+		this(records, residualExpressions);
+		this.indexedExpression = indexedExpression;
+		this.directRecord = directRecord;
+		this.from = 0;
+		this.to = directRecord == null ? 0 : 1;
+	}
+
+	/**
+	 * Returns the expression answered by an index, or null
+	 * if the plan scans all records.
+	 *
+	 * @return indexed expression, or null
+	 */
+	public ConditionalExpression getIndexedExpression() {
+		return indexedExpression;
+	}
+
+	/**
+	 * Returns the expressions the records found are checked against.
+	 *
+	 * @return residual expressions
+	 */
+	public List<ConditionalExpression> getResidualExpressions() {
+		return Collections.unmodifiableList(residualExpressions);
+	}
+
+	/**
+	 * Returns the amount of records the plan checks against the
+	 * residual expressions, which is an upper bound on the amount
+	 * of records it returns.
+	 *
+	 * @return amount of candidate records
+	 */
+	public int getCandidateCount() {
+		return to - from;
+	}
+
+	/**
+	 * Returns true if the plan uses an index rather than scanning
+	 * all records.
+	 *
+	 * @return true iff the plan uses an index
+	 */
+	public boolean usesIndex() {
+		return indexedExpression != null;
+	}
+
+	/**
+	 * Executes the plan and returns the records satisfying every
+	 * expression, in the same order as they are in the database.
+	 *
+	 * @return records satisfying the query
+	 */
+	public List<StudentRecord> execute() {
+		List<StudentRecord> result = new ArrayList<>();
+
+		if (indexedExpression == null) {
+			// each expression narrows the rows left by the previous ones
+			BitSet rows = new BitSet(to);
+			rows.set(0, to);
+			for (ConditionalExpression expr : residualExpressions) {
+				records.retain(expr, rows);
+			}
+
+			for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+				result.add(records.get(row));
+			}
+			return result;
+		}
+
+		QueryFilter residual = new QueryFilter(residualExpressions);
+
+		if (index == null) {
+			if (directRecord != null && residual.accepts(directRecord)) {
+				result.add(directRecord);
+			}
+			return result;
+		}
+
+		// the index holds the range in value order; rows restore the database order
+		int[] rows = new int[to - from];
+		for (int i = from; i < to; i++) {
+			rows[i - from] = index.rowAt(i);
+		}
+		Arrays.sort(rows);
+
+		for (int row : rows) {
+			StudentRecord record = records.get(row);
+			if (residual.accepts(record)) {
+				result.add(record);
+			}
+		}
+
+		return result;
+	}
+}
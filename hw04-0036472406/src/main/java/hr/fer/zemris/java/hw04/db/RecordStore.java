@@ -0,0 +1,54 @@
+package hr.fer.zemris.java.hw04.db;
+
+import java.util.BitSet;
+
+/**
+ * Represents the storage of the records of a student database.
+ * Records are identified by their row numbers, which go from zero
+ * up to the amount of stored records, in the order the records
+ * were loaded in.
+ * 
+ * @author Vice Ivušić
+ *
+ */
+interface RecordStore {
+
+	/**
+	 * Appends the specified record, giving it the next row number.
+	 * 
+	 * @param record record to append
+	 */
+	void add(StudentRecord record);
+	
+	/**
+	 * Finishes building the store once all of its records have been
+	 * added. No records may be added afterwards.
+	 */
+	void complete();
+	
+
+	/**
+	 * Returns the amount of stored records.
+	 * 
+	 * @return amount of records
+	 */
+	int size();
+	
+	/**
+	 * Returns the record with the specified row number.
+	 * 
+	 * @param row row number of the record
+	 * @return record with the specified row number
+	 */
+	StudentRecord get(int row);
+	
+	/**
+	 * Clears the bit of every row set in the specified bitmap whose
+	 * record doesn't satisfy the specified expression. Rows whose
+	 * bits are clear aren't checked.
+	 * 
+	 * @param expression expression the records are checked against
+	 * @param rows bitmap of row numbers
+	 */
+	void retain(ConditionalExpression expression, BitSet rows);
+}
@@ -0,0 +1,56 @@
+package hr.fer.zemris.java.hw04.db;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * Implements the RecordStore interface by keeping each record
+ * as a StudentRecord object.
+ * 
+ * @author Vice Ivušić
+ *
+ */
+class RowStore implements RecordStore {
+
+	/** stored records, in the order of their row numbers **/
+	private ArrayList<StudentRecord> records;
+	
+	/**
+	 * Creates an empty RowStore with room for the specified
+	 * amount of records.
+	 * 
+	 * @param capacity amount of records the store will hold
+	 */
+	RowStore(int capacity) {
+		records = new ArrayList<>(capacity);
+	}
+	
+	@Override
+	public void add(StudentRecord record) {
+		records.add(record);
+	}
+	
+	@Override
+	public void complete() {
+		records.trimToSize();
+	}
+	
+	@Override
+	public int size() {
+		return records.size();
+	}
+
+	@Override
+	public StudentRecord get(int row) {
+		return records.get(row);
+	}
+
+	@Override
+	public void retain(ConditionalExpression expression, BitSet rows) {
+		for (int row = rows.nextSetBit(0); row >= 0; row = rows.nextSetBit(row + 1)) {
+			if (!expression.isSatisfiedBy(records.get(row))) {
+				rows.clear(row);
+			}
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package hr.fer.zemris.java.hw04.db;
+
+import java.util.Arrays;
+
+/**
+ * Represents a sorted secondary index over a single attribute of
+ * the records in a student database. The index keeps the positions
+ * of the records (their row numbers) ordered by the attribute value,
+ * so every record whose value falls into a given range occupies
+ * a contiguous run of the index, which is found by binary search.
+ *
+ * <p>Values are ordered the same way the comparison operators compare
+ * them, i.e. by <code>String.compareTo</code>.
+ *
+ * @author Vice Ivušić
+ *
+ */
+class SortedIndex {
+
+	/** attribute values in ascending order **/
+	private String[] keys;
+	/** row numbers of the records, in the same order as their values **/
+	private int[] rows;
+
+	/**
+	 * Creates a SortedIndex over the attribute returned by the specified
+	 * getter for each of the specified records.
+	 *
+	 * @param records records to be indexed
+	 * @param getter object for getting the indexed attribute value
+	 */
+	SortedIndex(RecordStore records, IFieldValueGetter getter) {
+		int size = records.size();
+		String[] values = new String[size];
+		Integer[] order = new Integer[size];
+
+		for (int i = 0; i < size; i++) {
+			values[i] = getter.get(records.get(i));
+			order[i] = i;
+		}
+
+		// stable, so records with equal values stay in their original order
+		Arrays.sort(order, (row1, row2) -> values[row1].compareTo(values[row2]));
+
+		keys = new String[size];
+		rows = new int[size];
+		for (int i = 0; i < size; i++) {
+			rows[i] = order[i];
+			keys[i] = values[rows[i]];
+		}
+	}
+
+	/**
+	 * Returns the range of index positions holding every record which
+	 * satisfies the comparison of its attribute value against the specified
+	 * value, as an array of the first position and the position after the last.
+	 * Returns null if the operator can't be answered by a single range.
+	 *
+	 * <p>Every operator except {@linkplain ComparisonOperators#NOT_EQUALS} can
+	 * be answered, and so can {@linkplain ComparisonOperators#LIKE} if its
+	 * value contains no wildcard, or only a single wildcard at its end.
+	 *
+	 * @param operator comparison operator
+	 * @param value value the attribute is compared against
+	 * @return range of positions as {from, to}, or null
+	 */
+	int[] rangeOf(IComparisonOperator operator, String value) {
+		return rangeOf(keys, operator, value);
+	}
+
+	/**
+	 * Returns the range of positions of the specified array of values in
+	 * ascending order holding every value which satisfies the comparison
+	 * against the specified value, in the same way as
+	 * {@linkplain #rangeOf(IComparisonOperator, String)}.
+	 *
+	 * @param keys values in ascending order
+	 * @param operator comparison operator
+	 * @param value value the values are compared against
+	 * @return range of positions as {from, to}, or null
+	 */
+	static int[] rangeOf(String[] keys, IComparisonOperator operator, String value) {
+		if (operator == ComparisonOperators.EQUALS) {
+			return new int[] {lowerBound(keys, value), upperBound(keys, value)};
+		}
+		if (operator == ComparisonOperators.LESS) {
+			return new int[] {0, lowerBound(keys, value)};
+		}
+		if (operator == ComparisonOperators.LESS_OR_EQUALS) {
+			return new int[] {0, upperBound(keys, value)};
+		}
+		if (operator == ComparisonOperators.GREATER) {
+			return new int[] {upperBound(keys, value), keys.length};
+		}
+		if (operator == ComparisonOperators.GREATER_OR_EQUALS) {
+			return new int[] {lowerBound(keys, value), keys.length};
+		}
+
+		if (operator == ComparisonOperators.LIKE) {
+			int wildcard = value.indexOf('*');
+
+			if (wildcard == -1) {
+				return new int[] {lowerBound(keys, value), upperBound(keys, value)};
+			}
+			if (wildcard == value.length()-1) {
+				String prefix = value.substring(0, wildcard);
+				return new int[] {lowerBound(keys, prefix), prefixEnd(keys, prefix)};
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns the row number of the record at the specified position
+	 * of the index.
+	 *
+	 * @param position position within the index
+	 * @return row number of the record
+	 */
+	int rowAt(int position) {
+		return rows[position];
+	}
+
+	/**
+	 * Helper method which returns the first position whose value
+	 * is greater than or equal to the specified value.
+	 *
+	 * @param keys values in ascending order
+	 * @param value value being searched for
+	 * @return first position with a value not smaller than the specified one
+	 */
+	private static int lowerBound(String[] keys, String value) {
+		int low = 0;
+		int high = keys.length;
+
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+
+			if (keys[mid].compareTo(value) < 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Helper method which returns the first position whose value
+	 * is greater than the specified value.
+	 *
+	 * @param keys values in ascending order
+	 * @param value value being searched for
+	 * @return first position with a value greater than the specified one
+	 */
+	private static int upperBound(String[] keys, String value) {
+		int low = 0;
+		int high = keys.length;
+
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+
+			if (keys[mid].compareTo(value) <= 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+
+	/**
+	 * Helper method which returns the position after the last value
+	 * starting with the specified prefix. Values starting with the prefix
+	 * directly follow the values smaller than the prefix, so every value
+	 * before the returned position is either smaller or starts with it.
+	 *
+	 * @param keys values in ascending order
+	 * @param prefix prefix being searched for
+	 * @return position after the last value starting with the prefix
+	 */
+	private static int prefixEnd(String[] keys, String prefix) {
+		int low = 0;
+		int high = keys.length;
+
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+
+			if (keys[mid].compareTo(prefix) < 0 || keys[mid].startsWith(prefix)) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+
+		return low;
+	}
+}
@@ -0,0 +1,18 @@
+package hr.fer.zemris.java.hw04.db;
+
+/**
+ * Enumeration of the ways a student database can store its records.
+ * 
+ * @author Vice Ivušić
+ *
+ */
+public enum StorageMode {
+	/** each record is stored as a StudentRecord object **/
+	ROWS,
+	/**
+	 * each attribute is stored as a separate column; names are encoded
+	 * as codes into sorted dictionaries and grades as bytes, and records
+	 * are created only when they are returned
+	 */
+	COLUMNS
+}
@@ -6,6 +6,7 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import hr.fer.zemris.java.hw04.collections.SimpleHashtable;
 
@@ -17,6 +18,31 @@ import hr.fer.zemris.java.hw04.collections.SimpleHashtable;
  * method which returns a list of student records which satisfy
  * a given criteria.
  * 
+ * <p>Sorted secondary indexes can be created on any attribute, such as
+ * last name, first name or final grade. A query made of conditional
+ * expressions is then answered by scanning only the range of an index
+ * holding the records which satisfy the most selective of its expressions,
+ * and checking those records against the rest of the expressions. Such a
+ * query costs O(log n + k) rather than O(n), where k is the size of the range.
+ * 
+ * <p>Bitmap indexes can be created on attributes with few distinct values,
+ * such as final grade. Queries combining conditional expressions with the
+ * logical operators AND, OR and NOT are answered by combining bitmaps of
+ * row numbers, found through any of the indexes, or by checking only the
+ * records which may still satisfy the query; see
+ * {@linkplain #query(IQueryExpression)}.
+ * 
+ * <p>Records are stored either as objects or in columns, depending on the
+ * {@linkplain StorageMode} the database is created with. Column storage
+ * needs considerably less memory per record and answers queries by
+ * comparing codes and bytes rather than Strings, but creates a new
+ * StudentRecord object for each record it returns, so filters which
+ * aren't queries made of conditional expressions are slower with it.
+ * 
+ * <p>Filtering a database of at least {@value #PARALLEL_THRESHOLD} records
+ * with a thread-safe filter checks the records in parallel, on the pool
+ * set by {@linkplain #setPool(ForkJoinPool)}.
+ * 
  * <p>Also offers static methods for loading and retrieving a student database
  * from a text file, and for retrieving a default database of 63
  * students packaged in this project.
@@ -26,28 +52,61 @@ import hr.fer.zemris.java.hw04.collections.SimpleHashtable;
  */
 public class StudentDatabase {
 
-	/** list of student records **/
-	private List<StudentRecord> database;
-	/** index of student records, mapped to a student's JMBAG **/
-	private SimpleHashtable<String, StudentRecord> index;
+	/** smallest amount of records which are filtered in parallel **/
+	public static final int PARALLEL_THRESHOLD = 1 << 16;
+	/** smallest amount of records a single parallel task checks **/
+	private static final int MIN_CHUNK_SIZE = 1 << 12;
+	
+	/** storage of student records **/
+	private RecordStore database;
+	/** row numbers of student records, mapped to a student's JMBAG **/
+	private SimpleHashtable<String, Integer> index;
+	/** sorted secondary indexes, mapped to the getters of their attributes **/
+	private SimpleHashtable<IFieldValueGetter, SortedIndex> sortedIndexes;
+	/** bitmap indexes, mapped to the getters of their attributes **/
+	private SimpleHashtable<IFieldValueGetter, BitmapIndex> bitmapIndexes;
+	/** pool used for filtering in parallel, or null **/
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
 	
 	/**
 	 * Creates a new StudentDatabase from the specified list of student 
 	 * records. The list of records has to contain one whole record
 	 * for each of its entries. Each record has to have four tab
 	 * separated values (jmbag, last name, first name and final grade).
+	 * The records are stored as objects.
 	 * 
 	 * @param records list of student records
 	 * @throws IllegalArgumentException if the specified records are
 	 * 		   null or not formatted properly
 	 */
 	public StudentDatabase(List<String> records) {
+		this(records, StorageMode.ROWS);
+	}
+	
+	/**
+	 * Creates a new StudentDatabase from the specified list of student 
+	 * records, stored in the specified way. The list of records has to
+	 * be formatted as described by {@linkplain #StudentDatabase(List)}.
+	 * 
+	 * @param records list of student records
+	 * @param mode way the records are stored
+	 * @throws IllegalArgumentException if any of the arguments is null
+	 * 		   or if the records are not formatted properly
+	 */
+	public StudentDatabase(List<String> records, StorageMode mode) {
 		if (records == null) {
 			throw new IllegalArgumentException("Student records must not be null!");
 		}
+		if (mode == null) {
+			throw new IllegalArgumentException("Storage mode must not be null!");
+		}
 		
-		database = new ArrayList<>(records.size());
+		database = mode == StorageMode.ROWS
+				? new RowStore(records.size())
+				: new ColumnStore(records.size());
 		index = new SimpleHashtable<>(records.size());
+		sortedIndexes = new SimpleHashtable<>();
+		bitmapIndexes = new SimpleHashtable<>();
 		
 		for (String record : records) {
 			StudentRecord studentRecord = StudentRecord.parseAndBuildRecord(record);
@@ -58,9 +117,11 @@ public class StudentDatabase {
 				);
 			}
 			
+			index.put(studentRecord.getJmbag(), database.size());
 			database.add(studentRecord);
-			index.put(studentRecord.getJmbag(), studentRecord);
 		}
+		
+		database.complete();
 	}
 	
 	/**
@@ -77,7 +138,21 @@ public class StudentDatabase {
 		if (jmbag == null) {
 			throw new IllegalArgumentException("cannot get record for null!");
 		}
-		return index.get(jmbag);
+		Integer row = index.get(jmbag);
+		
+		return row == null ? null : database.get(row);
+	}
+	
+	/**
+	 * Sets the pool used for filtering in parallel. The common
+	 * ForkJoin pool is used by default. If the specified pool is
+	 * null or has a parallelism of one, records are always
+	 * filtered sequentially.
+	 * 
+	 * @param pool pool used for filtering in parallel, or null
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
 	}
 	
 	/**
@@ -85,6 +160,11 @@ public class StudentDatabase {
 	 * IFilter object's accept method. Returns an empty list if none
 	 * of the student records satisfy the given filter.
 	 * 
+	 * <p>If the database holds at least {@value #PARALLEL_THRESHOLD}
+	 * records and the filter is {@linkplain IFilter#isThreadSafe() thread-safe},
+	 * the records are split into chunks which are checked in parallel.
+	 * The records are returned in the same order either way.
+	 * 
 	 * @param filter an object implementing the IFilter interface
 	 * @return a list of the student records that satisfy the specified filter
 	 */
@@ -93,9 +173,19 @@ public class StudentDatabase {
 			throw new IllegalArgumentException("cannot set filter to null!");
 		}
 		
+		int size = database.size();
+		if (pool != null && pool.getParallelism() > 1
+				&& size >= PARALLEL_THRESHOLD && filter.isThreadSafe()) {
+			int chunkSize = Math.max(MIN_CHUNK_SIZE, size / (4 * pool.getParallelism()));
+			
+			return pool.invoke(new FilterTask(database, filter, 0, size, chunkSize));
+		}
+		
 		List<StudentRecord> filteredRecords = new ArrayList<>();
 		
-		for (StudentRecord record : database) {
+		for (int row = 0; row < size; row++) {
+			StudentRecord record = database.get(row);
+			
 			if (filter.accepts(record)) {
 				filteredRecords.add(record);
 			}
@@ -104,6 +194,153 @@ public class StudentDatabase {
 		return filteredRecords;
 	}
 	
+	/**
+	 * Creates a sorted secondary index on the attribute returned by the
+	 * specified getter, such as {@linkplain FieldValueGetters#LAST_NAME}.
+	 * Does nothing if such an index already exists. Creating an index takes
+	 * O(n log n) time.
+	 * 
+	 * @param getter object for getting the indexed attribute value
+	 * @throws IllegalArgumentException if the specified getter is null
+	 */
+	public void createIndex(IFieldValueGetter getter) {
+		if (getter == null) {
+			throw new IllegalArgumentException("Cannot create index for null getter!");
+		}
+		
+		if (!sortedIndexes.containsKey(getter)) {
+			sortedIndexes.put(getter, new SortedIndex(database, getter));
+		}
+	}
+	
+	/**
+	 * Creates a bitmap index on the attribute returned by the specified
+	 * getter, such as {@linkplain FieldValueGetters#FINAL_GRADE}. The index
+	 * keeps a bitmap of the records for each distinct value of the attribute,
+	 * so it can only be created for attributes with at most 64 distinct values.
+	 * Does nothing if such an index already exists.
+	 * 
+	 * @param getter object for getting the indexed attribute value
+	 * @throws IllegalArgumentException if the specified getter is null,
+	 * 		   or if the attribute has too many distinct values
+	 */
+	public void createBitmapIndex(IFieldValueGetter getter) {
+		if (getter == null) {
+			throw new IllegalArgumentException("Cannot create index for null getter!");
+		}
+		
+		if (!bitmapIndexes.containsKey(getter)) {
+			bitmapIndexes.put(getter, new BitmapIndex(database, getter));
+		}
+	}
+	
+	/**
+	 * Returns a plan for answering the query made of the specified
+	 * conditional expressions, all of which have to be satisfied.
+	 * 
+	 * <p>If one of the expressions compares the JMBAG for equality, the
+	 * plan looks up the record by its JMBAG. Otherwise, of the expressions
+	 * on indexed attributes which can be answered by a range of the index,
+	 * the one with the smallest range is chosen. The records found are
+	 * checked against the remaining expressions. If no expression can be
+	 * answered by an index, the plan scans all records.
+	 * 
+	 * @param expressions conditional expressions of the query
+	 * @return plan for answering the query
+	 * @throws IllegalArgumentException if the specified expressions are null
+	 */
+	public QueryPlan plan(List<ConditionalExpression> expressions) {
+		if (expressions == null) {
+			throw new IllegalArgumentException("List of expressions cannot be null!");
+		}
+		
+		ConditionalExpression best = null;
+		SortedIndex bestIndex = null;
+		int[] bestRange = null;
+		
+		for (ConditionalExpression expr : expressions) {
+			if (expr.getGetter() == FieldValueGetters.JMBAG
+					&& expr.getOperator() == ComparisonOperators.EQUALS) {
+				return new QueryPlan(
+						database, expr, residualOf(expressions, expr), forJMBAG(expr.getValue())
+				);
+			}
+			
+			SortedIndex sortedIndex = sortedIndexes.get(expr.getGetter());
+			if (sortedIndex == null) {
+				continue;
+			}
+			
+			int[] range = sortedIndex.rangeOf(expr.getOperator(), expr.getValue());
+			if (range != null && (bestRange == null || range[1]-range[0] < bestRange[1]-bestRange[0])) {
+				best = expr;
+				bestIndex = sortedIndex;
+				bestRange = range;
+			}
+		}
+		
+		if (best == null) {
+			return new QueryPlan(database, new ArrayList<>(expressions));
+		}
+		
+		return new QueryPlan(database, best, residualOf(expressions, best), bestIndex, bestRange);
+	}
+	
+	/**
+	 * Returns a list of student records which satisfy each of the
+	 * specified conditional expressions, in the same order as
+	 * {@linkplain #filter(IFilter)} would return them. Uses indexes
+	 * where possible; see {@linkplain #plan(List)}.
+	 * 
+	 * @param expressions conditional expressions of the query
+	 * @return a list of the student records that satisfy the query
+	 * @throws IllegalArgumentException if the specified expressions are null
+	 */
+	public List<StudentRecord> query(List<ConditionalExpression> expressions) {
+		return plan(expressions).execute();
+	}
+	
+	/**
+	 * Returns a list of student records which satisfy the specified query
+	 * expression, in the same order as {@linkplain #filter(IFilter)} would
+	 * return them.
+	 * 
+	 * <p>The query is answered using bitmaps of row numbers. Expressions
+	 * answered by an index, whether the JMBAG index, a bitmap index or a
+	 * sorted index, produce a bitmap of the records satisfying them; those
+	 * which can't be answered by an index are checked only against the records
+	 * which may still satisfy the query. The operands of an AND are evaluated
+	 * from the most selective one to the least, so the records satisfying the
+	 * first few are all the later ones have to check.
+	 * 
+	 * @param expression query expression
+	 * @return a list of the student records that satisfy the query
+	 * @throws IllegalArgumentException if the specified expression is null
+	 */
+	public List<StudentRecord> query(IQueryExpression expression) {
+		if (expression == null) {
+			throw new IllegalArgumentException("Query expression cannot be null!");
+		}
+		
+		return new QueryEvaluator(database, index, sortedIndexes, bitmapIndexes).evaluate(expression);
+	}
+	
+	/**
+	 * Helper method which returns all of the specified expressions
+	 * except the specified one.
+	 * 
+	 * @param expressions conditional expressions of the query
+	 * @param excluded expression to leave out
+	 * @return list of the remaining expressions
+	 */
+	private static List<ConditionalExpression> residualOf(
+			List<ConditionalExpression> expressions, ConditionalExpression excluded) {
+		List<ConditionalExpression> residual = new ArrayList<>(expressions);
+		residual.remove(excluded);
+		
+		return residual;
+	}
+	
 	/**
 	 * Loads and returns the default student database from the text
 	 * file located in the scope of this homework's project. Returns
@@ -133,6 +370,22 @@ public class StudentDatabase {
 	 * 		   specified path
 	 */
 	public static StudentDatabase loadDatabase(String path) throws IOException {
+		return loadDatabase(path, StorageMode.ROWS);
+	}
+	
+	/**
+	 * Loads and returns the student database from the specified
+	 * path, storing its records in the specified way.
+	 * 
+	 * @param path path to the location of the student database text file
+	 * @param mode way the records are stored
+	 * @return student database generated from the loaded text file
+	 * @throws IllegalArgumentException if any of the arguments is null
+	 * 		   or if the text file contains improperly formatted records
+	 * @throws IOException if the text file cannot be read from the
+	 * 		   specified path
+	 */
+	public static StudentDatabase loadDatabase(String path, StorageMode mode) throws IOException {
 		if (path == null) {
 			throw new IllegalArgumentException("Cannot load database from null path!");
 		}
@@ -141,7 +394,7 @@ public class StudentDatabase {
 		
 		records = Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8);
 		
-		return new StudentDatabase(records);
+		return new StudentDatabase(records, mode);
 	}
 	
 }
@@ -3,7 +3,8 @@ package hr.fer.zemris.java.hw04.db.demo;
 import java.util.Arrays;
 import java.util.Scanner;
 
-import hr.fer.zemris.java.hw04.db.QueryFilter;
+import hr.fer.zemris.java.hw04.db.FieldValueGetters;
+import hr.fer.zemris.java.hw04.db.QueryPlan;
 import hr.fer.zemris.java.hw04.db.StudentDatabase;
 import hr.fer.zemris.java.hw04.db.StudentRecord;
 import hr.fer.zemris.java.hw04.db.parser.QueryParser;
@@ -16,19 +17,27 @@ import hr.fer.zemris.java.hw04.db.parser.QueryParserException;
  * 
  * <p>Every query has to start with the keyword <code>query</code>. A query
  * can contain multiple expressions; each expression must contain
- * a valid attribute name (one of either jmbag, firstName or lastName),
+ * a valid attribute name (one of either jmbag, firstName, lastName or finalGrade),
  * a valid operator (one of either <, <=, =, >=, >, !=, or LIKE) and a valid
  * comparison string enclosed in double quotes. If using LIKE, the comparison string may
  * contain at most one wildcard character (*) which matches the wildcard with
- * any other set of characters. Multiple expressions have to be separated
- * by the logical operator <code>and</code>. Every keyword in the program is case
- * sensitive, except for <code>and</code>.
+ * any other set of characters. Multiple expressions have to be joined
+ * by the logical operators <code>and</code> or <code>or</code>, may be negated
+ * using <code>not</code>, and may be grouped using parentheses. Every keyword
+ * in the program is case sensitive, except for <code>and</code>, <code>or</code>
+ * and <code>not</code>.
+ * 
+ * <p>The database is indexed on last name, first name and final grade,
+ * so queries with an expression on one of those attributes only check
+ * the records satisfying that expression. Final grade also has a bitmap
+ * index, used by queries containing <code>or</code> or <code>not</code>.
  * 
  * <p>Program is terminated by entering: <code>quit</code>
  * 
  * <p>A couple of examples of valid input:
  * <p> <code>query jmbag="0000000002"</code>
  * <p> <code>query firstName>"Ana" and lastName LIKE "N*" and jmbag<"00000000050"</code>
+ * <p> <code>query (finalGrade="5" or finalGrade="4") and not lastName LIKE "B*"</code>
  * 
  * @author Vice Ivušić
  *
@@ -49,6 +58,11 @@ public class StudentDB {
 			return;
 		}
 		
+		database.createIndex(FieldValueGetters.LAST_NAME);
+		database.createIndex(FieldValueGetters.FIRST_NAME);
+		database.createIndex(FieldValueGetters.FINAL_GRADE);
+		database.createBitmapIndex(FieldValueGetters.FINAL_GRADE);
+		
 		// this warning is annoying; the scanner is always properly closed!
 		@SuppressWarnings("resource")
 		Scanner sc = new Scanner(System.in).useDelimiter("\\n");
@@ -99,9 +113,18 @@ public class StudentDB {
 				
 				queriedRecords.add(directRecord);
 			
+			} else if (!parser.isConjunction()) {
+				for (StudentRecord record : database.query(parser.getExpression())) {
+					queriedRecords.add(record);
+				}
+			
 			} else {
-				QueryFilter accordingToAndExpressions = new QueryFilter(parser.getQuery());
-				for (StudentRecord record : database.filter(accordingToAndExpressions)) {
+				QueryPlan plan = database.plan(parser.getQuery());
+				if (plan.usesIndex()) {
+					System.out.println("Using index for record retrieval.");
+				}
+				
+				for (StudentRecord record : plan.execute()) {
 					queriedRecords.add(record);
 				}
 			}
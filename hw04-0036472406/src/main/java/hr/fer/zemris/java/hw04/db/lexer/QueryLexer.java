@@ -5,7 +5,8 @@ package hr.fer.zemris.java.hw04.db.lexer;
  * by character and generates a sequence of tokens which can be
  * retrieved through its API. The tokens generated are those
  * representing attribute names, comparison operators, logical
- * operators and string values.
+ * operators (and, or and not, all case insensitive), parentheses
+ * and string values.
  * 
  * <p>Offers methods for generating the next token and for retrieving
  * the last generated token.
@@ -97,11 +98,20 @@ public class QueryLexer {
 			return;
 		}
 		
+		if (c == '(' || c == ')') {
+			token = c == '('
+					? new Token(TokenType.OPEN_PARENTHESIS, "(")
+					: new Token(TokenType.CLOSED_PARENTHESIS, ")");
+			currentIndex++;
+			return;
+		}
+		
 		
 		String word = getWord();
 		
-		if (word.toLowerCase().equals("and")) {
-			token = new Token(TokenType.LOGICAL_OPERATOR, "and");
+		String lowerCaseWord = word.toLowerCase();
+		if (lowerCaseWord.equals("and") || lowerCaseWord.equals("or") || lowerCaseWord.equals("not")) {
+			token = new Token(TokenType.LOGICAL_OPERATOR, lowerCaseWord);
 			return;
 		}
 		
@@ -16,6 +16,10 @@ public  enum TokenType {
 	/** a string value **/
 	STRING_VALUE,
 	/** a logical operator **/
-	LOGICAL_OPERATOR
+	LOGICAL_OPERATOR,
+	/** an opening parenthesis **/
+	OPEN_PARENTHESIS,
+	/** a closing parenthesis **/
+	CLOSED_PARENTHESIS
 }
 
@@ -1,6 +1,7 @@
 package hr.fer.zemris.java.hw04.db.parser;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import hr.fer.zemris.java.hw04.db.ComparisonOperators;
@@ -8,6 +9,9 @@ import hr.fer.zemris.java.hw04.db.ConditionalExpression;
 import hr.fer.zemris.java.hw04.db.FieldValueGetters;
 import hr.fer.zemris.java.hw04.db.IComparisonOperator;
 import hr.fer.zemris.java.hw04.db.IFieldValueGetter;
+import hr.fer.zemris.java.hw04.db.IQueryExpression;
+import hr.fer.zemris.java.hw04.db.LogicalExpression;
+import hr.fer.zemris.java.hw04.db.LogicalOperator;
 import hr.fer.zemris.java.hw04.db.lexer.QueryLexer;
 import hr.fer.zemris.java.hw04.db.lexer.QueryLexerException;
 import hr.fer.zemris.java.hw04.db.lexer.Token;
@@ -17,14 +21,22 @@ import hr.fer.zemris.java.hw04.db.lexer.TokenType;
  * Represents a text parser. QueryParser uses a lexer which
  * tokenizes a piece of text so the parser can determine
  * whether the tokens received are generated in a well
- * defined manner. If they are, it builds a list of conditional
- * expressions the text is composed of. 
+ * defined manner. If they are, it builds a query expression
+ * out of the conditional expressions the text is composed of.
+ * 
+ * <p>Conditional expressions can be combined using the logical
+ * operators <code>and</code>, <code>or</code> and <code>not</code>,
+ * and grouped using parentheses. <code>not</code> binds the tightest
+ * and <code>or</code> the loosest, so <code>a or not b and c</code> is
+ * read as <code>a or ((not b) and c)</code>. A query which only joins
+ * conditional expressions with <code>and</code> is a conjunction, and
+ * its list of conditional expressions can be retrieved as well.
  * 
  * <p>Depending on the query that has been parsed, the parser
  * determines whether the query is a "direct query" or not.
  * 
- * <p>Offers methods for retrieving the list of conditional
- * expressions, for retrieving whether the query was a direct
+ * <p>Offers methods for retrieving the query expression and the list
+ * of conditional expressions of a conjunction, for retrieving whether the query was a direct
  * query and, if it was, for retrieving the queried JMBAG.
  * 
  * @author Vice Ivušić
@@ -32,8 +44,10 @@ import hr.fer.zemris.java.hw04.db.lexer.TokenType;
  */
 public class QueryParser {
 
-	/** list of conditional expressions parsed from the query **/
+	/** list of conditional expressions of a conjunction, or null **/
 	private List<ConditionalExpression> queries;
+	/** query expression parsed from the query **/
+	private IQueryExpression expression;
 	/** lexer used for tokenizing the query **/
 	private QueryLexer lexer;
 	/** flag which indicates whether the query was a direct query or not **/
@@ -52,9 +66,6 @@ public class QueryParser {
 			throw new IllegalArgumentException("query text cannot be null!");
 		}
 		
-		directQuery = true;
-		queries = new ArrayList<>();
-		
 		lexer = new QueryLexer(query);
 		parse();
 	}
@@ -84,75 +95,218 @@ public class QueryParser {
 		return queries.get(0).getValue();
 	}
 
+	/**
+	 * Returns true if the parsed query is a conjunction, i.e. if it
+	 * only joins conditional expressions with <code>and</code>.
+	 * 
+	 * @return true iff the parsed query is a conjunction
+	 */
+	public boolean isConjunction() {
+		return queries != null;
+	}
+
 	/**
 	 * Returns a list of conditional expressions built from
 	 * the parsed query. Always contains at least one expression.
 	 * 
 	 * @return list of conditional expressions
+	 * @throws IllegalStateException if the parsed query
+	 * 		   is not a conjunction
 	 */
 	public List<ConditionalExpression> getQuery() {
+		if (queries == null) {
+			throw new IllegalStateException("Query was not a conjunction!");
+		}
+		
 		return queries;
 	}
+	
+	/**
+	 * Returns the query expression built from the parsed query.
+	 * 
+	 * @return query expression
+	 */
+	public IQueryExpression getExpression() {
+		return expression;
+	}
 
 	/**
 	 * Helper method which parses the query.
 	 */
 	private void parse() {
+		getNextToken();
+		expression = parseOr();
 		
-		while(true) {
-			getNextToken();
-			if (!isTokenOfType(TokenType.ATTRIBUTE_NAME)) {
-				throw new QueryParserException("Expected attribute name!");
-			}
-			IFieldValueGetter getter = getGetter();
-			
+		if (!isTokenOfType(TokenType.EOF)) {
+			throw new QueryParserException("Expected either EOF or logical operator!");
+		}
+		
+		if (expression instanceof ConditionalExpression) {
+			ConditionalExpression expr = (ConditionalExpression) expression;
 			
-			getNextToken();
-			if (!isTokenOfType(TokenType.COMPARISON_OPERATOR)) {
-				throw new QueryParserException("Expected operator!");
+			queries = new ArrayList<>(Collections.singletonList(expr));
+			directQuery = expr.getGetter() == FieldValueGetters.JMBAG
+					&& expr.getOperator() == ComparisonOperators.EQUALS;
+			return;
+		}
+		
+		LogicalExpression logical = (LogicalExpression) expression;
+		if (logical.getOperator() != LogicalOperator.AND) {
+			return;
+		}
+		
+		List<ConditionalExpression> conjunction = new ArrayList<>();
+		for (IQueryExpression operand : logical.getOperands()) {
+			if (!(operand instanceof ConditionalExpression)) {
+				return;
 			}
-			IComparisonOperator operator = getOperator();
-			
-			
+			conjunction.add((ConditionalExpression) operand);
+		}
+		queries = conjunction;
+	}
+	
+	/**
+	 * Helper method which parses expressions joined with <code>or</code>.
+	 * 
+	 * @return parsed query expression
+	 */
+	private IQueryExpression parseOr() {
+		List<IQueryExpression> operands = new ArrayList<>();
+		addOperand(operands, parseAnd(), LogicalOperator.OR);
+		
+		while (isLogicalOperator("or")) {
 			getNextToken();
-			if (!isTokenOfType(TokenType.STRING_VALUE)) {
-				throw new QueryParserException("Expected string comparison value!");
-			}
-			String comparisonValue = (String) getTokenValue();
-			
-			if (operator == ComparisonOperators.LIKE) {
-				if (comparisonValue.indexOf('*') != comparisonValue.lastIndexOf('*')) {
-					throw new QueryParserException(
-							"Comparison value for LIKE can at most contain one wildcard (*) character!"
-					);
-				}
-			}
-			
-			
-			if (getter != FieldValueGetters.JMBAG || operator != ComparisonOperators.EQUALS) {
-				directQuery = false;
-			}
-			
-			queries.add(
-					new ConditionalExpression(getter, comparisonValue, operator)
+			addOperand(operands, parseAnd(), LogicalOperator.OR);
+		}
+		
+		return combine(operands, LogicalOperator.OR);
+	}
+	
+	/**
+	 * Helper method which parses expressions joined with <code>and</code>.
+	 * 
+	 * @return parsed query expression
+	 */
+	private IQueryExpression parseAnd() {
+		List<IQueryExpression> operands = new ArrayList<>();
+		addOperand(operands, parseUnary(), LogicalOperator.AND);
+		
+		while (isLogicalOperator("and")) {
+			getNextToken();
+			addOperand(operands, parseUnary(), LogicalOperator.AND);
+		}
+		
+		return combine(operands, LogicalOperator.AND);
+	}
+	
+	/**
+	 * Helper method which parses a negated expression, an expression
+	 * in parentheses or a single conditional expression.
+	 * 
+	 * @return parsed query expression
+	 */
+	private IQueryExpression parseUnary() {
+		if (isLogicalOperator("not")) {
+			getNextToken();
+			return new LogicalExpression(
+					LogicalOperator.NOT, Collections.singletonList(parseUnary())
 			);
-			
-			
+		}
+		
+		if (isTokenOfType(TokenType.OPEN_PARENTHESIS)) {
 			getNextToken();
-			if (isTokenOfType(TokenType.EOF)) {
-				break;
-			}
+			IQueryExpression inner = parseOr();
 			
-			if (!isTokenOfType(TokenType.LOGICAL_OPERATOR)) {
-				throw new QueryParserException("Expected either EOF or logical operator!");
-			}
-			if (!getTokenValue().equals("and")) {
-				throw new QueryParserException("Logical operator can only be 'and'!");
+			if (!isTokenOfType(TokenType.CLOSED_PARENTHESIS)) {
+				throw new QueryParserException("Expected closed parenthesis!");
 			}
+			getNextToken();
 			
-			directQuery = false;
+			return inner;
 		}
 		
+		return parseConditionalExpression();
+	}
+	
+	/**
+	 * Helper method which parses a single conditional expression.
+	 * 
+	 * @return parsed conditional expression
+	 */
+	private ConditionalExpression parseConditionalExpression() {
+		if (!isTokenOfType(TokenType.ATTRIBUTE_NAME)) {
+			throw new QueryParserException("Expected attribute name!");
+		}
+		IFieldValueGetter getter = getGetter();
+		
+		
+		getNextToken();
+		if (!isTokenOfType(TokenType.COMPARISON_OPERATOR)) {
+			throw new QueryParserException("Expected operator!");
+		}
+		IComparisonOperator operator = getOperator();
+		
+		
+		getNextToken();
+		if (!isTokenOfType(TokenType.STRING_VALUE)) {
+			throw new QueryParserException("Expected string comparison value!");
+		}
+		String comparisonValue = (String) getTokenValue();
+		
+		if (operator == ComparisonOperators.LIKE) {
+			if (comparisonValue.indexOf('*') != comparisonValue.lastIndexOf('*')) {
+				throw new QueryParserException(
+						"Comparison value for LIKE can at most contain one wildcard (*) character!"
+				);
+			}
+		}
+		
+		getNextToken();
+		
+		return new ConditionalExpression(getter, comparisonValue, operator);
+	}
+	
+	/**
+	 * Helper method which adds the specified operand to the specified
+	 * operands of the specified operator. If the operand itself uses the
+	 * same operator, e.g. because it was in parentheses, its operands are
+	 * added instead.
+	 * 
+	 * @param operands operands being collected
+	 * @param operand operand to add
+	 * @param operator operator joining the operands
+	 */
+	private static void addOperand(List<IQueryExpression> operands, IQueryExpression operand,
+			LogicalOperator operator) {
+		if (operand instanceof LogicalExpression
+				&& ((LogicalExpression) operand).getOperator() == operator) {
+			operands.addAll(((LogicalExpression) operand).getOperands());
+		} else {
+			operands.add(operand);
+		}
+	}
+	
+	/**
+	 * Helper method which joins the specified operands with the specified
+	 * operator, or returns the only operand if there is just one.
+	 * 
+	 * @param operands operands to join
+	 * @param operator operator joining the operands
+	 * @return query expression joining the operands
+	 */
+	private static IQueryExpression combine(List<IQueryExpression> operands, LogicalOperator operator) {
+		return operands.size() == 1 ? operands.get(0) : new LogicalExpression(operator, operands);
+	}
+
+	/**
+	 * Helper method which checks if the currently generated token
+	 * is the specified logical operator.
+	 * 
+	 * @param operator logical operator being checked
+	 * @return true iff the current token is the specified operator
+	 */
+	private boolean isLogicalOperator(String operator) {
+		return isTokenOfType(TokenType.LOGICAL_OPERATOR) && getTokenValue().equals(operator);
 	}
 
 	/**
@@ -175,6 +329,9 @@ public class QueryParser {
 		case "lastName":
 			getter = FieldValueGetters.LAST_NAME;
 			break;
+		case "finalGrade":
+			getter = FieldValueGetters.FINAL_GRADE;
+			break;
 		case "":
 			throw new QueryParserException("Query contains illegal character(s)!");
 		default:
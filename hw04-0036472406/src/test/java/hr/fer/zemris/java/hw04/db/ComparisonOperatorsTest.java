@@ -95,5 +95,46 @@ public class ComparisonOperatorsTest {
 		assertFalse(ComparisonOperators.LIKE.satisfied(null, "ana"));
 		assertTrue(ComparisonOperators.LIKE.satisfied(null, null));
 	}
+	
+	@Test
+	public void testLikeBound() {
+		IBoundComparisonOperator prefix = ComparisonOperators.LIKE.bind("Ana*");
+		assertTrue(prefix.satisfied("Analana"));
+		assertTrue(prefix.satisfied("Ana"));
+		assertFalse(prefix.satisfied("Lana"));
+		assertFalse(prefix.satisfied(null));
+		
+		IBoundComparisonOperator infix = ComparisonOperators.LIKE.bind("AA*AA");
+		assertTrue(infix.satisfied("AAAA"));
+		assertFalse(infix.satisfied("AAA"));
+		
+		IBoundComparisonOperator contains = ComparisonOperators.LIKE.bind("*lan*");
+		assertTrue(contains.satisfied("Analana"));
+		assertFalse(contains.satisfied("Ana"));
+		
+		IBoundComparisonOperator complex = ComparisonOperators.LIKE.bind("A*l*a");
+		assertTrue(complex.satisfied("Analana"));
+		assertTrue(complex.satisfied("Ala"));
+		assertFalse(complex.satisfied("Anana"));
+		
+		assertTrue(ComparisonOperators.LIKE.bind(null).satisfied(null));
+		assertFalse(ComparisonOperators.LIKE.bind(null).satisfied("Ana"));
+	}
+	
+	@Test
+	public void testLikeMatchesLiterally() {
+		assertTrue(ComparisonOperators.LIKE.satisfied("A.B", "A.*"));
+		assertFalse(ComparisonOperators.LIKE.satisfied("AxB", "A.B"));
+		assertTrue(ComparisonOperators.LIKE.satisfied("(a)+[b]", "(a)*[b]"));
+		assertTrue(ComparisonOperators.LIKE.satisfied("a\\Eb", "a\\E*"));
+		assertTrue(ComparisonOperators.LIKE.satisfied("line\nbreak", "*\n*"));
+	}
+	
+	@Test
+	public void testBoundMatchesUnbound() {
+		assertTrue(ComparisonOperators.LESS.bind("banana").satisfied("ana"));
+		assertFalse(ComparisonOperators.EQUALS.bind("ana").satisfied("aba"));
+		assertTrue(ComparisonOperators.NOT_EQUALS.bind("ana").satisfied(null));
+	}
 
 }
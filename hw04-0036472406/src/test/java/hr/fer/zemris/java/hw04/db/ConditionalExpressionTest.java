@@ -1,5 +1,7 @@
 package hr.fer.zemris.java.hw04.db;
 
+import static org.junit.Assert.*;
+
 import org.junit.Test;
 
 public class ConditionalExpressionTest {
@@ -18,4 +20,16 @@ public class ConditionalExpressionTest {
 	public void testConstructorComparatorNull() {
 		new ConditionalExpression(FieldValueGetters.FIRST_NAME, null, null);
 	}
+	
+	@Test
+	public void testIsSatisfiedBy() {
+		StudentRecord record = new StudentRecord("0000000001", "Akšamović", "Marin", 2);
+		
+		assertTrue(new ConditionalExpression(
+				FieldValueGetters.LAST_NAME, "Ak*", ComparisonOperators.LIKE).isSatisfiedBy(record));
+		assertFalse(new ConditionalExpression(
+				FieldValueGetters.FIRST_NAME, "*a", ComparisonOperators.LIKE).isSatisfiedBy(record));
+		assertTrue(new ConditionalExpression(
+				FieldValueGetters.FINAL_GRADE, "2", ComparisonOperators.EQUALS).isSatisfiedBy(record));
+	}
 }
@@ -49,5 +49,16 @@ public class FieldValueGettersTest {
 	public void testJmbagNull() {
 		FieldValueGetters.JMBAG.get(null);
 	}
+	
+	@Test
+	public void testFinalGradeGetter() {
+		String tomislav = FieldValueGetters.FINAL_GRADE.get(db.forJMBAG("0000000032"));
+		assertTrue(tomislav.equals(Integer.toString(db.forJMBAG("0000000032").getFinalGrade())));
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testFinalGradeNull() {
+		FieldValueGetters.FINAL_GRADE.get(null);
+	}
 
 }
@@ -0,0 +1,97 @@
+package hr.fer.zemris.java.hw04.db;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import hr.fer.zemris.java.hw04.db.parser.QueryParser;
+
+public class QueryEvaluatorTest {
+
+	private static StudentDatabase database = StudentDatabase.loadDefaultDatabase();
+	private static StudentDatabase indexed = StudentDatabase.loadDefaultDatabase();
+	private static StudentDatabase columns = TestDatabases.loadDefault(StorageMode.COLUMNS);
+	
+	static {
+		indexed.createIndex(FieldValueGetters.LAST_NAME);
+		indexed.createIndex(FieldValueGetters.FIRST_NAME);
+		indexed.createBitmapIndex(FieldValueGetters.FINAL_GRADE);
+		columns.createBitmapIndex(FieldValueGetters.FINAL_GRADE);
+	}
+	
+	private static final String[] QUERIES = {
+			"finalGrade=\"5\"",
+			"finalGrade=\"5\" or finalGrade=\"1\"",
+			"not finalGrade>=\"3\"",
+			"(finalGrade=\"5\" or finalGrade=\"4\") and not lastName LIKE \"B*\"",
+			"lastName<\"C\" or firstName=\"Ivan\" or jmbag=\"0000000063\"",
+			"not (lastName<\"C\" or lastName>\"S\") and finalGrade!=\"2\"",
+			"jmbag=\"0000000003\" or jmbag=\"0000000004\" and finalGrade=\"1\"",
+			"jmbag=\"0000000003\" and not jmbag=\"0000000003\"",
+			"not not firstName LIKE \"*a\"",
+			"lastName LIKE \"K*\" and firstName>\"A\" and finalGrade<\"5\" and jmbag>\"0000000020\"",
+			"finalGrade=\"6\" or lastName=\"Nepostojeći\"",
+			"jmbag=\"0\" or finalGrade LIKE \"*\"",
+	};
+	
+	@Test
+	public void testQueryMatchesFilter() {
+		for (String query : QUERIES) {
+			IQueryExpression expression = new QueryParser(query).getExpression();
+			String expected = database.filter(expression).toString();
+			
+			assertEquals(query, expected, database.query(expression).toString());
+			assertEquals(query, expected, indexed.query(expression).toString());
+			assertEquals(query, expected, columns.query(expression).toString());
+		}
+	}
+	
+	@Test
+	public void testConjunctionMatchesPlan() {
+		List<ConditionalExpression> expressions = new QueryParser(
+				"finalGrade>=\"4\" and lastName>\"M\""
+		).getQuery();
+		
+		assertEquals(
+				indexed.query(expressions),
+				indexed.query(new LogicalExpression(LogicalOperator.AND, expressions))
+		);
+	}
+	
+	@Test
+	public void testEmptyOperands() {
+		List<ConditionalExpression> none = Collections.emptyList();
+		
+		assertEquals(63, indexed.query(new LogicalExpression(LogicalOperator.AND, none)).size());
+		assertEquals(0, indexed.query(new LogicalExpression(LogicalOperator.OR, none)).size());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testNotWithTwoOperands() {
+		ConditionalExpression expr = new ConditionalExpression(
+				FieldValueGetters.FINAL_GRADE, "5", ComparisonOperators.EQUALS
+		);
+		
+		new LogicalExpression(LogicalOperator.NOT, Arrays.asList(expr, expr));
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testBitmapIndexTooManyValues() {
+		List<String> records = new ArrayList<>();
+		for (int i = 0; i < 65; i++) {
+			records.add(String.format("%010d\tPrezime\tIme\t5", i));
+		}
+		
+		new StudentDatabase(records).createBitmapIndex(FieldValueGetters.JMBAG);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testQueryNull() {
+		database.query((IQueryExpression) null);
+	}
+}
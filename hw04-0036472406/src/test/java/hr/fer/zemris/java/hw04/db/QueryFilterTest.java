@@ -2,6 +2,7 @@ package hr.fer.zemris.java.hw04.db;
 
 import static org.junit.Assert.*;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.Test;
@@ -34,5 +35,29 @@ public class QueryFilterTest {
 		assertFalse(filter.accepts(database.forJMBAG("0000000036"))); //Ante Markić
 		assertFalse(filter.accepts(database.forJMBAG("0000000001"))); //Marin Akšamović
 	}
+	
+	@Test
+	public void testThreadSafety() {
+		IFilter lambda = rec -> true;
+		
+		assertTrue(new QueryFilter(expressions).isThreadSafe());
+		assertFalse(lambda.isThreadSafe());
+	}
+	
+	@Test
+	public void testCustomExpressionsNotThreadSafe() {
+		ConditionalExpression customGetter = new ConditionalExpression(
+				rec -> rec.getLastName(), "A", ComparisonOperators.GREATER
+		);
+		ConditionalExpression customOperator = new ConditionalExpression(
+				FieldValueGetters.LAST_NAME, "A", (value1, value2) -> true
+		);
+		
+		assertFalse(customGetter.isThreadSafe());
+		assertFalse(customOperator.isThreadSafe());
+		assertFalse(new QueryFilter(Arrays.asList(expressions.get(0), customGetter)).isThreadSafe());
+		assertFalse(new LogicalExpression(LogicalOperator.OR, Arrays.asList(customOperator)).isThreadSafe());
+		assertTrue(new LogicalExpression(LogicalOperator.NOT, Arrays.asList(expressions.get(0))).isThreadSafe());
+	}
 
 }
@@ -54,7 +54,7 @@ public class QueryLexerTest {
 				new Token(TokenType.COMPARISON_OPERATOR, "="),
 				new Token(TokenType.COMPARISON_OPERATOR, "!"),
 				new Token(TokenType.STRING_VALUE, "Foo\\bar"),
-				new Token(TokenType.ATTRIBUTE_NAME, "OR"),
+				new Token(TokenType.LOGICAL_OPERATOR, "or"),
 				new Token(TokenType.LOGICAL_OPERATOR, "and"),
 				new Token(TokenType.LOGICAL_OPERATOR, "and"),
 				new Token(TokenType.ATTRIBUTE_NAME, "ANDREA"),
@@ -88,6 +88,27 @@ public class QueryLexerTest {
 		checkTokenStream(lexer, correctData);
 	}
 	
+	@Test
+	public void testLogicalOperatorsAndParentheses() {
+		QueryLexer lexer = new QueryLexer(
+				"not(finalGrade=\"5\" Or NOTE)"
+		);
+		
+		Token correctData[] = new Token[] {
+				new Token(TokenType.LOGICAL_OPERATOR, "not"),
+				new Token(TokenType.OPEN_PARENTHESIS, "("),
+				new Token(TokenType.ATTRIBUTE_NAME, "finalGrade"),
+				new Token(TokenType.COMPARISON_OPERATOR, "="),
+				new Token(TokenType.STRING_VALUE, "5"),
+				new Token(TokenType.LOGICAL_OPERATOR, "or"),
+				new Token(TokenType.ATTRIBUTE_NAME, "NOTE"),
+				new Token(TokenType.CLOSED_PARENTHESIS, ")"),
+				new Token(TokenType.EOF, null),
+		};
+		
+		checkTokenStream(lexer, correctData);
+	}
+	
 	@Test(expected=QueryLexerException.class)
 	public void testUnclosedString() {
 		QueryLexer lexer = new QueryLexer("firstName=\"Helloo");
@@ -137,4 +137,70 @@ public class QueryParserTest {
 		new QueryParser("foobar=\"0000000010\" and");
 	}
 	
+	@Test
+	public void testPrecedence() {
+		QueryParser parser = new QueryParser(
+				"jmbag=\"0000000001\" or not lastName<\"B\" AND finalGrade=\"5\""
+		);
+		
+		assertFalse(parser.isConjunction());
+		assertFalse(parser.isDirectQuery());
+		
+		LogicalExpression or = (LogicalExpression) parser.getExpression();
+		assertEquals(LogicalOperator.OR, or.getOperator());
+		assertEquals(2, or.getOperands().size());
+		assertTrue(or.getOperands().get(0) instanceof ConditionalExpression);
+		
+		LogicalExpression and = (LogicalExpression) or.getOperands().get(1);
+		assertEquals(LogicalOperator.AND, and.getOperator());
+		
+		LogicalExpression not = (LogicalExpression) and.getOperands().get(0);
+		assertEquals(LogicalOperator.NOT, not.getOperator());
+		assertTrue(not.getOperands().get(0) instanceof ConditionalExpression);
+		assertTrue(and.getOperands().get(1) instanceof ConditionalExpression);
+	}
+	
+	@Test
+	public void testParentheses() {
+		LogicalExpression and = (LogicalExpression) new QueryParser(
+				"(firstName=\"Ante\" or firstName=\"Ivan\") and finalGrade>\"3\""
+		).getExpression();
+		
+		assertEquals(LogicalOperator.AND, and.getOperator());
+		assertEquals(
+				LogicalOperator.OR, ((LogicalExpression) and.getOperands().get(0)).getOperator()
+		);
+	}
+	
+	@Test
+	public void testParenthesizedConjunction() {
+		QueryParser parser = new QueryParser(
+				"(firstName=\"Ante\" and (lastName>\"A\")) and finalGrade>\"3\""
+		);
+		
+		assertTrue(parser.isConjunction());
+		assertEquals(3, parser.getQuery().size());
+		assertTrue(new QueryParser("(jmbag=\"0000000001\")").isDirectQuery());
+	}
+	
+	@Test(expected=IllegalStateException.class)
+	public void testGetQueryOfDisjunction() {
+		new QueryParser("firstName=\"Ante\" or firstName=\"Ivan\"").getQuery();
+	}
+	
+	@Test(expected=QueryParserException.class)
+	public void testUnclosedParenthesis() {
+		new QueryParser("(firstName=\"Ante\" or firstName=\"Ivan\"");
+	}
+	
+	@Test(expected=QueryParserException.class)
+	public void testUnopenedParenthesis() {
+		new QueryParser("firstName=\"Ante\")");
+	}
+	
+	@Test(expected=QueryParserException.class)
+	public void testNotAtEnd() {
+		new QueryParser("firstName=\"Ante\" and not");
+	}
+	
 }
@@ -0,0 +1,149 @@
+package hr.fer.zemris.java.hw04.db;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import hr.fer.zemris.java.hw04.db.parser.QueryParser;
+
+public class QueryPlanTest {
+
+	private static StudentDatabase database = StudentDatabase.loadDefaultDatabase();
+	private static StudentDatabase indexed = StudentDatabase.loadDefaultDatabase();
+	private static StudentDatabase columns = TestDatabases.loadDefault(StorageMode.COLUMNS);
+	private static StudentDatabase indexedColumns = TestDatabases.loadDefault(StorageMode.COLUMNS);
+	
+	static {
+		indexed.createIndex(FieldValueGetters.LAST_NAME);
+		indexed.createIndex(FieldValueGetters.FIRST_NAME);
+		indexed.createIndex(FieldValueGetters.FINAL_GRADE);
+		indexedColumns.createIndex(FieldValueGetters.LAST_NAME);
+		indexedColumns.createIndex(FieldValueGetters.FINAL_GRADE);
+	}
+	
+	private static final String[] QUERIES = {
+			"lastName>\"X\"",
+			"lastName<\"B\"",
+			"lastName<=\"Bosnić\"",
+			"lastName>=\"Bosnić\"",
+			"lastName=\"Bosnić\"",
+			"lastName=\"Nepostojeći\"",
+			"lastName LIKE \"B*\"",
+			"lastName LIKE \"Bo*\"",
+			"lastName LIKE \"*ć\"",
+			"lastName LIKE \"*\"",
+			"lastName LIKE \"Bosnić\"",
+			"lastName!=\"Bosnić\"",
+			"firstName=\"Marin\" and finalGrade>=\"3\"",
+			"finalGrade=\"5\" and lastName LIKE \"*a\"",
+			"firstName>\"A\" and lastName<\"K\" and jmbag>\"0000000010\"",
+			"jmbag=\"0000000003\" and lastName LIKE \"B*\"",
+			"jmbag=\"0000000003\" and lastName LIKE \"K*\"",
+			"jmbag=\"0\"",
+			"finalGrade>\"5\"",
+			"lastName LIKE \"\"",
+	};
+	
+	@Test
+	public void testQueryMatchesFilter() {
+		for (String query : QUERIES) {
+			List<ConditionalExpression> expressions = new QueryParser(query).getQuery();
+			List<StudentRecord> expected = database.filter(new QueryFilter(expressions));
+			
+			assertEquals(query, expected, indexed.query(expressions));
+			assertEquals(query, expected, database.query(expressions));
+		}
+	}
+	
+	@Test
+	public void testColumnsMatchRows() {
+		for (String query : QUERIES) {
+			List<ConditionalExpression> expressions = new QueryParser(query).getQuery();
+			String expected = database.filter(new QueryFilter(expressions)).toString();
+			
+			assertEquals(query, expected, columns.query(expressions).toString());
+			assertEquals(query, expected, indexedColumns.query(expressions).toString());
+			assertEquals(query, expected, columns.filter(new QueryFilter(expressions)).toString());
+		}
+	}
+	
+	@Test
+	public void testColumnsWithOtherGetter() {
+		IFieldValueGetter fullName = record -> record.getFirstName() + " " + record.getLastName();
+		List<ConditionalExpression> expressions = Arrays.asList(
+				new ConditionalExpression(fullName, "Marin *", ComparisonOperators.LIKE)
+		);
+		
+		assertEquals(
+				database.query(expressions).toString(),
+				columns.query(expressions).toString()
+		);
+	}
+	
+	@Test
+	public void testFullScanWithoutIndex() {
+		QueryPlan plan = database.plan(new QueryParser("lastName>\"X\"").getQuery());
+		
+		assertFalse(plan.usesIndex());
+		assertEquals(63, plan.getCandidateCount());
+		assertEquals(1, plan.getResidualExpressions().size());
+	}
+	
+	@Test
+	public void testRangeScan() {
+		List<ConditionalExpression> expressions = new QueryParser("lastName>\"X\"").getQuery();
+		QueryPlan plan = indexed.plan(expressions);
+		
+		assertTrue(plan.usesIndex());
+		assertSame(expressions.get(0), plan.getIndexedExpression());
+		assertTrue(plan.getResidualExpressions().isEmpty());
+		assertEquals(plan.execute().size(), plan.getCandidateCount());
+	}
+	
+	@Test
+	public void testMostSelectiveExpressionChosen() {
+		List<ConditionalExpression> expressions = new QueryParser(
+				"finalGrade>=\"1\" and lastName LIKE \"Bo*\" and firstName!=\"Marin\""
+		).getQuery();
+		QueryPlan plan = indexed.plan(expressions);
+		
+		assertSame(expressions.get(1), plan.getIndexedExpression());
+		assertEquals(2, plan.getResidualExpressions().size());
+		assertEquals(2, plan.getCandidateCount());
+	}
+	
+	@Test
+	public void testUnindexableExpressionsFilterOnly() {
+		QueryPlan plan = indexed.plan(new QueryParser(
+				"lastName LIKE \"*ić\" and firstName!=\"Marin\""
+		).getQuery());
+		
+		assertFalse(plan.usesIndex());
+		assertEquals(2, plan.getResidualExpressions().size());
+	}
+	
+	@Test
+	public void testDirectLookup() {
+		List<ConditionalExpression> expressions = new QueryParser(
+				"lastName>\"A\" and jmbag=\"0000000003\""
+		).getQuery();
+		QueryPlan plan = indexed.plan(expressions);
+		
+		assertSame(expressions.get(1), plan.getIndexedExpression());
+		assertEquals(1, plan.getCandidateCount());
+		assertEquals(1, plan.execute().size());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testPlanNull() {
+		database.plan(null);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testCreateIndexNull() {
+		database.createIndex(null);
+	}
+}
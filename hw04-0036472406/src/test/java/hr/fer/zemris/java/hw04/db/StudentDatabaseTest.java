@@ -2,8 +2,15 @@ package hr.fer.zemris.java.hw04.db;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
 import org.junit.Test;
 
+import hr.fer.zemris.java.hw04.db.parser.QueryParser;
+
 public class StudentDatabaseTest {
 
 	private static StudentDatabase database = StudentDatabase.loadDefaultDatabase();
@@ -29,4 +36,67 @@ public class StudentDatabaseTest {
 		assertTrue(database.filter(rec -> rec.getFirstName().compareTo("Vice") == 0).size() == 1);
 		
 	}
+	
+	@Test
+	public void testColumnStorage() {
+		StudentDatabase columns = TestDatabases.loadDefault(StorageMode.COLUMNS);
+		
+		assertEquals(database.forJMBAG("0000000058").toString(), columns.forJMBAG("0000000058").toString());
+		assertTrue(columns.forJMBAG("0") == null);
+		
+		assertEquals(database.filter(rec -> true).toString(), columns.filter(rec -> true).toString());
+		assertTrue(columns.filter(rec -> rec.getFirstName().compareTo("Vice") == 0).size() == 1);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testNullStorageMode() {
+		new StudentDatabase(Arrays.asList("0000000001\tAkšamović\tMarin\t2"), null);
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testDuplicateJmbagColumns() {
+		new StudentDatabase(Arrays.asList(
+				"0000000001\tAkšamović\tMarin\t2",
+				"0000000001\tBakamović\tPetra\t3"
+		), StorageMode.COLUMNS);
+	}
+	
+	@Test
+	public void testParallelFilterKeepsOrder() {
+		StudentDatabase large = new StudentDatabase(largeRecords());
+		QueryFilter filter = new QueryFilter(
+				new QueryParser("lastName LIKE \"B*\" and finalGrade>\"2\"").getQuery()
+		);
+		
+		ForkJoinPool pool = new ForkJoinPool(4);
+		large.setPool(pool);
+		List<StudentRecord> parallel = large.filter(filter);
+		pool.shutdown();
+		large.setPool(null);
+		List<StudentRecord> sequential = large.filter(filter);
+		
+		assertTrue(parallel.size() > 0);
+		assertEquals(sequential, parallel);
+	}
+	
+	@Test
+	public void testUnsafeFilterSequential() {
+		StudentDatabase large = new StudentDatabase(largeRecords());
+		Thread caller = Thread.currentThread();
+		
+		assertEquals(
+				StudentDatabase.PARALLEL_THRESHOLD,
+				large.filter(rec -> Thread.currentThread() == caller).size()
+		);
+	}
+	
+	private static List<String> largeRecords() {
+		List<String> records = new ArrayList<>();
+		
+		for (int i = 0; i < StudentDatabase.PARALLEL_THRESHOLD; i++) {
+			records.add(String.format("%010d\t%c%d\tIme\t%d", i, 'A' + i % 26, i, 1 + i % 5));
+		}
+		
+		return records;
+	}
 }
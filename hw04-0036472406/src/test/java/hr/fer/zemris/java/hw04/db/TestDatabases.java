@@ -0,0 +1,20 @@
+package hr.fer.zemris.java.hw04.db;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+final class TestDatabases {
+
+	static final String DEFAULT_PATH = "src/main/resources/database.txt";
+	
+	private TestDatabases() {
+	}
+	
+	static StudentDatabase loadDefault(StorageMode mode) {
+		try {
+			return StudentDatabase.loadDatabase(DEFAULT_PATH, mode);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+}
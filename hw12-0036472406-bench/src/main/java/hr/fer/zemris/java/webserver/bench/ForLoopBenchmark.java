@@ -0,0 +1,91 @@
+package hr.fer.zemris.java.webserver.bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptProgram;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Measures the cost of iterating an empty FOR loop a million times, which
+ * consists only of comparing the loop's variable with the ending value and
+ * adding the step to it. Meant to be run with the allocation profiler, which
+ * shows how much garbage the number handling produces per iteration:
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar ForLoopBenchmark -prof gc
+ * </pre>
+ *
+ * @author Vice Ivušić
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForLoopBenchmark {
+
+	/** script iterating a million times without producing any output */
+	private static final String SCRIPT = "{$FOR i 1 1000000 1 $}{$END$}";
+
+	/** document tree of the script, executed by the visitor */
+	private DocumentNode documentNode;
+	/** compiled form of the script */
+	private SmartScriptProgram program;
+
+	/**
+	 * Parses and compiles the script.
+	 */
+	@Setup
+	public void setup() {
+		documentNode = new SmartScriptParser(SCRIPT).getDocumentNode();
+		program = SmartScriptProgram.compile(documentNode);
+	}
+
+	/**
+	 * Executes the loop by visiting the document tree.
+	 */
+	@Benchmark
+	public void visitor() {
+		new SmartScriptEngine(documentNode, createContext()).execute();
+	}
+
+	/**
+	 * Executes the compiled loop.
+	 */
+	@Benchmark
+	public void compiled() {
+		program.execute(createContext());
+	}
+
+	/**
+	 * Helper method for creating a fresh context whose output is discarded.
+	 *
+	 * @return new request context
+	 */
+	private static RequestContext createContext() {
+		return new RequestContext(
+			NullOutputStream.INSTANCE,
+			new HashMap<>(),
+			new HashMap<>(),
+			new ArrayList<>()
+		);
+	}
+}
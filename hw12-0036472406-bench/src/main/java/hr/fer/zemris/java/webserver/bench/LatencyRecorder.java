@@ -0,0 +1,130 @@
+package hr.fer.zemris.java.webserver.bench;
+
+import java.util.Arrays;
+
+/**
+ * Records the latencies of successful requests and the amount of failed ones.
+ * All latencies are kept, so percentiles are exact. A recorder is meant to be
+ * used by a single thread; recorders of multiple threads are combined with
+ * {@linkplain #merge(LatencyRecorder)} once they are done.
+ *
+ * @author Vice Ivušić
+ *
+ */
+public class LatencyRecorder {
+
+	/** recorded latencies, in nanoseconds; only the first {@code count} are valid */
+	private long[] latencies = new long[1024];
+	/** amount of recorded latencies */
+	private int count;
+	/** amount of responses with an unexpected status code */
+	private long statusErrors;
+	/** amount of requests which failed because of an I/O error or a timeout */
+	private long ioErrors;
+	/** whether the latencies are currently sorted */
+	private boolean sorted;
+
+	/**
+	 * Records the latency of a successful request.
+	 *
+	 * @param nanos latency in nanoseconds
+	 */
+	public void record(long nanos) {
+		if (count == latencies.length) {
+			latencies = Arrays.copyOf(latencies, count * 2);
+		}
+
+		latencies[count++] = nanos;
+		sorted = false;
+	}
+
+	/**
+	 * Records a response with an unexpected status code.
+	 */
+	public void recordStatusError() {
+		statusErrors++;
+	}
+
+	/**
+	 * Records a request which failed because of an I/O error or a timeout.
+	 */
+	public void recordIoError() {
+		ioErrors++;
+	}
+
+	/**
+	 * Adds everything recorded by the specified recorder to this recorder.
+	 *
+	 * @param other recorder to add
+	 * @throws NullPointerException if the specified recorder is null
+	 */
+	public void merge(LatencyRecorder other) {
+		if (other == null) {
+			throw new NullPointerException("Argument other cannot be null!");
+		}
+
+		if (count + other.count > latencies.length) {
+			latencies = Arrays.copyOf(latencies, count + other.count);
+		}
+
+		System.arraycopy(other.latencies, 0, latencies, count, other.count);
+		count += other.count;
+		statusErrors += other.statusErrors;
+		ioErrors += other.ioErrors;
+		sorted = false;
+	}
+
+	/**
+	 * Returns the amount of successful requests.
+	 *
+	 * @return amount of successful requests
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the amount of responses with an unexpected status code.
+	 *
+	 * @return amount of status errors
+	 */
+	public long getStatusErrors() {
+		return statusErrors;
+	}
+
+	/**
+	 * Returns the amount of requests which failed because of an I/O error or
+	 * a timeout.
+	 *
+	 * @return amount of I/O errors
+	 */
+	public long getIoErrors() {
+		return ioErrors;
+	}
+
+	/**
+	 * Returns the latency below or at which the specified percentage of
+	 * recorded latencies lies, or 0 if none have been recorded.
+	 *
+	 * @param percentile percentage of latencies, between 0 and 100
+	 * @return latency at the percentile, in nanoseconds
+	 * @throws IllegalArgumentException if the percentile is out of range
+	 */
+	public long getPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("Argument percentile must be between 0 and 100!");
+		}
+
+		if (count == 0) {
+			return 0;
+		}
+
+		if (!sorted) {
+			Arrays.sort(latencies, 0, count);
+			sorted = true;
+		}
+
+		int rank = (int) Math.ceil(percentile / 100 * count);
+		return latencies[Math.max(rank, 1) - 1];
+	}
+}
@@ -0,0 +1,424 @@
+package hr.fer.zemris.java.webserver.bench;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A single simulated client, sending requests over its own connection until
+ * the end of the run. Each request's path is chosen at random, by weight, from
+ * a mix of paths; the choices depend only on the seed, so they are the same in
+ * every run.
+ *
+ * <p>In a closed loop, the client sends its next request as soon as it has
+ * received the previous response. In an open loop, it sends requests on a
+ * fixed schedule, and each latency is measured from the time its request was
+ * scheduled for, rather than from the time it was sent. That way a server
+ * falling behind the schedule shows up in the latencies, instead of merely
+ * slowing the client down.
+ *
+ * <p>Responses with a status other than 200, and requests which fail because
+ * of an I/O error or a timeout, are recorded as errors. A connection which
+ * fails, or which the server closes, is opened again for the next request.
+ *
+ * @author Vice Ivušić
+ *
+ */
+public class LoadConnection implements Runnable {
+
+	/** address of the server */
+	private final InetSocketAddress address;
+	/** names of paths in the mix, along with the paths themselves */
+	private final Map<String, String> paths;
+	/** names of the paths in the mix, indexed by their position in the mix */
+	private final String[] names;
+	/** cumulative weights of the paths in the mix */
+	private final int[] cumulativeWeights;
+	/** whether the connection is kept open between requests */
+	private final boolean keepAlive;
+	/** whether the session cookie set by the server is sent back */
+	private final boolean cookies;
+	/** amount of milliseconds to wait for a response before giving up on it */
+	private final int timeout;
+	/** amount of nanoseconds between scheduled requests; 0 for a closed loop */
+	private final long interval;
+	/** seed of the random choices of paths */
+	private final long seed;
+
+	/** recorders of each path in the mix, mapped to the names of the paths */
+	private final Map<String, LatencyRecorder> recorders = new HashMap<>();
+
+	/** time from which on requests are recorded, in nanoseconds */
+	private long measureStart;
+	/** time after which no further requests are sent, in nanoseconds */
+	private long end;
+	/** time the next request is scheduled for, in nanoseconds; used only in an open loop */
+	private long nextRequest;
+
+	/** the current connection; null if none is open */
+	private Socket socket;
+	/** buffered input stream of the current connection */
+	private InputStream input;
+	/** output stream of the current connection */
+	private OutputStream output;
+	/** the session cookie to send with requests; null if none has been set */
+	private String sessionCookie;
+	/** whether the server has asked for the current connection to be closed */
+	private boolean closeRequested;
+
+	/**
+	 * Creates a new LoadConnection with the specified parameters.
+	 *
+	 * @param address address of the server
+	 * @param paths names of paths, mapped to the paths
+	 * @param mix names of paths in the mix, mapped to their weights
+	 * @param keepAlive whether the connection is kept open between requests
+	 * @param cookies whether the session cookie set by the server is sent back
+	 * @param timeout amount of milliseconds to wait for a response
+	 * @param interval amount of nanoseconds between scheduled requests; 0 for a closed loop
+	 * @param seed seed of the random choices of paths
+	 * @throws IllegalArgumentException if the mix names an unknown path or holds
+	 * 		   no positive weight
+	 */
+	public LoadConnection(InetSocketAddress address, Map<String, String> paths, Map<String, Integer> mix,
+			boolean keepAlive, boolean cookies, int timeout, long interval, long seed) {
+		this.address = address;
+		this.paths = paths;
+		this.keepAlive = keepAlive;
+		this.cookies = cookies;
+		this.timeout = timeout;
+		this.interval = interval;
+		this.seed = seed;
+
+		names = new String[mix.size()];
+		cumulativeWeights = new int[mix.size()];
+
+		int i = 0;
+		int total = 0;
+		for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+			if (!paths.containsKey(entry.getKey())) {
+				throw new IllegalArgumentException("Unknown path in mix: "+entry.getKey());
+			}
+
+			total += entry.getValue();
+			names[i] = entry.getKey();
+			cumulativeWeights[i] = total;
+			recorders.put(entry.getKey(), new LatencyRecorder());
+			i++;
+		}
+
+		if (total <= 0) {
+			throw new IllegalArgumentException("Mix has to hold a positive weight!");
+		}
+	}
+
+	/**
+	 * Sets the times between which the client runs. Has to be called before
+	 * the client is run.
+	 *
+	 * @param start time the client starts sending requests, in nanoseconds
+	 * @param measureStart time from which on requests are recorded, in nanoseconds
+	 * @param end time after which no further requests are sent, in nanoseconds
+	 */
+	public void schedule(long start, long measureStart, long end) {
+		this.measureStart = measureStart;
+		this.end = end;
+		this.nextRequest = start;
+	}
+
+	/**
+	 * Returns the recorders of each path in the mix, mapped to the names of
+	 * the paths. Should be called only after the client has finished.
+	 *
+	 * @return recorders of the paths
+	 */
+	public Map<String, LatencyRecorder> getRecorders() {
+		return recorders;
+	}
+
+	@Override
+	public void run() {
+		Random random = new Random(seed);
+		int totalWeight = cumulativeWeights[cumulativeWeights.length - 1];
+
+		while (true) {
+			long now = System.nanoTime();
+			if (now >= end) {
+				break;
+			}
+
+			long scheduled = now;
+			if (interval > 0) {
+				scheduled = nextRequest;
+				nextRequest += interval;
+				if (scheduled >= end) {
+					break;
+				}
+
+				while ((now = System.nanoTime()) < scheduled) {
+					LockSupport.parkNanos(scheduled - now);
+				}
+			}
+
+			String name = pick(random.nextInt(totalWeight));
+			int status;
+			try {
+				status = send(paths.get(name));
+			} catch (IOException ex) {
+				status = -1;
+				closeConnection();
+			}
+
+			long latency = System.nanoTime() - scheduled;
+			if (scheduled >= measureStart) {
+				LatencyRecorder recorder = recorders.get(name);
+				if (status == 200) {
+					recorder.record(latency);
+				} else if (status < 0) {
+					recorder.recordIoError();
+				} else {
+					recorder.recordStatusError();
+				}
+			}
+
+			if (!keepAlive || closeRequested) {
+				closeConnection();
+			}
+		}
+
+		closeConnection();
+	}
+
+	/**
+	 * Helper method for finding the name of the path whose range of the
+	 * cumulative weights holds the specified value.
+	 *
+	 * @param value value between 0 and the total weight
+	 * @return name of the chosen path
+	 */
+	private String pick(int value) {
+		for (int i = 0; i < cumulativeWeights.length; i++) {
+			if (value < cumulativeWeights[i]) {
+				return names[i];
+			}
+		}
+
+		return names[names.length - 1];
+	}
+
+	/**
+	 * Helper method for sending a request for the specified path and reading
+	 * the whole response. Opens a connection first, if none is open.
+	 *
+	 * @param path requested path
+	 * @return status code of the response
+	 * @throws IOException if the request could not be sent or the response
+	 * 		   could not be read
+	 */
+	private int send(String path) throws IOException {
+		if (socket == null) {
+			openConnection();
+		}
+
+		StringBuilder sb = new StringBuilder(128);
+		sb.append("GET ").append(path).append(" HTTP/1.1\r\n")
+		  .append("Host: ").append(address.getHostString()).append("\r\n");
+		if (!keepAlive) {
+			sb.append("Connection: close\r\n");
+		}
+		if (cookies && sessionCookie != null) {
+			sb.append("Cookie: ").append(sessionCookie).append("\r\n");
+		}
+		sb.append("\r\n");
+
+		output.write(sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+		output.flush();
+
+		return readResponse();
+	}
+
+	/**
+	 * Helper method for reading a whole response, remembering the session
+	 * cookie and whether the server wants the connection closed.
+	 *
+	 * @return status code of the response
+	 * @throws IOException if the response could not be read
+	 */
+	private int readResponse() throws IOException {
+		String statusLine = readLine();
+		String[] parts = statusLine.split(" ", 3);
+		if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+			throw new IOException("Invalid status line: "+statusLine);
+		}
+
+		int status;
+		try {
+			status = Integer.parseInt(parts[1]);
+		} catch (NumberFormatException ex) {
+			throw new IOException("Invalid status line: "+statusLine);
+		}
+
+		long contentLength = -1;
+		boolean chunked = false;
+		closeRequested = parts[0].equals("HTTP/1.0");
+
+		String line;
+		while (!(line = readLine()).isEmpty()) {
+			int colon = line.indexOf(':');
+			if (colon < 0) {
+				continue;
+			}
+
+			String name = line.substring(0, colon).trim().toLowerCase();
+			String value = line.substring(colon + 1).trim();
+
+			if (name.equals("content-length")) {
+				contentLength = Long.parseLong(value);
+			} else if (name.equals("transfer-encoding")) {
+				chunked = value.equalsIgnoreCase("chunked");
+			} else if (name.equals("connection")) {
+				closeRequested = value.equalsIgnoreCase("close");
+			} else if (name.equals("set-cookie") && value.startsWith("sid=")) {
+				int semicolon = value.indexOf(';');
+				sessionCookie = semicolon < 0 ? value : value.substring(0, semicolon);
+			}
+		}
+
+		if (chunked) {
+			readChunkedBody();
+		} else if (contentLength >= 0) {
+			skipFully(contentLength);
+		} else {
+			// the body lasts until the server closes the connection
+			while (input.read() >= 0) {
+			}
+			closeRequested = true;
+		}
+
+		return status;
+	}
+
+	/**
+	 * Helper method for reading a body sent using chunked transfer encoding.
+	 *
+	 * @throws IOException if the body could not be read
+	 */
+	private void readChunkedBody() throws IOException {
+		while (true) {
+			String sizeLine = readLine();
+			int semicolon = sizeLine.indexOf(';');
+			long size = Long.parseLong(
+				(semicolon < 0 ? sizeLine : sizeLine.substring(0, semicolon)).trim(),
+				16
+			);
+
+			if (size == 0) {
+				// trailer fields, if any, end with an empty line
+				while (!readLine().isEmpty()) {
+				}
+				return;
+			}
+
+			skipFully(size);
+			readLine();
+		}
+	}
+
+	/**
+	 * Helper method for skipping exactly the specified amount of bytes.
+	 *
+	 * @param amount amount of bytes to skip
+	 * @throws IOException if the connection ended before all bytes were skipped
+	 */
+	private void skipFully(long amount) throws IOException {
+		while (amount > 0) {
+			long skipped = input.skip(amount);
+			if (skipped <= 0) {
+				if (input.read() < 0) {
+					throw new EOFException("Connection closed in the middle of a body!");
+				}
+				skipped = 1;
+			}
+			amount -= skipped;
+		}
+	}
+
+	/**
+	 * Helper method for reading a single line ending with CRLF, without
+	 * the line ending.
+	 *
+	 * @return the line
+	 * @throws IOException if the connection ended before the end of the line
+	 */
+	private String readLine() throws IOException {
+		StringBuilder sb = new StringBuilder(64);
+
+		while (true) {
+			int b = input.read();
+			if (b < 0) {
+				throw new EOFException("Connection closed in the middle of a line!");
+			}
+			if (b == '\n') {
+				break;
+			}
+			sb.append((char) b);
+		}
+
+		int length = sb.length();
+		if (length > 0 && sb.charAt(length - 1) == '\r') {
+			sb.setLength(length - 1);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Helper method for opening a new connection to the server.
+	 *
+	 * @throws IOException if the connection could not be opened
+	 */
+	private void openConnection() throws IOException {
+		Socket socket = new Socket();
+		try {
+			socket.setTcpNoDelay(true);
+			socket.setSoTimeout(timeout);
+			socket.connect(address, timeout);
+
+			input = new BufferedInputStream(socket.getInputStream(), 16 * 1024);
+			output = socket.getOutputStream();
+		} catch (IOException ex) {
+			socket.close();
+			throw ex;
+		}
+
+		this.socket = socket;
+		closeRequested = false;
+	}
+
+	/**
+	 * Helper method for closing the current connection, if one is open.
+	 */
+	private void closeConnection() {
+		if (socket == null) {
+			return;
+		}
+
+		try {
+			socket.close();
+		} catch (IOException ignorable) {
+			// the connection is dropped anyway
+		}
+
+		socket = null;
+		input = null;
+		output = null;
+	}
+}
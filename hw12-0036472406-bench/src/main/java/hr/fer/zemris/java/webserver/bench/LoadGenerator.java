@@ -0,0 +1,255 @@
+package hr.fer.zemris.java.webserver.bench;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts a {@linkplain LoadServer} and drives it with a number of simulated
+ * clients, reporting throughput, latency percentiles and errors for each kind
+ * of request in the mix. After building the benchmarks, a run with the default
+ * options is started with:
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar hr.fer.zemris.java.webserver.bench.LoadGenerator
+ * </pre>
+ *
+ * <p>Options are given as {@code --name=value} arguments:
+ *
+ * <ul>
+ * <li>{@code connections}, the amount of simulated clients, each with its own
+ * connection (default {@value #DEFAULT_CONNECTIONS});</li>
+ * <li>{@code duration} and {@code warmup}, the amount of seconds requests are
+ * recorded for, and sent for before recording starts (defaults
+ * {@value #DEFAULT_DURATION} and {@value #DEFAULT_WARMUP});</li>
+ * <li>{@code rate}, the total amount of requests per second sent in an open
+ * loop; 0 runs a closed loop (default);</li>
+ * <li>{@code keepAlive}, whether connections are kept open between requests
+ * (default true);</li>
+ * <li>{@code cookies}, whether clients send the session cookie back (default true);</li>
+ * <li>{@code mix}, the weights of each kind of request, as a comma separated list
+ * of {@code name:weight} pairs (default {@value #DEFAULT_MIX}); the kinds are the
+ * keys of {@linkplain LoadServer#PATHS};</li>
+ * <li>{@code timeout}, the amount of milliseconds to wait for a response
+ * (default {@value #DEFAULT_TIMEOUT});</li>
+ * <li>{@code seed}, the seed of the random choices of requests (default
+ * {@value #DEFAULT_SEED});</li>
+ * <li>any server property, such as {@code server.workerThreads},
+ * {@code server.io} or {@code session.timeout}, which is passed on to the server.</li>
+ * </ul>
+ *
+ * <p>For example, the following compares the thread pool sizes under an open
+ * loop of 2000 requests per second over 64 connections:
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar hr.fer.zemris.java.webserver.bench.LoadGenerator \
+ *     --connections=64 --rate=2000 --server.workerThreads=4
+ * </pre>
+ *
+ * @author Vice Ivušić
+ *
+ */
+public class LoadGenerator {
+
+	/** default amount of simulated clients */
+	private static final int DEFAULT_CONNECTIONS = 16;
+	/** default amount of seconds requests are recorded for */
+	private static final int DEFAULT_DURATION = 10;
+	/** default amount of seconds requests are sent for before recording starts */
+	private static final int DEFAULT_WARMUP = 3;
+	/** default weights of each kind of request */
+	private static final String DEFAULT_MIX = "static:4,large:1,script:2,hello:1,calc:2";
+	/** default amount of milliseconds to wait for a response */
+	private static final int DEFAULT_TIMEOUT = 5000;
+	/** default seed of the random choices of requests */
+	private static final long DEFAULT_SEED = 42;
+
+	/**
+	 * Starting point of the program.
+	 *
+	 * @param args options, given as {@code --name=value}
+	 * @throws InterruptedException if interrupted while waiting for the clients
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		Map<String, String> options = new LinkedHashMap<>();
+		Map<String, String> serverProperties = new LinkedHashMap<>();
+
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			if (!arg.startsWith("--") || equals < 0) {
+				System.err.println("Options have to be given as --name=value, but got: "+arg);
+				System.exit(1);
+			}
+
+			String name = arg.substring(2, equals);
+			String value = arg.substring(equals + 1);
+			if (name.startsWith("server.") || name.startsWith("session.")) {
+				serverProperties.put(name, value);
+			} else {
+				options.put(name, value);
+			}
+		}
+
+		int connections = Integer.parseInt(option(options, "connections", DEFAULT_CONNECTIONS));
+		int duration = Integer.parseInt(option(options, "duration", DEFAULT_DURATION));
+		int warmup = Integer.parseInt(option(options, "warmup", DEFAULT_WARMUP));
+		double rate = Double.parseDouble(option(options, "rate", 0));
+		boolean keepAlive = Boolean.parseBoolean(option(options, "keepAlive", true));
+		boolean cookies = Boolean.parseBoolean(option(options, "cookies", true));
+		int timeout = Integer.parseInt(option(options, "timeout", DEFAULT_TIMEOUT));
+		long seed = Long.parseLong(option(options, "seed", DEFAULT_SEED));
+		Map<String, Integer> mix = parseMix(option(options, "mix", DEFAULT_MIX));
+
+		if (!options.isEmpty()) {
+			System.err.println("Unknown options: "+options.keySet());
+			System.exit(1);
+		}
+		if (connections < 1 || duration < 1 || warmup < 0 || rate < 0) {
+			System.err.println("Connections and duration have to be positive, warmup and rate non-negative!");
+			System.exit(1);
+		}
+
+		// in an open loop, each client sends its share of the rate
+		long interval = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) * connections / rate) : 0;
+
+		try (LoadServer server = new LoadServer(serverProperties)) {
+			server.start();
+
+			InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.getPort());
+			List<LoadConnection> clients = new ArrayList<>();
+			for (int i = 0; i < connections; i++) {
+				clients.add(new LoadConnection(
+					address, LoadServer.PATHS, mix, keepAlive, cookies, timeout, interval, seed + i
+				));
+			}
+
+			System.out.printf(
+				"%s loop%s, %d connections, keep-alive %s, %d s measured after %d s of warm-up%n",
+				rate > 0 ? "Open" : "Closed",
+				rate > 0 ? " at "+rate+" req/s" : "",
+				connections, keepAlive ? "on" : "off", duration, warmup
+			);
+			System.out.println("Server properties: "+serverProperties);
+			System.out.println("Mix: "+mix);
+			System.out.println();
+
+			long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+			long measureStart = start + TimeUnit.SECONDS.toNanos(warmup);
+			long end = measureStart + TimeUnit.SECONDS.toNanos(duration);
+
+			List<Thread> threads = new ArrayList<>();
+			for (int i = 0; i < connections; i++) {
+				LoadConnection client = clients.get(i);
+				// clients of an open loop are spread evenly over the interval
+				client.schedule(start + (interval * i) / connections, measureStart, end);
+
+				Thread thread = new Thread(client, "load-client-"+i);
+				threads.add(thread);
+				thread.start();
+			}
+
+			for (Thread thread : threads) {
+				thread.join();
+			}
+
+			report(clients, mix, duration);
+		}
+	}
+
+	/**
+	 * Helper method for printing the combined results of all clients.
+	 *
+	 * @param clients clients which have finished
+	 * @param mix weights of each kind of request, mapped to their names
+	 * @param duration amount of seconds requests were recorded for
+	 */
+	private static void report(List<LoadConnection> clients, Map<String, Integer> mix, int duration) {
+		Map<String, LatencyRecorder> results = new LinkedHashMap<>();
+		LatencyRecorder total = new LatencyRecorder();
+
+		for (String name : mix.keySet()) {
+			LatencyRecorder combined = new LatencyRecorder();
+			for (LoadConnection client : clients) {
+				combined.merge(client.getRecorders().get(name));
+			}
+			results.put(name, combined);
+			total.merge(combined);
+		}
+		results.put("total", total);
+
+		System.out.printf(
+			"%-8s %10s %10s %8s %8s %9s %9s %9s%n",
+			"kind", "requests", "req/s", "status", "io", "p50 ms", "p99 ms", "p999 ms"
+		);
+		for (Map.Entry<String, LatencyRecorder> entry : results.entrySet()) {
+			LatencyRecorder recorder = entry.getValue();
+			System.out.printf(
+				"%-8s %10d %10.1f %8d %8d %9.3f %9.3f %9.3f%n",
+				entry.getKey(),
+				recorder.getCount(),
+				(double) recorder.getCount() / duration,
+				recorder.getStatusErrors(),
+				recorder.getIoErrors(),
+				millis(recorder.getPercentile(50)),
+				millis(recorder.getPercentile(99)),
+				millis(recorder.getPercentile(99.9))
+			);
+		}
+	}
+
+	/**
+	 * Helper method for parsing a mix of requests, given as a comma separated
+	 * list of {@code name:weight} pairs.
+	 *
+	 * @param text the mix
+	 * @return weights of each kind of request, mapped to their names
+	 * @throws IllegalArgumentException if the mix is malformed
+	 */
+	private static Map<String, Integer> parseMix(String text) {
+		Map<String, Integer> mix = new LinkedHashMap<>();
+
+		for (String pair : text.split(",")) {
+			String[] parts = pair.split(":");
+			if (parts.length != 2) {
+				throw new IllegalArgumentException("Mix entries have to be given as name:weight, but got: "+pair);
+			}
+
+			int weight = Integer.parseInt(parts[1].trim());
+			if (weight < 0) {
+				throw new IllegalArgumentException("Weights in mix cannot be negative: "+pair);
+			}
+			if (weight > 0) {
+				mix.put(parts[0].trim(), weight);
+			}
+		}
+
+		return mix;
+	}
+
+	/**
+	 * Helper method for removing the option with the specified name from the
+	 * specified map, returning its value or the specified default value.
+	 *
+	 * @param options map of options which haven't been used yet
+	 * @param name name of the option
+	 * @param defaultValue value used if the option isn't given
+	 * @return value of the option
+	 */
+	private static String option(Map<String, String> options, String name, Object defaultValue) {
+		String value = options.remove(name);
+		return value == null ? defaultValue.toString() : value;
+	}
+
+	/**
+	 * Helper method for converting nanoseconds to milliseconds.
+	 *
+	 * @param nanos amount of nanoseconds
+	 * @return amount of milliseconds
+	 */
+	private static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+}
@@ -0,0 +1,232 @@
+package hr.fer.zemris.java.webserver.bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import hr.fer.zemris.java.webserver.SmartHttpServer;
+
+/**
+ * A {@linkplain SmartHttpServer} running on loopback, serving a generated
+ * document root from a temporary directory. The document root always holds
+ * the same files, so runs against it are comparable:
+ *
+ * <ul>
+ * <li>{@code /index.html}, a small static file, held in the static cache;</li>
+ * <li>{@code /large.txt}, a static file too large for the static cache,
+ * transferred from the file system;</li>
+ * <li>{@code /scripts/loop.smscr}, a script with a loop and function calls;</li>
+ * <li>{@code /hello} and {@code /calc}, the workers of the same names, the
+ * latter dispatching to a private script.</li>
+ * </ul>
+ *
+ * <p>The server's configuration is the default one, with the port set to a
+ * free one and any property overridden as specified. The temporary directory
+ * is deleted once the server is closed.
+ *
+ * @author Vice Ivušić
+ *
+ */
+public class LoadServer implements AutoCloseable {
+
+	/** paths served by the generated document root, mapped to the names they are reported under */
+	public static final Map<String, String> PATHS;
+
+	static {
+		Map<String, String> paths = new LinkedHashMap<>();
+		paths.put("static", "/index.html");
+		paths.put("large", "/large.txt");
+		paths.put("script", "/scripts/loop.smscr");
+		paths.put("hello", "/hello");
+		paths.put("calc", "/calc?a=3&b=4");
+		PATHS = Collections.unmodifiableMap(paths);
+	}
+
+	/** size of the static file too large for the static cache, in bytes */
+	private static final int LARGE_FILE_SIZE = 1024 * 1024;
+
+	/** temporary directory holding the configuration and the document root */
+	private final Path directory;
+	/** port the server listens on */
+	private final int port;
+	/** the server */
+	private final SmartHttpServer server;
+
+	/**
+	 * Creates the document root and configuration in a new temporary
+	 * directory, and creates a server from them. The server isn't started.
+	 *
+	 * @param overrides server properties overriding the default ones
+	 * @throws NullPointerException if the specified map is null
+	 * @throws UncheckedIOException if the files could not be created
+	 */
+	public LoadServer(Map<String, String> overrides) {
+		if (overrides == null) {
+			throw new NullPointerException("Argument overrides cannot be null!");
+		}
+
+		try {
+			directory = Files.createTempDirectory("smarthttp-load");
+			port = findFreePort();
+
+			Map<String, String> properties = new LinkedHashMap<>();
+			properties.put("server.address", "127.0.0.1");
+			properties.put("server.port", Integer.toString(port));
+			properties.put("server.workerThreads", "10");
+			properties.put("server.documentRoot", directory.resolve("webroot").toString());
+			properties.put("server.mimeConfig", directory.resolve("mime.properties").toString());
+			properties.put("server.workers", directory.resolve("workers.properties").toString());
+			properties.put("session.timeout", "600");
+			properties.putAll(overrides);
+
+			writeConfiguration(properties);
+			writeDocumentRoot();
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+
+		server = new SmartHttpServer(directory.resolve("server.properties").toString());
+	}
+
+	/**
+	 * Starts the server.
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Returns the port the server listens on.
+	 *
+	 * @return port of the server
+	 */
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * Stops the server and deletes the temporary directory.
+	 */
+	@Override
+	public void close() {
+		server.stop();
+
+		try {
+			deleteRecursively(directory);
+		} catch (IOException ignorable) {
+			// the directory is temporary anyway
+		}
+	}
+
+	/**
+	 * Helper method for writing the server's configuration files.
+	 *
+	 * @param properties server properties
+	 * @throws IOException if any of the files could not be written
+	 */
+	private void writeConfiguration(Map<String, String> properties) throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, String> entry : properties.entrySet()) {
+			// backslashes of Windows paths would be taken as escapes
+			sb.append(entry.getKey()).append(" = ")
+			  .append(entry.getValue().replace('\\', '/')).append('\n');
+		}
+		write("server.properties", sb.toString());
+
+		write("mime.properties",
+			"html = text/html\n"
+			+ "txt = text/plain\n"
+		);
+		write("workers.properties",
+			"/hello = hr.fer.zemris.java.webserver.workers.HelloWorker\n"
+			+ "/calc = hr.fer.zemris.java.webserver.workers.SumWorker\n"
+		);
+	}
+
+	/**
+	 * Helper method for writing the files of the document root.
+	 *
+	 * @throws IOException if any of the files could not be written
+	 */
+	private void writeDocumentRoot() throws IOException {
+		StringBuilder index = new StringBuilder("<html><body>\n");
+		for (int i = 0; i < 32; i++) {
+			index.append("<p>Paragraph number ").append(i).append(" of the index page.</p>\n");
+		}
+		write("webroot/index.html", index.append("</body></html>\n").toString());
+
+		StringBuilder large = new StringBuilder(LARGE_FILE_SIZE);
+		while (large.length() < LARGE_FILE_SIZE) {
+			large.append("The quick brown fox jumps over the lazy dog.\n");
+		}
+		large.setLength(LARGE_FILE_SIZE);
+		write("webroot/large.txt", large.toString());
+
+		write("webroot/scripts/loop.smscr",
+			"{$= \"text/plain\" @setMimeType $}"
+			+ "{$ FOR i 1 20 1 $}Line {$= i $}: {$= i i * @sin \"0.000\" @decfmt $}\n{$END$}"
+		);
+		write("webroot/private/calc.smscr",
+			"{$= \"text/html\" @setMimeType $}"
+			+ "<html><body>{$= \"a\" 0 @tparamGet $} + {$= \"b\" 0 @tparamGet $}"
+			+ " = {$= \"sum\" 0 @tparamGet $}</body></html>\n"
+		);
+	}
+
+	/**
+	 * Helper method for writing the specified text into a file on the
+	 * specified path, relative to the temporary directory.
+	 *
+	 * @param path path of the file
+	 * @param text contents of the file
+	 * @throws IOException if the file could not be written
+	 */
+	private void write(String path, String text) throws IOException {
+		Path file = directory.resolve(path);
+		Files.createDirectories(file.getParent());
+		Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Helper method for finding a port no socket is currently bound to.
+	 *
+	 * @return a free port
+	 * @throws IOException if no port could be found
+	 */
+	private static int findFreePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+
+	/**
+	 * Helper method for deleting the specified directory with all its contents.
+	 *
+	 * @param root directory to delete
+	 * @throws IOException if anything could not be deleted
+	 */
+	private static void deleteRecursively(Path root) throws IOException {
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
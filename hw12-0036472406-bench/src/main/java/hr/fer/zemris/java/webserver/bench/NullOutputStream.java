@@ -0,0 +1,24 @@
+package hr.fer.zemris.java.webserver.bench;
+
+import java.io.OutputStream;
+
+/**
+ * Output stream which discards everything written to it, so benchmarks
+ * measure producing a response rather than transferring it.
+ *
+ * @author Vice Ivušić
+ *
+ */
+class NullOutputStream extends OutputStream {
+
+	/** shared instance of the stream */
+	static final NullOutputStream INSTANCE = new NullOutputStream();
+
+	@Override
+	public void write(int b) {
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) {
+	}
+}
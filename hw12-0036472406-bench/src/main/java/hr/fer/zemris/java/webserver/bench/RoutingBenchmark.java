@@ -0,0 +1,122 @@
+package hr.fer.zemris.java.webserver.bench;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hr.fer.zemris.java.webserver.IWebWorker;
+import hr.fer.zemris.java.webserver.RequestRouter;
+
+/**
+ * Measures the cost of deciding which worker serves a requested path, for
+ * a mapped worker, a worker requested through /ext/ and a static file. The
+ * per-request dispatching the server used to do, matching a regular expression
+ * and instantiating /ext/ workers through reflection on every request, is
+ * compared with the router built once at startup:
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar RoutingBenchmark
+ * </pre>
+ *
+ * @author Vice Ivušić
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutingBenchmark {
+
+	/** requested path */
+	@Param({"/hello", "/ext/EchoParams", "/index.html"})
+	private String path;
+
+	/** worker mappings, as configured in workers.properties */
+	private Map<String, IWebWorker> workersMap;
+	/** router built from the same mappings */
+	private RequestRouter router;
+
+	/**
+	 * Builds the worker mappings and the router.
+	 */
+	@Setup
+	public void setup() {
+		Map<String, String> workerClasses = new HashMap<>();
+		workerClasses.put("/hello", "hr.fer.zemris.java.webserver.workers.HelloWorker");
+		workerClasses.put("/cw", "hr.fer.zemris.java.webserver.workers.CircleWorker");
+		workerClasses.put("/calc", "hr.fer.zemris.java.webserver.workers.SumWorker");
+
+		workersMap = new HashMap<>();
+		for (Map.Entry<String, String> entry : workerClasses.entrySet()) {
+			workersMap.put(entry.getKey(), loadWebWorker(entry.getValue()));
+		}
+
+		router = new RequestRouter(workerClasses);
+	}
+
+	/**
+	 * Routes the path the way the server did before the router was introduced.
+	 *
+	 * @return worker serving the path, or null for a static file
+	 */
+	@Benchmark
+	public IWebWorker perRequest() {
+		if (path.startsWith("/private")) {
+			return null;
+		}
+
+		if (path.matches("^[/]ext[/][^/]*$")) {
+			String className = path.replaceFirst("^[/]ext[/]([^/]*)$", "$1");
+			return loadWebWorker("hr.fer.zemris.java.webserver.workers."+className);
+		}
+
+		if (workersMap.containsKey(path)) {
+			return workersMap.get(path);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Routes the path using the router.
+	 *
+	 * @return worker serving the path, or null for a static file
+	 */
+	@Benchmark
+	public IWebWorker router() {
+		if (router.isPrivate(path)) {
+			return null;
+		}
+
+		return router.findWorker(path);
+	}
+
+	/**
+	 * Helper method for instantiating the worker class with the specified name.
+	 *
+	 * @param fqcnToken fully qualified class name
+	 * @return an instance of the class
+	 */
+	private static IWebWorker loadWebWorker(String fqcnToken) {
+		try {
+			return (IWebWorker) RoutingBenchmark.class.getClassLoader().loadClass(fqcnToken)
+				.getDeclaredConstructor().newInstance();
+		} catch (Exception ex) {
+			throw new RuntimeException("Could not load class: "+fqcnToken, ex);
+		}
+	}
+}
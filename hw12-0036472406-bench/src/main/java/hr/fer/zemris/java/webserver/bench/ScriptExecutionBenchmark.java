@@ -0,0 +1,117 @@
+package hr.fer.zemris.java.webserver.bench;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptProgram;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Compares executing a smart script by visiting its document tree with
+ * {@linkplain SmartScriptEngine} against executing the same script compiled
+ * into a {@linkplain SmartScriptProgram}. Parsing and compiling are done once
+ * during setup, so only the execution itself is measured.
+ *
+ * <p>Scripts are loaded from the folder given by the {@code webroot} system
+ * property, which defaults to the webroot of the server module. To run:
+ *
+ * <pre>
+ * mvn -f ../hw12-0036472406/pom.xml install
+ * mvn package
+ * java -jar target/benchmarks.jar ScriptExecutionBenchmark
+ * </pre>
+ *
+ * @author Vice Ivušić
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScriptExecutionBenchmark {
+
+	/** name of the script being executed */
+	@Param({"fibonacci.smscr", "zbrajanje.smscr"})
+	private String script;
+
+	/** document tree of the script, executed by the visitor */
+	private DocumentNode documentNode;
+	/** compiled form of the script */
+	private SmartScriptProgram program;
+	/** parameters given to the script */
+	private Map<String, String> parameters;
+
+	/**
+	 * Loads, parses and compiles the script being benchmarked.
+	 *
+	 * @throws IOException if the script could not be read
+	 */
+	@Setup
+	public void setup() throws IOException {
+		String webroot = System.getProperty("webroot", "../hw12-0036472406/webroot");
+		String body = new String(
+			Files.readAllBytes(Paths.get(webroot, "scripts", script)),
+			StandardCharsets.UTF_8
+		);
+
+		documentNode = new SmartScriptParser(body).getDocumentNode();
+		program = SmartScriptProgram.compile(documentNode);
+
+		parameters = new HashMap<>();
+		parameters.put("a", "4");
+		parameters.put("b", "2");
+	}
+
+	/**
+	 * Executes the script by visiting its document tree.
+	 */
+	@Benchmark
+	public void visitor() {
+		new SmartScriptEngine(documentNode, createContext()).execute();
+	}
+
+	/**
+	 * Executes the compiled script.
+	 */
+	@Benchmark
+	public void compiled() {
+		program.execute(createContext());
+	}
+
+	/**
+	 * Helper method for creating a fresh context whose output is discarded.
+	 *
+	 * @return new request context
+	 */
+	private RequestContext createContext() {
+		return new RequestContext(
+			NullOutputStream.INSTANCE,
+			parameters,
+			new HashMap<>(),
+			new ArrayList<>()
+		);
+	}
+}
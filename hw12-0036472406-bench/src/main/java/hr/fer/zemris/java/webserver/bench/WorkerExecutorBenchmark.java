@@ -0,0 +1,134 @@
+package hr.fer.zemris.java.webserver.bench;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import hr.fer.zemris.java.webserver.WorkerExecutors;
+
+/**
+ * Compares the executors which may run the server's client workers, with
+ * workers that block for a while, as if waiting for a database or another
+ * service. Each operation serves a batch of such requests, each of which,
+ * as in the server, takes a permit for the duration of the request when
+ * running on virtual threads:
+ *
+ * <pre>
+ * java -jar target/benchmarks.jar WorkerExecutorBenchmark
+ * </pre>
+ *
+ * <p>The {@value WorkerExecutors#VIRTUAL} executor requires running the
+ * benchmark on Java 21 or newer; otherwise, its runs fail during setup.
+ *
+ * @author Vice Ivušić
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WorkerExecutorBenchmark {
+
+	/** amount of requests served in each operation */
+	private static final int REQUESTS = 1000;
+
+	/** type of the executor */
+	@Param({WorkerExecutors.PLATFORM, WorkerExecutors.VIRTUAL})
+	private String executor;
+
+	/** amount of milliseconds each request blocks for */
+	@Param({"1", "10"})
+	private long latency;
+
+	/** amount of platform threads, as in the default configuration */
+	@Param({"10"})
+	private int workerThreads;
+
+	/** amount of requests served at once on virtual threads, as in the default configuration */
+	@Param({"1000"})
+	private int maxConcurrentRequests;
+
+	/** executor running the requests */
+	private ExecutorService threadPool;
+	/** permits for requests being served at once; null for platform threads */
+	private Semaphore requestPermits;
+
+	/**
+	 * Creates the executor.
+	 */
+	@Setup(Level.Trial)
+	public void setup() {
+		threadPool = WorkerExecutors.newExecutor(executor, workerThreads);
+		requestPermits = executor.equals(WorkerExecutors.VIRTUAL)
+			? new Semaphore(maxConcurrentRequests)
+			: null;
+	}
+
+	/**
+	 * Shuts the executor down.
+	 */
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		threadPool.shutdownNow();
+	}
+
+	/**
+	 * Serves a batch of blocking requests and waits for all of them to finish.
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	@Benchmark
+	public void serveBatch() throws InterruptedException {
+		CountDownLatch done = new CountDownLatch(REQUESTS);
+
+		for (int i = 0; i < REQUESTS; i++) {
+			threadPool.execute(() -> {
+				try {
+					serveRequest();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				} finally {
+					done.countDown();
+				}
+			});
+		}
+
+		done.await();
+	}
+
+	/**
+	 * Helper method for serving a single request, which only blocks.
+	 *
+	 * @throws InterruptedException if interrupted while blocking
+	 */
+	private void serveRequest() throws InterruptedException {
+		if (requestPermits == null) {
+			Thread.sleep(latency);
+			return;
+		}
+
+		requestPermits.acquire();
+		try {
+			Thread.sleep(latency);
+		} finally {
+			requestPermits.release();
+		}
+	}
+}
@@ -0,0 +1,236 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.text.DecimalFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Enumeration of the built-in functions which can be called from an echo tag
+ * of a smart script. Each {@linkplain FunctionRegistry} contains all of them,
+ * registered under their names.
+ *
+ * <p>See {@linkplain SmartScriptEngine} for a description of each function.
+ *
+ * @author Vice Ivušić
+ *
+ */
+enum BuiltinFunction implements IScriptFunction {
+
+	/** calculates the sine of an argument given in degrees */
+	SIN("sin") {
+		@Override
+		public void apply(ExecutionState state) {
+			state.peek().sin();
+		}
+	},
+
+	/** formats a value using a decimal format pattern */
+	DECFMT("decfmt") {
+		@Override
+		public void apply(ExecutionState state) {
+			DecimalFormat decFormat = decimalFormat((String) state.pop().getValue());
+			Object value = state.pop().getValue();
+
+			state.push(new ValueWrapper(decFormat.format(value)));
+		}
+	},
+
+	/** duplicates an argument */
+	DUP("dup") {
+		@Override
+		public void apply(ExecutionState state) {
+			state.push(new ValueWrapper(state.peek().getValue()));
+		}
+	},
+
+	/** swaps the order of two arguments */
+	SWAP("swap") {
+		@Override
+		public void apply(ExecutionState state) {
+			ValueWrapper a = state.pop();
+			ValueWrapper b = state.pop();
+
+			state.push(a);
+			state.push(b);
+		}
+	},
+
+	/** sets the mime type of the request context */
+	SET_MIME_TYPE("setMimeType") {
+		@Override
+		public void apply(ExecutionState state) {
+			String mimeType = (String) state.pop().getValue();
+
+			state.getRequestContext().setMimeType(mimeType);
+		}
+	},
+
+	/** retrieves a parameter, or a default value */
+	PARAM_GET("paramGet") {
+		@Override
+		public void apply(ExecutionState state) {
+			Object dv = state.pop().getValue();
+			Object name = state.pop().getValue();
+
+			pushValueOrDefault(state, state.getRequestContext().getParameter(name.toString()), dv);
+		}
+	},
+
+	/** retrieves a persistent parameter, or a default value */
+	PPARAM_GET("pparamGet", true) {
+		@Override
+		public void apply(ExecutionState state) {
+			Object dv = state.pop().getValue();
+			Object name = state.pop().getValue();
+
+			RequestContext rc = state.getRequestContext();
+			pushValueOrDefault(state, rc.getPersistentParameter(name.toString()), dv);
+		}
+	},
+
+	/** sets a persistent parameter */
+	PPARAM_SET("pparamSet", true) {
+		@Override
+		public void apply(ExecutionState state) {
+			Object name = state.pop().getValue();
+			Object value = state.pop().getValue();
+
+			state.getRequestContext().setPersistentParameter(name.toString(), value.toString());
+		}
+	},
+
+	/** removes a persistent parameter */
+	PPARAM_DEL("pparamDel", true) {
+		@Override
+		public void apply(ExecutionState state) {
+			Object name = state.pop().getValue();
+
+			state.getRequestContext().removePersistentParameter(name.toString());
+		}
+	},
+
+	/** retrieves a temporary parameter, or a default value */
+	TPARAM_GET("tparamGet") {
+		@Override
+		public void apply(ExecutionState state) {
+			Object dv = state.pop().getValue();
+			Object name = state.pop().getValue();
+
+			RequestContext rc = state.getRequestContext();
+			pushValueOrDefault(state, rc.getTemporaryParameter(name.toString()), dv);
+		}
+	},
+
+	/** sets a temporary parameter */
+	TPARAM_SET("tparamSet") {
+		@Override
+		public void apply(ExecutionState state) {
+			Object name = state.pop().getValue();
+			Object value = state.pop().getValue();
+
+			state.getRequestContext().setTemporaryParameter(name.toString(), value.toString());
+		}
+	},
+
+	/** removes a temporary parameter */
+	TPARAM_DEL("tparamDel") {
+		@Override
+		public void apply(ExecutionState state) {
+			Object name = state.pop().getValue();
+
+			state.getRequestContext().removeTemporaryParameter(name.toString());
+		}
+	};
+
+	/** maximum amount of decimal format patterns cached */
+	private static final int DECIMAL_FORMAT_CACHE_SIZE = 64;
+
+	/**
+	 * decimal formats shared by all threads, mapped to their patterns; formats
+	 * aren't thread safe, so they are only ever cloned, never used directly
+	 */
+	private static final Map<String, DecimalFormat> DECIMAL_FORMATS = new ConcurrentHashMap<>();
+
+	/** name used for calling this function from a script */
+	private String name;
+	/** flag indicating the function uses the state of the client's session */
+	private boolean sessionBound;
+
+	/**
+	 * Creates a new BuiltinFunction with the specified name, which doesn't
+	 * use the state of the client's session.
+	 *
+	 * @param name name used for calling the function from a script
+	 */
+	private BuiltinFunction(String name) {
+		this(name, false);
+	}
+
+	/**
+	 * Creates a new BuiltinFunction with the specified parameters.
+	 *
+	 * @param name name used for calling the function from a script
+	 * @param sessionBound whether the function uses the state of the client's session
+	 */
+	private BuiltinFunction(String name, boolean sessionBound) {
+		this.name = name;
+		this.sessionBound = sessionBound;
+	}
+
+	/**
+	 * Returns the name used for calling this function from a script.
+	 *
+	 * @return name of this function
+	 */
+	String getName() {
+		return name;
+	}
+
+	@Override
+	public boolean isSessionBound() {
+		return sessionBound;
+	}
+
+	/**
+	 * Helper method for retrieving a decimal format with the specified pattern,
+	 * which only the calling thread uses. The format is cloned from a shared one,
+	 * which saves parsing the pattern again, whether a thread serves many requests,
+	 * as a pooled platform thread does, or just one connection, as a virtual thread
+	 * does. Once {@value #DECIMAL_FORMAT_CACHE_SIZE} patterns are cached, formats
+	 * with any other pattern are created anew each time.
+	 *
+	 * @param pattern pattern of the decimal format
+	 * @return decimal format with the specified pattern
+	 */
+	private static DecimalFormat decimalFormat(String pattern) {
+		DecimalFormat format = DECIMAL_FORMATS.get(pattern);
+		if (format != null) {
+			return (DecimalFormat) format.clone();
+		}
+
+		format = new DecimalFormat(pattern);
+		if (DECIMAL_FORMATS.size() < DECIMAL_FORMAT_CACHE_SIZE) {
+			DECIMAL_FORMATS.putIfAbsent(pattern, (DecimalFormat) format.clone());
+		}
+
+		return format;
+	}
+
+	/**
+	 * Helper method for pushing either the specified value or, if it is
+	 * null, the specified default value onto the operand stack.
+	 *
+	 * @param state state of the script being executed
+	 * @param value value to push; may be null
+	 * @param defaultValue value to push if the value is null
+	 */
+	private static void pushValueOrDefault(ExecutionState state, Object value, Object defaultValue) {
+		state.push(
+			value == null
+			? new ValueWrapper(defaultValue.toString())
+			: new ValueWrapper(value.toString())
+		);
+	}
+}
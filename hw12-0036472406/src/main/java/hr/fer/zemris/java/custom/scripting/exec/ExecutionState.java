@@ -0,0 +1,107 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.util.ArrayList;
+import java.util.EmptyStackException;
+import java.util.List;
+
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Represents the state of a single execution of a smart script, either by a
+ * {@linkplain SmartScriptProgram} or by a {@linkplain SmartScriptEngine}.
+ * Holds the context used for parameters and output, the values of variables
+ * and the operand stack used while evaluating an echo tag. The engine keeps the
+ * values of variables by their names instead, so it uses only the operand stack.
+ *
+ * <p>A new state is created for every execution, so a single compiled program
+ * can be executed by multiple threads at once. Functions called from a script,
+ * see {@linkplain IScriptFunction}, receive the state to pop their arguments
+ * from and push their results onto.
+ *
+ * @author Vice Ivušić
+ *
+ */
+public class ExecutionState {
+
+	/** context to be used for parameters and output */
+	private RequestContext requestContext;
+	/** stacks holding the values of variables, identified by their slots */
+	private VariableFrame variables;
+	/** operand stack used while evaluating an echo tag */
+	private List<ValueWrapper> operands = new ArrayList<>();
+
+	/**
+	 * Creates a new ExecutionState for the specified context.
+	 *
+	 * @param requestContext context to be used for parameters and output
+	 * @param slotCount amount of variable slots used by the program
+	 */
+	ExecutionState(RequestContext requestContext, int slotCount) {
+		this.requestContext = requestContext;
+		this.variables = new VariableFrame(slotCount);
+	}
+
+	/**
+	 * Returns the context to be used for parameters and output.
+	 *
+	 * @return context of this execution
+	 */
+	public RequestContext getRequestContext() {
+		return requestContext;
+	}
+
+	/**
+	 * Returns the stacks holding the values of variables.
+	 *
+	 * @return values of variables
+	 */
+	VariableFrame getVariables() {
+		return variables;
+	}
+
+	/**
+	 * Pushes the specified value onto the operand stack.
+	 *
+	 * @param value value to push
+	 */
+	public void push(ValueWrapper value) {
+		operands.add(value);
+	}
+
+	/**
+	 * Removes and returns the value on top of the operand stack.
+	 *
+	 * @return value on top of the operand stack
+	 * @throws EmptyStackException if the operand stack is empty
+	 */
+	public ValueWrapper pop() {
+		if (operands.isEmpty()) {
+			throw new EmptyStackException();
+		}
+
+		return operands.remove(operands.size()-1);
+	}
+
+	/**
+	 * Returns the value on top of the operand stack without removing it.
+	 *
+	 * @return value on top of the operand stack
+	 * @throws EmptyStackException if the operand stack is empty
+	 */
+	public ValueWrapper peek() {
+		if (operands.isEmpty()) {
+			throw new EmptyStackException();
+		}
+
+		return operands.get(operands.size()-1);
+	}
+
+	/**
+	 * Returns the values on the operand stack, from bottom to top.
+	 *
+	 * @return values on the operand stack
+	 */
+	List<ValueWrapper> getOperands() {
+		return operands;
+	}
+}
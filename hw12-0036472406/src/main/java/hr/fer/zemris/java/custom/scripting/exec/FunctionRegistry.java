@@ -0,0 +1,64 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps the names used for calling functions from smart scripts to the
+ * functions themselves. A new registry contains all of the built-in functions
+ * described by {@linkplain SmartScriptEngine}, and further functions can be
+ * registered under names which aren't taken yet.
+ *
+ * <p>Functions are resolved from a registry once, while a script is being
+ * compiled, so the cost of calling a function doesn't depend on the amount
+ * of registered functions. A registry may be shared by multiple threads only
+ * once no more functions are being registered into it.
+ *
+ * @author Vice Ivušić
+ *
+ */
+public class FunctionRegistry {
+
+	/** registered functions, mapped to their names */
+	private Map<String, IScriptFunction> functions = new HashMap<>();
+
+	/**
+	 * Creates a new FunctionRegistry containing the built-in functions.
+	 */
+	public FunctionRegistry() {
+		for (BuiltinFunction function : BuiltinFunction.values()) {
+			functions.put(function.getName(), function);
+		}
+	}
+
+	/**
+	 * Registers the specified function under the specified name.
+	 *
+	 * @param name name used for calling the function from a script
+	 * @param function function to register
+	 * @throws NullPointerException if either argument is null
+	 * @throws IllegalArgumentException if a function with the specified
+	 * 		   name has already been registered
+	 */
+	public void register(String name, IScriptFunction function) {
+		if (name == null || function == null) {
+			throw new NullPointerException("Arguments cannot be null!");
+		}
+		if (functions.containsKey(name)) {
+			throw new IllegalArgumentException("Function "+name+" has already been registered!");
+		}
+
+		functions.put(name, function);
+	}
+
+	/**
+	 * Returns the function registered under the specified name, or null if
+	 * no such function exists.
+	 *
+	 * @param name name of the function
+	 * @return function with the specified name, or null
+	 */
+	public IScriptFunction get(String name) {
+		return functions.get(name);
+	}
+}
@@ -0,0 +1,41 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+/**
+ * Specifies a function which can be called from an echo tag of a smart script.
+ * A function pops its arguments from the operand stack of the execution state
+ * and pushes its results onto it. Functions are registered under their names in
+ * a {@linkplain FunctionRegistry}, from which they are resolved before the
+ * script is executed.
+ *
+ * <p>A single instance of a function is used by all scripts, possibly by
+ * multiple threads at once, so implementations should not keep any state
+ * between calls.
+ *
+ * @author Vice Ivušić
+ *
+ */
+public interface IScriptFunction {
+
+	/**
+	 * Applies this function onto the operand stack of the specified
+	 * execution state.
+	 *
+	 * @param state state of the script being executed
+	 */
+	public void apply(ExecutionState state);
+
+	/**
+	 * Returns <b>true</b> if this function depends on anything other than its
+	 * arguments and the request parameters, such as the state of the client's
+	 * session, so its effect may differ between clients sending the same request.
+	 * The output of scripts calling such functions is never cached.
+	 *
+	 * <p>By default, a function is assumed to depend on the session; functions
+	 * depending only on their arguments should override this method.
+	 *
+	 * @return <b>true</b> iff this function uses the state of the session
+	 */
+	public default boolean isSessionBound() {
+		return true;
+	}
+}
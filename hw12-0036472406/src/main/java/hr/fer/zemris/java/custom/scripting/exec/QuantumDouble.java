@@ -82,9 +82,7 @@ public class QuantumDouble {
 		}
 		
 		String numberToken = (String) obj;
-		boolean isInteger = !numberToken.contains(".") && 
-							!numberToken.toUpperCase().contains("E")
-		;
+		boolean isInteger = isIntegerToken(numberToken);
 		
 		try {
 			double value = Double.parseDouble(numberToken);
@@ -98,6 +96,25 @@ public class QuantumDouble {
 		
 	}
 	
+	/**
+	 * Returns <b>true</b> if the specified token, assuming it can be parsed
+	 * into a number, represents an integer, i.e. if it contains neither a
+	 * decimal point nor an exponent.
+	 * 
+	 * @param numberToken token representing a number
+	 * @return <b>true</b> iff the token represents an integer
+	 */
+	static boolean isIntegerToken(String numberToken) {
+		for (int i = 0, n = numberToken.length(); i < n; i++) {
+			char c = numberToken.charAt(i);
+			if (c == '.' || c == 'e' || c == 'E') {
+				return false;
+			}
+		}
+		
+		return true;
+	}
+	
 	/**
 	 * Returns the Object value of the number stored in this
 	 * QuantumDouble object. The returned value will be castable
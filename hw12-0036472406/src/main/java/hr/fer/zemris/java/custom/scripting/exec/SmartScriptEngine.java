@@ -1,8 +1,6 @@
 package hr.fer.zemris.java.custom.scripting.exec;
 
 import java.io.IOException;
-import java.text.DecimalFormat;
-import java.util.Stack;
 
 import hr.fer.zemris.java.custom.scripting.elems.Element;
 import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
@@ -83,6 +81,10 @@ import hr.fer.zemris.java.webserver.RequestContext;
  * argument as key from the configured context's temporaryParameters map.
  * </pre>
  * 
+ * Further functions can be made available by registering them into a
+ * {@linkplain FunctionRegistry} the engine is created with. Calls of functions
+ * which aren't registered are ignored.
+ * 
  * The format of an echo tag is as follows: <code>{$= arg1 arg2 ... argn $}</code>
  * 
  * <p>After the smart script engine has been configured, the execution is started by
@@ -99,24 +101,41 @@ public class SmartScriptEngine {
 	private RequestContext requestContext;
 	/** mappable stacks used for result calculation */
 	private ObjectMultistack multistack = new ObjectMultistack();
+	/** registry of functions the script may call */
+	private FunctionRegistry functions;
 	
 	/** an instance of the INodeVisitor interface, used for executing functions */
 	private INodeVisitor visitor = generateExecutionVisitor();
 
 	/**
-	 * Creates a new SmartScriptEngine from the specified parameters.
+	 * Creates a new SmartScriptEngine from the specified parameters, whose
+	 * script may call only the built-in functions.
 	 * 
 	 * @param documentNode parsed smart script
 	 * @param requestContext context to be used for parameters and output
 	 * @throws NullPointerException if either of the arguments is null
 	 */
 	public SmartScriptEngine(DocumentNode documentNode, RequestContext requestContext) {
-		if (documentNode == null || requestContext == null) {
+		this(documentNode, requestContext, new FunctionRegistry());
+	}
+
+	/**
+	 * Creates a new SmartScriptEngine from the specified parameters.
+	 * 
+	 * @param documentNode parsed smart script
+	 * @param requestContext context to be used for parameters and output
+	 * @param functions registry of functions the script may call
+	 * @throws NullPointerException if any of the arguments is null
+	 */
+	public SmartScriptEngine(DocumentNode documentNode, RequestContext requestContext,
+			FunctionRegistry functions) {
+		if (documentNode == null || requestContext == null || functions == null) {
 			throw new NullPointerException("Arguments cannot be null!");
 		}
 		
 		this.documentNode = documentNode;
 		this.requestContext = requestContext;
+		this.functions = functions;
 	}
 
 	/**
@@ -161,14 +180,17 @@ public class SmartScriptEngine {
 					new ValueWrapper(node.getStartExpression().asText())
 				);
 				
-				while (multistack.peek(varName).numCompare(node.getEndExpression().asText()) <= 0) {
+				// wrapped once, so they are parsed only on the first iteration
+				Element step = node.getStepExpression();
+				ValueWrapper endValue = new ValueWrapper(node.getEndExpression().asText());
+				ValueWrapper stepValue = new ValueWrapper(step == null ? "1" : step.asText());
+				
+				while (multistack.peek(varName).numCompare(endValue) <= 0) {
 					for (int i = 0, n = node.numberOfChildren(); i < n; i++) {
 						node.getChild(i).accept(visitor);
 					}
 					
-					Element step = node.getStepExpression();
-					
-					multistack.peek(varName).add(step == null ? "1" : step.asText());
+					multistack.peek(varName).add(stepValue);
 				}
 				
 				multistack.pop(varName);
@@ -176,52 +198,56 @@ public class SmartScriptEngine {
 
 			@Override
 			public void visit(EchoNode node) {
-				Stack<ValueWrapper> stack = new Stack<>();
+				// variables are kept in the multistack, so the state needs no slots
+				ExecutionState state = new ExecutionState(requestContext, 0);
 				
 				for (Element elem : node.getElements()) {
 					if (elem instanceof ElementString || 
 						elem instanceof ElementConstantDouble ||
 						elem instanceof ElementConstantInteger) {
 						
-						stack.push(new ValueWrapper(elem.asText()));
+						state.push(new ValueWrapper(elem.asText()));
 						continue;
 					}
 					
 					if (elem instanceof ElementVariable) {
 						ValueWrapper value = multistack.peek(elem.asText());
-						stack.push(new ValueWrapper(value.getValue()));
+						state.push(new ValueWrapper(value.getValue()));
 						continue;
 					}
 					
 					if (elem instanceof ElementOperator) {
-						ValueWrapper arg1 = stack.pop();
-						ValueWrapper arg2 = stack.pop();
+						ValueWrapper arg1 = state.pop();
+						ValueWrapper arg2 = state.pop();
 						
 						switch (elem.asText()) {
 						case "+":
-							arg2.add(arg1.getValue());
+							arg2.add(arg1);
 							break;
 						case "-":
-							arg2.subtract(arg1.getValue());
+							arg2.subtract(arg1);
 							break;
 						case "*":
-							arg2.multiply(arg1.getValue());
+							arg2.multiply(arg1);
 							break;
 						case "/":
-							arg2.divide(arg1.getValue());
+							arg2.divide(arg1);
 							break;
 						}
 						
-						stack.push(arg2);
+						state.push(arg2);
 						continue;
 					}
 					
 					if (elem instanceof ElementFunction) {
-						executeFunction(elem.asText(), stack);
+						IScriptFunction function = functions.get(elem.asText());
+						if (function != null) {
+							function.apply(state);
+						}
 					}
 				}
 				
-				for (Object obj : stack) {
+				for (Object obj : state.getOperands()) {
 					try {
 						requestContext.write(obj.toString());
 					} catch (IOException ex) {
@@ -237,112 +263,6 @@ public class SmartScriptEngine {
 					node.getChild(i).accept(visitor);
 				}
 			}
-
-			private void executeFunction(String function, Stack<ValueWrapper> stack) {
-					
-					if (function.equals("sin")) {
-						ValueWrapper value = stack.peek();
-						value.sin();
-						return;
-					}
-					
-					if (function.equals("decfmt")) {
-						DecimalFormat decFormat = new DecimalFormat((String) stack.pop().getValue());
-						Object value = stack.pop().getValue();
-						
-						stack.push(new ValueWrapper(decFormat.format(value)));
-						return;
-					}
-					
-					if (function.equals("dup")) {
-						stack.push(new ValueWrapper(stack.peek().getValue()));
-						return;
-					}
-					
-					if (function.equals("swap")) {
-						ValueWrapper a = stack.pop();
-						ValueWrapper b = stack.pop();
-						
-						stack.push(a);
-						stack.push(b);
-						return;
-					}
-					
-					if (function.equals("setMimeType")) {
-						String mimeType = (String) stack.pop().getValue();
-						
-						requestContext.setMimeType(mimeType);
-						return;
-					}
-					
-					if (function.equals("paramGet")) {
-						Object dv = stack.pop().getValue();
-						Object name = stack.pop().getValue();
-						
-						Object value = requestContext.getParameter(name.toString());
-						
-						stack.push(
-							value == null 
-							? new ValueWrapper(dv.toString()) 
-							: new ValueWrapper(value.toString())
-						);
-						return;
-					}
-					
-					if (function.equals("pparamGet")) {
-						Object dv = stack.pop().getValue();
-						Object name = stack.pop().getValue();
-						
-						Object value = requestContext.getPersistentParameter(name.toString());
-						
-						stack.push(
-							value == null 
-							? new ValueWrapper(dv.toString()) 
-							: new ValueWrapper(value.toString())
-						);
-						return;
-					}
-					
-					if (function.equals("pparamSet")) {
-						Object name = stack.pop().getValue();
-						Object value = stack.pop().getValue();
-						
-						requestContext.setPersistentParameter(name.toString(), value.toString());
-					}
-					
-					if (function.equals("pparamDel")) {
-						Object name = stack.pop().getValue();
-						
-						requestContext.removePersistentParameter(name.toString());
-					}
-					
-					if (function.equals("tparamGet")) {
-						Object dv = stack.pop().getValue();
-						Object name = stack.pop().getValue();
-						
-						Object value = requestContext.getTemporaryParameter(name.toString());
-						
-						stack.push(
-							value == null 
-							? new ValueWrapper(dv.toString()) 
-							: new ValueWrapper(value.toString())
-						);
-						return;
-					}
-					
-					if (function.equals("tparamSet")) {
-						Object name = stack.pop().getValue();
-						Object value = stack.pop().getValue();
-						
-						requestContext.setTemporaryParameter(name.toString(), value.toString());
-					}
-					
-					if (function.equals("tparamDel")) {
-						Object name = stack.pop().getValue();
-						
-						requestContext.removeTemporaryParameter(name.toString());
-					}
-				}
 		};
 	}
 }
@@ -0,0 +1,565 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+import hr.fer.zemris.java.custom.scripting.elems.Element;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantDouble;
+import hr.fer.zemris.java.custom.scripting.elems.ElementConstantInteger;
+import hr.fer.zemris.java.custom.scripting.elems.ElementFunction;
+import hr.fer.zemris.java.custom.scripting.elems.ElementOperator;
+import hr.fer.zemris.java.custom.scripting.elems.ElementString;
+import hr.fer.zemris.java.custom.scripting.elems.ElementVariable;
+import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.nodes.EchoNode;
+import hr.fer.zemris.java.custom.scripting.nodes.ForLoopNode;
+import hr.fer.zemris.java.custom.scripting.nodes.INodeVisitor;
+import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Represents a smart script compiled into a flat sequence of instructions.
+ * Compiling does all the work which doesn't depend on the context a script
+ * is executed with only once: text is encoded into bytes, constants are parsed,
+ * and operators and functions are resolved from their names. The nesting of
+ * FOR loops is turned into jumps between instructions. Each distinct variable
+ * is assigned a slot, so its values are found by index rather than by name.
+ *
+ * <p>A compiled program holds no state of its own, so it can be executed
+ * any number of times, by any number of threads, each time with a different
+ * {@linkplain RequestContext}. The result of an execution is the same as
+ * the result of executing the original {@linkplain DocumentNode} using
+ * {@linkplain SmartScriptEngine}.
+ *
+ * <p>While compiling, the functions a script calls are checked for whether they
+ * use the state of the client's session. If none do, the output of the program
+ * depends only on the request's parameters, which lets the output be cached; see
+ * {@linkplain #isCacheable()}.
+ *
+ * <p>Programs are created by calling {@linkplain #compile(DocumentNode)}, which
+ * resolves functions from the built-in ones, or {@linkplain #compile(DocumentNode,
+ * FunctionRegistry)}, which resolves them from the specified registry.
+ *
+ * @author Vice Ivušić
+ *
+ */
+public class SmartScriptProgram {
+
+	/** instructions of this program */
+	private Instruction[] instructions;
+	/** flag indicating the output of this program depends only on request parameters */
+	private boolean cacheable;
+	/** amount of variable slots used by this program */
+	private int slotCount;
+
+	/** name of the UTF-8 encoding, as used by RequestContext */
+	private static final String UTF_8 = "UTF-8";
+
+	/**
+	 * Creates a new SmartScriptProgram with the specified instructions.
+	 *
+	 * @param instructions instructions of the program
+	 * @param cacheable whether the output of the program depends only on request parameters
+	 * @param slotCount amount of variable slots used by the program
+	 */
+	private SmartScriptProgram(Instruction[] instructions, boolean cacheable, int slotCount) {
+		this.instructions = instructions;
+		this.cacheable = cacheable;
+		this.slotCount = slotCount;
+	}
+
+	/**
+	 * Compiles the specified parsed smart script into a program, which may
+	 * call only the built-in functions.
+	 *
+	 * @param documentNode parsed smart script
+	 * @return compiled program
+	 * @throws NullPointerException if the specified document node is null
+	 */
+	public static SmartScriptProgram compile(DocumentNode documentNode) {
+		return compile(documentNode, new FunctionRegistry());
+	}
+
+	/**
+	 * Compiles the specified parsed smart script into a program, resolving
+	 * the functions it calls from the specified registry.
+	 *
+	 * @param documentNode parsed smart script
+	 * @param functions registry of functions the script may call
+	 * @return compiled program
+	 * @throws NullPointerException if either argument is null
+	 */
+	public static SmartScriptProgram compile(DocumentNode documentNode, FunctionRegistry functions) {
+		if (documentNode == null) {
+			throw new NullPointerException("Argument documentNode cannot be null!");
+		}
+		if (functions == null) {
+			throw new NullPointerException("Argument functions cannot be null!");
+		}
+
+		Compiler compiler = new Compiler(functions);
+		documentNode.accept(compiler);
+
+		return new SmartScriptProgram(
+			compiler.instructions.toArray(new Instruction[0]),
+			!compiler.sessionBound,
+			compiler.slots.size()
+		);
+	}
+
+	/**
+	 * Returns <b>true</b> if the output of this program, when executed for a
+	 * request coming directly from a client, depends only on the parameters of
+	 * the request. This is the case if the program uses no function reading or
+	 * modifying the state of the client's session, such as persistent parameters;
+	 * see {@linkplain IScriptFunction#isSessionBound()}.
+	 * Temporary parameters don't count, since they start out empty for such a
+	 * request and are discarded along with it, so a program can only use them
+	 * for its own intermediate values.
+	 *
+	 * @return <b>true</b> iff the output of this program may be cached
+	 */
+	public boolean isCacheable() {
+		return cacheable;
+	}
+
+	/**
+	 * Executes this program and outputs the result using the specified
+	 * context object.
+	 *
+	 * @param requestContext context to be used for parameters and output
+	 * @throws NullPointerException if the specified context is null
+	 * @throws RuntimeException if any kind of exception occurs during
+	 * 		   execution of script; most often it would be a wrapped
+	 * 		   IOException
+	 */
+	public void execute(RequestContext requestContext) {
+		if (requestContext == null) {
+			throw new NullPointerException("Argument requestContext cannot be null!");
+		}
+
+		ExecutionState state = new ExecutionState(requestContext, slotCount);
+
+		int pc = 0;
+		while (pc < instructions.length) {
+			pc = instructions[pc].execute(state, pc);
+		}
+	}
+
+	/**
+	 * Models a single instruction of a compiled program.
+	 *
+	 * @author Vice Ivušić
+	 *
+	 */
+	private static abstract class Instruction {
+
+		/**
+		 * Executes this instruction using the specified execution state.
+		 *
+		 * @param state state of the current execution
+		 * @param pc index of this instruction
+		 * @return index of the instruction to execute next
+		 */
+		abstract int execute(ExecutionState state, int pc);
+	}
+
+	/**
+	 * Instruction which outputs a piece of text. The text is encoded into
+	 * UTF-8 bytes in advance, which are written whenever the context uses
+	 * UTF-8 as its encoding.
+	 *
+	 * @author Vice Ivušić
+	 *
+	 */
+	private static class TextInstruction extends Instruction {
+		/** text being output */
+		private String text;
+		/** text being output, encoded as UTF-8 */
+		private byte[] utf8Bytes;
+
+		/**
+		 * Creates a new TextInstruction for the specified text.
+		 *
+		 * @param text text being output
+		 */
+		TextInstruction(String text) {
+			this.text = text;
+			this.utf8Bytes = text.getBytes(StandardCharsets.UTF_8);
+		}
+
+		@Override
+		int execute(ExecutionState state, int pc) {
+			RequestContext rc = state.getRequestContext();
+			try {
+				if (UTF_8.equals(rc.getEncoding())) {
+					rc.write(utf8Bytes);
+				} else {
+					rc.write(text);
+				}
+			} catch (IOException ex) {
+				throw new RuntimeException(ex);
+			}
+
+			return pc+1;
+		}
+	}
+
+	/**
+	 * Instruction which evaluates an echo tag and outputs the values left
+	 * on the operand stack, from bottom to top.
+	 *
+	 * @author Vice Ivušić
+	 *
+	 */
+	private static class EchoInstruction extends Instruction {
+		/** operations the echo tag consists of */
+		private Operation[] operations;
+
+		/**
+		 * Creates a new EchoInstruction from the specified operations.
+		 *
+		 * @param operations operations the echo tag consists of
+		 */
+		EchoInstruction(Operation[] operations) {
+			this.operations = operations;
+		}
+
+		@Override
+		int execute(ExecutionState state, int pc) {
+			for (Operation operation : operations) {
+				operation.apply(state);
+			}
+
+			RequestContext rc = state.getRequestContext();
+			List<ValueWrapper> operands = state.getOperands();
+			try {
+				for (int i = 0, n = operands.size(); i < n; i++) {
+					rc.write(operands.get(i).toString());
+				}
+			} catch (IOException ex) {
+				throw new RuntimeException(ex);
+			}
+			operands.clear();
+
+			return pc+1;
+		}
+	}
+
+	/**
+	 * Instruction which enters a FOR loop by pushing the starting value
+	 * of the loop's variable.
+	 *
+	 * @author Vice Ivušić
+	 *
+	 */
+	private static class ForStartInstruction extends Instruction {
+		/** slot of the loop's variable */
+		private int variable;
+		/** starting value of the loop's variable */
+		private String startValue;
+
+		/**
+		 * Creates a new ForStartInstruction from the specified parameters.
+		 *
+		 * @param variable slot of the loop's variable
+		 * @param startValue starting value of the loop's variable
+		 */
+		ForStartInstruction(int variable, String startValue) {
+			this.variable = variable;
+			this.startValue = startValue;
+		}
+
+		@Override
+		int execute(ExecutionState state, int pc) {
+			state.getVariables().push(variable, new ValueWrapper(startValue));
+			return pc+1;
+		}
+	}
+
+	/**
+	 * Instruction which checks whether the loop's variable has passed the
+	 * loop's ending value. If it has, the loop is exited by jumping to the
+	 * first instruction after the loop.
+	 *
+	 * @author Vice Ivušić
+	 *
+	 */
+	private static class ForCheckInstruction extends Instruction {
+		/** slot of the loop's variable */
+		private int variable;
+		/** ending value of the loop's variable; only ever read */
+		private ValueWrapper endValue;
+		/** index of the first instruction after the loop */
+		private int exitIndex;
+
+		/**
+		 * Creates a new ForCheckInstruction from the specified parameters.
+		 *
+		 * @param variable slot of the loop's variable
+		 * @param endValue ending value of the loop's variable
+		 */
+		ForCheckInstruction(int variable, ValueWrapper endValue) {
+			this.variable = variable;
+			this.endValue = endValue;
+		}
+
+		@Override
+		int execute(ExecutionState state, int pc) {
+			VariableFrame variables = state.getVariables();
+
+			if (variables.peek(variable).numCompare(endValue) <= 0) {
+				return pc+1;
+			}
+
+			variables.pop(variable);
+			return exitIndex;
+		}
+	}
+
+	/**
+	 * Instruction which increments the loop's variable by the loop's step
+	 * and jumps back to the loop's check.
+	 *
+	 * @author Vice Ivušić
+	 *
+	 */
+	private static class ForStepInstruction extends Instruction {
+		/** slot of the loop's variable */
+		private int variable;
+		/** step of the loop's variable; only ever read */
+		private ValueWrapper stepValue;
+		/** index of the loop's check instruction */
+		private int checkIndex;
+
+		/**
+		 * Creates a new ForStepInstruction from the specified parameters.
+		 *
+		 * @param variable slot of the loop's variable
+		 * @param stepValue step of the loop's variable
+		 * @param checkIndex index of the loop's check instruction
+		 */
+		ForStepInstruction(int variable, ValueWrapper stepValue, int checkIndex) {
+			this.variable = variable;
+			this.stepValue = stepValue;
+			this.checkIndex = checkIndex;
+		}
+
+		@Override
+		int execute(ExecutionState state, int pc) {
+			state.getVariables().peek(variable).add(stepValue);
+			return checkIndex;
+		}
+	}
+
+	/**
+	 * Specifies a single operation of an echo tag, with everything that
+	 * doesn't depend on the execution already resolved.
+	 *
+	 * @author Vice Ivušić
+	 *
+	 */
+	private interface Operation {
+
+		/**
+		 * Applies this operation onto the specified execution state.
+		 *
+		 * @param state state of the current execution
+		 */
+		void apply(ExecutionState state);
+	}
+
+	/**
+	 * Visitor which compiles the nodes it visits into a list of instructions.
+	 *
+	 * @author Vice Ivušić
+	 *
+	 */
+	private static class Compiler implements INodeVisitor {
+		/** registry the called functions are resolved from */
+		private FunctionRegistry functions;
+		/** instructions compiled so far */
+		private List<Instruction> instructions = new ArrayList<>();
+		/** flag indicating a function using the state of the session has been compiled */
+		private boolean sessionBound;
+		/** slots assigned to variables so far, mapped to the names of the variables */
+		private Map<String, Integer> slots = new HashMap<>();
+
+		/**
+		 * Creates a new Compiler resolving functions from the specified registry.
+		 *
+		 * @param functions registry the called functions are resolved from
+		 */
+		Compiler(FunctionRegistry functions) {
+			this.functions = functions;
+		}
+
+		@Override
+		public void visit(TextNode node) {
+			instructions.add(new TextInstruction(node.getText()));
+		}
+
+		@Override
+		public void visit(ForLoopNode node) {
+			int variable = slotOf(node.getVariable().asText());
+			Element step = node.getStepExpression();
+
+			instructions.add(new ForStartInstruction(variable, node.getStartExpression().asText()));
+
+			int checkIndex = instructions.size();
+			ForCheckInstruction check = new ForCheckInstruction(
+				variable,
+				new ValueWrapper(parseNumber(node.getEndExpression().asText()))
+			);
+			instructions.add(check);
+
+			for (int i = 0, n = node.numberOfChildren(); i < n; i++) {
+				node.getChild(i).accept(this);
+			}
+
+			instructions.add(new ForStepInstruction(
+				variable,
+				new ValueWrapper(parseNumber(step == null ? "1" : step.asText())),
+				checkIndex
+			));
+			check.exitIndex = instructions.size();
+		}
+
+		@Override
+		public void visit(EchoNode node) {
+			Element[] elements = node.getElements();
+			Operation[] operations = new Operation[elements.length];
+
+			for (int i = 0; i < elements.length; i++) {
+				operations[i] = compileElement(elements[i]);
+			}
+
+			instructions.add(new EchoInstruction(operations));
+		}
+
+		@Override
+		public void visit(DocumentNode node) {
+			for (int i = 0, n = node.numberOfChildren(); i < n; i++) {
+				node.getChild(i).accept(this);
+			}
+		}
+
+		/**
+		 * Helper method for retrieving the slot of the variable with the
+		 * specified name, assigning it the next free slot if it has none yet.
+		 *
+		 * @param name name of the variable
+		 * @return slot of the variable
+		 */
+		private int slotOf(String name) {
+			Integer slot = slots.get(name);
+			if (slot == null) {
+				slot = slots.size();
+				slots.put(name, slot);
+			}
+
+			return slot;
+		}
+
+		/**
+		 * Helper method for compiling a single element of an echo tag into
+		 * an operation.
+		 *
+		 * @param elem element of an echo tag
+		 * @return compiled operation
+		 */
+		private Operation compileElement(Element elem) {
+			if (elem instanceof ElementString) {
+				String value = elem.asText();
+				return state -> state.push(new ValueWrapper(value));
+			}
+
+			if (elem instanceof ElementConstantDouble || elem instanceof ElementConstantInteger) {
+				Object value = parseNumber(elem.asText());
+				return state -> state.push(new ValueWrapper(value));
+			}
+
+			if (elem instanceof ElementVariable) {
+				int slot = slotOf(elem.asText());
+				return state -> state.push(
+					new ValueWrapper(state.getVariables().peek(slot).getValue())
+				);
+			}
+
+			if (elem instanceof ElementOperator) {
+				return compileOperator(elem.asText());
+			}
+
+			if (elem instanceof ElementFunction) {
+				IScriptFunction function = functions.get(elem.asText());
+				if (function != null) {
+					sessionBound |= function.isSessionBound();
+					return function::apply;
+				}
+			}
+
+			// unknown functions are ignored, same as by SmartScriptEngine
+			return state -> {};
+		}
+
+		/**
+		 * Helper method for compiling an operator into an operation.
+		 *
+		 * @param symbol symbol of the operator
+		 * @return compiled operation
+		 */
+		private static Operation compileOperator(String symbol) {
+			switch (symbol) {
+			case "+":
+				return binaryOperation(ValueWrapper::add);
+			case "-":
+				return binaryOperation(ValueWrapper::subtract);
+			case "*":
+				return binaryOperation(ValueWrapper::multiply);
+			case "/":
+				return binaryOperation(ValueWrapper::divide);
+			default:
+				// operators without meaning leave their first argument on the stack
+				return binaryOperation((arg2, arg1) -> {});
+			}
+		}
+
+		/**
+		 * Helper method for creating an operation which pops two arguments,
+		 * applies the specified operator onto them and pushes the result.
+		 *
+		 * @param operator operator modifying the first argument using the second one
+		 * @return operation applying the operator
+		 */
+		private static Operation binaryOperation(BiConsumer<ValueWrapper, ValueWrapper> operator) {
+			return state -> {
+				ValueWrapper arg1 = state.pop();
+				ValueWrapper arg2 = state.pop();
+
+				operator.accept(arg2, arg1);
+				state.push(arg2);
+			};
+		}
+
+		/**
+		 * Helper method for parsing the specified text into an Integer or
+		 * a Double. If the text isn't a number, it is returned as is, so the
+		 * error is reported only if the value is used during execution.
+		 *
+		 * @param text text to parse
+		 * @return Integer or Double value of the text, or the text itself
+		 */
+		private static Object parseNumber(String text) {
+			try {
+				return QuantumDouble.makeFrom(text).value();
+			} catch (IllegalArgumentException ex) {
+				return text;
+			}
+		}
+	}
+}
@@ -1,7 +1,5 @@
 package hr.fer.zemris.java.custom.scripting.exec;
 
-import java.util.function.BiFunction;
-
 /**
  * Represents a wrapper of any object. In addition to storing
  * the object, it offers multiple arithmetic operations if the
@@ -20,13 +18,41 @@ import java.util.function.BiFunction;
  * while leaving the argument object unchanged. Wrapped null
  * values are considered integers of zero for purposes of calculation.
  * 
+ * <p>Once a value has been used as a number, its numeric form is kept as
+ * an unboxed int or double, so a String is parsed only once and the
+ * arithmetic operations don't allocate any objects. The stored Object is
+ * boxed again only when it is requested through {@linkplain #getValue()}.
+ * The overloads accepting a ValueWrapper use the numeric form of the
+ * argument directly and should be preferred whenever both operands are
+ * already wrapped.
+ * 
  * @author Vice Ivušić
  *
  */
 public class ValueWrapper {
 
-	/** currently stored object **/
+	/** operation code for addition */
+	private static final int ADD = 0;
+	/** operation code for subtraction */
+	private static final int SUBTRACT = 1;
+	/** operation code for multiplication */
+	private static final int MULTIPLY = 2;
+	/** operation code for division */
+	private static final int DIVIDE = 3;
+	
+	/** smallest absolute difference at which two numbers are considered different */
+	private static final double EPSILON = 10e-6;
+
+	/** currently stored object; out of date if valueStale is set **/
 	private Object value;
+	/** flag indicating that the stored object must be boxed from the numeric form **/
+	private boolean valueStale;
+	/** flag indicating that number and isInteger hold the numeric form of the value **/
+	private boolean numeric;
+	/** numeric form of the stored value; holds a whole number if isInteger is set **/
+	private double number;
+	/** flag indicating that the numeric form is an integer **/
+	private boolean isInteger;
 	
 	/**
 	 * Creates a new ValueWrapper object with the specified
@@ -35,7 +61,7 @@ public class ValueWrapper {
 	 * @param value Object value to be stored
 	 */
 	public ValueWrapper(Object value) {
-		this.value = value;
+		setValue(value);
 	}
 	
 	/**
@@ -44,6 +70,16 @@ public class ValueWrapper {
 	 * @return the currently stored Object value
 	 */
 	public Object getValue() {
+		if (valueStale) {
+			// not a conditional expression, which would promote Integer to Double
+			if (isInteger) {
+				value = Integer.valueOf((int) number);
+			} else {
+				value = Double.valueOf(number);
+			}
+			valueStale = false;
+		}
+		
 		return value;
 	}
 	
@@ -54,6 +90,20 @@ public class ValueWrapper {
 	 */
 	public void setValue(Object value) {
 		this.value = value;
+		valueStale = false;
+		
+		// boxed numbers are unboxed right away, as that can't fail
+		if (value instanceof Integer) {
+			number = ((Integer) value).intValue();
+			isInteger = true;
+			numeric = true;
+		} else if (value instanceof Double) {
+			number = ((Double) value).doubleValue();
+			isInteger = false;
+			numeric = true;
+		} else {
+			numeric = false;
+		}
 	}
 
 	/**
@@ -65,7 +115,20 @@ public class ValueWrapper {
 	 * 		   value or the specified value aren't semantically numbers
 	 */
 	public void add(Object incValue) {
-		value = applyFunction(value, incValue, (v1, v2) -> v1+v2);
+		add(new ValueWrapper(incValue));
+	}
+	
+	/**
+	 * Modifies the currently stored number value by adding 
+	 * the number value wrapped by the specified wrapper to it.
+	 * A null wrapper is considered a wrapped null value.
+	 * 
+	 * @param incValue wrapped number value to add to currently stored number
+	 * @throws IllegalArgumentException if either the currently stored
+	 * 		   value or the specified value aren't semantically numbers
+	 */
+	public void add(ValueWrapper incValue) {
+		applyOperation(ADD, incValue);
 	}
 	
 	/**
@@ -77,7 +140,20 @@ public class ValueWrapper {
 	 * 		   value or the specified value aren't semantically numbers
 	 */
 	public void subtract(Object decValue) {
-		value = applyFunction(value, decValue, (v1, v2) -> v1-v2);
+		subtract(new ValueWrapper(decValue));
+	}
+	
+	/**
+	 * Modifies the currently stored number value by subtracting 
+	 * the number value wrapped by the specified wrapper from it.
+	 * A null wrapper is considered a wrapped null value.
+	 * 
+	 * @param decValue wrapped number value to subtract from the currently stored number
+	 * @throws IllegalArgumentException if either the currently stored
+	 * 		   value or the specified value aren't semantically numbers
+	 */
+	public void subtract(ValueWrapper decValue) {
+		applyOperation(SUBTRACT, decValue);
 	}
 	
 	/**
@@ -89,8 +165,21 @@ public class ValueWrapper {
 	 * 		   value or the specified value aren't semantically numbers
 	 */
 	public void multiply(Object mulValue) {
-		value = applyFunction(value, mulValue, (v1, v2) -> v1*v2);
-		}
+		multiply(new ValueWrapper(mulValue));
+	}
+	
+	/**
+	 * Modifies the currently stored number value by multiplying 
+	 * the number value wrapped by the specified wrapper with it.
+	 * A null wrapper is considered a wrapped null value.
+	 * 
+	 * @param mulValue wrapped number value to multiply the currently stored number with
+	 * @throws IllegalArgumentException if either the currently stored
+	 * 		   value or the specified value aren't semantically numbers
+	 */
+	public void multiply(ValueWrapper mulValue) {
+		applyOperation(MULTIPLY, mulValue);
+	}
 	
 	/**
 	 * Modifies the currently stored number value by dividing 
@@ -102,15 +191,21 @@ public class ValueWrapper {
 	 * 		   or if the specified value is zero
 	 */
 	public void divide(Object divValue) {
-		BiFunction<Double, Double, Double> divisionFunction = (dividend, divisor) -> {
-			if (Math.abs(divisor) < 10e-6) {
-				throw new IllegalArgumentException("Can't divide by zero!");
-			}
-			
-			return dividend / divisor;
-		};
-		
-		value = applyFunction(value, divValue, divisionFunction);
+		divide(new ValueWrapper(divValue));
+	}
+	
+	/**
+	 * Modifies the currently stored number value by dividing 
+	 * it with the number value wrapped by the specified wrapper.
+	 * A null wrapper is considered a wrapped null value.
+	 * 
+	 * @param divValue wrapped number value to divide the currently stored number with
+	 * @throws IllegalArgumentException if either the currently stored
+	 * 		   value or the specified value aren't semantically numbers
+	 * 		   or if the specified value is zero
+	 */
+	public void divide(ValueWrapper divValue) {
+		applyOperation(DIVIDE, divValue);
 	}
 	
 	/**
@@ -126,14 +221,39 @@ public class ValueWrapper {
 	 * 		   value or the specified value aren't semantically numbers
 	 */
 	public int numCompare(Object withValue) {
-		if (value == null && withValue == null) {
+		return numCompare(new ValueWrapper(withValue));
+	}
+	
+	/**
+	 * Compares the currently stored number value with the number value
+	 * wrapped by the specified wrapper. If both values are null, they are
+	 * considered equal. A null wrapper is considered a wrapped null value.
+	 * 
+	 * @param withValue wrapped number value to compare the currently stored number with
+	 * @return -1 if first number is lesser than the second number;
+	 * 			1 if the first number is greater than the second number;
+	 * 			0 if they are equal
+	 * @throws IllegalArgumentException if either the currently stored
+	 * 		   value or the specified value aren't semantically numbers
+	 */
+	public int numCompare(ValueWrapper withValue) {
+		boolean otherNull = withValue == null || withValue.isNull();
+		if (isNull() && otherNull) {
 			return 0;
 		}
 		
-		QuantumDouble arg1 = QuantumDouble.makeFrom(value);
-		QuantumDouble arg2 = QuantumDouble.makeFrom(withValue);
+		ensureNumeric();
+		double other = 0;
+		if (!otherNull) {
+			withValue.ensureNumeric();
+			other = withValue.number;
+		}
 		
-		return arg1.compareTo(arg2);
+		if (Math.abs(number - other) < EPSILON) {
+			return 0;
+		}
+		
+		return Double.compare(number, other);
 	}
 	
 	/**
@@ -144,46 +264,118 @@ public class ValueWrapper {
 	 * 		   value isn't semantically a number
 	 */
 	public void sin() {
-		QuantumDouble arg = QuantumDouble.makeFrom(value);
+		ensureNumeric();
 		
-		value = arg.applyUnaryFunction(
-			d -> Math.sin(Math.toRadians(d))
-		).value();
+		setNumber(Math.sin(Math.toRadians(number)), false);
 	}
 
 	@Override
 	public String toString() {
-		return String.valueOf(value);
-	}
-	
-	/**
-	 * Applies the specified function onto the specified objects
-	 * representing numbers. If both objects are Integers (or null),
-	 * the object returned will be an Integer. Otherwise, if at least
-	 * one object is a Double, the object returned will be a Double.
-	 * The specified objects may also be Strings representing either
-	 * an Integer or Double.
-	 * 
-	 * @param obj1 first operand
-	 * @param obj2 second operand
-	 * @param operator a BiFunction object representing an arithmetic operation
-	 * 		  on two numbers
-	 * @return an Integer or Double object representing the result of the
-	 * 		   specified operator's operation
-	 * @throws IllegalArgumentException if either of the specified objects isn't an
-	 * 	   	   Integer, Double or a parsable String, or if the specified operator is null
-	 */
-	private static Object applyFunction(Object obj1, 
-										Object obj2, 
-										BiFunction<Double, Double, Double> operator) {
-		if (operator == null) {
-			throw new IllegalArgumentException("Specified operator must not be null!");
+		return String.valueOf(getValue());
+	}
+	
+	/**
+	 * Applies the operation with the specified code onto the currently
+	 * stored number and the number wrapped by the specified wrapper.
+	 * If both numbers are integers, the result is an integer. Otherwise,
+	 * the result is a double.
+	 * 
+	 * @param operation code of the operation
+	 * @param operand wrapper of the second operand; may be null
+	 * @throws IllegalArgumentException if either of the values isn't an
+	 * 	   	   Integer, Double or a parsable String, or if dividing by zero
+	 */
+	private void applyOperation(int operation, ValueWrapper operand) {
+		ensureNumeric();
+		
+		double other = 0;
+		boolean otherInteger = true;
+		if (operand != null) {
+			operand.ensureNumeric();
+			other = operand.number;
+			otherInteger = operand.isInteger;
+		}
+		
+		double result;
+		switch (operation) {
+		case ADD:
+			result = number + other;
+			break;
+		case SUBTRACT:
+			result = number - other;
+			break;
+		case MULTIPLY:
+			result = number * other;
+			break;
+		default:
+			if (Math.abs(other) < EPSILON) {
+				throw new IllegalArgumentException("Can't divide by zero!");
+			}
+			result = number / other;
 		}
 		
-		QuantumDouble arg1 = QuantumDouble.makeFrom(obj1);
-		QuantumDouble arg2 = QuantumDouble.makeFrom(obj2);
+		setNumber(result, isInteger && otherInteger);
+	}
+	
+	/**
+	 * Sets the currently stored value to the specified number. An integer
+	 * result is truncated, the same as when casting it into an int.
+	 * 
+	 * @param result new numeric value
+	 * @param integer flag indicating that the new value is an integer
+	 */
+	private void setNumber(double result, boolean integer) {
+		number = integer ? (int) result : result;
+		isInteger = integer;
+		numeric = true;
+		valueStale = true;
+	}
+	
+	/**
+	 * Returns <b>true</b> if the currently stored value is null.
+	 * 
+	 * @return <b>true</b> iff the currently stored value is null
+	 */
+	private boolean isNull() {
+		return !valueStale && value == null;
+	}
+	
+	/**
+	 * Makes sure the numeric form of the currently stored value is
+	 * available, parsing it if necessary. The stored value itself is
+	 * left unchanged.
+	 * 
+	 * @throws IllegalArgumentException if the currently stored value isn't
+	 * 	   	   an Integer, Double or a parsable String
+	 */
+	private void ensureNumeric() {
+		if (numeric) {
+			return;
+		}
 		
-		return arg1.applyBinaryFunction(arg2, operator).value();
+		if (value == null) {
+			number = 0;
+			isInteger = true;
+			numeric = true;
+			return;
+		}
+		
+		if (!(value instanceof String)) {
+			throw new IllegalArgumentException(
+					"Argument value is neither an integer, double nor string!"
+			);
+		}
+		
+		String numberToken = (String) value;
+		try {
+			number = Double.parseDouble(numberToken);
+		} catch (NumberFormatException ex) {
+			throw new IllegalArgumentException(
+					"Argument string cannot be parsed into integer or double!"
+			);
+		}
+		isInteger = QuantumDouble.isIntegerToken(numberToken);
+		numeric = true;
 	}
 	
 }
@@ -0,0 +1,98 @@
+package hr.fer.zemris.java.custom.scripting.exec;
+
+import java.util.Arrays;
+import java.util.EmptyStackException;
+
+/**
+ * Holds the values of variables during a single execution of a
+ * {@linkplain SmartScriptProgram}. Each variable has its own stack, since
+ * nested FOR loops may use the same variable, and the stacks are identified
+ * by the slots the compiler assigned to variables, rather than by their names.
+ *
+ * <p>Each stack is an array which grows only when a loop nests deeper than
+ * before, so accessing a variable requires neither hashing its name nor
+ * allocating a node for each pushed value. Compared to {@linkplain ObjectMultistack},
+ * which keeps the same values under names, it only trades names for slots.
+ *
+ * @author Vice Ivušić
+ *
+ */
+class VariableFrame {
+
+	/** initial capacity of each stack */
+	private static final int INITIAL_CAPACITY = 4;
+
+	/** stacks of each slot; null for slots nothing has been pushed to yet */
+	private final ValueWrapper[][] stacks;
+	/** amount of values on the stack of each slot */
+	private final int[] sizes;
+
+	/**
+	 * Creates a new VariableFrame with the specified amount of slots, whose
+	 * stacks are all empty.
+	 *
+	 * @param slotCount amount of slots
+	 */
+	VariableFrame(int slotCount) {
+		stacks = new ValueWrapper[slotCount][];
+		sizes = new int[slotCount];
+	}
+
+	/**
+	 * Pushes the specified value onto the stack of the specified slot.
+	 *
+	 * @param slot slot of the variable
+	 * @param value value to push
+	 */
+	void push(int slot, ValueWrapper value) {
+		ValueWrapper[] stack = stacks[slot];
+		int size = sizes[slot];
+
+		if (stack == null) {
+			stack = stacks[slot] = new ValueWrapper[INITIAL_CAPACITY];
+		} else if (size == stack.length) {
+			stack = stacks[slot] = Arrays.copyOf(stack, size * 2);
+		}
+
+		stack[size] = value;
+		sizes[slot] = size + 1;
+	}
+
+	/**
+	 * Removes and returns the value on top of the stack of the specified slot.
+	 *
+	 * @param slot slot of the variable
+	 * @return value on top of the stack
+	 * @throws EmptyStackException if the stack is empty
+	 */
+	ValueWrapper pop(int slot) {
+		int size = sizes[slot];
+		if (size == 0) {
+			throw new EmptyStackException();
+		}
+
+		ValueWrapper[] stack = stacks[slot];
+		ValueWrapper value = stack[--size];
+		stack[size] = null;
+		sizes[slot] = size;
+
+		return value;
+	}
+
+	/**
+	 * Returns the value on top of the stack of the specified slot without
+	 * removing it.
+	 *
+	 * @param slot slot of the variable
+	 * @return value on top of the stack
+	 * @throws EmptyStackException if the stack is empty
+	 */
+	ValueWrapper peek(int slot) {
+		int size = sizes[slot];
+		if (size == 0) {
+			throw new EmptyStackException();
+		}
+
+		return stacks[slot][size - 1];
+	}
+}
@@ -1,5 +1,9 @@
 package hr.fer.zemris.java.custom.scripting.lexer;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+
 /**
  * Predstavlja tokenizator teksta. Lexer prolazi kroz tekst
  * i generira niz tokena koje pozivatelj može dohvatiti. Može
@@ -11,6 +15,11 @@ package hr.fer.zemris.java.custom.scripting.lexer;
  * <p>Tijekom tokeniziranja normalnog teksta, prihvaća \\ te \{ za escape-anje.
  * Tijekom tokeniziranja String-a unutar taga, prihvaća \\ te \" za escape-anje.
  * 
+ * <p>Tekst se može predati kao <code>String</code> ili kao <code>Reader</code>.
+ * Znakovi iz <code>Reader</code>-a čitaju se postupno, u prozor ograničene
+ * veličine, tako da se dokument nikada ne nalazi cijeli u memoriji; tokeni
+ * i poruke o pogreškama jednaki su u oba slučaja.
+ * 
  * <p>Nudi metode za generiranje sljedećeg tokena, za dohvat zadnje
  * generiranog tokena, za postavljanje stanja te za dohvat
  * broja retka na kojemu se generirao zadnji token.
@@ -20,11 +29,18 @@ package hr.fer.zemris.java.custom.scripting.lexer;
  */
 public class Lexer {
 
-	/** polje koje sadrži sve znakove od kojih se sastoji dokument koji se tokenizira **/
+	/** veličina prozora u koji se čitaju znakovi iz <code>Reader</code>-a **/
+	private static final int WINDOW_SIZE = 8192;
+	
+	/** prozor koji sadrži trenutno učitane znakove dokumenta koji se tokenizira **/
 	private char[] data;
+	/** broj učitanih znakova u prozoru **/
+	private int length;
+	/** izvor preostalih znakova dokumenta; null ako su svi znakovi učitani **/
+	private Reader reader;
 	/** zadnje generirani token **/
 	private Token token;
-	/** indeks zadnjeg neobrađenog znaka **/
+	/** indeks zadnjeg neobrađenog znaka unutar prozora **/
 	private int currentIndex;
 	/** stanje u kojemu se trenutno nalazi tokenizator **/
 	private LexerState state;
@@ -42,6 +58,28 @@ public class Lexer {
 			throw new IllegalArgumentException("Cannot create Lexer with text set to null!");
 		}
 		data = text.toCharArray();
+		length = data.length;
+		state = LexerState.TEXT;
+		line = 1;
+	}
+	
+	/**
+	 * Stvara <code>Lexer</code> tokenizator koji tekst čita iz navedenog
+	 * <code>Reader</code>-a. Znakovi se čitaju tek kada su potrebni, a
+	 * <code>Reader</code> se ne zatvara.
+	 * 
+	 * <p>Ako čitanje ne uspije, metoda {@linkplain #nextToken()} baca
+	 * <code>UncheckedIOException</code> koji omata izvornu iznimku.
+	 * 
+	 * @param reader izvor teksta koji se tokenizira
+	 * @throws IllegalArgumentException ako je predan null za izvor
+	 */
+	public Lexer(Reader reader) {
+		if (reader == null) {
+			throw new IllegalArgumentException("Cannot create Lexer with reader set to null!");
+		}
+		this.reader = reader;
+		data = new char[WINDOW_SIZE];
 		state = LexerState.TEXT;
 		line = 1;
 	}
@@ -51,6 +89,7 @@ public class Lexer {
 	 * 
 	 * @return generirani token
 	 * @throws LexerException ako je došlo do pogreške tijekom tokenizacije
+	 * @throws UncheckedIOException ako čitanje iz <code>Reader</code>-a ne uspije
 	 */
 	public Token nextToken() {
 		extractNextToken();
@@ -107,7 +146,7 @@ public class Lexer {
 	 * Pomoćna metoda koja tokenizira čisti tekst.
 	 */
 	private void tokenizeText() {
-		if (currentIndex == data.length) {
+		if (!hasChars(1)) {
 			token = new Token(TokenType.EOF, null);
 			return;
 		}
@@ -115,7 +154,7 @@ public class Lexer {
 		char c = data[currentIndex];
 		
 		if (c == '{') {
-			if (currentIndex == data.length-1) {
+			if (!hasChars(2)) {
 				throw new LexerException(
 						addInfo("'{' must be followed by '$ to open tag!")
 				);
@@ -136,7 +175,7 @@ public class Lexer {
 		
 		StringBuilder sb = new StringBuilder();
 		boolean readBackslash = false;
-		while (currentIndex < data.length) {
+		while (hasChars(1)) {
 			c = data[currentIndex];
 			
 			if (c == '\\') {
@@ -190,7 +229,7 @@ public class Lexer {
 	private void tokenizeTag() {
 		skipWhitespace();
 
-		if (currentIndex == data.length) {
+		if (!hasChars(1)) {
 			token = new Token(TokenType.EOF, null);
 			return;
 		}
@@ -198,7 +237,7 @@ public class Lexer {
 		char c = data[currentIndex];
 		
 		if (c == '$') {
-			if (currentIndex == data.length-1) {
+			if (!hasChars(2)) {
 				throw new LexerException(
 						addInfo("Tag must be closed with '$}', not just '$'!")
 				);
@@ -241,7 +280,7 @@ public class Lexer {
 		 * Provjerava je li '-' dio broja ili nije. Ako nije, tumači se kao operator.
 		 */
 		if (c == '-') {
-			if (currentIndex == data.length-1 || !Character.isDigit(data[currentIndex+1])) {
+			if (!hasChars(2) || !Character.isDigit(data[currentIndex+1])) {
 				token = new Token(TokenType.OPERATOR, "-");
 				currentIndex++;
 				return;
@@ -296,7 +335,7 @@ public class Lexer {
 		
 		char c;
 		boolean readBackslash = false;
-		while (currentIndex < data.length) {
+		while (hasChars(1)) {
 			c = data[currentIndex];
 			
 			if (c == '\\') {
@@ -364,11 +403,10 @@ public class Lexer {
 		
 		char c;
 		boolean readDot = false;
-		int startIndex = currentIndex;
-		while (currentIndex < data.length) {
+		while (hasChars(1)) {
 			c = data[currentIndex];
 			
-			if (currentIndex == startIndex) {
+			if (sb.length() == 0) {
 				if (c == '-') {
 					sb.append(c);
 					currentIndex++;
@@ -431,11 +469,10 @@ public class Lexer {
 		StringBuilder sb = new StringBuilder();
 		
 		char c;
-		int startIndex = currentIndex;
-		while (currentIndex < data.length) {
+		while (hasChars(1)) {
 			c = data[currentIndex];
 			
-			if (startIndex == currentIndex) {
+			if (sb.length() == 0) {
 				if (Character.isDigit(c) || c == '_') {
 					break;
 				}
@@ -459,7 +496,7 @@ public class Lexer {
 	 */
 	private void skipWhitespace() {
 		char c;
-		while (currentIndex < data.length) {
+		while (hasChars(1)) {
 			c = data[currentIndex];
 			
 			if (c == '\r' || c == '\n' || c == '\t' || c == ' ') {
@@ -473,6 +510,45 @@ public class Lexer {
 		}
 	}
 	
+	/**
+	 * Pomoćna metoda koja provjerava postoji li barem navedeni broj
+	 * neobrađenih znakova, počevši od trenutnog. Po potrebi pomiče
+	 * prozor tako da počinje trenutnim znakom i puni ga iz
+	 * <code>Reader</code>-a.
+	 * 
+	 * @param count broj potrebnih znakova
+	 * @return <b>true</b> ako i samo ako postoji dovoljno neobrađenih znakova
+	 * @throws UncheckedIOException ako čitanje iz <code>Reader</code>-a ne uspije
+	 */
+	private boolean hasChars(int count) {
+		while (currentIndex + count > length) {
+			if (reader == null) {
+				return false;
+			}
+			
+			if (currentIndex > 0) {
+				System.arraycopy(data, currentIndex, data, 0, length - currentIndex);
+				length -= currentIndex;
+				currentIndex = 0;
+			}
+			
+			int read;
+			try {
+				read = reader.read(data, length, data.length - length);
+			} catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+			
+			if (read < 0) {
+				reader = null;
+			} else {
+				length += read;
+			}
+		}
+		
+		return true;
+	}
+	
 	/**
 	 * Pomoćna metoda koja dodaje predanom Stringu informaciju
 	 * o broju retka teksta na kojemu je zadnji token napravljen.
@@ -1,5 +1,9 @@
 package hr.fer.zemris.java.custom.scripting.parser;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+
 import hr.fer.zemris.java.custom.collections.ArrayIndexedCollection;
 import hr.fer.zemris.java.custom.collections.ObjectStack;
 import hr.fer.zemris.java.custom.scripting.elems.Element;
@@ -26,6 +30,10 @@ import hr.fer.zemris.java.custom.scripting.nodes.TextNode;
  * redoslijedu; ako jesu, gradi sintaksno stablo koje predstavlja
  * dokument, tj. provodi sintaksnu analizu.
  * 
+ * <p>Dokument se može predati kao <code>String</code> ili kao <code>Reader</code>;
+ * u drugom slučaju dokument se čita postupno, tijekom parsiranja, pa ga nije
+ * potrebno prethodno učitati u memoriju.
+ * 
  * <p>Nudi metodu za dohvat izrađenog sintaksnog stabla u obliku
  * <code>DocumentNode</code> objekta.
  * 
@@ -61,6 +69,32 @@ public class SmartScriptParser {
 		parse();
 	}
 	
+	/**
+	 * Stvara <code>SmartScriptParser</code> koji generira <code>DocumentNode</code>
+	 * iz teksta pročitanog iz predanog <code>Reader</code>-a. Tekst se čita
+	 * postupno, a <code>Reader</code> se ne zatvara.
+	 * 
+	 * @param reader izvor teksta koji se parsira
+	 * @throws IllegalArgumentException ako je predan null za izvor
+	 * @throws SmartScriptParserException ako dođe do pogreške tijekom
+	 * 			sintaksne analize teksta
+	 * @throws IOException ako čitanje iz izvora ne uspije
+	 */
+	public SmartScriptParser(Reader reader) throws IOException {
+		if (reader == null) {
+			throw new IllegalArgumentException (
+					"Cannot create SmartScriptParser with reader set to null!"
+			);
+		}
+		lexer = new Lexer(reader);
+		stack = new ObjectStack();
+		try {
+			parse();
+		} catch (UncheckedIOException ex) {
+			throw ex.getCause();
+		}
+	}
+	
 	/**
 	 * Dohvaća izrađeno sintaksno stablo u obliku <code>DocumentNode</code> objekta.
 	 * 
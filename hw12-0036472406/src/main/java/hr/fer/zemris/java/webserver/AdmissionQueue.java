@@ -0,0 +1,143 @@
+package hr.fer.zemris.java.webserver;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounds the amount of work waiting to be served. Work, such as an accepted
+ * connection waiting for a worker thread, enters the queue before it starts
+ * waiting and leaves it once it is taken up. Work which would exceed the
+ * capacity of the queue isn't allowed to enter, so it can be rejected right
+ * away, instead of waiting for longer than any client would.
+ *
+ * <p>Work which has waited for longer than the configured deadline by the
+ * time it is taken up is considered expired, since its client has most likely
+ * given up on it already. A deadline of zero means work never expires.
+ *
+ * <p>The queue counts rejected and expired work, which can be retrieved for
+ * monitoring purposes. Instances of this class may be used by multiple
+ * threads at once.
+ *
+ * @author Vice Ivušić
+ *
+ */
+class AdmissionQueue {
+
+	/** maximum amount of work waiting at once */
+	private final int capacity;
+	/** amount of milliseconds after which waiting work expires; 0 if it never does */
+	private final long deadline;
+
+	/** amount of work currently waiting */
+	private final AtomicInteger size = new AtomicInteger();
+	/** amount of work rejected because the queue was full */
+	private final LongAdder rejected = new LongAdder();
+	/** amount of work which expired while waiting */
+	private final LongAdder expired = new LongAdder();
+
+	/**
+	 * Creates a new empty AdmissionQueue with the specified parameters.
+	 *
+	 * @param capacity maximum amount of work waiting at once
+	 * @param deadline amount of milliseconds after which waiting work expires,
+	 * 		  or 0 if it never should
+	 * @throws IllegalArgumentException if the capacity is smaller than 1 or
+	 * 		   the deadline is negative
+	 */
+	AdmissionQueue(int capacity, long deadline) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Argument capacity must be positive!");
+		}
+		if (deadline < 0) {
+			throw new IllegalArgumentException("Argument deadline cannot be negative!");
+		}
+
+		this.capacity = capacity;
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Lets work enter the queue, unless the queue is full, in which case the
+	 * work is counted as rejected.
+	 *
+	 * @return <b>true</b> if the work has entered the queue, <b>false</b> if
+	 * 		   it has been rejected
+	 */
+	boolean tryEnter() {
+		while (true) {
+			int current = size.get();
+			if (current >= capacity) {
+				rejected.increment();
+				return false;
+			}
+
+			if (size.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Lets work which has entered the queue at the specified time leave it.
+	 * If it has waited for longer than the deadline, it is counted as expired.
+	 *
+	 * @param enteredAt time the work entered the queue, in milliseconds
+	 * @return <b>true</b> if the work should be served, <b>false</b> if it has expired
+	 */
+	boolean leave(long enteredAt) {
+		size.decrementAndGet();
+
+		if (deadline > 0 && System.currentTimeMillis() - enteredAt > deadline) {
+			expired.increment();
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Lets work which has entered the queue leave it because it has expired,
+	 * as decided by whoever was serving it.
+	 */
+	void expire() {
+		size.decrementAndGet();
+		expired.increment();
+	}
+
+	/**
+	 * Returns the amount of milliseconds after which waiting work expires,
+	 * or 0 if it never does.
+	 *
+	 * @return deadline of waiting work, in milliseconds
+	 */
+	long getDeadline() {
+		return deadline;
+	}
+
+	/**
+	 * Returns the amount of work currently waiting.
+	 *
+	 * @return amount of waiting work
+	 */
+	int size() {
+		return size.get();
+	}
+
+	/**
+	 * Returns the amount of work rejected so far because the queue was full.
+	 *
+	 * @return amount of rejected work
+	 */
+	long getRejected() {
+		return rejected.sum();
+	}
+
+	/**
+	 * Returns the amount of work which has expired so far while waiting.
+	 *
+	 * @return amount of expired work
+	 */
+	long getExpired() {
+		return expired.sum();
+	}
+}
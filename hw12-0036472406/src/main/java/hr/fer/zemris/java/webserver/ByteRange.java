@@ -0,0 +1,149 @@
+package hr.fer.zemris.java.webserver;
+
+/**
+ * Represents a single range of bytes requested through the Range header
+ * field of an HTTP request, such as {@code bytes=0-499}, {@code bytes=500-}
+ * or {@code bytes=-500}. Both ends of the range are inclusive.
+ *
+ * <p>Only single ranges are supported. A header field requesting multiple
+ * ranges, or one which can't be parsed, is ignored, so the whole file is
+ * served instead, as allowed by the HTTP specification.
+ *
+ * @author Vice Ivušić
+ *
+ */
+class ByteRange {
+
+	/** range returned for a valid request which can't be satisfied */
+	static final ByteRange UNSATISFIABLE = new ByteRange(-1, -1);
+
+	/** value returned by parsePosition for a position which isn't a valid number */
+	private static final long INVALID = -2;
+	/** prefix of a range expressed in bytes */
+	private static final String BYTES_UNIT = "bytes=";
+
+	/** position of the first byte in the range */
+	private long first;
+	/** position of the last byte in the range */
+	private long last;
+
+	/**
+	 * Creates a new ByteRange with the specified ends.
+	 *
+	 * @param first position of the first byte in the range
+	 * @param last position of the last byte in the range
+	 */
+	private ByteRange(long first, long last) {
+		this.first = first;
+		this.last = last;
+	}
+
+	/**
+	 * Parses the specified value of a Range header field for a file of the
+	 * specified size. Returns null if the value is null or should be ignored,
+	 * and {@linkplain #UNSATISFIABLE} if none of the requested bytes exist.
+	 * The last position of the returned range never exceeds the end of the file.
+	 *
+	 * @param value value of the Range header field; may be null
+	 * @param size size of the file in bytes
+	 * @return requested range, {@linkplain #UNSATISFIABLE} or null
+	 */
+	static ByteRange parse(String value, long size) {
+		if (value == null) {
+			return null;
+		}
+
+		value = value.trim();
+		if (!value.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length())) {
+			return null;
+		}
+
+		String spec = value.substring(BYTES_UNIT.length()).trim();
+		int dash = spec.indexOf('-');
+		if (dash < 0 || spec.indexOf(',') >= 0) {
+			return null;
+		}
+
+		long first = parsePosition(spec.substring(0, dash).trim());
+		long last = parsePosition(spec.substring(dash+1).trim());
+		if (first == INVALID || last == INVALID) {
+			return null;
+		}
+
+		if (first == -1) {
+			// suffix range, requesting the last bytes of the file
+			if (last == -1) {
+				return null;
+			}
+			if (last == 0 || size == 0) {
+				return UNSATISFIABLE;
+			}
+
+			return new ByteRange(Math.max(0, size-last), size-1);
+		}
+
+		if (last != -1 && last < first) {
+			return null;
+		}
+
+		if (first >= size) {
+			return UNSATISFIABLE;
+		}
+
+		return new ByteRange(first, last == -1 ? size-1 : Math.min(last, size-1));
+	}
+
+	/**
+	 * Helper method for parsing a position of a range. Returns -1 if the
+	 * position is left out, or {@linkplain #INVALID} if it isn't a valid
+	 * non-negative number.
+	 *
+	 * @param token token holding the position
+	 * @return parsed position, -1 or {@linkplain #INVALID}
+	 */
+	private static long parsePosition(String token) {
+		if (token.isEmpty()) {
+			return -1;
+		}
+
+		for (int i = 0, n = token.length(); i < n; i++) {
+			char c = token.charAt(i);
+			if (c < '0' || c > '9') {
+				return INVALID;
+			}
+		}
+
+		try {
+			return Long.parseLong(token);
+		} catch (NumberFormatException ex) {
+			return INVALID;
+		}
+	}
+
+	/**
+	 * Returns the position of the first byte in this range.
+	 *
+	 * @return position of the first byte
+	 */
+	long getFirst() {
+		return first;
+	}
+
+	/**
+	 * Returns the position of the last byte in this range.
+	 *
+	 * @return position of the last byte
+	 */
+	long getLast() {
+		return last;
+	}
+
+	/**
+	 * Returns the amount of bytes in this range.
+	 *
+	 * @return amount of bytes in this range
+	 */
+	long length() {
+		return last - first + 1;
+	}
+}
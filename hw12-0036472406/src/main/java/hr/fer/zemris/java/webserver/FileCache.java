@@ -0,0 +1,270 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Represents a cache of values created from files, such as parsed scripts.
+ * Values are mapped to the absolute, normalized path of the file they were
+ * created from, so different ways of referring to the same file share a
+ * single entry.
+ *
+ * <p>A cached value is considered stale once the last modification time of its
+ * file changes. To avoid asking the file system on every access, the modification
+ * time is checked again only after the configured check interval has passed since
+ * the last check. A check interval of zero means the file is checked on every access.
+ *
+ * <p>The total size of all cached files is capped by the configured maximum
+ * size; once it is exceeded, the least recently used values are evicted. Files
+ * larger than the maximum size are never cached, so a maximum size of zero
+ * disables caching altogether.
+ *
+ * <p>The cache may be used by multiple threads at once. It counts the amount
+ * of hits and misses, which can be retrieved for monitoring purposes.
+ *
+ * @author Vice Ivušić
+ *
+ * @param <V> type of values created from files
+ */
+public class FileCache<V> {
+
+	/** maximum total size of all cached files, in bytes */
+	private long maxSize;
+	/** amount of milliseconds after which a file is checked for modification again */
+	private long checkInterval;
+	/** object which creates values from files */
+	private Loader<V> loader;
+
+	/** cached entries in order of access, from least to most recently used */
+	private Map<Path, CacheEntry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+	/** total size of all cached files, in bytes */
+	private long totalSize;
+
+	/** amount of accesses which were served from the cache */
+	private LongAdder hits = new LongAdder();
+	/** amount of accesses which required loading the file */
+	private LongAdder misses = new LongAdder();
+
+	/**
+	 * Creates a new empty FileCache with the specified parameters.
+	 *
+	 * @param maxSize maximum total size of all cached files, in bytes
+	 * @param checkInterval amount of milliseconds after which a file is checked
+	 * 		  for modification again
+	 * @param loader object which creates values from files
+	 * @throws NullPointerException if the specified loader is null
+	 * @throws IllegalArgumentException if either maxSize or checkInterval is negative
+	 */
+	public FileCache(long maxSize, long checkInterval, Loader<V> loader) {
+		if (loader == null) {
+			throw new NullPointerException("Argument loader cannot be null!");
+		}
+
+		if (maxSize < 0 || checkInterval < 0) {
+			throw new IllegalArgumentException("Neither maxSize nor checkInterval may be negative!");
+		}
+
+		this.maxSize = maxSize;
+		this.checkInterval = checkInterval;
+		this.loader = loader;
+	}
+
+	/**
+	 * Returns the value created from the file on the specified path. The value
+	 * is taken from the cache if the file hasn't been modified since the value
+	 * was created; otherwise, it is created again and cached.
+	 *
+	 * @param path path to the file
+	 * @return value created from the file
+	 * @throws IOException if the file could not be read
+	 */
+	public V get(Path path) throws IOException {
+		Path key = path.toAbsolutePath().normalize();
+		long now = System.currentTimeMillis();
+
+		CacheEntry<V> entry;
+		synchronized (this) {
+			entry = entries.get(key);
+		}
+
+		if (entry != null) {
+			if (now - entry.lastChecked < checkInterval) {
+				hits.increment();
+				return entry.value;
+			}
+
+			if (Files.getLastModifiedTime(key).toMillis() == entry.lastModified) {
+				entry.lastChecked = now;
+				hits.increment();
+				return entry.value;
+			}
+		}
+
+		misses.increment();
+
+		// attributes are read first, so a modification during loading is noticed later
+		BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+		V value = loader.load(key);
+
+		long size = attributes.size();
+		if (size > maxSize) {
+			return value;
+		}
+
+		CacheEntry<V> newEntry = new CacheEntry<>(
+			value,
+			attributes.lastModifiedTime().toMillis(),
+			size,
+			now
+		);
+
+		synchronized (this) {
+			CacheEntry<V> oldEntry = entries.put(key, newEntry);
+			if (oldEntry != null) {
+				totalSize -= oldEntry.size;
+			}
+			totalSize += size;
+
+			Iterator<CacheEntry<V>> it = entries.values().iterator();
+			while (totalSize > maxSize && it.hasNext()) {
+				totalSize -= it.next().size;
+				it.remove();
+			}
+		}
+
+		return value;
+	}
+
+	/**
+	 * Returns the value created from the file on the specified path if it is
+	 * cached and the file hasn't been modified since the value was created.
+	 * Unlike {@linkplain #get(Path)}, never loads the file; if the value isn't
+	 * cached, or the file has been modified or can no longer be accessed,
+	 * null is returned and nothing is counted as a miss.
+	 * 
+	 * @param path path to the file
+	 * @return cached value created from the file, or null
+	 */
+	public V getIfPresent(Path path) {
+		Path key = path.toAbsolutePath().normalize();
+		long now = System.currentTimeMillis();
+		
+		CacheEntry<V> entry;
+		synchronized (this) {
+			entry = entries.get(key);
+		}
+		
+		if (entry == null) {
+			return null;
+		}
+		
+		if (now - entry.lastChecked >= checkInterval) {
+			try {
+				if (Files.getLastModifiedTime(key).toMillis() != entry.lastModified) {
+					return null;
+				}
+			} catch (IOException ex) {
+				return null;
+			}
+			entry.lastChecked = now;
+		}
+		
+		hits.increment();
+		return entry.value;
+	}
+	
+	/**
+	 * Returns the amount of accesses which were served from the cache.
+	 *
+	 * @return amount of cache hits
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the amount of accesses which required the file to be loaded.
+	 *
+	 * @return amount of cache misses
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the total size of all currently cached files, in bytes.
+	 *
+	 * @return total size of all cached files
+	 */
+	public synchronized long getTotalSize() {
+		return totalSize;
+	}
+
+	/**
+	 * Returns the amount of currently cached values.
+	 *
+	 * @return amount of cached values
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Specifies an object which knows how to create a value from a file.
+	 *
+	 * @author Vice Ivušić
+	 *
+	 * @param <V> type of created values
+	 */
+	public interface Loader<V> {
+
+		/**
+		 * Creates a value from the file on the specified path.
+		 *
+		 * @param path path to the file
+		 * @return value created from the file
+		 * @throws IOException if the file could not be read
+		 */
+		V load(Path path) throws IOException;
+	}
+
+	/**
+	 * Helper class for storing a cached value along with information about
+	 * the file it was created from.
+	 *
+	 * @author Vice Ivušić
+	 *
+	 * @param <V> type of the cached value
+	 */
+	private static class CacheEntry<V> {
+		/** the cached value */
+		private V value;
+		/** last modification time of the file when the value was created */
+		private long lastModified;
+		/** size of the file in bytes */
+		private long size;
+		/** time when the file was last checked for modification */
+		private volatile long lastChecked;
+
+		/**
+		 * Creates a new CacheEntry from the specified parameters.
+		 *
+		 * @param value the cached value
+		 * @param lastModified last modification time of the file
+		 * @param size size of the file in bytes
+		 * @param lastChecked time when the file was last checked for modification
+		 */
+		public CacheEntry(V value, long lastModified, long size, long lastChecked) {
+			this.value = value;
+			this.lastModified = lastModified;
+			this.size = size;
+			this.lastChecked = lastChecked;
+		}
+	}
+}
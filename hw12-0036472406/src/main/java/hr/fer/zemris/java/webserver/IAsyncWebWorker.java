@@ -0,0 +1,51 @@
+package hr.fer.zemris.java.webserver;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Specifies a web worker which processes a request asynchronously. Instead of
+ * writing the whole response before returning, the worker starts processing the
+ * request and returns a stage which completes once the response has been written.
+ * While the stage is pending, the server doesn't hold a thread for the request,
+ * so a worker waiting on a slow service doesn't occupy any of the worker threads.
+ *
+ * <p>Until the returned stage completes, the worker may use the context from any
+ * thread, as long as it is used by a single thread at a time; the server doesn't
+ * touch the context in the meantime. Once the stage completes, the server finishes
+ * the response, so the worker must not use the context any longer. If the stage
+ * completes exceptionally, the client is sent an error, if possible, and the
+ * connection is closed.
+ *
+ * <p>An asynchronous worker can also be used wherever a synchronous one is
+ * expected, such as when a request is dispatched to it from within the server;
+ * it then blocks until the returned stage completes.
+ *
+ * @author Vice Ivušić
+ *
+ */
+public interface IAsyncWebWorker extends IWebWorker {
+
+	/**
+	 * Starts processing a request using the specified context object.
+	 *
+	 * @param context context object to use for processing request
+	 * @return stage which completes once the response has been written
+	 * @throws Exception if any kind of exception occurs while starting to
+	 * 		   process the request
+	 */
+	public CompletionStage<Void> processRequestAsync(RequestContext context) throws Exception;
+
+	/**
+	 * Processes a request using the specified context object, blocking until
+	 * the stage returned by {@linkplain #processRequestAsync(RequestContext)}
+	 * completes.
+	 *
+	 * @param context context object to use for processing request
+	 * @throws Exception if any kind of exception occurs during processing
+	 * 		   of request
+	 */
+	@Override
+	public default void processRequest(RequestContext context) throws Exception {
+		processRequestAsync(context).toCompletableFuture().get();
+	}
+}
@@ -0,0 +1,159 @@
+package hr.fer.zemris.java.webserver;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records a distribution of latencies, in microseconds, using a fixed amount
+ * of memory. Latencies are counted in buckets whose width grows with the
+ * latency: below {@value #LINEAR_LIMIT} microseconds each bucket holds a single
+ * value, and above it each power of two is split into {@value #SUB_BUCKETS}
+ * buckets of equal width. Any recorded latency can therefore be told apart
+ * from the latencies around it with a relative error of at most 1/{@value #SUB_BUCKETS}.
+ * Latencies larger than {@value #MAX_VALUE} microseconds are counted as that value.
+ *
+ * <p>Recording a latency requires neither locks nor allocation, so latencies
+ * may be recorded by multiple threads at once. Reading the histogram while
+ * latencies are being recorded gives a view which may be slightly out of date,
+ * which is acceptable for monitoring purposes.
+ *
+ * @author Vice Ivušić
+ *
+ */
+class LatencyHistogram {
+
+	/** amount of bits of a latency kept above its highest set bit */
+	private static final int SUB_BUCKET_BITS = 4;
+	/** amount of buckets each power of two is split into */
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	/** latency below which each bucket holds a single value */
+	private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+	/** largest latency told apart from larger ones, about 19 hours */
+	private static final long MAX_VALUE = (1L << 36) - 1;
+	/** total amount of buckets */
+	private static final int BUCKET_COUNT = bucketIndex(MAX_VALUE) + 1;
+
+	/** counts of latencies in each bucket */
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+	/** amount of recorded latencies */
+	private final LongAdder count = new LongAdder();
+	/** sum of recorded latencies */
+	private final LongAdder sum = new LongAdder();
+	/** largest recorded latency */
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Records the specified latency. Negative latencies are recorded as zero.
+	 *
+	 * @param micros latency in microseconds
+	 */
+	void record(long micros) {
+		long value = Math.min(Math.max(micros, 0), MAX_VALUE);
+
+		buckets.incrementAndGet(bucketIndex(value));
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	/**
+	 * Returns the amount of recorded latencies.
+	 *
+	 * @return amount of recorded latencies
+	 */
+	long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Returns the mean of recorded latencies, or 0 if none have been recorded.
+	 *
+	 * @return mean latency in microseconds
+	 */
+	double getMean() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+
+	/**
+	 * Returns the largest recorded latency, or 0 if none have been recorded.
+	 *
+	 * @return largest latency in microseconds
+	 */
+	long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns the latency below or at which the specified percentage of
+	 * recorded latencies lies, rounded up to the end of its bucket and capped
+	 * by the largest recorded latency. Returns 0 if no latencies have been
+	 * recorded.
+	 *
+	 * @param percentile percentage of latencies, between 0 and 100
+	 * @return latency at the percentile, in microseconds
+	 * @throws IllegalArgumentException if the percentile is out of range
+	 */
+	long getPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("Argument percentile must be between 0 and 100!");
+		}
+
+		long total = 0;
+		long[] counts = new long[BUCKET_COUNT];
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+
+		if (total == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return Math.min(bucketEnd(i), getMax());
+			}
+		}
+
+		return getMax();
+	}
+
+	/**
+	 * Helper method for determining the index of the bucket holding the
+	 * specified latency.
+	 *
+	 * @param value latency, between 0 and {@value #MAX_VALUE}
+	 * @return index of the bucket
+	 */
+	private static int bucketIndex(long value) {
+		if (value < LINEAR_LIMIT) {
+			return (int) value;
+		}
+
+		// the highest set bit and the following bits select the bucket
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return shift * SUB_BUCKETS + (int) (value >>> shift);
+	}
+
+	/**
+	 * Helper method for determining the largest latency held by the bucket
+	 * with the specified index.
+	 *
+	 * @param index index of the bucket
+	 * @return largest latency of the bucket
+	 */
+	private static long bucketEnd(int index) {
+		if (index < LINEAR_LIMIT) {
+			return index;
+		}
+
+		int shift = index / SUB_BUCKETS - 1;
+		long first = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+		return first + (1L << shift) - 1;
+	}
+}
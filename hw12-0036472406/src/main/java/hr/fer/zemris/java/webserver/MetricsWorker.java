@@ -0,0 +1,59 @@
+package hr.fer.zemris.java.webserver;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A worker which reports the metrics collected by the server, along with
+ * gauges describing its current state. The metrics are reported in plain
+ * text, or as a JSON object if the request has the parameter {@code format}
+ * set to {@code json}.
+ *
+ * @author Vice Ivušić
+ *
+ */
+class MetricsWorker implements IWebWorker {
+
+	/** metrics collected by the server */
+	private final ServerMetrics metrics;
+	/** supplier of the current gauges, mapped to their names */
+	private final Supplier<Map<String, Number>> gauges;
+
+	/**
+	 * Creates a new MetricsWorker reporting the specified metrics and gauges.
+	 *
+	 * @param metrics metrics collected by the server
+	 * @param gauges supplier of the current gauges, mapped to their names
+	 * @throws NullPointerException if either of the arguments is null
+	 */
+	MetricsWorker(ServerMetrics metrics, Supplier<Map<String, Number>> gauges) {
+		if (metrics == null) {
+			throw new NullPointerException("Argument metrics cannot be null!");
+		}
+		if (gauges == null) {
+			throw new NullPointerException("Argument gauges cannot be null!");
+		}
+
+		this.metrics = metrics;
+		this.gauges = gauges;
+	}
+
+	@Override
+	public void processRequest(RequestContext context) throws Exception {
+		StringBuilder sb = new StringBuilder();
+
+		if ("json".equals(context.getParameter("format"))) {
+			context.setMimeType("application/json");
+			metrics.writeJson(sb, gauges.get());
+		} else {
+			context.setMimeType("text/plain");
+			metrics.writeText(sb, gauges.get());
+		}
+
+		byte[] data = sb.toString().getBytes(StandardCharsets.UTF_8);
+		context.setByteLength(data.length);
+		context.addHeader("Cache-Control", "no-store");
+		context.write(data);
+	}
+}
@@ -0,0 +1,339 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Represents a cache of rendered output, such as the output of scripts whose
+ * output depends only on a few request parameters. Each output is mapped to
+ * a key identifying what was rendered and from which inputs.
+ *
+ * <p>A cached output is considered stale once the configured time to live has
+ * passed since it was rendered, after which it has to be rendered again. The
+ * total size of all cached outputs is capped by the configured maximum size;
+ * once it is exceeded, the least recently used outputs are evicted. Outputs
+ * larger than the maximum size are never cached, so a maximum size of zero
+ * disables caching altogether. The sources of such outputs, such as compiled
+ * scripts, can be marked as too large, so their output isn't captured again
+ * for as long as the source is in use.
+ *
+ * <p>The cache may be used by multiple threads at once. It counts the amount
+ * of hits and misses, which can be retrieved for monitoring purposes.
+ *
+ * @author Vice Ivušić
+ *
+ */
+class OutputCache {
+
+	/** maximum total size of all cached outputs, in bytes */
+	private final long maxSize;
+	/** amount of milliseconds an output stays fresh after being rendered */
+	private final long timeToLive;
+
+	/** cached outputs in order of access, from least to most recently used */
+	private final Map<Object, CachedOutput> entries = new LinkedHashMap<>(16, 0.75f, true);
+	/** total size of all cached outputs, in bytes */
+	private long totalSize;
+	/** sources whose output was too large to be cached; held weakly */
+	private final Set<Object> tooLarge = Collections.synchronizedSet(
+		Collections.newSetFromMap(new WeakHashMap<>())
+	);
+
+	/** amount of accesses which were served from the cache */
+	private final LongAdder hits = new LongAdder();
+	/** amount of accesses which required the output to be rendered */
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Creates a new empty OutputCache with the specified parameters.
+	 *
+	 * @param maxSize maximum total size of all cached outputs, in bytes
+	 * @param timeToLive amount of milliseconds an output stays fresh
+	 * @throws IllegalArgumentException if either argument is negative
+	 */
+	OutputCache(long maxSize, long timeToLive) {
+		if (maxSize < 0 || timeToLive < 0) {
+			throw new IllegalArgumentException("Neither maxSize nor timeToLive may be negative!");
+		}
+
+		this.maxSize = maxSize;
+		this.timeToLive = timeToLive;
+	}
+
+	/**
+	 * Returns the output mapped to the specified key, or null if no fresh
+	 * output is cached under it, in which case the access is counted as a miss.
+	 *
+	 * @param key key of the output
+	 * @return cached output, or null
+	 */
+	CachedOutput get(Object key) {
+		long now = System.currentTimeMillis();
+
+		synchronized (this) {
+			CachedOutput output = entries.get(key);
+
+			if (output != null && now < output.expiresAt) {
+				hits.increment();
+				return output;
+			}
+
+			if (output != null) {
+				entries.remove(key);
+				totalSize -= output.body.length;
+			}
+		}
+
+		misses.increment();
+		return null;
+	}
+
+	/**
+	 * Caches the specified output under the specified key, replacing any
+	 * output previously cached under it. The returned output can be sent
+	 * whether or not it has been cached.
+	 *
+	 * @param key key of the output
+	 * @param mimeType mime type of the output
+	 * @param body the output, encoded into bytes
+	 * @return the cached output
+	 */
+	CachedOutput put(Object key, String mimeType, byte[] body) {
+		CachedOutput output = new CachedOutput(
+			mimeType,
+			body,
+			System.currentTimeMillis() + timeToLive
+		);
+
+		if (body.length > maxSize) {
+			return output;
+		}
+
+		synchronized (this) {
+			CachedOutput oldOutput = entries.put(key, output);
+			if (oldOutput != null) {
+				totalSize -= oldOutput.body.length;
+			}
+			totalSize += body.length;
+
+			Iterator<CachedOutput> it = entries.values().iterator();
+			while (totalSize > maxSize && it.hasNext()) {
+				totalSize -= it.next().body.length;
+				it.remove();
+			}
+		}
+
+		return output;
+	}
+
+	/**
+	 * Marks the specified source as producing output too large to be cached.
+	 * The mark is kept only for as long as the source is referenced elsewhere.
+	 *
+	 * @param source source of the output, compared by its equals method
+	 */
+	void markTooLarge(Object source) {
+		tooLarge.add(source);
+	}
+
+	/**
+	 * Returns <b>true</b> if the specified source has been marked as producing
+	 * output too large to be cached, in which case its output shouldn't be
+	 * captured at all.
+	 *
+	 * @param source source of the output
+	 * @return <b>true</b> iff the source has been marked as too large
+	 */
+	boolean isTooLarge(Object source) {
+		return tooLarge.contains(source);
+	}
+
+	/**
+	 * Creates a stream collecting an output as it is rendered. Once more bytes
+	 * are written into it than fit into the cache, it writes the bytes collected
+	 * so far into its overflow stream, and passes every further byte on to it,
+	 * so a large output is rendered only once and doesn't use up memory.
+	 *
+	 * @return stream collecting an output
+	 */
+	Capture newCapture() {
+		return new Capture(maxSize);
+	}
+
+	/**
+	 * Returns the amount of accesses which were served from the cache.
+	 *
+	 * @return amount of cache hits
+	 */
+	long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Returns the amount of accesses which required the output to be rendered.
+	 *
+	 * @return amount of cache misses
+	 */
+	long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the total size of all currently cached outputs, in bytes.
+	 *
+	 * @return total size of all cached outputs
+	 */
+	synchronized long getTotalSize() {
+		return totalSize;
+	}
+
+	/**
+	 * Returns the amount of currently cached outputs.
+	 *
+	 * @return amount of cached outputs
+	 */
+	synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Represents an output held in the cache. Instances are immutable, so they
+	 * may be shared by multiple threads.
+	 *
+	 * @author Vice Ivušić
+	 *
+	 */
+	static class CachedOutput {
+		/** mime type of the output */
+		private final String mimeType;
+		/** the output, encoded into bytes */
+		private final byte[] body;
+		/** time after which the output is stale, in milliseconds */
+		private final long expiresAt;
+
+		/**
+		 * Creates a new CachedOutput from the specified parameters.
+		 *
+		 * @param mimeType mime type of the output
+		 * @param body the output, encoded into bytes
+		 * @param expiresAt time after which the output is stale, in milliseconds
+		 */
+		private CachedOutput(String mimeType, byte[] body, long expiresAt) {
+			this.mimeType = mimeType;
+			this.body = body;
+			this.expiresAt = expiresAt;
+		}
+
+		/**
+		 * Returns the mime type of the output.
+		 *
+		 * @return mime type of the output
+		 */
+		String getMimeType() {
+			return mimeType;
+		}
+
+		/**
+		 * Returns the output, encoded into bytes. The array must not be modified.
+		 *
+		 * @return the output
+		 */
+		byte[] getBody() {
+			return body;
+		}
+	}
+
+	/**
+	 * Stream collecting an output as it is rendered, up to a limit, after
+	 * which the output is passed on to an overflow stream.
+	 *
+	 * @author Vice Ivušić
+	 *
+	 */
+	static class Capture extends OutputStream {
+		/** maximum amount of bytes collected */
+		private final long limit;
+		/** stream receiving the output once more bytes than the limit were written */
+		private OutputStream overflowStream;
+		/** bytes collected so far */
+		private final ByteArrayOutputStream collected = new ByteArrayOutputStream();
+		/** flag indicating more bytes than the limit were written */
+		private boolean overflowed;
+
+		/**
+		 * Creates a new Capture collecting at most the specified amount of bytes.
+		 *
+		 * @param limit maximum amount of bytes collected
+		 */
+		private Capture(long limit) {
+			this.limit = limit;
+		}
+
+		/**
+		 * Sets the stream which receives the output once more bytes than the
+		 * limit were written. Must be set before anything is written.
+		 *
+		 * @param overflowStream stream receiving the output once it no longer fits
+		 * @throws NullPointerException if the specified stream is null
+		 */
+		void setOverflowStream(OutputStream overflowStream) {
+			if (overflowStream == null) {
+				throw new NullPointerException("Argument overflowStream cannot be null!");
+			}
+
+			this.overflowStream = overflowStream;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (overflowed) {
+				overflowStream.write(b, off, len);
+				return;
+			}
+
+			if (collected.size() + (long) len > limit) {
+				overflowed = true;
+				if (collected.size() > 0) {
+					overflowStream.write(collected.toByteArray());
+				}
+				collected.reset();
+				overflowStream.write(b, off, len);
+				return;
+			}
+
+			collected.write(b, off, len);
+		}
+
+		/**
+		 * Returns the bytes collected so far.
+		 *
+		 * @return collected bytes
+		 */
+		byte[] toByteArray() {
+			return collected.toByteArray();
+		}
+
+		/**
+		 * Returns <b>true</b> if more bytes than the limit were written, in
+		 * which case the output has been passed on to the overflow stream.
+		 *
+		 * @return <b>true</b> iff the capture has overflowed
+		 */
+		boolean hasOverflowed() {
+			return overflowed;
+		}
+	}
+}
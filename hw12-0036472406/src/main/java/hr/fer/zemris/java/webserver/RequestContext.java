@@ -1,12 +1,20 @@
 package hr.fer.zemris.java.webserver;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -21,7 +29,21 @@ import java.util.Set;
  * through its methods.
  * 
  * <p>Also offers methods for writing bytes or a String into the configured
- * output stream.
+ * output stream. Once the whole body has been written, the response should be
+ * finished by calling {@linkplain #finish()}, which makes sure the end of the
+ * body can be recognized by the client even on a persistent connection.
+ * 
+ * <p>By default, everything written is sent into the output stream right
+ * away. If a buffer size is set, written bytes and text are collected in a
+ * buffer of that size instead, which is sent only once it overflows or the
+ * response is finished. If the whole body fits into the buffer, its length is
+ * known before the header is sent, so the header declares it; otherwise, the
+ * body is sent in chunks the size of the buffer.
+ * 
+ * <p>Parts of files are written using {@linkplain #write(FileChannel, long, long)}.
+ * If the context has been given a channel leading to the same destination as its
+ * output stream, the file is transferred into that channel directly, without
+ * ever being copied onto the heap.
  * 
  * @author Vice Ivušić
  *
@@ -41,6 +63,14 @@ public class RequestContext {
 	private static final String DEFAULT_STATUS_TEXT = "OK";
 	/** default mime type of text/html */
 	private static final String DEFAULT_MIME_TYPE = "text/html";
+	/** line terminator used in HTTP messages */
+	private static final byte[] CRLF = {'\r', '\n'};
+	/** last chunk of a body sent using chunked transfer encoding */
+	private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+	/** smallest buffer size, so the encoding of any single character fits into the buffer */
+	private static final int MIN_BUFFER_SIZE = 16;
+	/** size of the buffer used for copying files when no output channel is available */
+	private static final int FILE_COPY_BUFFER_SIZE = 64 * 1024;
 	
 	/** the charset used for encoding strings passed onto the write method */
 	private String encoding = DEFAULT_ENCODING;
@@ -51,7 +81,9 @@ public class RequestContext {
 	/** the mime type to be used in the HTTP header */
 	private String mimeType = DEFAULT_MIME_TYPE;
 	/** the length of the HTTP message's body in bytes; optional */
-	private Integer byteLength;
+	private Long byteLength;
+	/** the size of the buffer collecting the body; zero if the body isn't buffered */
+	private int bufferSize;
 	
 	/** map of parameters */
 	private Map<String, String> parameters;
@@ -62,9 +94,36 @@ public class RequestContext {
 	
 	/** list of cookies */
 	private List<RCCookie> outputCookies;
+	/** additional header fields, mapping names to values */
+	private Map<String, String> headerFields = new LinkedHashMap<>();
+	/** header fields already encoded into bytes, appended to the header as they are; optional */
+	private byte[] prebuiltHeaderFields;
+	/** flag indicating no header is output, only the body */
+	private boolean headerOmitted;
 	
-	/** flag indicating a header has already been output by calling the write method */
+	/** flag indicating one of the write methods has been called */
+	private boolean writeCalled;
+	/** flag indicating a header has already been output */
 	private boolean headerGenerated;
+	/** flag indicating the response has been finished by calling the finish method */
+	private boolean finished;
+	
+	/** whether the connection should be kept open after the response; optional */
+	private Boolean keepAlive;
+	/** flag indicating the client understands chunked transfer encoding */
+	private boolean chunkedEncodingAllowed;
+	/** flag indicating the body is being sent using chunked transfer encoding */
+	private boolean chunked;
+	/** amount of bytes of the header and body output so far */
+	private long bytesSent;
+	
+	/** buffer collecting the body before it is output; null if the body isn't buffered */
+	private ByteBuffer buffer;
+	/** encoder of the configured charset, reused for all written text */
+	private CharsetEncoder encoder;
+	
+	/** channel leading to the same destination as the output stream; optional */
+	private WritableByteChannel outputChannel;
 	
 	/** an object which knows how to handle dispatch requests; optional */
 	private IDispatcher dispatcher;
@@ -145,6 +204,16 @@ public class RequestContext {
 		this.encoding = encoding;
 	}
 	
+	/**
+	 * Returns the name of the encoding this context uses for encoding
+	 * Strings passed onto {@linkplain #write(String)}.
+	 * 
+	 * @return name of this context's encoding
+	 */
+	public String getEncoding() {
+		return encoding;
+	}
+	
 	/**
 	 * Sets this context's status code to the specified status code. If the
 	 * status code is null, a default status code of 200 will be used.
@@ -165,6 +234,15 @@ public class RequestContext {
 		this.statusCode = statusCode;
 	}
 	
+	/**
+	 * Returns this context's status code.
+	 * 
+	 * @return status code of this context
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+	
 	/**
 	 * Sets this context's status text to the specified status text. If the
 	 * status text is null, a default status text of "OK" will be used.
@@ -205,6 +283,15 @@ public class RequestContext {
 		this.mimeType = mimeType;
 	}
 	
+	/**
+	 * Returns this context's mime type.
+	 * 
+	 * @return mime type of the HTTP message's body
+	 */
+	public String getMimeType() {
+		return mimeType;
+	}
+	
 	/**
 	 * Sets this context's byte length to the specified length. If the specified
 	 * length is less than zero, the byte length is considered not to be specified
@@ -215,6 +302,21 @@ public class RequestContext {
 	 * 		   by calling {@linkplain #write(byte[])}
 	 */
 	public void setByteLength(Integer byteLength) {
+		// may throw IllegalStateException
+		setByteLength(byteLength.longValue());
+	}
+	
+	/**
+	 * Sets this context's byte length to the specified length, which may exceed
+	 * the range of an Integer. If the specified length is less than zero, the
+	 * byte length is considered not to be specified at all, and the context will
+	 * not generate a Content-Length tag.
+	 * 
+	 * @param byteLength desired byte length of this context's HTTP message body
+	 * @throws IllegalStateException if header has already been generated 
+	 * 		   by calling {@linkplain #write(byte[])}
+	 */
+	public void setByteLength(long byteLength) {
 		// may throw IllegalStateException
 		checkHeaderGenerated();
 
@@ -226,6 +328,164 @@ public class RequestContext {
 		this.byteLength = byteLength;
 	}
 	
+	/**
+	 * Adds a header field with the specified name and value to the generated
+	 * header. A field added earlier under the same name is replaced. Fields
+	 * generated by this context itself, such as Content-Type, should be set
+	 * through their own methods instead.
+	 * 
+	 * @param name name of the header field
+	 * @param value value of the header field
+	 * @throws NullPointerException if either argument is null
+	 * @throws IllegalStateException if header has already been generated 
+	 * 		   by calling {@linkplain #write(byte[])}
+	 */
+	public void addHeader(String name, String value) {
+		if (name == null || value == null) {
+			throw new NullPointerException("Neither name nor value may be null!");
+		}
+		
+		// may throw IllegalStateException
+		checkHeaderGenerated();
+		
+		headerFields.put(name, value);
+	}
+	
+	/**
+	 * Sets header fields which have already been encoded into bytes, such as
+	 * the fields describing a cached file. Each field must be terminated with
+	 * CRLF. The bytes are appended to the generated header as they are, after
+	 * all other fields. The array is not copied, so it must not be modified
+	 * afterwards.
+	 * 
+	 * @param prebuiltHeaderFields encoded header fields; may be null
+	 * @throws IllegalStateException if header has already been generated 
+	 * 		   by calling {@linkplain #write(byte[])}
+	 */
+	void setPrebuiltHeaderFields(byte[] prebuiltHeaderFields) {
+		// may throw IllegalStateException
+		checkHeaderGenerated();
+		
+		this.prebuiltHeaderFields = prebuiltHeaderFields;
+	}
+	
+	/**
+	 * Sets whether the header is omitted, so only the body is output, without
+	 * any framing. Used for capturing the body of a response, such as the output
+	 * of a script, so it can be sent later as the body of another response.
+	 * 
+	 * @param headerOmitted <b>true</b> if no header should be output
+	 * @throws IllegalStateException if header has already been generated 
+	 * 		   by calling {@linkplain #write(byte[])}
+	 */
+	void setHeaderOmitted(boolean headerOmitted) {
+		// may throw IllegalStateException
+		checkHeaderGenerated();
+		
+		this.headerOmitted = headerOmitted;
+	}
+	
+	/**
+	 * Sets the channel leading to the same destination as this context's
+	 * output stream, such as the channel of the socket the output stream
+	 * belongs to. If set, files written by {@linkplain #write(FileChannel, long, long)}
+	 * are transferred into it directly. May be null, in which case files
+	 * are copied into the output stream.
+	 * 
+	 * @param outputChannel channel leading to the same destination as the output stream
+	 * @throws IllegalStateException if header has already been generated 
+	 * 		   by calling {@linkplain #write(byte[])}
+	 */
+	public void setOutputChannel(WritableByteChannel outputChannel) {
+		// may throw IllegalStateException
+		checkHeaderGenerated();
+		
+		this.outputChannel = outputChannel;
+	}
+	
+	/**
+	 * Sets the size of the buffer collecting the body before it is output, in
+	 * bytes. A size of zero means the body isn't buffered, and everything
+	 * written is output and flushed right away. Sizes smaller than 16 bytes
+	 * are rounded up to 16 bytes.
+	 * 
+	 * @param bufferSize desired buffer size in bytes, or zero
+	 * @throws IllegalArgumentException if the specified size is negative
+	 * @throws IllegalStateException if header has already been generated 
+	 * 		   by calling {@linkplain #write(byte[])}
+	 */
+	public void setBufferSize(int bufferSize) {
+		// may throw IllegalStateException
+		checkHeaderGenerated();
+		
+		if (bufferSize < 0) {
+			throw new IllegalArgumentException("Argument bufferSize cannot be negative!");
+		}
+		
+		this.bufferSize = bufferSize == 0 ? 0 : Math.max(bufferSize, MIN_BUFFER_SIZE);
+	}
+	
+	/**
+	 * Sets whether the connection this context writes into should be kept
+	 * open after the response has been sent. The generated header will contain
+	 * a matching Connection field. If this method is never called, no
+	 * Connection field is generated.
+	 * 
+	 * <p>A persistent connection requires the length of the body to be known
+	 * to the client. If no byte length has been set, the body will either be
+	 * sent using chunked transfer encoding, if it was allowed by calling
+	 * {@linkplain #setChunkedEncodingAllowed(boolean)}, or the connection
+	 * will not be kept open after all.
+	 * 
+	 * @param keepAlive <b>true</b> if the connection should be kept open
+	 * @throws IllegalStateException if header has already been generated 
+	 * 		   by calling {@linkplain #write(byte[])}
+	 */
+	public void setKeepAlive(boolean keepAlive) {
+		// may throw IllegalStateException
+		checkHeaderGenerated();
+		
+		this.keepAlive = keepAlive;
+	}
+	
+	/**
+	 * Sets whether the body may be sent using chunked transfer encoding,
+	 * which is understood only by HTTP/1.1 clients.
+	 * 
+	 * @param chunkedEncodingAllowed <b>true</b> if chunked transfer encoding may be used
+	 * @throws IllegalStateException if header has already been generated 
+	 * 		   by calling {@linkplain #write(byte[])}
+	 */
+	public void setChunkedEncodingAllowed(boolean chunkedEncodingAllowed) {
+		// may throw IllegalStateException
+		checkHeaderGenerated();
+		
+		this.chunkedEncodingAllowed = chunkedEncodingAllowed;
+	}
+	
+	/**
+	 * Returns <b>true</b> if the connection this context writes into may be
+	 * used for further responses once this response has been finished. This is
+	 * the case only if it was requested by calling {@linkplain #setKeepAlive(boolean)}
+	 * and the body of the response has been framed so the client can tell where
+	 * it ends.
+	 * 
+	 * @return <b>true</b> iff the connection may be kept open
+	 */
+	public boolean isKeepAlive() {
+		return keepAlive != null && keepAlive;
+	}
+	
+	/**
+	 * Returns the amount of bytes of the header and body this context has
+	 * output so far, including those framing the body's chunks.
+	 * 
+	 * @return amount of bytes output so far
+	 */
+	public long getBytesSent() {
+		return bytesSent;
+	}
+	
 	/**
 	 * Helper method for checking whether a header has already been generated
 	 * and output by calling one of the write methods.
@@ -234,7 +494,7 @@ public class RequestContext {
 	 * 		   by calling {@linkplain #write(byte[])}
 	 */
 	private void checkHeaderGenerated() {
-		if (headerGenerated) {
+		if (writeCalled) {
 			throw new IllegalStateException("Cannot change property after calling write even once!");
 		}
 	}
@@ -362,6 +622,9 @@ public class RequestContext {
 	 * for the first time. Subsequent calls will not generate a header.
 	 * Does nothing if the specified array of bytes is null.
 	 * 
+	 * <p>If the body is buffered, the bytes are only copied into the buffer,
+	 * unless they don't fit into it.
+	 * 
 	 * @param data bytes to write
 	 * @return current context
 	 * @throws IOException if an error occured during writing to this
@@ -372,13 +635,29 @@ public class RequestContext {
 			return this;
 		}
 		
-		if (!headerGenerated) {
-			generateHeader();
+		startWriting();
+		
+		if (buffer == null) {
+			if (!headerGenerated) {
+				generateHeader();
+			}
+			
+			writeBody(data, 0, data.length);
+			outputStream.flush();
+			return this;
 		}
 		
-		outputStream.write(data);
-		outputStream.flush();
+		if (data.length > buffer.remaining()) {
+			flushBuffer();
+			
+			// copying wouldn't save anything, as the buffer would be output right away
+			if (data.length >= buffer.capacity()) {
+				writeBody(data, 0, data.length);
+				return this;
+			}
+		}
 		
+		buffer.put(data);
 		return this;
 	}
 	
@@ -389,6 +668,9 @@ public class RequestContext {
 	 * Subsequent calls will not generate a header. Does nothing
 	 * if the specified text is null.
 	 * 
+	 * <p>If the body is buffered, the text is encoded directly into the buffer,
+	 * which is output each time it fills up.
+	 * 
 	 * @param text text to write
 	 * @return current context
 	 * @throws IOException if an error occured during writing to this
@@ -399,15 +681,280 @@ public class RequestContext {
 			return this;
 		}
 		
+		startWriting();
+		
+		if (buffer == null) {
+			if (!headerGenerated) {
+				generateHeader();
+			}
+			
+			byte[] data = text.getBytes(charset);
+			writeBody(data, 0, data.length);
+			outputStream.flush();
+			return this;
+		}
+		
+		CharBuffer input = CharBuffer.wrap(text);
+		while (encoder.encode(input, buffer, true).isOverflow()) {
+			flushBuffer();
+		}
+		while (encoder.flush(buffer).isOverflow()) {
+			flushBuffer();
+		}
+		encoder.reset();
+		
+		return this;
+	}
+	
+	/**
+	 * Writes the specified part of a file as part of an HTTP message's body.
+	 * Will generate a header if it hasn't been generated yet. Anything still
+	 * in the buffer is output first, so the body stays in order.
+	 * 
+	 * <p>If an output channel has been set, the file is transferred into it
+	 * using {@linkplain FileChannel#transferTo(long, long, WritableByteChannel)},
+	 * which lets the operating system send the file without copying it into
+	 * the heap. Otherwise, the file is copied into the output stream piece by
+	 * piece, so it is never held in memory as a whole.
+	 * 
+	 * @param file channel of the file to write
+	 * @param position position of the first byte to write
+	 * @param count amount of bytes to write
+	 * @return current context
+	 * @throws NullPointerException if the specified file is null
+	 * @throws IllegalArgumentException if either position or count is negative
+	 * @throws EOFException if the file ends before all bytes could be written
+	 * @throws IOException if an error occured during reading of the file or
+	 * 		   writing to this context's output
+	 */
+	public RequestContext write(FileChannel file, long position, long count) throws IOException {
+		if (file == null) {
+			throw new NullPointerException("Argument file cannot be null!");
+		}
+		
+		if (position < 0 || count < 0) {
+			throw new IllegalArgumentException("Neither position nor count may be negative!");
+		}
+		
+		startWriting();
+		
+		if (buffer != null) {
+			flushBuffer();
+		} else if (!headerGenerated) {
+			generateHeader();
+		}
+		
+		// an empty chunk would mark the end of the body
+		if (count == 0) {
+			return this;
+		}
+		
+		if (chunked) {
+			byte[] chunkSize = (Long.toHexString(count)+"\r\n").getBytes(StandardCharsets.ISO_8859_1);
+			outputStream.write(chunkSize);
+			bytesSent += chunkSize.length;
+		}
+		
+		if (outputChannel != null) {
+			// everything written so far has to reach the channel first
+			outputStream.flush();
+			transferFile(file, position, count);
+		} else {
+			copyFile(file, position, count);
+		}
+		bytesSent += count;
+		
+		if (chunked) {
+			outputStream.write(CRLF);
+			bytesSent += CRLF.length;
+		}
+		
+		if (buffer == null) {
+			outputStream.flush();
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Outputs everything written so far and flushes the configured output
+	 * stream, generating a header if it hasn't been generated yet. Once the
+	 * header has been generated, the length of the body can no longer be
+	 * determined from the buffered body.
+	 * 
+	 * @throws IOException if an error occured during writing to this
+	 * 		   context's output stream
+	 */
+	public void flush() throws IOException {
+		startWriting();
+		
+		if (buffer != null) {
+			flushBuffer();
+		} else if (!headerGenerated) {
+			generateHeader();
+		}
+		
+		outputStream.flush();
+	}
+	
+	/**
+	 * Finishes the response. Generates a header if it hasn't been generated
+	 * so far, in which case the whole body is in the buffer and its length is
+	 * declared in the header. Outputs whatever remains in the buffer and, if
+	 * chunked transfer encoding is being used, writes the last chunk. Flushes
+	 * the configured output stream. Calling this method more than once has
+	 * no further effect.
+	 * 
+	 * @throws IOException if an error occured during writing to this
+	 * 		   context's output stream
+	 */
+	public void finish() throws IOException {
+		if (finished) {
+			return;
+		}
+		
+		startWriting();
+		
 		if (!headerGenerated) {
+			if (byteLength == null) {
+				byteLength = buffer == null ? 0L : buffer.position();
+			}
 			generateHeader();
 		}
 		
-		// generateHeader makes sure charset isn't null
-		outputStream.write(text.getBytes(charset));
+		if (buffer != null) {
+			flushBuffer();
+		}
+		
+		if (chunked) {
+			outputStream.write(LAST_CHUNK);
+			bytesSent += LAST_CHUNK.length;
+		}
+		
 		outputStream.flush();
+		finished = true;
+	}
+	
+	/**
+	 * Helper method for preparing the context for writing the body, once the
+	 * properties of the header can no longer change. Does nothing if it has
+	 * already been called.
+	 */
+	private void startWriting() {
+		if (writeCalled) {
+			return;
+		}
 		
-		return this;
+		writeCalled = true;
+		// won't throw exceptions; all checks made during setting of charset
+		charset = Charset.forName(encoding);
+		
+		if (bufferSize > 0) {
+			buffer = ByteBuffer.allocate(bufferSize);
+			encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		}
+	}
+	
+	/**
+	 * Helper method for outputting the contents of the buffer as part of the
+	 * body, generating a header first if it hasn't been generated yet.
+	 * 
+	 * @throws IOException if an error occured during writing to this
+	 * 		   context's output stream
+	 */
+	private void flushBuffer() throws IOException {
+		if (!headerGenerated) {
+			generateHeader();
+		}
+		
+		if (buffer.position() > 0) {
+			writeBody(buffer.array(), 0, buffer.position());
+			buffer.clear();
+		}
+	}
+	
+	/**
+	 * Helper method for transferring the specified part of a file into the
+	 * configured output channel.
+	 * 
+	 * @param file channel of the file to transfer
+	 * @param position position of the first byte to transfer
+	 * @param count amount of bytes to transfer
+	 * @throws EOFException if the file ends before all bytes were transferred
+	 * @throws IOException if an error occured during transferring
+	 */
+	private void transferFile(FileChannel file, long position, long count) throws IOException {
+		long end = position + count;
+		
+		while (position < end) {
+			long transferred = file.transferTo(position, end - position, outputChannel);
+			
+			// the file got shorter since its size was determined
+			if (transferred == 0 && position >= file.size()) {
+				throw new EOFException("File ended before all bytes were written!");
+			}
+			
+			position += transferred;
+		}
+	}
+	
+	/**
+	 * Helper method for copying the specified part of a file into the
+	 * configured output stream, one piece at a time.
+	 * 
+	 * @param file channel of the file to copy
+	 * @param position position of the first byte to copy
+	 * @param count amount of bytes to copy
+	 * @throws EOFException if the file ends before all bytes were copied
+	 * @throws IOException if an error occured during copying
+	 */
+	private void copyFile(FileChannel file, long position, long count) throws IOException {
+		ByteBuffer copyBuffer = ByteBuffer.allocate((int) Math.min(count, FILE_COPY_BUFFER_SIZE));
+		long end = position + count;
+		
+		while (position < end) {
+			copyBuffer.clear();
+			copyBuffer.limit((int) Math.min(copyBuffer.capacity(), end - position));
+			
+			int read = file.read(copyBuffer, position);
+			if (read == -1) {
+				throw new EOFException("File ended before all bytes were written!");
+			}
+			
+			outputStream.write(copyBuffer.array(), 0, read);
+			position += read;
+		}
+	}
+	
+	/**
+	 * Helper method for writing the specified bytes as part of the body,
+	 * framing them as a single chunk if chunked transfer encoding is used.
+	 * 
+	 * @param data array holding the bytes to write
+	 * @param offset index of the first byte to write
+	 * @param length amount of bytes to write
+	 * @throws IOException if an error occured during writing to this
+	 * 		   context's output stream
+	 */
+	private void writeBody(byte[] data, int offset, int length) throws IOException {
+		if (!chunked) {
+			outputStream.write(data, offset, length);
+			bytesSent += length;
+			return;
+		}
+		
+		// an empty chunk would mark the end of the body
+		if (length == 0) {
+			return;
+		}
+		
+		byte[] chunkSize = (Integer.toHexString(length)+"\r\n").getBytes(StandardCharsets.ISO_8859_1);
+		outputStream.write(chunkSize);
+		outputStream.write(data, offset, length);
+		outputStream.write(CRLF);
+		bytesSent += chunkSize.length + length + CRLF.length;
 	}
 	
 	/**
@@ -418,8 +965,10 @@ public class RequestContext {
 	 * 		   context's output stream
 	 */
 	private void generateHeader() throws IOException {
-		// won't throw exceptions; all checks made during setting of charset
-		charset = Charset.forName(encoding);
+		if (headerOmitted) {
+			headerGenerated = true;
+			return;
+		}
 		
 		StringBuilder sb = new StringBuilder();
 		
@@ -427,6 +976,18 @@ public class RequestContext {
 		
 		if (byteLength != null) {
 			sb.append("Content-Length: "+byteLength+"\r\n");
+		} else if (isKeepAlive()) {
+			if (chunkedEncodingAllowed) {
+				chunked = true;
+				sb.append("Transfer-Encoding: chunked\r\n");
+			} else {
+				// the end of the body can only be signaled by closing the connection
+				keepAlive = false;
+			}
+		}
+		
+		if (keepAlive != null) {
+			sb.append("Connection: "+(keepAlive ? "keep-alive" : "close")+"\r\n");
 		}
 		
 		sb.append("Content-Type: "+mimeType);
@@ -435,6 +996,10 @@ public class RequestContext {
 		}
 		sb.append("\r\n");
 		
+		for (Map.Entry<String, String> field : headerFields.entrySet()) {
+			sb.append(field.getKey()+": "+field.getValue()+"\r\n");
+		}
+		
 		for (RCCookie cookie : outputCookies) {
 			sb.append("Set-Cookie: "+cookie.name+"=\""+cookie.value+"\"");
 			
@@ -457,11 +1022,16 @@ public class RequestContext {
 			sb.append("\r\n");
 		}
 		
-		sb.append("\r\n");
-		
 		byte[] headerData = sb.toString().getBytes(StandardCharsets.ISO_8859_1);
 		// may throw IOException
 		outputStream.write(headerData);
+		bytesSent += headerData.length;
+		if (prebuiltHeaderFields != null) {
+			outputStream.write(prebuiltHeaderFields);
+			bytesSent += prebuiltHeaderFields.length;
+		}
+		outputStream.write(CRLF);
+		bytesSent += CRLF.length;
 		headerGenerated = true;
 	}
 
@@ -0,0 +1,472 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads and parses the headers of HTTP requests arriving over a single
+ * connection. One instance is meant to be used for all requests of the
+ * connection: the buffer the bytes are read into and the map of header fields
+ * are reused from one request to the next.
+ *
+ * <p>Bytes are read from the connection in bulk into a buffer, in which the
+ * ends of lines are then searched for. Each complete line is parsed as soon
+ * as it has been found, and removed from the buffer, so the buffer only ever
+ * needs to hold a single line. Bytes following the end of a header, which
+ * belong to the client's next request, are kept in the buffer for the next
+ * call to {@linkplain #read(InputStream)}.
+ *
+ * <p>Along with the request line and the header fields, the host the request
+ * was sent to and the value of the {@value #SID_COOKIE} cookie are extracted.
+ *
+ * @author Vice Ivušić
+ *
+ */
+class RequestHeader {
+
+	/**
+	 * Represents the possible outcomes of reading a request header.
+	 *
+	 * @author Vice Ivušić
+	 *
+	 */
+	enum Status {
+		/** the whole header has been read */
+		COMPLETE,
+		/** the connection was closed before the whole header was read */
+		CLOSED,
+		/** the header exceeded the allowed size or amount of header fields */
+		TOO_LARGE
+	}
+
+	/** name of the cookie holding the client's SID */
+	private static final String SID_COOKIE = "sid";
+	/** minimum size of the buffer, in bytes */
+	private static final int MIN_BUFFER_SIZE = 1024;
+
+	/** maximum size of a header, including its request line, in bytes */
+	private final int maxHeaderSize;
+	/** maximum amount of header fields in a header */
+	private final int maxHeaderCount;
+	/** buffer holding the bytes read but not yet parsed; always ready to be read from */
+	private ByteBuffer buffer;
+	/** helper array used for building lowercase header field names */
+	private char[] nameChars = new char[64];
+
+	/** map of header fields of the current request, with lowercase names */
+	private final Map<String, String> headers = new HashMap<>();
+	/** method of the current request */
+	private String method;
+	/** requested path of the current request, including its parameters */
+	private String path;
+	/** HTTP version of the current request */
+	private String version;
+	/** host the current request was sent to, without the port */
+	private String host;
+	/** value of the SID cookie sent with the current request */
+	private String sid;
+
+	/**
+	 * Creates a new RequestHeader with the specified limits.
+	 *
+	 * @param maxHeaderSize maximum size of a header, in bytes
+	 * @param maxHeaderCount maximum amount of header fields in a header
+	 * @throws IllegalArgumentException if either of the limits is smaller than 1
+	 */
+	RequestHeader(int maxHeaderSize, int maxHeaderCount) {
+		if (maxHeaderSize < 1) {
+			throw new IllegalArgumentException("Argument maxHeaderSize must be positive!");
+		}
+		if (maxHeaderCount < 1) {
+			throw new IllegalArgumentException("Argument maxHeaderCount must be positive!");
+		}
+
+		this.maxHeaderSize = maxHeaderSize;
+		this.maxHeaderCount = maxHeaderCount;
+
+		// the last line of a header may be at most maxHeaderSize bytes long
+		buffer = ByteBuffer.allocate(Math.max(maxHeaderSize, MIN_BUFFER_SIZE));
+		buffer.flip();
+	}
+
+	/**
+	 * Adds the specified bytes, which have already been read from the
+	 * connection, to the bytes to be parsed before any further bytes are
+	 * read.
+	 *
+	 * @param data bytes already read from the connection
+	 * @throws NullPointerException if the specified array is null
+	 */
+	void feed(byte[] data) {
+		if (data == null) {
+			throw new NullPointerException("Argument data cannot be null!");
+		}
+
+		if (buffer.remaining() + data.length > buffer.capacity()) {
+			ByteBuffer larger = ByteBuffer.allocate(buffer.remaining() + data.length);
+			larger.put(buffer);
+			buffer = larger;
+		} else {
+			buffer.compact();
+		}
+
+		buffer.put(data);
+		buffer.flip();
+	}
+
+	/**
+	 * Returns <b>true</b> if some bytes have already been read from the
+	 * connection, but haven't been parsed yet.
+	 *
+	 * @return <b>true</b> iff there are unparsed bytes
+	 */
+	boolean hasBufferedData() {
+		return buffer.hasRemaining();
+	}
+
+	/**
+	 * Reads the next request header from the specified stream, reading only
+	 * as many bytes as needed. If the header was read completely, its request
+	 * line and header fields are available through the getters of this object.
+	 *
+	 * @param in stream to read from
+	 * @return outcome of reading the header
+	 * @throws IOException if the stream could not be read
+	 */
+	Status read(InputStream in) throws IOException {
+		reset();
+
+		byte[] data = buffer.array();
+		int headerSize = 0;
+		int headerCount = 0;
+		boolean requestLineRead = false;
+		int scanIndex = buffer.position();
+
+		while (true) {
+			int lineStart = buffer.position();
+			int limit = buffer.limit();
+
+			for (; scanIndex + 1 < limit; scanIndex++) {
+				if (data[scanIndex] != '\r' || data[scanIndex+1] != '\n') {
+					continue;
+				}
+
+				headerSize += scanIndex - lineStart + 2;
+				if (headerSize > maxHeaderSize) {
+					return Status.TOO_LARGE;
+				}
+
+				buffer.position(scanIndex + 2);
+
+				if (requestLineRead) {
+					if (scanIndex == lineStart) {
+						return Status.COMPLETE;
+					}
+					if (++headerCount > maxHeaderCount) {
+						return Status.TOO_LARGE;
+					}
+					parseHeaderLine(data, lineStart, scanIndex);
+				} else {
+					parseRequestLine(data, lineStart, scanIndex);
+					requestLineRead = true;
+
+					// an empty request line ends the header as well, leaving the request invalid
+					if (scanIndex == lineStart) {
+						return Status.COMPLETE;
+					}
+				}
+
+				lineStart = scanIndex + 2;
+				scanIndex++;
+			}
+
+			if (headerSize + buffer.remaining() >= maxHeaderSize) {
+				return Status.TOO_LARGE;
+			}
+
+			int consumed = buffer.position();
+			buffer.compact();
+			scanIndex -= consumed;
+
+			int read = in.read(data, buffer.position(), buffer.remaining());
+			if (read > 0) {
+				buffer.position(buffer.position() + read);
+			}
+			buffer.flip();
+
+			if (read == -1) {
+				return Status.CLOSED;
+			}
+		}
+	}
+
+	/**
+	 * Returns the method of the current request, or null if the request
+	 * line couldn't be parsed.
+	 *
+	 * @return method of the current request
+	 */
+	String getMethod() {
+		return method;
+	}
+
+	/**
+	 * Returns the requested path of the current request, including its
+	 * parameters, or null if the request line couldn't be parsed.
+	 *
+	 * @return requested path of the current request
+	 */
+	String getPath() {
+		return path;
+	}
+
+	/**
+	 * Returns the HTTP version of the current request, or null if the
+	 * request line couldn't be parsed.
+	 *
+	 * @return HTTP version of the current request
+	 */
+	String getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the value of the header field with the specified lowercase name,
+	 * or null if the current request doesn't have such a field. If the field
+	 * was sent multiple times, its last value is returned.
+	 *
+	 * @param name lowercase name of the header field
+	 * @return value of the header field, or null
+	 */
+	String getHeader(String name) {
+		return headers.get(name);
+	}
+
+	/**
+	 * Returns the host the current request was sent to, without the port,
+	 * or null if the Host header field wasn't sent.
+	 *
+	 * @return host the current request was sent to, or null
+	 */
+	String getHost() {
+		return host;
+	}
+
+	/**
+	 * Returns the value of the {@value #SID_COOKIE} cookie sent with the current
+	 * request, without the surrounding quotes, or null if it wasn't sent.
+	 *
+	 * @return SID sent with the current request, or null
+	 */
+	String getSid() {
+		return sid;
+	}
+
+	/**
+	 * Helper method for clearing everything parsed from the previous request.
+	 */
+	private void reset() {
+		headers.clear();
+		method = null;
+		path = null;
+		version = null;
+		host = null;
+		sid = null;
+	}
+
+	/**
+	 * Helper method for parsing a request line, which must consist of exactly
+	 * three tokens separated by single spaces, once surrounding whitespace is
+	 * removed. If it doesn't, the method, path and version are left null.
+	 *
+	 * @param data array holding the line
+	 * @param start index of the first byte of the line
+	 * @param end index after the last byte of the line, excluding the line ending
+	 */
+	private void parseRequestLine(byte[] data, int start, int end) {
+		start = skipWhitespace(data, start, end);
+		end = trimWhitespace(data, start, end);
+
+		int firstSpace = indexOf(data, start, end, (byte) ' ');
+		int secondSpace = indexOf(data, firstSpace + 1, end, (byte) ' ');
+		if (firstSpace < 0 || secondSpace < 0 || indexOf(data, secondSpace + 1, end, (byte) ' ') >= 0) {
+			return;
+		}
+
+		method = new String(data, start, firstSpace - start, StandardCharsets.ISO_8859_1);
+		path = new String(data, firstSpace + 1, secondSpace - firstSpace - 1, StandardCharsets.ISO_8859_1);
+		version = new String(data, secondSpace + 1, end - secondSpace - 1, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Helper method for parsing a header field line. Lines without a name
+	 * followed by a colon are ignored.
+	 *
+	 * @param data array holding the line
+	 * @param start index of the first byte of the line
+	 * @param end index after the last byte of the line, excluding the line ending
+	 */
+	private void parseHeaderLine(byte[] data, int start, int end) {
+		int colon = indexOf(data, start, end, (byte) ':');
+		if (colon <= start) {
+			return;
+		}
+
+		int nameStart = skipWhitespace(data, start, colon);
+		int nameEnd = trimWhitespace(data, nameStart, colon);
+		int valueStart = skipWhitespace(data, colon + 1, end);
+		int valueEnd = trimWhitespace(data, valueStart, end);
+
+		String name = lowercaseName(data, nameStart, nameEnd);
+		String value = new String(data, valueStart, valueEnd - valueStart, StandardCharsets.ISO_8859_1);
+		headers.put(name, value);
+
+		if (name.equals("host")) {
+			host = parseHost(value);
+		} else if (name.equals("cookie")) {
+			String cookieSid = parseSid(value);
+			if (cookieSid != null) {
+				sid = cookieSid;
+			}
+		}
+	}
+
+	/**
+	 * Helper method for building a lowercase string from the specified
+	 * range of bytes.
+	 *
+	 * @param data array holding the bytes
+	 * @param start index of the first byte
+	 * @param end index after the last byte
+	 * @return lowercase string
+	 */
+	private String lowercaseName(byte[] data, int start, int end) {
+		int length = end - start;
+		if (length > nameChars.length) {
+			nameChars = new char[Math.max(length, nameChars.length * 2)];
+		}
+
+		for (int i = 0; i < length; i++) {
+			char c = (char) (data[start + i] & 0xFF);
+			nameChars[i] = c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+		}
+
+		return new String(nameChars, 0, length);
+	}
+
+	/**
+	 * Helper method for extracting the host from the value of a Host header
+	 * field, by removing the port if there is one.
+	 *
+	 * @param value value of the Host header field
+	 * @return host, or null if the value is empty
+	 */
+	private static String parseHost(String value) {
+		int colon = value.lastIndexOf(':');
+		// the colons of an IPv6 address are enclosed in brackets
+		if (colon > value.lastIndexOf(']')) {
+			value = value.substring(0, colon).trim();
+		}
+
+		return value.isEmpty() ? null : value;
+	}
+
+	/**
+	 * Helper method for extracting the value of the {@value #SID_COOKIE} cookie
+	 * from the value of a Cookie header field.
+	 *
+	 * @param value value of the Cookie header field
+	 * @return value of the cookie without the surrounding quotes, or null if
+	 * 		   the cookie isn't present
+	 */
+	private static String parseSid(String value) {
+		int length = value.length();
+		int pairStart = 0;
+
+		while (pairStart < length) {
+			int pairEnd = value.indexOf(';', pairStart);
+			if (pairEnd < 0) {
+				pairEnd = length;
+			}
+
+			while (pairStart < pairEnd && value.charAt(pairStart) == ' ') {
+				pairStart++;
+			}
+
+			int valueStart = pairStart + SID_COOKIE.length() + 1;
+			if (valueStart <= pairEnd
+					&& value.startsWith(SID_COOKIE, pairStart)
+					&& value.charAt(valueStart - 1) == '=') {
+				String sidValue = value.substring(valueStart, pairEnd).trim();
+				if (sidValue.length() >= 2 && sidValue.charAt(0) == '"'
+						&& sidValue.charAt(sidValue.length() - 1) == '"') {
+					sidValue = sidValue.substring(1, sidValue.length() - 1);
+				}
+
+				return sidValue;
+			}
+
+			pairStart = pairEnd + 1;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Helper method for finding the first occurrence of the specified byte in
+	 * the specified range.
+	 *
+	 * @param data array to search
+	 * @param start index from which the search starts
+	 * @param end index at which the search stops
+	 * @param b byte to search for
+	 * @return index of the byte, or -1 if it isn't in the range
+	 */
+	private static int indexOf(byte[] data, int start, int end, byte b) {
+		for (int i = start; i < end; i++) {
+			if (data[i] == b) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Helper method for skipping the whitespace at the start of the specified
+	 * range, where whitespace is any byte up to and including the space.
+	 *
+	 * @param data array holding the range
+	 * @param start index of the first byte of the range
+	 * @param end index after the last byte of the range
+	 * @return index of the first byte which isn't whitespace, or end
+	 */
+	private static int skipWhitespace(byte[] data, int start, int end) {
+		while (start < end && (data[start] & 0xFF) <= ' ') {
+			start++;
+		}
+
+		return start;
+	}
+
+	/**
+	 * Helper method for trimming the whitespace at the end of the specified
+	 * range, where whitespace is any byte up to and including the space.
+	 *
+	 * @param data array holding the range
+	 * @param start index of the first byte of the range
+	 * @param end index after the last byte of the range
+	 * @return index after the last byte which isn't whitespace, or start
+	 */
+	private static int trimWhitespace(byte[] data, int start, int end) {
+		while (end > start && (data[end - 1] & 0xFF) <= ' ') {
+			end--;
+		}
+
+		return end;
+	}
+}
@@ -0,0 +1,151 @@
+package hr.fer.zemris.java.webserver;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides which web worker, if any, serves a requested path. The router is
+ * built once, when the server starts, and consists of a table of exact worker
+ * mappings and a table of path prefixes with special meaning:
+ *
+ * <ul>
+ * <li>paths starting with {@value #PRIVATE_PREFIX} may only be dispatched to
+ * from within the server, never requested directly by a client;</li>
+ * <li>a path of the form {@value #EXT_PREFIX}<i>Name</i> is served by the worker
+ * class <i>Name</i> from the package {@value #EXT_WORKER_PACKAGE}.</li>
+ * </ul>
+ *
+ * <p>Paths which are neither mapped to a worker nor match any prefix are left
+ * to be served from the document root.
+ *
+ * <p>Each {@value #EXT_PREFIX} worker class is instantiated only the first time
+ * it is requested; the instance is then reused for all later requests, just as
+ * the instances of mapped workers are. Routing a path therefore requires neither
+ * regular expressions nor reflection. Instances of this class may be used by
+ * multiple threads at once.
+ *
+ * @author Vice Ivušić
+ *
+ */
+public class RequestRouter {
+
+	/** prefix of paths which can't be requested directly by clients */
+	public static final String PRIVATE_PREFIX = "/private";
+	/** prefix of paths naming the worker class which serves them */
+	public static final String EXT_PREFIX = "/ext/";
+	/** package holding the worker classes named by {@value #EXT_PREFIX} paths */
+	public static final String EXT_WORKER_PACKAGE = "hr.fer.zemris.java.webserver.workers";
+
+	/** map of exact worker mappings, mapping paths to workers */
+	private final Map<String, IWebWorker> workers;
+	/** map of workers loaded so far for {@value #EXT_PREFIX} paths, mapping the paths to workers */
+	private final Map<String, IWebWorker> extWorkers = new ConcurrentHashMap<>();
+	/** class loader used for loading worker classes */
+	private final ClassLoader classLoader;
+
+	/**
+	 * Creates a new RequestRouter with the specified worker mappings. Each
+	 * mapped worker class is loaded and instantiated immediately.
+	 *
+	 * @param workerClasses map of worker mappings, mapping paths to fully
+	 * 		  qualified names of worker classes
+	 * @throws NullPointerException if the specified map is null
+	 * @throws RuntimeException if any of the worker classes could not be loaded
+	 */
+	public RequestRouter(Map<String, String> workerClasses) {
+		this(workerClasses, Collections.emptyMap());
+	}
+
+	/**
+	 * Creates a new RequestRouter with the specified worker mappings and
+	 * built-in workers. Each mapped worker class is loaded and instantiated
+	 * immediately. Paths of built-in workers are reserved, so they can't be
+	 * mapped to worker classes as well.
+	 *
+	 * @param workerClasses map of worker mappings, mapping paths to fully
+	 * 		  qualified names of worker classes
+	 * @param builtinWorkers map of built-in workers, mapping paths to workers
+	 * @throws NullPointerException if either of the specified maps is null
+	 * @throws RuntimeException if any of the worker classes could not be loaded,
+	 * 		   or if a worker class is mapped to the path of a built-in worker
+	 */
+	public RequestRouter(Map<String, String> workerClasses, Map<String, IWebWorker> builtinWorkers) {
+		if (workerClasses == null) {
+			throw new NullPointerException("Argument workerClasses cannot be null!");
+		}
+		if (builtinWorkers == null) {
+			throw new NullPointerException("Argument builtinWorkers cannot be null!");
+		}
+
+		classLoader = RequestRouter.class.getClassLoader();
+
+		Map<String, IWebWorker> workers = new HashMap<>(builtinWorkers);
+		for (Map.Entry<String, String> entry : workerClasses.entrySet()) {
+			if (builtinWorkers.containsKey(entry.getKey())) {
+				throw new RuntimeException("Path "+entry.getKey()+" is reserved for a built-in worker!");
+			}
+			workers.put(entry.getKey(), loadWebWorker(entry.getValue()));
+		}
+		this.workers = Collections.unmodifiableMap(workers);
+	}
+
+	/**
+	 * Returns <b>true</b> if the specified path can't be requested directly
+	 * by a client.
+	 *
+	 * @param path requested path
+	 * @return <b>true</b> iff the path is private
+	 */
+	public boolean isPrivate(String path) {
+		return path.startsWith(PRIVATE_PREFIX);
+	}
+
+	/**
+	 * Returns the worker which serves the specified path, or null if the path
+	 * should be served from the document root. A {@value #EXT_PREFIX} path has
+	 * precedence over an exact mapping of the same path.
+	 *
+	 * @param path requested path
+	 * @return worker serving the path, or null
+	 * @throws RuntimeException if the path names a worker class which could not be loaded
+	 */
+	public IWebWorker findWorker(String path) {
+		if (path.startsWith(EXT_PREFIX) && path.indexOf('/', EXT_PREFIX.length()) < 0) {
+			IWebWorker worker = extWorkers.get(path);
+			if (worker == null) {
+				// classes which could not be loaded aren't remembered, so they are tried again next time
+				worker = extWorkers.computeIfAbsent(
+					path,
+					key -> loadWebWorker(EXT_WORKER_PACKAGE+"."+key.substring(EXT_PREFIX.length()))
+				);
+			}
+
+			return worker;
+		}
+
+		return workers.get(path);
+	}
+
+	/**
+	 * Helper method for loading a web worker from the specified
+	 * fully qualified class name token.
+	 *
+	 * @param fqcnToken fully qualified class name token
+	 * @return an instance of the specified class
+	 * @throws RuntimeException if the class could not be loaded or instantiated
+	 */
+	private IWebWorker loadWebWorker(String fqcnToken) {
+		IWebWorker iww;
+		try {
+			Class<?> referenceToClass = classLoader.loadClass(fqcnToken);
+			Object newObject = referenceToClass.getDeclaredConstructor().newInstance();
+			iww = (IWebWorker) newObject;
+		} catch (Exception ex) {
+			throw new RuntimeException("Could not load class: "+fqcnToken, ex);
+		}
+
+		return iww;
+	}
+}
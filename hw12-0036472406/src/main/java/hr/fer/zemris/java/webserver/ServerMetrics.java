@@ -0,0 +1,219 @@
+package hr.fer.zemris.java.webserver;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects metrics of the requests served by the server: for each route, the
+ * amount of requests, the amount of bytes sent and a histogram of latencies,
+ * along with the amount of responses with each status code.
+ *
+ * <p>A route is a name for the part of the server which served a request, such
+ * as the path of a worker or a script, or one of the names {@value #STATIC_ROUTE},
+ * {@value #UNMATCHED_ROUTE} and {@value #INVALID_ROUTE}. Names of routes should
+ * come from a bounded set, since each route keeps its own histogram.
+ *
+ * <p>Recording a request requires no locks and, once its route has been seen,
+ * no allocation, so it adds next to nothing to the cost of serving the request.
+ * Instances of this class may be used by multiple threads at once.
+ *
+ * @author Vice Ivušić
+ *
+ */
+class ServerMetrics {
+
+	/** route of requests for static files */
+	static final String STATIC_ROUTE = "static";
+	/** route of requests for missing or forbidden paths */
+	static final String UNMATCHED_ROUTE = "unmatched";
+	/** route of requests which couldn't be parsed or were otherwise rejected */
+	static final String INVALID_ROUTE = "invalid";
+
+	/** smallest status code counted separately */
+	private static final int MIN_STATUS = 100;
+	/** largest status code counted separately */
+	private static final int MAX_STATUS = 599;
+
+	/** metrics of each route, mapping names of routes to their metrics */
+	private final Map<String, RouteMetrics> routes = new ConcurrentHashMap<>();
+	/** amount of responses with each status code, indexed by the code minus {@value #MIN_STATUS} */
+	private final AtomicLongArray statusCounts = new AtomicLongArray(MAX_STATUS - MIN_STATUS + 1);
+
+	/**
+	 * Records a served request.
+	 *
+	 * @param route name of the route which served the request
+	 * @param status status code of the response
+	 * @param bytesSent amount of bytes of the response
+	 * @param nanos time it took to serve the request, in nanoseconds
+	 */
+	void record(String route, int status, long bytesSent, long nanos) {
+		RouteMetrics metrics = routes.get(route);
+		if (metrics == null) {
+			metrics = routes.computeIfAbsent(route, key -> new RouteMetrics());
+		}
+
+		metrics.requests.increment();
+		metrics.bytesSent.add(bytesSent);
+		metrics.latency.record(nanos / 1000);
+
+		recordStatus(status);
+	}
+
+	/**
+	 * Records a response with the specified status code, sent without
+	 * serving a request, such as a rejection of an overloaded server.
+	 *
+	 * @param status status code of the response
+	 */
+	void recordStatus(int status) {
+		if (status >= MIN_STATUS && status <= MAX_STATUS) {
+			statusCounts.incrementAndGet(status - MIN_STATUS);
+		}
+	}
+
+	/**
+	 * Writes all metrics, along with the specified gauges, in plain text.
+	 * Each line holds a single value, preceded by its name and, if it belongs
+	 * to a route or a status code, the route or code in braces.
+	 *
+	 * @param sb builder to write into
+	 * @param gauges current values describing the server, mapped to their names
+	 */
+	void writeText(StringBuilder sb, Map<String, Number> gauges) {
+		for (Map.Entry<String, Number> gauge : gauges.entrySet()) {
+			sb.append(gauge.getKey()).append(' ').append(gauge.getValue()).append('\n');
+		}
+
+		for (int i = 0, n = statusCounts.length(); i < n; i++) {
+			long count = statusCounts.get(i);
+			if (count > 0) {
+				sb.append("responses{status=\"").append(i + MIN_STATUS).append("\"} ")
+				  .append(count).append('\n');
+			}
+		}
+
+		for (Map.Entry<String, RouteMetrics> entry : sortedRoutes().entrySet()) {
+			String label = "{route=\""+entry.getKey()+"\"} ";
+			RouteMetrics metrics = entry.getValue();
+			LatencyHistogram latency = metrics.latency;
+
+			sb.append("requests").append(label).append(metrics.requests.sum()).append('\n');
+			sb.append("bytes_sent").append(label).append(metrics.bytesSent.sum()).append('\n');
+			sb.append("latency_mean_us").append(label).append(Math.round(latency.getMean())).append('\n');
+			sb.append("latency_p50_us").append(label).append(latency.getPercentile(50)).append('\n');
+			sb.append("latency_p90_us").append(label).append(latency.getPercentile(90)).append('\n');
+			sb.append("latency_p99_us").append(label).append(latency.getPercentile(99)).append('\n');
+			sb.append("latency_max_us").append(label).append(latency.getMax()).append('\n');
+		}
+	}
+
+	/**
+	 * Writes all metrics, along with the specified gauges, as a JSON object.
+	 *
+	 * @param sb builder to write into
+	 * @param gauges current values describing the server, mapped to their names
+	 */
+	void writeJson(StringBuilder sb, Map<String, Number> gauges) {
+		sb.append("{\"gauges\":{");
+		boolean first = true;
+		for (Map.Entry<String, Number> gauge : gauges.entrySet()) {
+			if (!first) {
+				sb.append(',');
+			}
+			first = false;
+			appendJsonString(sb, gauge.getKey()).append(':').append(gauge.getValue());
+		}
+
+		sb.append("},\"responses\":{");
+		first = true;
+		for (int i = 0, n = statusCounts.length(); i < n; i++) {
+			long count = statusCounts.get(i);
+			if (count > 0) {
+				if (!first) {
+					sb.append(',');
+				}
+				first = false;
+				sb.append('"').append(i + MIN_STATUS).append("\":").append(count);
+			}
+		}
+
+		sb.append("},\"routes\":{");
+		first = true;
+		for (Map.Entry<String, RouteMetrics> entry : sortedRoutes().entrySet()) {
+			if (!first) {
+				sb.append(',');
+			}
+			first = false;
+
+			RouteMetrics metrics = entry.getValue();
+			LatencyHistogram latency = metrics.latency;
+
+			appendJsonString(sb, entry.getKey()).append(":{")
+				.append("\"requests\":").append(metrics.requests.sum())
+				.append(",\"bytesSent\":").append(metrics.bytesSent.sum())
+				.append(",\"latencyUs\":{")
+				.append("\"mean\":").append(Math.round(latency.getMean()))
+				.append(",\"p50\":").append(latency.getPercentile(50))
+				.append(",\"p90\":").append(latency.getPercentile(90))
+				.append(",\"p99\":").append(latency.getPercentile(99))
+				.append(",\"max\":").append(latency.getMax())
+				.append("}}");
+		}
+
+		sb.append("}}");
+	}
+
+	/**
+	 * Helper method for retrieving the metrics of all routes, sorted by the
+	 * names of the routes.
+	 *
+	 * @return sorted map of routes
+	 */
+	private Map<String, RouteMetrics> sortedRoutes() {
+		return new TreeMap<>(routes);
+	}
+
+	/**
+	 * Helper method for appending the specified string as a JSON string,
+	 * escaping the characters which need to be escaped.
+	 *
+	 * @param sb builder to append to
+	 * @param value string to append
+	 * @return the specified builder
+	 */
+	private static StringBuilder appendJsonString(StringBuilder sb, String value) {
+		sb.append('"');
+
+		for (int i = 0, n = value.length(); i < n; i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < ' ') {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+
+		return sb.append('"');
+	}
+
+	/**
+	 * Holds the metrics of a single route.
+	 *
+	 * @author Vice Ivušić
+	 *
+	 */
+	private static class RouteMetrics {
+		/** amount of served requests */
+		private final LongAdder requests = new LongAdder();
+		/** amount of bytes sent in responses */
+		private final LongAdder bytesSent = new LongAdder();
+		/** latencies of served requests */
+		private final LatencyHistogram latency = new LatencyHistogram();
+	}
+}
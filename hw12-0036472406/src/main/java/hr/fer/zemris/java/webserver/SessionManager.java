@@ -0,0 +1,344 @@
+package hr.fer.zemris.java.webserver;
+
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of client sessions, mapping SIDs to session entries. Sessions
+ * are looked up, renewed and expired without any global lock: each operation
+ * on a session is done atomically through {@linkplain ConcurrentHashMap#computeIfPresent},
+ * which only locks the part of the map holding that session.
+ *
+ * <p>Expired sessions are removed by a background thread. Each session has an
+ * expiration queued in a deadline-ordered queue, and the thread sleeps until the
+ * earliest deadline has passed. A session renewed in the meantime is simply queued
+ * again under its new deadline, so removing expired sessions never requires going
+ * through all of them.
+ *
+ * <p>SIDs are generated by secure random generators. When workers are pooled
+ * platform threads, each thread holds its own generator, so threads creating
+ * sessions don't compete for a single one. When workers run on virtual threads,
+ * a new one for each connection, a generator per thread would be created and
+ * seeded for every connection, so a few generators are shared instead, each
+ * thread picking one of them at random.
+ *
+ * @author Vice Ivušić
+ *
+ */
+class SessionManager {
+
+	/** amount of characters in a SID */
+	private static final int SID_LENGTH = 20;
+	/** amount of uppercase letters a SID consists of */
+	private static final int UPPERCASE_LETTER_COUNT = 26;
+
+	/** random generator of each thread, used for generating SIDs on pooled platform threads */
+	private static final ThreadLocal<SecureRandom> THREAD_SID_RANDOM = ThreadLocal.withInitial(SecureRandom::new);
+
+	/** amount of seconds a session stays valid after it was last used */
+	private final long sessionTimeout;
+	/** map of sessions, mapping SIDs to session entries */
+	private final Map<String, SessionMapEntry> sessions = new ConcurrentHashMap<>();
+	/** queue of expirations, ordered by their deadlines */
+	private final DelayQueue<Expiration> expirations = new DelayQueue<>();
+
+	/** generators shared by virtual threads for generating SIDs; null on platform threads */
+	private final SecureRandom[] sharedSidRandoms;
+
+	/** the thread which removes expired sessions; null if not running */
+	private Thread expirationThread;
+
+	/**
+	 * Creates a new SessionManager whose sessions stay valid for the
+	 * specified amount of seconds after they were last used, and whose
+	 * sessions are created by pooled platform threads.
+	 *
+	 * @param sessionTimeout amount of seconds a session stays valid
+	 * @throws IllegalArgumentException if the specified timeout is negative
+	 */
+	SessionManager(long sessionTimeout) {
+		this(sessionTimeout, false);
+	}
+
+	/**
+	 * Creates a new SessionManager whose sessions stay valid for the
+	 * specified amount of seconds after they were last used.
+	 *
+	 * @param sessionTimeout amount of seconds a session stays valid
+	 * @param virtualThreads <b>true</b> if sessions are created by virtual threads
+	 * @throws IllegalArgumentException if the specified timeout is negative
+	 */
+	SessionManager(long sessionTimeout, boolean virtualThreads) {
+		if (sessionTimeout < 0) {
+			throw new IllegalArgumentException("Argument sessionTimeout cannot be negative!");
+		}
+
+		this.sessionTimeout = sessionTimeout;
+
+		if (virtualThreads) {
+			sharedSidRandoms = new SecureRandom[Runtime.getRuntime().availableProcessors()];
+			for (int i = 0; i < sharedSidRandoms.length; i++) {
+				sharedSidRandoms[i] = new SecureRandom();
+			}
+		} else {
+			sharedSidRandoms = null;
+		}
+	}
+
+	/**
+	 * Starts the thread which removes expired sessions. If it is already
+	 * running, does nothing.
+	 */
+	synchronized void start() {
+		if (expirationThread != null) {
+			return;
+		}
+
+		expirationThread = new Thread(this::removeExpiredSessions, "session-expiration");
+		expirationThread.setDaemon(true);
+		expirationThread.start();
+	}
+
+	/**
+	 * Stops the thread which removes expired sessions and removes all
+	 * sessions. If the thread isn't running, only removes the sessions.
+	 */
+	synchronized void stop() {
+		if (expirationThread != null) {
+			expirationThread.interrupt();
+			expirationThread = null;
+		}
+
+		sessions.clear();
+		expirations.clear();
+	}
+
+	/**
+	 * Renews the session with the specified SID, so it stays valid for another
+	 * timeout period, and returns it. If there is no such session, or if it
+	 * has already expired, returns null; an expired session is removed.
+	 *
+	 * @param sid SID of the session; may be null
+	 * @return renewed session, or null
+	 */
+	SessionMapEntry renewSession(String sid) {
+		if (sid == null) {
+			return null;
+		}
+
+		long now = currentTimeInSeconds();
+		return sessions.computeIfPresent(sid, (key, entry) ->
+			entry.renew(now, sessionTimeout) ? entry : null
+		);
+	}
+
+	/**
+	 * Creates a new session with a newly generated, unique SID.
+	 *
+	 * @return created session
+	 */
+	SessionMapEntry createSession() {
+		long validUntil = currentTimeInSeconds() + sessionTimeout;
+
+		while (true) {
+			SessionMapEntry entry = new SessionMapEntry(generateSID(), validUntil);
+
+			if (sessions.putIfAbsent(entry.sid, entry) == null) {
+				expirations.add(new Expiration(entry, validUntil));
+				return entry;
+			}
+		}
+	}
+
+	/**
+	 * Returns the amount of sessions currently held, including those which
+	 * have expired but haven't been removed yet.
+	 *
+	 * @return amount of held sessions
+	 */
+	int size() {
+		return sessions.size();
+	}
+
+	/**
+	 * Helper method run by the expiration thread. Waits for the earliest
+	 * expiration and removes its session if the session hasn't been renewed
+	 * in the meantime; otherwise, queues the session again under its new
+	 * deadline. Runs until the thread is interrupted.
+	 */
+	private void removeExpiredSessions() {
+		while (true) {
+			Expiration expiration;
+			try {
+				expiration = expirations.take();
+			} catch (InterruptedException ex) {
+				return;
+			}
+
+			SessionMapEntry expiring = expiration.entry;
+			long now = currentTimeInSeconds();
+
+			// done atomically with renewSession, so a session can't be renewed while being removed
+			sessions.computeIfPresent(expiring.sid, (key, entry) -> {
+				if (entry != expiring) {
+					return entry;
+				}
+
+				long validUntil = entry.getValidUntil();
+				if (validUntil < now) {
+					return null;
+				}
+
+				expirations.add(new Expiration(entry, validUntil));
+				return entry;
+			});
+		}
+	}
+
+	/**
+	 * Helper method for generating a new SID, consisting of random
+	 * uppercase letters.
+	 *
+	 * @return generated SID
+	 */
+	private String generateSID() {
+		SecureRandom random = sharedSidRandoms == null
+			? THREAD_SID_RANDOM.get()
+			: sharedSidRandoms[ThreadLocalRandom.current().nextInt(sharedSidRandoms.length)];
+
+		char[] sidChars = new char[SID_LENGTH];
+		for (int i = 0; i < sidChars.length; i++) {
+			sidChars[i] = (char) ('A' + random.nextInt(UPPERCASE_LETTER_COUNT));
+		}
+
+		return new String(sidChars);
+	}
+
+	/**
+	 * Returns the current time in seconds.
+	 *
+	 * @return current time in seconds
+	 */
+	private static long currentTimeInSeconds() {
+		return System.currentTimeMillis() / 1000;
+	}
+
+	/**
+	 * Represents a single session, holding its SID, the time it is valid
+	 * until and its persistent parameters.
+	 *
+	 * @author Vice Ivušić
+	 *
+	 */
+	static class SessionMapEntry {
+		/** sid associated with the session */
+		private final String sid;
+		/** time the session is valid until, in seconds */
+		private final AtomicLong validUntil;
+		/** map of persistent parameters, which may be used by multiple threads at once */
+		private final Map<String, String> permParamMap = Collections.synchronizedMap(new HashMap<>());
+
+		/**
+		 * Creates a new SessionMapEntry with the specified arguments.
+		 *
+		 * @param sid sid associated with the session
+		 * @param validUntil time the session is valid until, in seconds
+		 */
+		private SessionMapEntry(String sid, long validUntil) {
+			this.sid = sid;
+			this.validUntil = new AtomicLong(validUntil);
+		}
+
+		/**
+		 * Returns the sid associated with the session.
+		 *
+		 * @return sid of the session
+		 */
+		String getSid() {
+			return sid;
+		}
+
+		/**
+		 * Returns the time the session is valid until, in seconds.
+		 *
+		 * @return time the session is valid until
+		 */
+		long getValidUntil() {
+			return validUntil.get();
+		}
+
+		/**
+		 * Returns the map of persistent parameters of the session.
+		 *
+		 * @return map of persistent parameters
+		 */
+		Map<String, String> getPermParamMap() {
+			return permParamMap;
+		}
+
+		/**
+		 * Atomically extends the validity of the session to the specified
+		 * timeout from now, unless the session has already expired.
+		 *
+		 * @param now current time in seconds
+		 * @param timeout amount of seconds the session should stay valid
+		 * @return <b>true</b> if the session was renewed, <b>false</b> if it has expired
+		 */
+		private boolean renew(long now, long timeout) {
+			while (true) {
+				long current = validUntil.get();
+				if (current < now) {
+					return false;
+				}
+
+				if (validUntil.compareAndSet(current, Math.max(current, now + timeout))) {
+					return true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Represents the moment at which a session might expire, unless it is
+	 * renewed before that.
+	 *
+	 * @author Vice Ivušić
+	 *
+	 */
+	private static class Expiration implements Delayed {
+		/** session which might expire */
+		private final SessionMapEntry entry;
+		/** time in milliseconds at which the session expires */
+		private final long deadline;
+
+		/**
+		 * Creates a new Expiration for the specified session.
+		 *
+		 * @param entry session which might expire
+		 * @param validUntil time in seconds the session is valid until
+		 */
+		Expiration(SessionMapEntry entry, long validUntil) {
+			this.entry = entry;
+			// the session is valid throughout its last second
+			this.deadline = (validUntil + 1) * 1000;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed other) {
+			return Long.compare(deadline, ((Expiration) other).deadline);
+		}
+	}
+}
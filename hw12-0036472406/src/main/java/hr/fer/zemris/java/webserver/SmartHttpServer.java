@@ -1,37 +1,53 @@
 package hr.fer.zemris.java.webserver;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.PushbackInputStream;
+import java.io.Reader;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Properties;
-import java.util.Random;
+import java.util.Queue;
 import java.util.Scanner;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import hr.fer.zemris.java.custom.scripting.exec.SmartScriptEngine;
-import hr.fer.zemris.java.custom.scripting.nodes.DocumentNode;
+import hr.fer.zemris.java.custom.scripting.exec.FunctionRegistry;
+import hr.fer.zemris.java.custom.scripting.exec.IScriptFunction;
+import hr.fer.zemris.java.custom.scripting.exec.SmartScriptProgram;
 import hr.fer.zemris.java.custom.scripting.parser.SmartScriptParser;
+import hr.fer.zemris.java.webserver.OutputCache.CachedOutput;
 import hr.fer.zemris.java.webserver.RequestContext.RCCookie;
+import hr.fer.zemris.java.webserver.SessionManager.SessionMapEntry;
 
 /**
  * A program which can start and stop a local server on the address
@@ -49,6 +65,91 @@ import hr.fer.zemris.java.webserver.RequestContext.RCCookie;
  * pairs, separated by an ampersand (&). The first argument must be separated from
  * the rest of the url by a question mark (?).
  * 
+ * <p>By default, connections are accepted by a blocking server socket and each
+ * accepted connection is immediately handed over to a worker thread. If
+ * {@code server.io} is set to {@code nio}, a selector thread accepts connections
+ * and reads request headers without blocking, and a connection is handed over to a
+ * worker thread only once its whole request header has arrived. This way slow or
+ * idle clients do not occupy any of the worker threads.
+ * 
+ * <p>Connections are persistent as described by HTTP/1.1: after a response has been
+ * sent, the server waits for the client's next request on the same connection,
+ * until the client closes it, it stays idle for longer than
+ * {@code server.keepAlive.timeout} seconds or {@code server.keepAlive.maxRequests}
+ * requests have been served over it. Pipelined requests are answered in order.
+ * 
+ * <p>Client workers run on a fixed pool of {@code server.workerThreads} platform
+ * threads by default. If {@code server.executor} is set to {@code virtual}, each
+ * worker runs on its own virtual thread instead, which requires Java 21 or newer,
+ * and at most {@code server.maxConcurrentRequests} requests are served at once.
+ * 
+ * <p>At most {@code server.queue.capacity} connections may wait for a worker at
+ * once; further connections are immediately answered with 503 Service Unavailable
+ * and a Retry-After header field of {@code server.queue.retryAfter} seconds. If
+ * {@code server.queue.deadline} is positive, a connection which has waited for a
+ * worker for longer than that many milliseconds is answered the same way. When
+ * workers run on virtual threads, the same limits apply to requests waiting for
+ * one of the {@code server.maxConcurrentRequests} permits.
+ * 
+ * <p>A request header may be at most {@code server.maxHeaderSize} bytes long and
+ * contain at most {@code server.maxHeaderCount} header fields; larger headers are
+ * answered with 431 Request Header Fields Too Large.
+ * 
+ * <p>Compiled scripts are kept in a cache of at most {@code server.scriptCache.size}
+ * bytes of script source, and a script is compiled again only once its file has
+ * been modified. Files are checked for modification at most once every
+ * {@code server.scriptCache.checkInterval} milliseconds.
+ * 
+ * <p>Besides the built-in functions, scripts may call the functions listed in
+ * the file named by {@code server.functions}. Each line maps the name a function
+ * is called by to the fully qualified name of a class implementing
+ * {@linkplain IScriptFunction}, which is instantiated when the server is created.
+ * 
+ * <p>Scripts listed in the file named by {@code server.outputCache} have their output
+ * cached. Each line maps the path of a script to a comma separated list of the request
+ * parameters its output depends on, which form the cache key; the output is rendered
+ * again only once the script has been modified or {@code server.outputCache.ttl}
+ * milliseconds have passed. The cache holds at most {@code server.outputCache.size}
+ * bytes of output. A script whose output turns out to be larger than that is sent to
+ * the client as it is rendered, and its output isn't captured again until the script
+ * has been modified. Scripts using persistent parameters, which belong to the client's
+ * session, are never cached, and neither is the output of scripts dispatched to from
+ * within the server.
+ * 
+ * <p>Each response body is collected in a buffer of {@code server.outputBufferSize}
+ * bytes, so a script writing many small fragments is sent in few large writes. A
+ * body which fits into the buffer is sent with its length; a longer one is sent
+ * using chunked transfer encoding.
+ * 
+ * <p>Static files are transferred from the file system straight into the client's
+ * socket, without being read into memory. A single byte range of a file can be
+ * requested using the Range header field, which is answered with 206 Partial Content.
+ * 
+ * <p>Static files of at most {@code server.staticCache.maxFileSize} bytes are kept
+ * in memory, in a cache of at most {@code server.staticCache.size} bytes, along with
+ * their prebuilt ETag and Last-Modified header fields and, if {@code server.staticCache.gzip}
+ * is set, a compressed variant for clients accepting gzip encoding. Conditional requests
+ * using If-None-Match or If-Modified-Since are answered with 304 Not Modified.
+ * 
+ * <p>A worker implementing {@linkplain IAsyncWebWorker} serves a request without
+ * holding a worker thread while it waits: once the worker has started processing
+ * the request, the thread moves on, and the response is finished on a worker thread
+ * once the worker completes it. When workers run on virtual threads, the request's
+ * permit is likewise released while the response is pending.
+ * 
+ * <p>Requests are routed to workers by a router built when the server is created.
+ * Workers mapped in workers.properties are instantiated at that point, while a
+ * worker requested through {@code /ext/} is instantiated on its first request; in
+ * both cases, a single instance of each worker serves all requests.
+ * 
+ * <p>If {@code server.metrics.path} is set, a built-in worker on that path reports
+ * the metrics of requests served so far: for each route, meaning each worker, script,
+ * static files in general, missing paths and invalid requests, the amount of requests,
+ * bytes sent and percentiles of latencies, along with the amount of responses with
+ * each status code and gauges such as active connections, the length of the queue,
+ * live sessions and cache hit rates. The report is in plain text, or in JSON if the
+ * parameter {@code format=json} is given. Recording a request takes no locks.
+ * 
  * <p>The server is started by typing in {@code start}; it is stopped by typing in
  * {@code stop}; and the program is exited by typing in {@code exit}.
  * 
@@ -62,27 +163,72 @@ public class SmartHttpServer {
 	private int port;
 	/** the amount of worker threads available at any given point */
 	private int workerThreads;
+	/** the type of executor running the client workers; see {@linkplain WorkerExecutors} */
+	private String executorType;
+	/** permits for requests being served at once; null if only the executor caps them */
+	private Semaphore requestPermits;
+	/** the queue of connections waiting for a worker, and of requests waiting for a permit */
+	private AdmissionQueue admissionQueue;
+	/** the response sent to clients rejected because the server is overloaded */
+	private byte[] serviceUnavailableResponse;
 	/** the amount of time before a session is considered as timed out */
 	private int sessionTimeout;
+	/** the I/O front end used for accepting connections; either blocking or nio */
+	private String ioMode;
+	/** the amount of seconds a persistent connection may stay idle */
+	private int keepAliveTimeout;
+	/** the maximum amount of requests served over a single persistent connection */
+	private int keepAliveMaxRequests;
+	/** the size of the buffer collecting each response body, in bytes */
+	private int outputBufferSize;
+	/** the maximum size of a request header, in bytes */
+	private int maxHeaderSize;
+	/** the maximum amount of header fields in a request header */
+	private int maxHeaderCount;
 	/** a map of mime types this server knows about */
 	private Map<String, String> mimeTypes = new HashMap<>();
 	/** the thread which runs the server and takes requests */
-	private ServerThread serverThread;
+	private Thread serverThread;
 	/** the thread pool used for worker threads */
 	private ExecutorService threadPool;
 	/** the root to the directory where the server's files are stored */
 	private Path documentRoot;
 	
-	/** a worker map, mapping short names to actual workers */
-	private Map<String, IWebWorker> workersMap = new HashMap<>();
+	/** the registry of functions which scripts may call */
+	private FunctionRegistry functions = new FunctionRegistry();
+	/** a cache of compiled smart scripts, mapping script paths to compiled programs */
+	private FileCache<SmartScriptProgram> scriptCache;
+	/** a cache of small static files, mapping file paths to their contents and header fields */
+	private FileCache<StaticAsset> staticCache;
+	/** the size of the largest file which may be held in the static cache, in bytes */
+	private long staticCacheMaxFileSize;
+	/** a cache of script output, mapping scripts and their key parameters to rendered output */
+	private OutputCache outputCache;
+	/** a map of scripts whose output is cached, mapping their paths to the names of their key parameters */
+	private Map<String, String[]> outputCachedScripts = new HashMap<>();
+	
+	/** the router deciding which worker serves each requested path */
+	private RequestRouter router;
 	
-	/** a map of sessions, mapping SIDs to session entries */
-	private Map<String, SessionMapEntry> sessions = new ConcurrentHashMap<>();
-	/** a Random object used for generating random numbers */
-	private Random sessionRandom = new Random();
+	/** the manager of client sessions */
+	private SessionManager sessionManager;
+	
+	/** metrics of the requests served so far */
+	private ServerMetrics metrics = new ServerMetrics();
+	/** the amount of connections currently held by client workers */
+	private AtomicInteger activeConnections = new AtomicInteger();
+	/** the amount of connections currently waiting in the selector for their next request */
+	private volatile int idleConnections;
 	
 	/** a flag used for killing the serverThread */
-	private boolean keepServerAlive;
+	private volatile boolean keepServerAlive;
+	
+	/** I/O mode in which a blocking server socket accepts connections */
+	private static final String IO_MODE_BLOCKING = "blocking";
+	/** I/O mode in which a selector accepts connections and reads request headers */
+	private static final String IO_MODE_NIO = "nio";
+	/** size of the buffer the selector thread reads request headers into, in bytes */
+	private static final int READ_BUFFER_SIZE = 16 * 1024;
 	
 	/**
 	 * Creates a new SmartHttpServer from the specified configuration file.
@@ -100,9 +246,106 @@ public class SmartHttpServer {
 		address = serverProp.getProperty("server.address");
 		port = Integer.parseInt(serverProp.getProperty("server.port"));
 		workerThreads = Integer.parseInt(serverProp.getProperty("server.workerThreads"));
+		executorType = serverProp.getProperty("server.executor", WorkerExecutors.PLATFORM).trim();
+		if (!WorkerExecutors.isSupported(executorType)) {
+			throw new RuntimeException(
+				"Unsupported server.executor type: "+executorType
+				+" (virtual threads require Java 21 or newer)"
+			);
+		}
+		if (executorType.equals(WorkerExecutors.VIRTUAL)) {
+			// virtual threads are never scarce, so the amount of requests is capped explicitly
+			requestPermits = new Semaphore(Integer.parseInt(
+				serverProp.getProperty("server.maxConcurrentRequests", "1000").trim()
+			));
+		}
 		sessionTimeout = Integer.parseInt(serverProp.getProperty("session.timeout"));
+		sessionManager = new SessionManager(
+			sessionTimeout, executorType.equals(WorkerExecutors.VIRTUAL)
+		);
+		admissionQueue = new AdmissionQueue(
+			Integer.parseInt(serverProp.getProperty("server.queue.capacity", "100").trim()),
+			Long.parseLong(serverProp.getProperty("server.queue.deadline", "0").trim())
+		);
+		serviceUnavailableResponse = (
+			"HTTP/1.1 503 Service Unavailable\r\n"
+			+ "Retry-After: "+serverProp.getProperty("server.queue.retryAfter", "1").trim()+"\r\n"
+			+ "Content-Type: text/plain\r\n"
+			+ "Content-Length: 0\r\n"
+			+ "Connection: close\r\n"
+			+ "\r\n"
+		).getBytes(StandardCharsets.ISO_8859_1);
+		keepAliveTimeout = Integer.parseInt(serverProp.getProperty("server.keepAlive.timeout", "5").trim());
+		keepAliveMaxRequests = Integer.parseInt(
+			serverProp.getProperty("server.keepAlive.maxRequests", "100").trim()
+		);
+		outputBufferSize = Integer.parseInt(
+			serverProp.getProperty("server.outputBufferSize", "8192").trim()
+		);
+		maxHeaderSize = Integer.parseInt(
+			serverProp.getProperty("server.maxHeaderSize", "16384").trim()
+		);
+		maxHeaderCount = Integer.parseInt(
+			serverProp.getProperty("server.maxHeaderCount", "100").trim()
+		);
+		if (maxHeaderSize < 1 || maxHeaderCount < 1) {
+			throw new RuntimeException("Header limits must be positive!");
+		}
+		ioMode = serverProp.getProperty("server.io", IO_MODE_BLOCKING).trim();
+		if (!ioMode.equals(IO_MODE_BLOCKING) && !ioMode.equals(IO_MODE_NIO)) {
+			throw new RuntimeException("Unknown server.io mode: "+ioMode);
+		}
 		documentRoot = Paths.get(serverProp.getProperty("server.documentRoot")).toAbsolutePath();
 		
+		String functionsConfig = serverProp.getProperty("server.functions");
+		if (functionsConfig != null && !functionsConfig.trim().isEmpty()) {
+			Properties functionProp = loadAndInitProperties(functionsConfig.trim());
+			
+			for (Map.Entry<Object, Object> entry : functionProp.entrySet()) {
+				String name = (String) entry.getKey();
+				String fqcnToken = ((String) entry.getValue()).trim();
+				
+				functions.register(name, loadScriptFunction(fqcnToken));
+			}
+		}
+		
+		scriptCache = new FileCache<>(
+			Long.parseLong(serverProp.getProperty("server.scriptCache.size", "4194304").trim()),
+			Long.parseLong(serverProp.getProperty("server.scriptCache.checkInterval", "1000").trim()),
+			this::compileScript
+		);
+		
+		staticCacheMaxFileSize = Long.parseLong(
+			serverProp.getProperty("server.staticCache.maxFileSize", "262144").trim()
+		);
+		boolean staticCacheGzip = Boolean.parseBoolean(
+			serverProp.getProperty("server.staticCache.gzip", "true").trim()
+		);
+		staticCache = new FileCache<>(
+			Long.parseLong(serverProp.getProperty("server.staticCache.size", "16777216").trim()),
+			Long.parseLong(serverProp.getProperty("server.staticCache.checkInterval", "1000").trim()),
+			path -> StaticAsset.load(path, mimeTypeOf(path), staticCacheGzip)
+		);
+		
+		outputCache = new OutputCache(
+			Long.parseLong(serverProp.getProperty("server.outputCache.size", "4194304").trim()),
+			Long.parseLong(serverProp.getProperty("server.outputCache.ttl", "60000").trim())
+		);
+		String outputCacheConfig = serverProp.getProperty("server.outputCache");
+		if (outputCacheConfig != null && !outputCacheConfig.trim().isEmpty()) {
+			Properties outputCacheProp = loadAndInitProperties(outputCacheConfig.trim());
+			
+			for (Map.Entry<Object, Object> entry : outputCacheProp.entrySet()) {
+				String path = (String) entry.getKey();
+				String keyParameters = ((String) entry.getValue()).trim();
+				
+				outputCachedScripts.put(
+					path,
+					keyParameters.isEmpty() ? new String[0] : keyParameters.split("\\s*,\\s*")
+				);
+			}
+		}
+		
 		Properties mimeProp = loadAndInitProperties(serverProp.getProperty("server.mimeConfig"));
 		
 		for (Map.Entry<Object, Object> entry : mimeProp.entrySet()) {
@@ -113,42 +356,125 @@ public class SmartHttpServer {
 		}
 		
 		Properties workerProp = loadAndInitProperties(serverProp.getProperty("server.workers"));
+		Map<String, String> workerClasses = new HashMap<>();
 		
 		for (Map.Entry<Object, Object> entry : workerProp.entrySet()) {
 			String path = (String) entry.getKey();
 			String fqcnToken = (String) entry.getValue();
 			
-			if (workersMap.containsKey(path)) {
+			if (workerClasses.containsKey(path)) {
 				throw new RuntimeException(
 					"workers.properties file has same path mapping for multiple workers!"
 				);
 			}
 			
-			IWebWorker iww = loadWebWorker(fqcnToken);
-			workersMap.put(path, iww);
+			workerClasses.put(path, fqcnToken);
 		}
+		
+		Map<String, IWebWorker> builtinWorkers = new HashMap<>();
+		String metricsPath = serverProp.getProperty("server.metrics.path", "").trim();
+		if (!metricsPath.isEmpty()) {
+			builtinWorkers.put(metricsPath, new MetricsWorker(metrics, this::getGauges));
+		}
+		
+		router = new RequestRouter(workerClasses, builtinWorkers);
 	}
 
 	/**
-	 * Helper method for loading a web worker from the specified
+	 * Helper method for parsing and compiling the script on the specified path.
+	 * The script is decoded and parsed as it is read, so its source is never
+	 * held in memory as a whole.
+	 * 
+	 * @param path path to the script
+	 * @return compiled script
+	 * @throws IOException if the script could not be read
+	 */
+	private SmartScriptProgram compileScript(Path path) throws IOException {
+		try (Reader reader = new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8)) {
+			return SmartScriptProgram.compile(new SmartScriptParser(reader).getDocumentNode(), functions);
+		}
+	}
+	
+	/**
+	 * Helper method for loading a script function from the specified
 	 * fully qualified class name token.
 	 * 
 	 * @param fqcnToken fully qualified class name token
 	 * @return an instance of the specified class
+	 * @throws RuntimeException if the class could not be loaded or instantiated
 	 */
-	private IWebWorker loadWebWorker(String fqcnToken) {
-		IWebWorker iww;
+	private static IScriptFunction loadScriptFunction(String fqcnToken) {
 		try {
-			Class<?> referenceToClass = this.getClass().getClassLoader().loadClass(fqcnToken);
-			Object newObject = referenceToClass.newInstance();
-			iww = (IWebWorker) newObject;
+			Class<?> referenceToClass = SmartHttpServer.class.getClassLoader().loadClass(fqcnToken);
+			return (IScriptFunction) referenceToClass.getDeclaredConstructor().newInstance();
 		} catch (Exception ex) {
-			throw new RuntimeException("Could not load class: "+fqcnToken);
+			throw new RuntimeException("Could not load class: "+fqcnToken, ex);
+		}
+	}
+	
+	/**
+	 * Helper method for determining the mime type of the file on the specified
+	 * path from its extension. Files with unknown extensions are considered to
+	 * be of type application/octet-stream.
+	 * 
+	 * @param path path to the file
+	 * @return mime type of the file
+	 */
+	private String mimeTypeOf(Path path) {
+		String mimeType = mimeTypes.get(extensionOf(path));
+		
+		return mimeType == null ? "application/octet-stream" : mimeType;
+	}
+	
+	/**
+	 * Helper method for extracting the extension from the specified path,
+	 * being the part of its name after the last dot. A name without any
+	 * dots is considered to be an extension in its entirety.
+	 * 
+	 * @param path path to the file
+	 * @return extension of the file
+	 */
+	private static String extensionOf(Path path) {
+		String name = path.toString();
+		
+		return name.substring(name.lastIndexOf('.') + 1);
+	}
+	
+	/**
+	 * Helper method for checking whether the specified value of an
+	 * Accept-Encoding header field allows the gzip encoding.
+	 * 
+	 * @param acceptEncoding value of the Accept-Encoding header field; may be null
+	 * @return <b>true</b> iff gzip encoding is accepted
+	 */
+	private static boolean acceptsGzip(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return false;
+		}
+		
+		for (String coding : acceptEncoding.split(",")) {
+			String[] parts = coding.split(";");
+			if (!parts[0].trim().equalsIgnoreCase("gzip")) {
+				continue;
+			}
+			
+			for (int i = 1; i < parts.length; i++) {
+				String parameter = parts[i].trim();
+				if (parameter.startsWith("q=")) {
+					try {
+						return Double.parseDouble(parameter.substring(2)) > 0;
+					} catch (NumberFormatException ex) {
+						return false;
+					}
+				}
+			}
+			
+			return true;
 		}
 		
-		return iww;
+		return false;
 	}
-
+	
 	/**
 	 * Helper method for loading and initializing a Properties object
 	 * from the specified configuration file.
@@ -175,33 +501,18 @@ public class SmartHttpServer {
 	 * Starts the server. If the server is already running, does nothing.
 	 * 
 	 */
-	protected synchronized void start() {
+	public synchronized void start() {
 		if (serverThread != null) {
 			return;
 		}
 		
-		serverThread = new ServerThread();
+		serverThread = ioMode.equals(IO_MODE_NIO) ? new NioServerThread() : new ServerThread();
 		keepServerAlive = true;
-		threadPool = Executors.newFixedThreadPool(workerThreads);
+		threadPool = WorkerExecutors.newExecutor(executorType, workerThreads);
 		
 		serverThread.start();
 		
-		Thread oldSessionCollector = new Thread(() -> {
-			final int SECONDS_IN_FIVE_MINUTES = 60 * 5;
-			while (true) {
-				for (Entry<String, SessionMapEntry> entry : sessions.entrySet()) {
-					if (entry.getValue().validUntil - new Date().getTime()/1000 < 0) {
-						sessions.remove(entry.getKey());
-					}
-				}
-				
-				try {
-					Thread.sleep(1000*SECONDS_IN_FIVE_MINUTES);
-				} catch (InterruptedException ignorable) {}
-			}
-		});
-		oldSessionCollector.setDaemon(true);
-		oldSessionCollector.start();
+		sessionManager.start();
 		
 	}
 
@@ -209,14 +520,14 @@ public class SmartHttpServer {
 	 * Stops the server. If the served isn't running, does nothing.
 	 * 
 	 */
-	protected synchronized void stop() {
+	public synchronized void stop() {
 		if (serverThread == null) {
 			return;
 		}
 		
 		keepServerAlive = false;
 		threadPool.shutdown();
-		sessions.clear();
+		sessionManager.stop();
 		
 		while (serverThread.isAlive()) {
 			try {
@@ -227,6 +538,102 @@ public class SmartHttpServer {
 		serverThread = null;
 	}
 
+	/**
+	 * Returns the amount of connections currently waiting for a worker, along
+	 * with the requests waiting for a permit when workers run on virtual threads.
+	 * 
+	 * @return amount of waiting connections and requests
+	 */
+	public int getQueuedCount() {
+		return admissionQueue.size();
+	}
+	
+	/**
+	 * Returns the amount of connections and requests rejected so far because
+	 * the queue of waiting ones was full.
+	 * 
+	 * @return amount of rejected connections and requests
+	 */
+	public long getRejectedCount() {
+		return admissionQueue.getRejected();
+	}
+	
+	/**
+	 * Returns the amount of connections and requests dropped so far because
+	 * they had waited for longer than the configured deadline.
+	 * 
+	 * @return amount of expired connections and requests
+	 */
+	public long getExpiredCount() {
+		return admissionQueue.getExpired();
+	}
+	
+	/**
+	 * Helper method for collecting the current values describing the state
+	 * of the server, which are reported along with its metrics.
+	 * 
+	 * @return map of current values, mapped to their names
+	 */
+	private Map<String, Number> getGauges() {
+		Map<String, Number> gauges = new LinkedHashMap<>();
+		
+		gauges.put("connections_active", activeConnections.get());
+		gauges.put("connections_idle", idleConnections);
+		gauges.put("queue_size", admissionQueue.size());
+		gauges.put("queue_rejected", admissionQueue.getRejected());
+		gauges.put("queue_expired", admissionQueue.getExpired());
+		if (requestPermits != null) {
+			gauges.put("requests_permits_available", requestPermits.availablePermits());
+		}
+		gauges.put("sessions_live", sessionManager.size());
+		putCacheGauges(gauges, "script_cache",
+			scriptCache.getHits(), scriptCache.getMisses(), scriptCache.size(), scriptCache.getTotalSize());
+		putCacheGauges(gauges, "static_cache",
+			staticCache.getHits(), staticCache.getMisses(), staticCache.size(), staticCache.getTotalSize());
+		putCacheGauges(gauges, "output_cache",
+			outputCache.getHits(), outputCache.getMisses(), outputCache.size(), outputCache.getTotalSize());
+		
+		return gauges;
+	}
+	
+	/**
+	 * Helper method for adding the gauges describing a cache under the
+	 * specified prefix.
+	 * 
+	 * @param gauges map of gauges to add to
+	 * @param prefix prefix of the names of the gauges
+	 * @param hits amount of hits of the cache
+	 * @param misses amount of misses of the cache
+	 * @param entries amount of entries in the cache
+	 * @param bytes total size of the entries in the cache
+	 */
+	private static void putCacheGauges(Map<String, Number> gauges, String prefix,
+			long hits, long misses, int entries, long bytes) {
+		gauges.put(prefix+"_hits", hits);
+		gauges.put(prefix+"_misses", misses);
+		gauges.put(prefix+"_hit_rate", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+		gauges.put(prefix+"_entries", entries);
+		gauges.put(prefix+"_bytes", bytes);
+	}
+	
+	/**
+	 * Helper method for handing the specified worker over to the thread pool,
+	 * unless too many connections are already waiting for a worker. In that
+	 * case, the worker's client is sent a 503 response right away, from the
+	 * calling thread, and its connection is closed.
+	 * 
+	 * @param cw worker to hand over
+	 */
+	private void submitWorker(ClientWorker cw) {
+		if (!admissionQueue.tryEnter()) {
+			cw.rejectConnection();
+			return;
+		}
+		
+		cw.enqueuedAt = System.currentTimeMillis();
+		threadPool.submit(cw);
+	}
+	
 	/**
 	 * Models the thread which runs the server and listens for
 	 * reqests.
@@ -238,7 +645,13 @@ public class SmartHttpServer {
 		
 		@Override
 		public void run() {
-			try (ServerSocket serverSocket = new ServerSocket()) {
+			/*
+			 * The socket is opened through a channel, so the accepted client
+			 * sockets have channels which files can be transferred into.
+			 */
+			try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+				ServerSocket serverSocket = serverChannel.socket();
+				
 				/*
 				 * The server will block on accept only for 1 second
 				 * at most, after which a SocketTimeoutException is
@@ -259,134 +672,830 @@ public class SmartHttpServer {
 						continue;
 					}
 					
-					ClientWorker cw = new ClientWorker(client);
-					threadPool.submit(cw);
+					submitWorker(new ClientWorker(client));
+				}
+			} catch (IOException e) {
+				throw new RuntimeException("Could not open server socket!");
+			}
+			
+		}
+	}
+
+	/**
+	 * Models the thread which runs the server in non-blocking mode. A single
+	 * selector is used for accepting connections and for reading request
+	 * headers. Once a connection has sent its complete header, it is switched
+	 * back into blocking mode and handed over to a {@linkplain ClientWorker},
+	 * along with the bytes that have already been read.
+	 * 
+	 * @author Vice Ivušić
+	 *
+	 */
+	protected class NioServerThread extends Thread {
+		/** selector used by this thread; set once the thread is running */
+		private volatile Selector selector;
+		/** persistent connections returned by workers, waiting to be registered again */
+		private Queue<HeaderBuffer> returnedConnections = new ConcurrentLinkedQueue<>();
+		
+		/**
+		 * Hands the specified persistent connection back to this thread, which
+		 * will wait for the client's next request on it. May be called from
+		 * any thread.
+		 * 
+		 * @param channel channel of the persistent connection
+		 * @param requestsServed amount of requests already served over the connection
+		 */
+		public void returnConnection(SocketChannel channel, int requestsServed) {
+			returnedConnections.add(new HeaderBuffer(channel, requestsServed));
+			
+			Selector currentSelector = selector;
+			if (currentSelector != null) {
+				currentSelector.wakeup();
+			}
+		}
+		
+		@Override
+		public void run() {
+			try (Selector selector = Selector.open();
+				 ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+				
+				this.selector = selector;
+				serverChannel.configureBlocking(false);
+				serverChannel.bind(new InetSocketAddress(
+					(InetAddress) null,
+					port
+				));
+				serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+				
+				ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+				List<SelectionKey> completedKeys = new ArrayList<>();
+				long lastIdleCheck = System.currentTimeMillis();
+				
+				while (keepServerAlive) {
+					/*
+					 * Same as in the blocking server thread, the selector waits
+					 * for at most one second so the server can reliably be stopped.
+					 */
+					selector.select(1000);
+					
+					Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+					while (it.hasNext()) {
+						SelectionKey key = it.next();
+						it.remove();
+						
+						if (!key.isValid()) {
+							continue;
+						}
+						
+						if (key.isAcceptable()) {
+							acceptConnection(serverChannel, selector);
+						} else if (key.isReadable()) {
+							if (readHeaderBytes(key, readBuffer)) {
+								completedKeys.add(key);
+							}
+						}
+					}
+					
+					if (!completedKeys.isEmpty()) {
+						dispatchCompletedKeys(selector, completedKeys);
+						completedKeys.clear();
+					}
+					
+					registerReturnedConnections(selector);
+					// every key except the server channel's belongs to a waiting connection
+					idleConnections = selector.keys().size() - 1;
+					
+					long now = System.currentTimeMillis();
+					if (now - lastIdleCheck >= 1000) {
+						closeIdleConnections(selector, now);
+						lastIdleCheck = now;
+					}
+				}
+				
+				for (SelectionKey key : selector.keys()) {
+					if (key.channel() != serverChannel) {
+						closeQuietly(key.channel());
+					}
+				}
+				idleConnections = 0;
+				
+				HeaderBuffer returned;
+				while ((returned = returnedConnections.poll()) != null) {
+					closeQuietly(returned.channel);
+				}
+			} catch (IOException e) {
+				throw new RuntimeException("Could not open server socket!");
+			}
+		}
+		
+		/**
+		 * Helper method for registering all persistent connections returned by
+		 * workers with the specified selector.
+		 * 
+		 * @param selector selector to register returned connections with
+		 */
+		private void registerReturnedConnections(Selector selector) {
+			HeaderBuffer returned;
+			while ((returned = returnedConnections.poll()) != null) {
+				try {
+					returned.channel.configureBlocking(false);
+					returned.channel.register(selector, SelectionKey.OP_READ, returned);
+				} catch (IOException ex) {
+					closeQuietly(returned.channel);
+				}
+			}
+		}
+		
+		/**
+		 * Helper method for closing all connections which haven't sent anything
+		 * for longer than the configured keep-alive timeout.
+		 * 
+		 * @param selector selector the connections are registered with
+		 * @param now current time in milliseconds
+		 */
+		private void closeIdleConnections(Selector selector, long now) {
+			long maxIdleMillis = keepAliveTimeout * 1000L;
+			
+			for (SelectionKey key : selector.keys()) {
+				Object attachment = key.attachment();
+				if (!(attachment instanceof HeaderBuffer)) {
+					continue;
+				}
+				
+				if (now - ((HeaderBuffer) attachment).lastActivity > maxIdleMillis) {
+					key.cancel();
+					closeQuietly(key.channel());
+				}
+			}
+		}
+		
+		/**
+		 * Helper method for accepting all pending connections and registering
+		 * them with the specified selector for reading.
+		 * 
+		 * @param serverChannel channel accepting connections
+		 * @param selector selector to register accepted connections with
+		 * @throws IOException if an accepted connection could not be configured
+		 */
+		private void acceptConnection(ServerSocketChannel serverChannel, Selector selector)
+				throws IOException {
+			SocketChannel client;
+			while ((client = serverChannel.accept()) != null) {
+				client.configureBlocking(false);
+				client.register(selector, SelectionKey.OP_READ, new HeaderBuffer(client, 0));
+			}
+		}
+		
+		/**
+		 * Helper method for reading whatever the client of the specified key has
+		 * sent so far. Closes the connection if the client has closed it. A header
+		 * which exceeds the maximum allowed size is considered complete as well,
+		 * so the worker it is handed over to can reject it.
+		 * 
+		 * @param key key of the connection being read
+		 * @param readBuffer buffer to read into
+		 * @return <b>true</b> iff the complete request header, or more than the
+		 * 		   maximum allowed size of it, has been read
+		 */
+		private boolean readHeaderBytes(SelectionKey key, ByteBuffer readBuffer) {
+			SocketChannel client = (SocketChannel) key.channel();
+			HeaderBuffer header = (HeaderBuffer) key.attachment();
+			
+			readBuffer.clear();
+			int read;
+			try {
+				read = client.read(readBuffer);
+			} catch (IOException ex) {
+				read = -1;
+			}
+			
+			if (read == -1) {
+				key.cancel();
+				closeQuietly(client);
+				return false;
+			}
+			
+			readBuffer.flip();
+			header.append(readBuffer);
+			
+			return header.isComplete() || header.size() > maxHeaderSize;
+		}
+		
+		/**
+		 * Helper method for handing over connections whose headers have been
+		 * completely read to the worker thread pool. The keys are cancelled
+		 * and flushed from the selector first, so the channels can be
+		 * switched back into blocking mode.
+		 * 
+		 * @param selector selector the keys are registered with
+		 * @param completedKeys keys of connections with complete headers
+		 * @throws IOException if the selector could not be flushed
+		 */
+		private void dispatchCompletedKeys(Selector selector, List<SelectionKey> completedKeys)
+				throws IOException {
+			for (SelectionKey key : completedKeys) {
+				key.cancel();
+			}
+			selector.selectNow();
+			
+			for (SelectionKey key : completedKeys) {
+				SocketChannel client = (SocketChannel) key.channel();
+				HeaderBuffer header = (HeaderBuffer) key.attachment();
+				
+				try {
+					client.configureBlocking(true);
+				} catch (IOException ex) {
+					closeQuietly(client);
+					continue;
+				}
+				
+				ClientWorker cw = new ClientWorker(
+					client.socket(),
+					header.toByteArray(),
+					header.requestsServed
+				);
+				submitWorker(cw);
+			}
+		}
+		
+		/**
+		 * Helper method for closing a channel, ignoring any errors.
+		 * 
+		 * @param channel channel to close
+		 */
+		private void closeQuietly(Channel channel) {
+			try {
+				channel.close();
+			} catch (IOException ignorable) {}
+		}
+	}
+	
+	/**
+	 * Helper class for accumulating the bytes of a request header read by
+	 * the {@linkplain NioServerThread}. Knows whether the end of the header,
+	 * i.e. an empty line, has already been received.
+	 * 
+	 * @author Vice Ivušić
+	 *
+	 */
+	private static class HeaderBuffer {
+		/** channel the header is being received from */
+		private SocketChannel channel;
+		/** amount of requests already served over the channel */
+		private int requestsServed;
+		/** time of the last activity on the channel, in milliseconds */
+		private long lastActivity = System.currentTimeMillis();
+		/** bytes received so far */
+		private byte[] data = new byte[512];
+		/** amount of bytes received so far */
+		private int size;
+		/** index from which the search for the end of header continues */
+		private int scanIndex;
+		/** flag indicating the end of header has been received */
+		private boolean complete;
+		
+		/**
+		 * Creates a new empty HeaderBuffer for the specified channel.
+		 * 
+		 * @param channel channel the header is being received from
+		 * @param requestsServed amount of requests already served over the channel
+		 */
+		public HeaderBuffer(SocketChannel channel, int requestsServed) {
+			this.channel = channel;
+			this.requestsServed = requestsServed;
+		}
+		
+		/**
+		 * Appends the remaining bytes of the specified buffer.
+		 * 
+		 * @param buffer buffer holding newly received bytes
+		 */
+		public void append(ByteBuffer buffer) {
+			int length = buffer.remaining();
+			if (size + length > data.length) {
+				data = Arrays.copyOf(data, Math.max(data.length * 2, size + length));
+			}
+			
+			buffer.get(data, size, length);
+			size += length;
+			lastActivity = System.currentTimeMillis();
+			
+			// an empty request line also ends the header
+			if (!complete && size >= 2 && data[0] == '\r' && data[1] == '\n') {
+				complete = true;
+			}
+			
+			while (!complete && scanIndex + 3 < size) {
+				complete = data[scanIndex] == '\r' && data[scanIndex+1] == '\n'
+						   && data[scanIndex+2] == '\r' && data[scanIndex+3] == '\n';
+				scanIndex++;
+			}
+		}
+		
+		/**
+		 * Returns <b>true</b> if the complete header has been received.
+		 * 
+		 * @return <b>true</b> iff the complete header has been received
+		 */
+		public boolean isComplete() {
+			return complete;
+		}
+		
+		/**
+		 * Returns the amount of bytes received so far.
+		 * 
+		 * @return amount of bytes received so far
+		 */
+		public int size() {
+			return size;
+		}
+		
+		/**
+		 * Returns a copy of all bytes received so far, which includes the header
+		 * and possibly the beginning of the next request.
+		 * 
+		 * @return bytes received so far
+		 */
+		public byte[] toByteArray() {
+			return Arrays.copyOf(data, size);
+		}
+	}
+
+	/**
+	 * Represents a worker which parses and executes a client's request.
+	 * 
+	 * @author Vice Ivušić
+	 *
+	 */
+	private class ClientWorker implements Runnable, IDispatcher {
+		/** socket through which the client's request came in */
+		private Socket clientSocket;
+		/** bytes already read from the socket by the selector thread; may be null */
+		private byte[] preReadData;
+		/** input stream from client */
+		private InputStream inputStream;
+		/** output stream toward client */
+		private OutputStream outputStream;
+		/** HTTP protocol version being used */
+		private String version;
+		/** HTTP method being used */
+		private String method;
+		/** map of parameters */
+		private Map<String, String> params = new HashMap<>();
+		/** map of temporary parameters */
+		private Map<String, String> tempParams = new HashMap<>();
+		/** map of persistent parameters */
+		private Map<String, String> permParams = new HashMap<>();
+		/** list of cookies */
+		private List<RCCookie> outputCookies = new ArrayList<>();
+		/** unique SID for current client */
+		private String SID;
+		/** header of the current request, reused for all requests over this connection */
+		private RequestHeader request = new RequestHeader(maxHeaderSize, maxHeaderCount);
+		/** amount of requests already served over this connection */
+		private int requestsServed;
+		/** time this worker was handed over to the thread pool, in milliseconds */
+		private long enqueuedAt;
+		/** time the header of the current request was read, in nanoseconds */
+		private long requestStart;
+		/** name of the route serving the current request, under which it is recorded in the metrics */
+		private String route;
+		/** response of the current request, being completed by an asynchronous worker; null if none */
+		private CompletionStage<Void> pendingResponse;
+		
+		/** context object for current client */
+		private RequestContext context;
+
+		/**
+		 * Creates a new ClientWorker from the specified client socket.
+		 * 
+		 * @param clientSocket client socket for current worker
+		 * @throws NullPointerException if the specified client socket is null
+		 */
+		public ClientWorker(Socket clientSocket) {
+			if (clientSocket == null) {
+				throw new NullPointerException("Argument clientSocket cannot be null!");
+			}
+			
+			this.clientSocket = clientSocket;
+		}
+		
+		/**
+		 * Creates a new ClientWorker from the specified client socket and the
+		 * bytes which have already been read from it. The worker will read these
+		 * bytes before reading any further bytes from the socket.
+		 * 
+		 * @param clientSocket client socket for current worker
+		 * @param preReadData bytes already read from the socket
+		 * @throws NullPointerException if the specified client socket is null
+		 */
+		public ClientWorker(Socket clientSocket, byte[] preReadData) {
+			this(clientSocket);
+			this.preReadData = preReadData;
+		}
+		
+		/**
+		 * Creates a new ClientWorker for a persistent connection which has
+		 * already been used for the specified amount of requests.
+		 * 
+		 * @param clientSocket client socket for current worker
+		 * @param preReadData bytes already read from the socket
+		 * @param requestsServed amount of requests already served over the connection
+		 * @throws NullPointerException if the specified client socket is null
+		 */
+		public ClientWorker(Socket clientSocket, byte[] preReadData, int requestsServed) {
+			this(clientSocket, preReadData);
+			this.requestsServed = requestsServed;
+		}
+
+		@Override
+		public void run() {
+			if (!admissionQueue.leave(enqueuedAt)) {
+				// the client has waited for too long, and has most likely given up
+				rejectConnection();
+				return;
+			}
+			
+			activeConnections.incrementAndGet();
+			boolean suspended = false;
+			try {
+				getSocketStreams();
+				suspended = serveRequests(serveRequest());
+			} finally {
+				if (!suspended) {
+					activeConnections.decrementAndGet();
+				}
+			}
+		}
+		
+		/**
+		 * Helper method for resuming the connection once the asynchronous
+		 * worker serving its current request has completed the response.
+		 * Runs on a worker thread of its own, same as {@linkplain #run()}.
+		 * 
+		 * @param failure exception the worker failed with; null if it succeeded
+		 */
+		private void resumeRequest(Throwable failure) {
+			boolean suspended = false;
+			try {
+				if (failure != null) {
+					failResponse();
+					return;
+				}
+				
+				suspended = serveRequests(finishResponse());
+			} finally {
+				if (!suspended) {
+					activeConnections.decrementAndGet();
+				}
+			}
+		}
+		
+		/**
+		 * Helper method for serving requests over the connection, after a
+		 * request has been served, until the connection should be closed or
+		 * handed back to the selector thread. If the last served request is
+		 * still pending on an asynchronous worker, the connection is instead
+		 * suspended until the worker completes, and the calling thread is
+		 * released.
+		 * 
+		 * @param keepAlive whether the connection should be kept open after
+		 * 		  the last served request
+		 * @return <b>true</b> iff the connection has been suspended
+		 */
+		private boolean serveRequests(boolean keepAlive) {
+			try {
+				while (true) {
+					if (pendingResponse != null) {
+						suspendRequest();
+						return true;
+					}
+					
+					if (!keepAlive) {
+						break;
+					}
+					
+					requestsServed++;
+					
+					Thread acceptor = serverThread;
+					if (acceptor instanceof NioServerThread
+							&& !request.hasBufferedData()
+							&& inputStream.available() == 0) {
+						/*
+						 * The connection came in through the selector and the client
+						 * hasn't sent its next request yet, so the selector waits for
+						 * it instead of this worker thread.
+						 */
+						((NioServerThread) acceptor).returnConnection(
+							clientSocket.getChannel(),
+							requestsServed
+						);
+						return false;
+					}
+					
+					resetRequestState();
+					clientSocket.setSoTimeout(keepAliveTimeout * 1000);
+					keepAlive = serveRequest();
+				}
+			} catch (IOException ignorable) {
+			}
+			
+			killWorker();
+			return false;
+		}
+		
+		/**
+		 * Helper method for suspending the connection until the pending
+		 * response is completed by its asynchronous worker, after which the
+		 * connection is resumed on a worker thread.
+		 */
+		private void suspendRequest() {
+			CompletionStage<Void> pending = pendingResponse;
+			pendingResponse = null;
+			
+			pending.whenComplete((result, failure) -> {
+				try {
+					threadPool.execute(() -> resumeRequest(failure));
+				} catch (RejectedExecutionException ex) {
+					// the server has been stopped in the meantime
+					killWorker();
+					activeConnections.decrementAndGet();
 				}
-			} catch (IOException e) {
-				throw new RuntimeException("Could not open server socket!");
+			});
+		}
+		
+		/**
+		 * Helper method for reading and serving a single request from the
+		 * client. Returns <b>true</b> if the connection should be kept open
+		 * for the client's next request.
+		 * 
+		 * @return <b>true</b> iff the connection should be kept open
+		 */
+		private boolean serveRequest() {
+			RequestHeader.Status status = readRequest();
+			requestStart = System.nanoTime();
+			route = ServerMetrics.UNMATCHED_ROUTE;
+			if (status == RequestHeader.Status.CLOSED) {
+				if (requestsServed == 0) {
+					rejectRequest(400, "Header is invalid!");
+				}
+				return false;
+			}
+			
+			if (status == RequestHeader.Status.TOO_LARGE) {
+				rejectRequest(431, "Request Header Fields Too Large");
+				return false;
+			}
+			
+			if (requestPermits == null) {
+				return respond();
+			}
+			
+			if (!acquireRequestPermit()) {
+				rejectConnection();
+				return false;
 			}
 			
+			try {
+				return respond();
+			} finally {
+				requestPermits.release();
+			}
 		}
-	}
-
-	/**
-	 * Represents a worker which parses and executes a client's request.
-	 * 
-	 * @author Vice Ivušić
-	 *
-	 */
-	private class ClientWorker implements Runnable, IDispatcher {
-		/** socket through which the client's request came in */
-		private Socket clientSocket;
-		/** input stream from client */
-		private PushbackInputStream inputStream;
-		/** output stream toward client */
-		private OutputStream outputStream;
-		/** HTTP protocol version being used */
-		private String version;
-		/** HTTP method being used */
-		private String method;
-		/** map of parameters */
-		private Map<String, String> params = new HashMap<>();
-		/** map of temporary parameters */
-		private Map<String, String> tempParams = new HashMap<>();
-		/** map of persistent parameters */
-		private Map<String, String> permParams = new HashMap<>();
-		/** list of cookies */
-		private List<RCCookie> outputCookies = new ArrayList<>();
-		/** unique SID for current client */
-		private String SID;
 		
-		/** context object for current client */
-		private RequestContext context;
-
 		/**
-		 * Creates a new ClientWorker from the specified client socket.
+		 * Helper method for acquiring a permit for serving the current request.
+		 * If no permit is available, the request waits for one in the admission
+		 * queue, but only if the queue isn't full and only until the queue's
+		 * deadline.
 		 * 
-		 * @param clientSocket client socket for current worker
-		 * @throws NullPointerException if the specified client socket is null
+		 * @return <b>true</b> if a permit was acquired, <b>false</b> if the
+		 * 		   request should be rejected
 		 */
-		public ClientWorker(Socket clientSocket) {
-			if (clientSocket == null) {
-				throw new NullPointerException("Argument clientSocket cannot be null!");
+		private boolean acquireRequestPermit() {
+			if (requestPermits.tryAcquire()) {
+				return true;
 			}
 			
-			this.clientSocket = clientSocket;
-		}
-
-		@Override
-		public void run() {
-			getSocketStreams();
+			if (!admissionQueue.tryEnter()) {
+				return false;
+			}
 			
-			List<String> request = readRequest();
-			if (request == null || request.size() < 1) {
-				sendError(400, "Header is invalid!");
-				killWorker();
-				return;
+			long enteredAt = System.currentTimeMillis();
+			long deadline = admissionQueue.getDeadline();
+			try {
+				if (deadline == 0) {
+					requestPermits.acquire();
+				} else if (!requestPermits.tryAcquire(deadline, TimeUnit.MILLISECONDS)) {
+					admissionQueue.expire();
+					return false;
+				}
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				admissionQueue.leave(enteredAt);
+				return false;
 			}
 			
-			String firstLine = request.get(0).trim();
-			checkSession(request);
+			if (!admissionQueue.leave(enteredAt)) {
+				requestPermits.release();
+				return false;
+			}
 			
-			String[] tokens = firstLine.split(" ");
-			if (tokens.length != 3) {
-				sendError(400, "Invalid http request!");
-				killWorker();
-				return;
+			return true;
+		}
+		
+		/**
+		 * Helper method for sending the client a 503 response, telling it to
+		 * retry later, and closing the connection. The response is written
+		 * directly into the socket, bypassing any request context.
+		 */
+		private void rejectConnection() {
+			try {
+				OutputStream os = clientSocket.getOutputStream();
+				os.write(serviceUnavailableResponse);
+				os.flush();
+			} catch (IOException ignorable) {
+				// the connection is closed anyway
 			}
+			metrics.recordStatus(503);
+			
+			killWorker();
+		}
+		
+		/**
+		 * Helper method for responding to a request whose header has been read.
+		 * Returns <b>true</b> if the connection should be kept open for the
+		 * client's next request.
+		 * 
+		 * @return <b>true</b> iff the connection should be kept open
+		 */
+		private boolean respond() {
+			checkSession(request.getHost(), request.getSid());
 			
-			method = tokens[0];
-			String requestedPath = tokens[1];
-			version = tokens[2];
+			method = request.getMethod();
+			String requestedPath = request.getPath();
+			version = request.getVersion();
+			
+			if (method == null) {
+				rejectRequest(400, "Invalid http request!");
+				return false;
+			}
 			
 			if (!method.equals("GET")) {
-				sendError(400, "Invalid method.");
-				killWorker();
-				return;
+				rejectRequest(400, "Invalid method.");
+				return false;
 			}
 			
 			if (!version.equals("HTTP/1.0") && !version.equals("HTTP/1.1")) {
-				sendError(400, "Invalid http version.");
-				killWorker();
-				return;
+				rejectRequest(400, "Invalid http version.");
+				return false;
 			}
 			
+			RequestContext rc = getContext();
+			rc.setKeepAlive(isKeepAliveRequested());
+			rc.setChunkedEncodingAllowed(version.equals("HTTP/1.1"));
+			
 			if (requestedPath.equals("/")) {
+				route = requestedPath;
 				sendWelcomeMessage();
-				killWorker();
-				return;
+				return finishResponse();
 			}
 			
-			String[] pathTokens = requestedPath.split("[?]");
-			
-			String requestedUrlString = pathTokens[0];
+			String requestedUrlString = requestedPath;
 			
-			if (pathTokens.length > 1) {
-				String paramString = pathTokens[1];
-				parseParameters(paramString);
+			int questionMark = requestedPath.indexOf('?');
+			if (questionMark >= 0) {
+				requestedUrlString = requestedPath.substring(0, questionMark);
+				
+				int paramsEnd = requestedPath.indexOf('?', questionMark+1);
+				parseParameters(requestedPath.substring(
+					questionMark+1,
+					paramsEnd < 0 ? requestedPath.length() : paramsEnd
+				));
 			}
 			
 			try {
 				internalDispatchRequest(requestedUrlString, true);
 			} catch (Exception e) {
-				sendError(400, "Bad request.");
+				pendingResponse = null;
+				failResponse();
 				throw new RuntimeException(
 					"An error occured during request fulfilment! Stack trace: \n"+e.getStackTrace()
 				);
 			}
-
+			
+			if (pendingResponse != null) {
+				// the response is finished once its asynchronous worker completes it
+				return true;
+			}
+			
+			return finishResponse();
+		}
+		
+		/**
+		 * Helper method for sending an error response to a request which
+		 * failed while being served, if no part of the response has been sent
+		 * yet, after which the connection is closed.
+		 */
+		private void failResponse() {
+			try {
+				sendError(400, "Bad request.");
+			} catch (IllegalStateException ignorable) {
+				// part of the response has already been sent
+			}
+			finishResponse();
 			killWorker();
 		}
 		
+		/**
+		 * Helper method for determining whether the connection should be kept
+		 * open after the current request. HTTP/1.1 connections are persistent
+		 * unless the client asks otherwise, while HTTP/1.0 connections are
+		 * persistent only if the client explicitly asks for it.
+		 * 
+		 * @return <b>true</b> iff the connection should be kept open
+		 */
+		private boolean isKeepAliveRequested() {
+			if (!keepServerAlive || requestsServed + 1 >= keepAliveMaxRequests) {
+				return false;
+			}
+			
+			String connection = request.getHeader("connection");
+			if (connection != null) {
+				connection = connection.toLowerCase();
+				if (connection.contains("close")) {
+					return false;
+				}
+				if (connection.contains("keep-alive")) {
+					return true;
+				}
+			}
+			
+			return version.equals("HTTP/1.1");
+		}
+		
+		/**
+		 * Helper method for finishing the response to the current request.
+		 * Returns <b>true</b> if the response was framed so that the
+		 * connection can be used for the client's next request.
+		 * 
+		 * @return <b>true</b> iff the connection should be kept open
+		 */
+		private boolean finishResponse() {
+			RequestContext rc = getContext();
+			boolean keepAlive;
+			try {
+				rc.finish();
+				keepAlive = rc.isKeepAlive();
+			} catch (IOException ex) {
+				keepAlive = false;
+			}
+			
+			metrics.record(route, rc.getStatusCode(), rc.getBytesSent(), System.nanoTime() - requestStart);
+			return keepAlive;
+		}
+		
+		/**
+		 * Helper method for sending an error response to a request which can't
+		 * be served, after which the connection is closed.
+		 * 
+		 * @param statusCode wanted status code
+		 * @param statusText wanted status text
+		 */
+		private void rejectRequest(int statusCode, String statusText) {
+			route = ServerMetrics.INVALID_ROUTE;
+			sendError(statusCode, statusText);
+			finishResponse();
+		}
+		
+		/**
+		 * Helper method for clearing all state belonging to the previous
+		 * request, so the next request on the same connection can be served.
+		 */
+		private void resetRequestState() {
+			version = null;
+			method = null;
+			params = new HashMap<>();
+			tempParams = new HashMap<>();
+			permParams = new HashMap<>();
+			outputCookies = new ArrayList<>();
+			SID = null;
+			context = null;
+		}
+		
 		/**
 		 * Helper method for loading the socket streams from the socket
 		 * opened toward the client.
 		 */
 		private void getSocketStreams() {
 			try {
-				inputStream = new PushbackInputStream(new BufferedInputStream(
-					clientSocket.getInputStream()
-				));
+				// the request header reads in bulk, so the socket stream needn't be buffered
+				inputStream = clientSocket.getInputStream();
+				if (preReadData != null) {
+					request.feed(preReadData);
+					preReadData = null;
+				}
+				
 				outputStream = new BufferedOutputStream(
 					clientSocket.getOutputStream()
 				);
@@ -397,151 +1506,58 @@ public class SmartHttpServer {
 
 		/**
 		 * Helper method for reading the header of a client's HTTP request.
+		 * A persistent connection which stays idle for too long is considered
+		 * closed.
 		 * 
-		 * @return list of lines that the header consists of
+		 * @return outcome of reading the header
 		 */
-		private List<String> readRequest() {
-			List<String> headerLines = new ArrayList<>();
-			final int CARRIAGE_RETURN = 13;
-			final int NEW_LINE = 10;
-			
-			boolean readCarriageReturn = false;
+		private RequestHeader.Status readRequest() {
 			try {
-				ByteArrayOutputStream bos = new ByteArrayOutputStream();
-				while (true) {
-					int read = inputStream.read();
-					
-					if (read == -1) {
-						return null;
-					}
-					
-					bos.write(read);
-					
-					if (read == CARRIAGE_RETURN) {
-						readCarriageReturn = true;
-					} else if (read != NEW_LINE ){
-						readCarriageReturn = false;
-					}
-					
-					if (read == NEW_LINE) {
-						if (readCarriageReturn) {
-							bos.flush();
-							byte[] headerLineData = bos.toByteArray();
-							bos.reset();
-							
-							String headerLine = new String(headerLineData, StandardCharsets.ISO_8859_1);
-							headerLines.add(headerLine);
-							
-							if (headerLine.equals("\r\n")) {
-								break;
-							}
-						}
-						
-						readCarriageReturn = false;
-					} 
-					
-				}
+				return request.read(inputStream);
+			} catch (SocketTimeoutException ex) {
+				// persistent connection has been idle for too long
+				return RequestHeader.Status.CLOSED;
 			} catch (IOException ex) {
 				throw new RuntimeException(ex);
 			}
-			
-			return headerLines;
 		}
 
 		/**
 		 * Helper method for checking whether the server has a cookie
-		 * stored for the client it is currently serving.
-		 * 
-		 * @param headerLines list of header lines sent by client
-		 */
-		private void checkSession(List<String> headerLines) {
-			synchronized (ClientWorker.class) {
-				String host = null;
-				String sidCandidate = null;
-				for (String line : headerLines) {
-					if (line.startsWith("Host:")) {
-						String[] tokens = line.split("[:]");
-						host = tokens[1].trim();
-						continue;
-					}
-					
-					if (line.startsWith("Cookie:")) {
-						if (!line.contains("sid=")) {
-							continue;
-						}
-						
-						sidCandidate = line.replaceFirst(".*sid[=][\"](.*)[\"].*", "$1").trim();
-					}
-				}
-				
-				if (sidCandidate != null) {
-					determinePotentialSID(sidCandidate);
-				}
-				
-				if (SID == null) {
-					generateNewSID(host);
-				}
-				
-				permParams = sessions.get(SID).permParamMap;
-			}
-			
-		}
-
-		/**
-		 * Helper method for determining whether the specified SID has a
-		 * mapped session entry that is still valid for current client or not.
+		 * stored for the client it is currently serving. If the client's
+		 * session is still valid, it is renewed; otherwise, a new session
+		 * is generated.
 		 * 
-		 * @param sidCandidate SID being checked
+		 * @param host host the request was sent to; may be null
+		 * @param sidCandidate SID sent by the client; may be null
 		 */
-		private void determinePotentialSID(String sidCandidate) {
-			SessionMapEntry existingEntry = sessions.get(sidCandidate);
-			
-			if (existingEntry == null) {
-				SID = null;
-				return;
-			} 
-			
-			if (existingEntry.validUntil - currentTimeInSeconds() < 0) {
-				sessions.remove(SID);
-				SID = null;
+		private void checkSession(String host, String sidCandidate) {
+			SessionMapEntry session = sessionManager.renewSession(sidCandidate);
+			if (session == null) {
+				generateNewSession(host);
 				return;
 			}
 			
-			existingEntry.validUntil = currentTimeInSeconds() + sessionTimeout;
-			SID = sidCandidate;
+			SID = session.getSid();
+			permParams = session.getPermParamMap();
 		}
 
 		/**
-		 * Helper method for generating a new SID for specified host.
+		 * Helper method for generating a new session for specified host. The
+		 * SID of the new session is sent to the client as a cookie.
 		 * 
-		 * @param host host that the SID is being generated for
+		 * @param host host that the session is being generated for
 		 */
-		private void generateNewSID(String host) {
-			final int UPPERCASE_LETTER_COUNT = 26;
-			final int ASCII_UPPERCASE_OFFSET = 65;
-			final int SID_LENGTH = 20;
-			
-			char[] sidChars = new char[SID_LENGTH];
-			for (int i = 0; i < sidChars.length; i++) {
-				sidChars[i] = (char) (Math.abs(sessionRandom.nextInt()) 
-									  % UPPERCASE_LETTER_COUNT 
-									  + ASCII_UPPERCASE_OFFSET);
-			}
-			
-			SID = new String(sidChars);
+		private void generateNewSession(String host) {
+			SessionMapEntry session = sessionManager.createSession();
+			SID = session.getSid();
+			permParams = session.getPermParamMap();
 			permParams.put("brojPoziva", "1");
-			SessionMapEntry sessionEntry = new SessionMapEntry(
-				SID,
-				currentTimeInSeconds() + sessionTimeout,
-				permParams
-			);
-			
-			sessions.put(SID, sessionEntry);
 			
 			RequestContext rc = getContext();
 			RCCookie cookie = new RCCookie(
 				"sid",
-				SID,
+				session.getSid(),
 				null,
 				host == null ? address : host,
 				"/"
@@ -579,82 +1595,231 @@ public class SmartHttpServer {
 		 * @throws Exception if any kind of exception occurs during dispatching of request
 		 */
 		private void internalDispatchRequest(String urlString, boolean directCall) throws Exception {
-			if (urlString.startsWith("/private") && directCall == true) {
+			if (directCall && router.isPrivate(urlString)) {
 				sendError(404, "Not allowed access!");
 				return;
 			}
 			
-			if (urlString.matches("^[/]ext[/][^/]*$")) {
-				serveExtWorker(urlString);
+			IWebWorker worker = router.findWorker(urlString);
+			if (worker != null) {
+				if (directCall) {
+					route = urlString;
+				}
+				
+				if (directCall && worker instanceof IAsyncWebWorker) {
+					pendingResponse = ((IAsyncWebWorker) worker).processRequestAsync(getContext());
+					if (pendingResponse == null) {
+						throw new NullPointerException("Asynchronous worker returned no completion stage!");
+					}
+					return;
+				}
+				
+				worker.processRequest(getContext());
 				return;
 			}
 			
-			if (workersMap.containsKey(urlString)) {
-				workersMap.get(urlString).processRequest(getContext());
-				return;
+			Path urlPath = Paths.get(documentRoot.toString()+urlString);
+			boolean rangeRequested = request.getHeader("range") != null;
+			
+			if (directCall) {
+				route = ServerMetrics.STATIC_ROUTE;
+			}
+			
+			// cached files are served without asking the file system about them
+			if (!rangeRequested) {
+				StaticAsset asset = staticCache.getIfPresent(urlPath);
+				if (asset != null) {
+					serveStaticAsset(asset);
+					return;
+				}
 			}
 			
-			Path urlPath = Paths.get(documentRoot.toString()+urlString);
 			if (Files.notExists(urlPath) || Files.isDirectory(urlPath) || !Files.isReadable(urlPath)) {
+				if (directCall) {
+					route = ServerMetrics.UNMATCHED_ROUTE;
+				}
 				sendError(404, "File not found!");
 				return;
 			}
 			
-			String extension = urlPath.toString().replaceFirst(".*\\.(.*)$", "$1");
-			
-			if (extension.equals("smscr")) {
-				serveSmartScript(urlPath);
+			if (extensionOf(urlPath).equals("smscr")) {
+				if (directCall) {
+					route = urlString;
+				}
+				serveSmartScript(urlPath, directCall ? outputCachedScripts.get(urlString) : null);
 				return;
 			}
 			
-			String currentMimeType = mimeTypes.get(extension);
-			if (currentMimeType == null) {
-				currentMimeType = "application/octet-stream";
+			if (!rangeRequested && staticCacheMaxFileSize > 0 && Files.size(urlPath) <= staticCacheMaxFileSize) {
+				serveStaticAsset(staticCache.get(urlPath));
+				return;
 			}
 			
 			RequestContext rc = getContext();
-			rc.setMimeType(currentMimeType);
+			rc.setMimeType(mimeTypeOf(urlPath));
 			rc.setStatusCode(200);
 			
-			byte[] data = Files.readAllBytes(urlPath);
-			rc.setByteLength(data.length);
-			rc.write(data);
+			try (FileChannel file = FileChannel.open(urlPath, StandardOpenOption.READ)) {
+				serveFile(file);
+			}
 		}
-
+		
 		/**
-		 * Helper method for serving a specific worker, when the urlString
-		 * starts with /ext/.
+		 * Helper method for serving a file held in the static cache. If the
+		 * client already holds the current version of the file, only a header
+		 * with status 304 Not Modified is sent. If the client accepts gzip
+		 * encoding and a compressed variant is kept, the compressed variant
+		 * is sent.
 		 * 
-		 * @param urlString url string starting with /ext/
-		 * @throws Exception if any kind of exception occurs during serving of request
+		 * @param asset cached file to serve
+		 * @throws IOException if the file could not be sent
+		 */
+		private void serveStaticAsset(StaticAsset asset) throws IOException {
+			boolean gzip = asset.hasGzipVariant() && acceptsGzip(request.getHeader("accept-encoding"));
+			byte[] body = asset.getBody(gzip);
+			
+			RequestContext rc = getContext();
+			rc.setMimeType(asset.getMimeType());
+			rc.setPrebuiltHeaderFields(asset.getHeaderFields(gzip));
+			rc.setByteLength(body.length);
+			
+			if (asset.isNotModified(request.getHeader("if-none-match"), request.getHeader("if-modified-since"))) {
+				// the header describes the body the client already holds, which isn't sent
+				rc.setStatusCode(304);
+				rc.setStatusText("Not Modified");
+				return;
+			}
+			
+			rc.write(body);
+		}
+		
+		/**
+		 * Helper method for serving a static file, or the single range of it
+		 * requested by the client. The file is never read into memory; it is
+		 * transferred into the client socket's channel instead.
+		 * 
+		 * @param file channel of the file to serve
+		 * @throws IOException if the file could not be read or sent
 		 */
-		private void serveExtWorker(String urlString) throws Exception {
-			String fqcnToken = "hr.fer.zemris.java.webserver.workers.";
-			String className = urlString.replaceFirst("^[/]ext[/]([^/]*)$", "$1");
+		private void serveFile(FileChannel file) throws IOException {
+			RequestContext rc = getContext();
+			long size = file.size();
+			ByteRange range = ByteRange.parse(request.getHeader("range"), size);
 			
-			fqcnToken = fqcnToken+className;
+			if (range == ByteRange.UNSATISFIABLE) {
+				rc.addHeader("Content-Range", "bytes */"+size);
+				sendError(416, "Range Not Satisfiable");
+				return;
+			}
 			
-			IWebWorker iww = loadWebWorker(fqcnToken);
+			rc.addHeader("Accept-Ranges", "bytes");
+			
+			if (range == null) {
+				rc.setByteLength(size);
+				rc.write(file, 0, size);
+				return;
+			}
 			
-			iww.processRequest(getContext());
+			rc.setStatusCode(206);
+			rc.setStatusText("Partial Content");
+			rc.addHeader("Content-Range", "bytes "+range.getFirst()+"-"+range.getLast()+"/"+size);
+			rc.setByteLength(range.length());
+			rc.write(file, range.getFirst(), range.length());
 		}
 
 		/**
-		 * Helper method for executing and serving a smart script file.
+		 * Helper method for executing and serving a smart script file. The
+		 * script is parsed and compiled only if it isn't already in the
+		 * script cache. If key parameters are given and the script is cacheable,
+		 * its output is served from the output cache, and the script is executed
+		 * only if the output for the values of the key parameters isn't cached.
+		 * Scripts whose output has been too large to be cached are executed
+		 * directly.
 		 * 
 		 * @param urlPath path to smart script file
+		 * @param keyParameters names of the parameters the script's output depends
+		 * 		  on; null if its output shouldn't be cached
 		 * @throws Exception if any kind of exception occurs during serving of request
 		 */
-		private void serveSmartScript(Path urlPath) throws Exception {
-			String smartScript = new String(Files.readAllBytes(urlPath), StandardCharsets.UTF_8);
-			DocumentNode node = new SmartScriptParser(smartScript).getDocumentNode();
+		private void serveSmartScript(Path urlPath, String[] keyParameters) throws Exception {
+			SmartScriptProgram program = scriptCache.get(urlPath);
 			
-			SmartScriptEngine engine = new SmartScriptEngine(
-				node,
-				getContext()
-			);
+			if (keyParameters == null || !program.isCacheable() || outputCache.isTooLarge(program)) {
+				program.execute(getContext());
+				return;
+			}
+			
+			// the program is part of the key, so a modified script is never served stale output
+			Object[] key = new Object[keyParameters.length + 1];
+			key[0] = program;
+			for (int i = 0; i < keyParameters.length; i++) {
+				key[i + 1] = params.get(keyParameters[i]);
+			}
+			List<Object> cacheKey = Arrays.asList(key);
+			
+			CachedOutput output = outputCache.get(cacheKey);
+			if (output == null) {
+				output = renderOutput(program, cacheKey);
+			}
+			
+			if (output == null) {
+				// the output was too large to be cached, so it has already been sent
+				return;
+			}
+			
+			RequestContext rc = getContext();
+			rc.setMimeType(output.getMimeType());
+			rc.setByteLength(output.getBody().length);
+			rc.write(output.getBody());
+		}
+		
+		/**
+		 * Helper method for executing the specified program into a detached
+		 * context, which captures only its output, and caching the output under
+		 * the specified key. If the output turns out to be too large to be cached,
+		 * it is written into this worker's context as it is rendered, the program
+		 * is marked as too large, and null is returned.
+		 * 
+		 * @param program program to execute
+		 * @param cacheKey key to cache the output under
+		 * @return the cached output, or null if it has already been sent
+		 * @throws IOException if the output could not be captured or sent
+		 */
+		private CachedOutput renderOutput(SmartScriptProgram program, List<Object> cacheKey) throws IOException {
+			OutputCache.Capture capture = outputCache.newCapture();
+			RequestContext rc = new RequestContext(capture, params, null, null);
+			rc.setHeaderOmitted(true);
+			capture.setOverflowStream(new OutputStream() {
+				/** flag indicating the properties of the output were passed on */
+				private boolean started;
+				
+				@Override
+				public void write(int b) throws IOException {
+					write(new byte[] {(byte) b}, 0, 1);
+				}
+				
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException {
+					RequestContext context = getContext();
+					if (!started) {
+						// the detached context has started writing, so these won't change
+						context.setEncoding(rc.getEncoding());
+						context.setMimeType(rc.getMimeType());
+						started = true;
+					}
+					context.write(off == 0 && len == b.length ? b : Arrays.copyOfRange(b, off, off + len));
+				}
+			});
+			
+			program.execute(rc);
+			rc.finish();
 			
-			engine.execute();
+			if (capture.hasOverflowed()) {
+				outputCache.markTooLarge(program);
+				return null;
+			}
+			
+			return outputCache.put(cacheKey, rc.getMimeType(), capture.toByteArray());
 		}
 
 		/**
@@ -682,6 +1847,8 @@ public class SmartHttpServer {
 			}
 			
 			context = new RequestContext(outputStream, params, permParams, outputCookies, tempParams, this);
+			context.setBufferSize(outputBufferSize);
+			context.setOutputChannel(clientSocket.getChannel());
 			return context;
 		}
 
@@ -724,50 +1891,12 @@ public class SmartHttpServer {
 			}
 		}
 
-		/**
-		 * Returns the current runtime time in seconds.
-		 * 
-		 * @return current time in seconds
-		 */
-		private long currentTimeInSeconds() {
-			return new Date().getTime() / 1000;
-		}
-
 		@Override
 		public void dispatchRequest(String urlPath) throws Exception {
 			internalDispatchRequest(urlPath, false);			
 		}
 	}
 	
-	/**
-	 * Helper class for storing information about a session.
-	 * 
-	 * @author Vice Ivušić
-	 *
-	 */
-	private static class SessionMapEntry {
-		/** sid associated with the session */
-		@SuppressWarnings("unused")
-		private String sid;
-		/** time the session is valid for */
-		private long validUntil;
-		/** map of persistent parameters */
-		private Map<String, String> permParamMap;
-		
-		/**
-		 * Creates a new SessionMapEntry with the specified arguments.
-		 * 
-		 * @param sid sid associated with the session
-		 * @param validUntil time the session is valid for
-		 * @param permParamMap map of persistent parameters
-		 */
-		public SessionMapEntry(String sid, long validUntil, Map<String, String> permParamMap) {
-			this.sid = sid;
-			this.validUntil = validUntil;
-			this.permParamMap = permParamMap;
-		}
-	}
-	
 	/**
 	 * Starting point of the program.
 	 * 
@@ -0,0 +1,199 @@
+package hr.fer.zemris.java.webserver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Represents a static file held in memory, ready to be sent to clients.
+ * Along with the contents of the file, holds the header fields describing
+ * them, already encoded into bytes, so serving the file requires neither
+ * file system access nor building the header fields again.
+ *
+ * <p>If requested, a gzip compressed variant of the contents is kept as well,
+ * but only if compressing actually makes the contents noticeably smaller.
+ *
+ * <p>Instances are immutable, so they may be shared by multiple threads.
+ *
+ * @author Vice Ivušić
+ *
+ */
+class StaticAsset {
+
+	/** format of dates in HTTP header fields */
+	private static final DateTimeFormatter HTTP_DATE_FORMAT = DateTimeFormatter
+		.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US)
+		.withZone(ZoneOffset.UTC);
+	/** largest ratio of compressed to original size for which the compressed variant is kept */
+	private static final double MAX_GZIP_RATIO = 0.9;
+
+	/** mime type of the file */
+	private final String mimeType;
+	/** contents of the file */
+	private final byte[] body;
+	/** gzip compressed contents of the file; null if not kept */
+	private final byte[] gzipBody;
+	/** entity tag identifying this version of the file */
+	private final String etag;
+	/** entity tag identifying the compressed variant of this version of the file */
+	private final String gzipEtag;
+	/** last modification time of the file, in whole seconds since the epoch */
+	private final long lastModified;
+	/** encoded header fields sent along with the contents */
+	private final byte[] headerFields;
+	/** encoded header fields sent along with the compressed contents; null if not kept */
+	private final byte[] gzipHeaderFields;
+
+	/**
+	 * Creates a new StaticAsset from the specified parameters.
+	 *
+	 * @param mimeType mime type of the file
+	 * @param body contents of the file
+	 * @param gzipBody compressed contents of the file; may be null
+	 * @param attributes attributes of the file, read before its contents
+	 */
+	private StaticAsset(String mimeType, byte[] body, byte[] gzipBody, BasicFileAttributes attributes) {
+		this.mimeType = mimeType;
+		this.body = body;
+		this.gzipBody = gzipBody;
+
+		long modifiedMillis = attributes.lastModifiedTime().toMillis();
+		String version = Long.toHexString(attributes.size())+"-"+Long.toHexString(modifiedMillis);
+		etag = "\""+version+"\"";
+		gzipEtag = "\""+version+"-gz\"";
+		lastModified = modifiedMillis / 1000;
+
+		String commonFields = "Accept-Ranges: bytes\r\n"
+			+ "Last-Modified: "+HTTP_DATE_FORMAT.format(Instant.ofEpochSecond(lastModified))+"\r\n"
+			+ (gzipBody == null ? "" : "Vary: Accept-Encoding\r\n");
+
+		headerFields = ("ETag: "+etag+"\r\n"+commonFields).getBytes(StandardCharsets.ISO_8859_1);
+		gzipHeaderFields = gzipBody == null
+			? null
+			: ("ETag: "+gzipEtag+"\r\n"+commonFields+"Content-Encoding: gzip\r\n")
+				.getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Loads the file on the specified path into a new StaticAsset.
+	 *
+	 * @param path path to the file
+	 * @param mimeType mime type of the file
+	 * @param gzip <b>true</b> if a compressed variant should be kept
+	 * @return loaded asset
+	 * @throws IOException if the file could not be read
+	 */
+	static StaticAsset load(Path path, String mimeType, boolean gzip) throws IOException {
+		// attributes are read first, so a modification during reading changes the tag later
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		byte[] body = Files.readAllBytes(path);
+
+		byte[] gzipBody = null;
+		if (gzip) {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			try (GZIPOutputStream gos = new GZIPOutputStream(bos)) {
+				gos.write(body);
+			}
+
+			if (bos.size() <= body.length * MAX_GZIP_RATIO) {
+				gzipBody = bos.toByteArray();
+			}
+		}
+
+		return new StaticAsset(mimeType, body, gzipBody, attributes);
+	}
+
+	/**
+	 * Returns the mime type of the file.
+	 *
+	 * @return mime type of the file
+	 */
+	String getMimeType() {
+		return mimeType;
+	}
+
+	/**
+	 * Returns <b>true</b> if a compressed variant of the contents is kept.
+	 *
+	 * @return <b>true</b> iff a compressed variant is kept
+	 */
+	boolean hasGzipVariant() {
+		return gzipBody != null;
+	}
+
+	/**
+	 * Returns the contents of the file, or their compressed variant. The
+	 * returned array must not be modified.
+	 *
+	 * @param gzip <b>true</b> for the compressed variant, which must be kept
+	 * @return contents of the file
+	 */
+	byte[] getBody(boolean gzip) {
+		return gzip ? gzipBody : body;
+	}
+
+	/**
+	 * Returns the encoded header fields to be sent along with the contents
+	 * of the file, or their compressed variant. The returned array must not
+	 * be modified.
+	 *
+	 * @param gzip <b>true</b> for the compressed variant, which must be kept
+	 * @return encoded header fields
+	 */
+	byte[] getHeaderFields(boolean gzip) {
+		return gzip ? gzipHeaderFields : headerFields;
+	}
+
+	/**
+	 * Returns <b>true</b> if the client already holds this version of the
+	 * file, according to the specified values of the If-None-Match and
+	 * If-Modified-Since header fields of its request. The If-Modified-Since
+	 * field is considered only if If-None-Match is not present.
+	 *
+	 * @param ifNoneMatch value of the If-None-Match header field; may be null
+	 * @param ifModifiedSince value of the If-Modified-Since header field; may be null
+	 * @return <b>true</b> iff the client's version of the file is still valid
+	 */
+	boolean isNotModified(String ifNoneMatch, String ifModifiedSince) {
+		if (ifNoneMatch != null) {
+			for (String tag : ifNoneMatch.split(",")) {
+				tag = tag.trim();
+				// weak comparison, as allowed for conditional GET requests
+				if (tag.startsWith("W/")) {
+					tag = tag.substring(2);
+				}
+
+				if (tag.equals("*") || tag.equals(etag) || tag.equals(gzipEtag)) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		if (ifModifiedSince != null) {
+			try {
+				long since = ZonedDateTime.parse(
+					ifModifiedSince.trim(),
+					DateTimeFormatter.RFC_1123_DATE_TIME
+				).toEpochSecond();
+
+				return lastModified <= since;
+			} catch (DateTimeParseException ignorable) {
+				// invalid dates are ignored
+			}
+		}
+
+		return false;
+	}
+}
@@ -0,0 +1,104 @@
+package hr.fer.zemris.java.webserver;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the executors which run the server's client workers. Two types of
+ * executors are supported:
+ *
+ * <ul>
+ * <li>{@value #PLATFORM}, a fixed pool of platform threads, where the amount
+ * of threads caps the amount of clients served at once;</li>
+ * <li>{@value #VIRTUAL}, which runs each worker on its own virtual thread, so
+ * a worker blocked on I/O doesn't occupy a platform thread.</li>
+ * </ul>
+ *
+ * <p>Virtual threads are available only on Java 21 or newer. Since the server is
+ * built for older versions as well, the virtual thread executor is looked up
+ * reflectively, when it is requested.
+ *
+ * @author Vice Ivušić
+ *
+ */
+public class WorkerExecutors {
+
+	/** type of the executor using a fixed pool of platform threads */
+	public static final String PLATFORM = "platform";
+	/** type of the executor using a virtual thread per worker */
+	public static final String VIRTUAL = "virtual";
+
+	/** factory method of the virtual thread executor; null if not supported */
+	private static final Method VIRTUAL_FACTORY = findVirtualFactory();
+
+	/**
+	 * Disallows instantiation, as this class only offers static methods.
+	 */
+	private WorkerExecutors() {
+	}
+
+	/**
+	 * Returns <b>true</b> if the specified type of executor can be created
+	 * on the current Java runtime.
+	 *
+	 * @param type type of the executor
+	 * @return <b>true</b> iff the type is known and supported
+	 */
+	public static boolean isSupported(String type) {
+		if (PLATFORM.equals(type)) {
+			return true;
+		}
+
+		return VIRTUAL.equals(type) && VIRTUAL_FACTORY != null;
+	}
+
+	/**
+	 * Creates a new executor of the specified type. The amount of worker
+	 * threads is used only by the {@value #PLATFORM} executor.
+	 *
+	 * @param type type of the executor
+	 * @param workerThreads amount of threads of the platform thread pool
+	 * @return created executor
+	 * @throws NullPointerException if the specified type is null
+	 * @throws IllegalArgumentException if the specified type is unknown or
+	 * 		   not supported on the current Java runtime
+	 */
+	public static ExecutorService newExecutor(String type, int workerThreads) {
+		if (type == null) {
+			throw new NullPointerException("Argument type cannot be null!");
+		}
+
+		if (type.equals(PLATFORM)) {
+			return Executors.newFixedThreadPool(workerThreads);
+		}
+
+		if (!type.equals(VIRTUAL)) {
+			throw new IllegalArgumentException("Unknown executor type: "+type);
+		}
+
+		if (VIRTUAL_FACTORY == null) {
+			throw new IllegalArgumentException("Virtual threads require Java 21 or newer!");
+		}
+
+		try {
+			return (ExecutorService) VIRTUAL_FACTORY.invoke(null);
+		} catch (ReflectiveOperationException ex) {
+			throw new RuntimeException("Could not create virtual thread executor!", ex);
+		}
+	}
+
+	/**
+	 * Helper method for looking up the factory method of the virtual
+	 * thread executor.
+	 *
+	 * @return factory method, or null if virtual threads aren't supported
+	 */
+	private static Method findVirtualFactory() {
+		try {
+			return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+		} catch (NoSuchMethodException ex) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,31 @@
+package hr.fer.zemris.java.webserver.functions;
+
+import java.util.Locale;
+
+import hr.fer.zemris.java.custom.scripting.exec.ExecutionState;
+import hr.fer.zemris.java.custom.scripting.exec.IScriptFunction;
+import hr.fer.zemris.java.custom.scripting.exec.ValueWrapper;
+
+/**
+ * Class which implements {@linkplain IScriptFunction}. Expects one argument
+ * to precede it and replaces it with its text converted to upper case. The
+ * result depends only on the argument, so scripts calling this function may
+ * have their output cached.
+ * 
+ * @author Vice Ivušić
+ *
+ */
+public class UpperCaseFunction implements IScriptFunction {
+
+	@Override
+	public void apply(ExecutionState state) {
+		Object value = state.pop().getValue();
+		
+		state.push(new ValueWrapper(String.valueOf(value).toUpperCase(Locale.ROOT)));
+	}
+	
+	@Override
+	public boolean isSessionBound() {
+		return false;
+	}
+}
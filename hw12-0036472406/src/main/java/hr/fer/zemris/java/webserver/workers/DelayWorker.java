@@ -0,0 +1,59 @@
+package hr.fer.zemris.java.webserver.workers;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import hr.fer.zemris.java.webserver.IAsyncWebWorker;
+import hr.fer.zemris.java.webserver.RequestContext;
+
+/**
+ * Class which implements {@linkplain IAsyncWebWorker}. Simulates waiting on a
+ * slow service: the response is written only after the amount of milliseconds
+ * set by parameter delay, by default 1000 and at most 60000, without holding
+ * any of the server's worker threads in the meantime.
+ *
+ * @author Vice Ivušić
+ *
+ */
+public class DelayWorker implements IAsyncWebWorker {
+
+	/** default amount of milliseconds a response is delayed for */
+	private static final long DEFAULT_DELAY = 1000;
+	/** maximum amount of milliseconds a response is delayed for */
+	private static final long MAX_DELAY = 60000;
+
+	/** the thread writing delayed responses, shared by all instances */
+	private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "delay-worker");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	@Override
+	public CompletionStage<Void> processRequestAsync(RequestContext context) {
+		String delayToken = context.getParameter("delay");
+		long delay = delayToken == null ? DEFAULT_DELAY : Long.parseLong(delayToken);
+		delay = Math.max(0, Math.min(delay, MAX_DELAY));
+
+		CompletableFuture<Void> response = new CompletableFuture<>();
+		long requestedDelay = delay;
+
+		SCHEDULER.schedule(() -> {
+			try {
+				context.setMimeType("text/html");
+				context.write("<html><body>");
+				context.write("<p>Answered after " + requestedDelay + " ms.</p>");
+				context.write("</body></html>");
+				response.complete(null);
+			} catch (IOException | RuntimeException ex) {
+				response.completeExceptionally(ex);
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+
+		return response;
+	}
+}
@@ -0,0 +1,88 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ByteRangeTest {
+
+	private static final long SIZE = 1000;
+
+	@Test
+	public void testClosedRange() {
+		assertRange(0, 499, ByteRange.parse("bytes=0-499", SIZE));
+		assertRange(500, 999, ByteRange.parse("bytes=500-999", SIZE));
+		assertRange(7, 7, ByteRange.parse("bytes=7-7", SIZE));
+		assertEquals(500, ByteRange.parse("bytes=0-499", SIZE).length());
+	}
+	
+	@Test
+	public void testOpenEndedRange() {
+		assertRange(0, 999, ByteRange.parse("bytes=0-", SIZE));
+		assertRange(999, 999, ByteRange.parse("bytes=999-", SIZE));
+		assertEquals(SIZE, ByteRange.parse("bytes=0-", SIZE).length());
+	}
+	
+	@Test
+	public void testSuffixRange() {
+		assertRange(500, 999, ByteRange.parse("bytes=-500", SIZE));
+		assertRange(999, 999, ByteRange.parse("bytes=-1", SIZE));
+		// a suffix longer than the file selects the whole file
+		assertRange(0, 999, ByteRange.parse("bytes=-5000", SIZE));
+	}
+	
+	@Test
+	public void testLastPositionClampedToEnd() {
+		assertRange(500, 999, ByteRange.parse("bytes=500-5000", SIZE));
+		assertRange(0, 999, ByteRange.parse("bytes=0-" + Long.MAX_VALUE, SIZE));
+	}
+	
+	@Test
+	public void testUnsatisfiable() {
+		assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=1000-", SIZE));
+		assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=1000-1999", SIZE));
+		assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=5000-6000", SIZE));
+		assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=-0", SIZE));
+		assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=0-", 0));
+		assertSame(ByteRange.UNSATISFIABLE, ByteRange.parse("bytes=-500", 0));
+	}
+	
+	@Test
+	public void testReversedRangeIgnored() {
+		assertNull(ByteRange.parse("bytes=500-100", SIZE));
+	}
+	
+	@Test
+	public void testMultipleRangesIgnored() {
+		assertNull(ByteRange.parse("bytes=0-99,200-299", SIZE));
+		assertNull(ByteRange.parse("bytes=0-99, -100", SIZE));
+	}
+	
+	@Test
+	public void testMalformedIgnored() {
+		assertNull(ByteRange.parse(null, SIZE));
+		assertNull(ByteRange.parse("", SIZE));
+		assertNull(ByteRange.parse("bytes=", SIZE));
+		assertNull(ByteRange.parse("bytes=-", SIZE));
+		assertNull(ByteRange.parse("bytes=abc-def", SIZE));
+		assertNull(ByteRange.parse("bytes=0-1x", SIZE));
+		assertNull(ByteRange.parse("bytes=+5-10", SIZE));
+		assertNull(ByteRange.parse("bytes=5", SIZE));
+		assertNull(ByteRange.parse("bytes=--5", SIZE));
+		assertNull(ByteRange.parse("items=0-499", SIZE));
+		assertNull(ByteRange.parse("bytes=99999999999999999999-", SIZE));
+	}
+	
+	@Test
+	public void testWhitespaceAndUnitCase() {
+		assertRange(0, 9, ByteRange.parse("  BYTES= 0 - 9 ", SIZE));
+		assertRange(990, 999, ByteRange.parse("Bytes=-10", SIZE));
+	}
+	
+	private static void assertRange(long first, long last, ByteRange range) {
+		assertNotNull(range);
+		assertNotSame(ByteRange.UNSATISFIABLE, range);
+		assertEquals(first, range.getFirst());
+		assertEquals(last, range.getLast());
+	}
+}
@@ -0,0 +1,267 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import hr.fer.zemris.java.webserver.RequestHeader.Status;
+
+public class RequestHeaderTest {
+
+	private static final String REQUEST =
+			"GET /index.html?a=1 HTTP/1.1\r\n"
+			+ "Host: www.example.com:5721\r\n"
+			+ "User-AGENT:   test-client  \r\n"
+			+ "Cookie: theme=dark; sid=\"ABCDEF\"\r\n"
+			+ "\r\n";
+
+	@Test
+	public void testCompleteRequest() throws IOException {
+		RequestHeader header = new RequestHeader(16384, 100);
+		
+		assertEquals(Status.COMPLETE, header.read(stream(REQUEST)));
+		assertEquals("GET", header.getMethod());
+		assertEquals("/index.html?a=1", header.getPath());
+		assertEquals("HTTP/1.1", header.getVersion());
+		assertEquals("www.example.com", header.getHost());
+		assertEquals("ABCDEF", header.getSid());
+		assertFalse(header.hasBufferedData());
+	}
+	
+	@Test
+	public void testHeaderNamesLowercased() throws IOException {
+		RequestHeader header = new RequestHeader(16384, 100);
+		header.read(stream(REQUEST));
+		
+		assertEquals("test-client", header.getHeader("user-agent"));
+		assertEquals("www.example.com:5721", header.getHeader("host"));
+		assertNull(header.getHeader("User-Agent"));
+		assertNull(header.getHeader("accept"));
+	}
+	
+	@Test
+	public void testSplitReads() throws IOException {
+		for (int chunk : new int[] {1, 2, 3, 7, 64}) {
+			RequestHeader header = new RequestHeader(16384, 100);
+			
+			assertEquals(Status.COMPLETE, header.read(new ChunkedStream(REQUEST, chunk)));
+			assertEquals("/index.html?a=1", header.getPath());
+			assertEquals("test-client", header.getHeader("user-agent"));
+			assertEquals("ABCDEF", header.getSid());
+		}
+	}
+	
+	@Test
+	public void testBufferRefills() throws IOException {
+		StringBuilder sb = new StringBuilder("GET / HTTP/1.1\r\n");
+		for (int i = 0; i < 50; i++) {
+			sb.append("X-Field-").append(i).append(": ").append(repeat('v', 60)).append("\r\n");
+		}
+		sb.append("\r\n");
+		
+		// the header is larger than the smallest buffer, which has to be refilled
+		RequestHeader header = new RequestHeader(8192, 100);
+		
+		assertEquals(Status.COMPLETE, header.read(new ChunkedStream(sb.toString(), 5)));
+		assertEquals(repeat('v', 60), header.getHeader("x-field-0"));
+		assertEquals(repeat('v', 60), header.getHeader("x-field-49"));
+	}
+	
+	@Test
+	public void testPipelinedRequests() throws IOException {
+		RequestHeader header = new RequestHeader(16384, 100);
+		InputStream in = stream(
+				"GET /first HTTP/1.1\r\nHost: a\r\n\r\n"
+				+ "GET /second HTTP/1.1\r\nHost: b\r\n\r\n"
+		);
+		
+		assertEquals(Status.COMPLETE, header.read(in));
+		assertEquals("/first", header.getPath());
+		assertEquals("a", header.getHost());
+		assertTrue(header.hasBufferedData());
+		
+		assertEquals(Status.COMPLETE, header.read(in));
+		assertEquals("/second", header.getPath());
+		assertEquals("b", header.getHost());
+		assertFalse(header.hasBufferedData());
+		
+		assertEquals(Status.CLOSED, header.read(in));
+	}
+	
+	@Test
+	public void testFedBytesParsedFirst() throws IOException {
+		RequestHeader header = new RequestHeader(16384, 100);
+		header.feed("GET /fed HTTP/1.1\r\nHo".getBytes(StandardCharsets.ISO_8859_1));
+		
+		assertTrue(header.hasBufferedData());
+		assertEquals(Status.COMPLETE, header.read(stream("st: fed.com\r\n\r\n")));
+		assertEquals("/fed", header.getPath());
+		assertEquals("fed.com", header.getHost());
+	}
+	
+	@Test
+	public void testPreviousRequestCleared() throws IOException {
+		RequestHeader header = new RequestHeader(16384, 100);
+		InputStream in = stream(REQUEST + "GET / HTTP/1.1\r\n\r\n");
+		
+		header.read(in);
+		header.read(in);
+		
+		assertNull(header.getHost());
+		assertNull(header.getSid());
+		assertNull(header.getHeader("user-agent"));
+	}
+	
+	@Test
+	public void testHeaderTooLarge() throws IOException {
+		RequestHeader header = new RequestHeader(64, 100);
+		
+		assertEquals(Status.TOO_LARGE, header.read(stream(
+				"GET / HTTP/1.1\r\nX-Long: " + repeat('x', 100) + "\r\n\r\n"
+		)));
+	}
+	
+	@Test
+	public void testLineWithoutEndTooLarge() throws IOException {
+		RequestHeader header = new RequestHeader(1024, 100);
+		
+		assertEquals(Status.TOO_LARGE, header.read(new ChunkedStream(
+				"GET /" + repeat('x', 5000), 100
+		)));
+	}
+	
+	@Test
+	public void testTooManyHeaderFields() throws IOException {
+		RequestHeader header = new RequestHeader(16384, 2);
+		
+		assertEquals(Status.TOO_LARGE, header.read(stream(
+				"GET / HTTP/1.1\r\nA: 1\r\nB: 2\r\nC: 3\r\n\r\n"
+		)));
+		
+		RequestHeader exact = new RequestHeader(16384, 2);
+		assertEquals(Status.COMPLETE, exact.read(stream(
+				"GET / HTTP/1.1\r\nA: 1\r\nB: 2\r\n\r\n"
+		)));
+	}
+	
+	@Test
+	public void testClosedBeforeEnd() throws IOException {
+		RequestHeader header = new RequestHeader(16384, 100);
+		
+		assertEquals(Status.CLOSED, header.read(stream("GET / HTTP/1.1\r\nHost: a\r\n")));
+		assertEquals(Status.CLOSED, new RequestHeader(16384, 100).read(stream("")));
+	}
+	
+	@Test
+	public void testInvalidRequestLine() throws IOException {
+		RequestHeader header = new RequestHeader(16384, 100);
+		
+		assertEquals(Status.COMPLETE, header.read(stream("GET  /a HTTP/1.1\r\n\r\n")));
+		assertNull(header.getMethod());
+		assertNull(header.getPath());
+		assertNull(header.getVersion());
+		
+		RequestHeader empty = new RequestHeader(16384, 100);
+		assertEquals(Status.COMPLETE, empty.read(stream("\r\n")));
+		assertNull(empty.getMethod());
+	}
+	
+	@Test
+	public void testHostVariants() throws IOException {
+		assertEquals("example.com", hostOf("example.com"));
+		assertEquals("example.com", hostOf("example.com:80"));
+		assertEquals("[::1]", hostOf("[::1]:5721"));
+		assertEquals("[::1]", hostOf("[::1]"));
+		assertNull(hostOf(""));
+	}
+	
+	@Test
+	public void testSidCookieVariants() throws IOException {
+		assertEquals("ABC", sidOf("sid=\"ABC\""));
+		assertEquals("ABC", sidOf("sid=ABC"));
+		assertEquals("ABC", sidOf("a=1; sid=\"ABC\"; b=2"));
+		assertEquals("ABC", sidOf("a=1;sid=ABC"));
+		assertEquals("", sidOf("sid=\"\""));
+		assertEquals("\"ABC", sidOf("sid=\"ABC"));
+		assertNull(sidOf("xsid=ABC"));
+		assertNull(sidOf("sids=ABC"));
+		assertNull(sidOf("theme=dark"));
+		assertNull(sidOf(""));
+	}
+	
+	@Test
+	public void testSidFromLastCookieContainingIt() throws IOException {
+		RequestHeader header = new RequestHeader(16384, 100);
+		header.read(stream(
+				"GET / HTTP/1.1\r\nCookie: sid=FIRST\r\nCookie: sid=SECOND\r\nCookie: theme=dark\r\n\r\n"
+		));
+		
+		assertEquals("SECOND", header.getSid());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidLimits() {
+		new RequestHeader(0, 100);
+	}
+	
+	private static String hostOf(String value) throws IOException {
+		RequestHeader header = new RequestHeader(16384, 100);
+		header.read(stream("GET / HTTP/1.1\r\nHost: " + value + "\r\n\r\n"));
+		
+		return header.getHost();
+	}
+	
+	private static String sidOf(String value) throws IOException {
+		RequestHeader header = new RequestHeader(16384, 100);
+		header.read(stream("GET / HTTP/1.1\r\nCookie: " + value + "\r\n\r\n"));
+		
+		return header.getSid();
+	}
+	
+	private static InputStream stream(String text) {
+		return new ByteArrayInputStream(text.getBytes(StandardCharsets.ISO_8859_1));
+	}
+	
+	private static String repeat(char c, int count) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+	
+	private static class ChunkedStream extends InputStream {
+		
+		private byte[] data;
+		private int position;
+		private int chunk;
+		
+		ChunkedStream(String text, int chunk) {
+			this.data = text.getBytes(StandardCharsets.ISO_8859_1);
+			this.chunk = chunk;
+		}
+		
+		@Override
+		public int read() {
+			return position < data.length ? data[position++] & 0xFF : -1;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (position == data.length) {
+				return -1;
+			}
+			
+			int count = Math.min(Math.min(len, chunk), data.length - position);
+			System.arraycopy(data, position, b, off, count);
+			position += count;
+			
+			return count;
+		}
+	}
+}
@@ -0,0 +1,196 @@
+package hr.fer.zemris.java.webserver;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import hr.fer.zemris.java.custom.scripting.exec.ExecutionState;
+import hr.fer.zemris.java.custom.scripting.exec.IScriptFunction;
+
+public class ScriptOutputCacheTest {
+
+	private static final int OUTPUT_CACHE_SIZE = 256;
+
+	@ClassRule
+	public static TemporaryFolder folder = new TemporaryFolder();
+
+	private static SmartHttpServer server;
+	private static int port;
+
+	public static class CountingFunction implements IScriptFunction {
+
+		private static final Map<String, AtomicInteger> COUNTS = new ConcurrentHashMap<>();
+
+		static int count(String name) {
+			AtomicInteger count = COUNTS.get(name);
+			return count == null ? 0 : count.get();
+		}
+
+		@Override
+		public void apply(ExecutionState state) {
+			String name = String.valueOf(state.pop().getValue());
+			COUNTS.computeIfAbsent(name, key -> new AtomicInteger()).incrementAndGet();
+		}
+
+		@Override
+		public boolean isSessionBound() {
+			return false;
+		}
+	}
+
+	@BeforeClass
+	public static void startServer() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+
+		write(directory, "server.properties",
+			"server.address = 127.0.0.1\n"
+			+ "server.port = " + port + "\n"
+			+ "server.workerThreads = 2\n"
+			+ "server.documentRoot = " + path(directory, "webroot") + "\n"
+			+ "server.mimeConfig = " + path(directory, "mime.properties") + "\n"
+			+ "server.workers = " + path(directory, "workers.properties") + "\n"
+			+ "server.functions = " + path(directory, "functions.properties") + "\n"
+			+ "server.outputCache = " + path(directory, "outputcache.properties") + "\n"
+			+ "server.outputCache.size = " + OUTPUT_CACHE_SIZE + "\n"
+			+ "server.metrics.path = \n"
+			+ "session.timeout = 600\n"
+		);
+		write(directory, "mime.properties", "txt = text/plain\n");
+		write(directory, "workers.properties", "");
+		write(directory, "functions.properties",
+			"count = " + CountingFunction.class.getName() + "\n"
+		);
+		write(directory, "outputcache.properties",
+			"/scripts/large.smscr = \n"
+			+ "/scripts/small.smscr = \n"
+		);
+		write(directory, "webroot/scripts/large.smscr",
+			"{$= \"text/plain\" @setMimeType \"large\" @count $}"
+			+ "{$ FOR i 1 100 1 $}0123456789{$END$}"
+		);
+		write(directory, "webroot/scripts/small.smscr",
+			"{$= \"text/plain\" @setMimeType \"small\" @count $}small output"
+		);
+
+		server = new SmartHttpServer(path(directory, "server.properties"));
+		server.start();
+	}
+
+	@AfterClass
+	public static void stopServer() {
+		server.stop();
+	}
+
+	@Test
+	public void testOutputLargerThanCacheRenderedOnce() throws IOException {
+		String expected = repeat("0123456789", 100);
+		assertTrue(expected.length() > OUTPUT_CACHE_SIZE);
+
+		for (int i = 1; i <= 3; i++) {
+			String response = get("/scripts/large.smscr");
+
+			assertTrue(response, response.startsWith("HTTP/1.1 200 OK\r\n"));
+			assertTrue(response, response.contains("Content-Type: text/plain; charset=UTF-8\r\n"));
+			assertEquals(expected, bodyOf(response));
+			assertEquals(i, CountingFunction.count("large"));
+		}
+	}
+
+	@Test
+	public void testOutputSmallerThanCacheRenderedOnce() throws IOException {
+		for (int i = 0; i < 3; i++) {
+			String response = get("/scripts/small.smscr");
+
+			assertTrue(response, response.contains("Content-Type: text/plain; charset=UTF-8\r\n"));
+			assertEquals("small output", bodyOf(response));
+		}
+
+		assertEquals(1, CountingFunction.count("small"));
+	}
+
+	private static String get(String path) throws IOException {
+		try (Socket socket = connect()) {
+			OutputStream os = socket.getOutputStream();
+			os.write((
+				"GET " + path + " HTTP/1.1\r\n"
+				+ "Host: 127.0.0.1:" + port + "\r\n"
+				+ "Connection: close\r\n\r\n"
+			).getBytes(StandardCharsets.ISO_8859_1));
+			os.flush();
+
+			InputStream is = socket.getInputStream();
+			ByteArrayOutputStream response = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1024];
+			for (int read; (read = is.read(buffer)) != -1; ) {
+				response.write(buffer, 0, read);
+			}
+
+			return new String(response.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private static Socket connect() throws IOException {
+		// the server binds its socket on its own thread, shortly after being started
+		for (int attempt = 0; ; attempt++) {
+			try {
+				Socket socket = new Socket("127.0.0.1", port);
+				socket.setSoTimeout(5000);
+				return socket;
+			} catch (ConnectException ex) {
+				if (attempt == 50) {
+					throw ex;
+				}
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException ignorable) {}
+			}
+		}
+	}
+
+	private static String bodyOf(String response) {
+		int headerEnd = response.indexOf("\r\n\r\n");
+		assertTrue(response, headerEnd >= 0);
+
+		return response.substring(headerEnd + 4);
+	}
+
+	private static String path(Path directory, String file) {
+		// backslashes of Windows paths would be taken as escapes
+		return directory.resolve(file).toString().replace('\\', '/');
+	}
+
+	private static void write(Path directory, String file, String text) throws IOException {
+		Path path = directory.resolve(file);
+		Files.createDirectories(path.getParent());
+		Files.write(path, text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static String repeat(String text, int times) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < times; i++) {
+			sb.append(text);
+		}
+		return sb.toString();
+	}
+}